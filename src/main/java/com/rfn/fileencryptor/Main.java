@@ -16,16 +16,22 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
         try {
-            // Test database connection
-            try {
-                if (!com.rfn.fileencryptor.util.DatabaseUtil.testConnection()) {
-                    throw new RuntimeException("Failed to establish database connection");
+            // The pool warms up in the background (see main); login waits for it if needed
+            com.rfn.fileencryptor.util.DatabaseUtil.warmUp().whenComplete((v, e) -> {
+                if (e != null) {
+                    logger.error("Failed to initialize database connection", e);
+                } else {
+                    logger.info("Database connection verified");
                 }
-                logger.info("Database connection verified");
-            } catch (Exception e) {
-                logger.error("Failed to verify database connection", e);
-                throw new RuntimeException("Failed to verify database connection", e);
-            }
+            });
+
+            // Resume any secure deletions left over from a previous run
+            com.rfn.fileencryptor.service.ShredService.getInstance();
+
+            // Drop partial outputs that no interrupted batch can resume from
+            com.rfn.fileencryptor.service.JobJournal.getInstance().reconcileOrphans(java.util.Arrays.asList(
+                    com.rfn.fileencryptor.config.ConfigManager.getStorageDir(),
+                    com.rfn.fileencryptor.config.ConfigManager.getDecryptDir()));
 
             // Load Login Screen
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login.fxml"));
@@ -49,11 +55,22 @@ public class Main extends Application {
     @Override
     public void stop() {
         logger.info("Application shutting down...");
+        com.rfn.fileencryptor.service.WatchFolderService.getInstance().stop();
+        // Stop shred workers; unfinished entries stay journaled for next start
+        com.rfn.fileencryptor.service.ShredService.getInstance().shutdown();
+        // Write queued audit entries while the pool is still open
+        com.rfn.fileencryptor.service.AuditWriter.getInstance().shutdown();
         // Close database connection pool
         com.rfn.fileencryptor.util.DatabaseUtil.closePool();
     }
 
     public static void main(String[] args) {
+        // Command-line flags select the headless CLI (e.g. --encrypt, --list)
+        if (args.length > 0 && args[0].startsWith("--")) {
+            System.exit(com.rfn.fileencryptor.cli.CliMain.run(args));
+        }
+        // Open the database while the JavaFX toolkit starts
+        com.rfn.fileencryptor.util.DatabaseUtil.warmUp();
         launch(args);
     }
 }
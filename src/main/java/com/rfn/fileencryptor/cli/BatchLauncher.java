@@ -0,0 +1,87 @@
+package com.rfn.fileencryptor.cli;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.service.CompressionService;
+import com.rfn.fileencryptor.service.FileService;
+import com.rfn.fileencryptor.service.FolderWalker;
+import com.rfn.fileencryptor.service.JobJournal;
+import com.rfn.fileencryptor.service.JobScheduler;
+import com.rfn.fileencryptor.util.CancellationToken;
+import com.rfn.fileencryptor.util.CryptoUtil;
+
+/**
+ * Starts journaled encrypt/decrypt batches for the headless front ends (CLI and daemon).
+ * Returns as soon as the items are queued; callers wait on the batch completion.
+ */
+final class BatchLauncher {
+
+    private final FileService fileService;
+
+    BatchLauncher(FileService fileService) {
+        this.fileService = fileService;
+    }
+
+    /**
+     * Encrypt a file list, or every file under root when files is null.
+     */
+    JobScheduler.Batch<File, FileMetadata> encrypt(List<File> files, Path root, FileService.KeySession session,
+                                                   CompressionService.Mode mode, JobJournal.Job journal,
+                                                   JobScheduler.BatchListener<File> listener,
+                                                   CancellationToken token) {
+        Function<File, String> relativeOf = f -> root == null ? null : FolderWalker.relativePath(root, f);
+        JobScheduler.Batch<File, FileMetadata> batch = JobScheduler.getInstance().newBatch(
+                journal.wrap(JobScheduler.splittable(
+                        (f, callback, tk) -> fileService.encryptFile(f, relativeOf.apply(f), session,
+                                mode.appliesTo(f), callback, tk),
+                        (f, tk) -> mode.appliesTo(f) ? null
+                                : fileService.splitEncrypt(f, relativeOf.apply(f), session)),
+                        File::getAbsolutePath,
+                        (f, state, first, tk) -> fileService.resumeEncrypt(f, relativeOf.apply(f), state, first,
+                                session)),
+                listener, token);
+        batch.limitByDevice(FileService::encryptPaths);
+
+        if (root != null) {
+            // Files are submitted as the walk finds them; the walker seals the batch
+            FolderWalker.feed(root, batch, journal);
+        } else {
+            batch.submitAll(files, File::length);
+            batch.seal();
+        }
+        return batch;
+    }
+
+    JobScheduler.Batch<FileMetadata, Void> decrypt(List<FileMetadata> metas, String filePassword, Long userId,
+                                                   String dir, JobJournal.Job journal,
+                                                   JobScheduler.BatchListener<FileMetadata> listener,
+                                                   CancellationToken token) {
+        JobScheduler.Batch<FileMetadata, Void> batch = JobScheduler.getInstance().submitAll(
+                metas, m -> m.getFileSize() == null ? 0L : m.getFileSize(),
+                m -> FileService.decryptPaths(m, dir),
+                journal.wrap(JobScheduler.splittable(
+                        (meta, callback, tk) -> {
+                            fileService.decryptFile(meta, filePassword, userId, dir, callback, tk);
+                            return null;
+                        },
+                        (meta, tk) -> fileService.splitDecrypt(meta, filePassword, userId, dir)),
+                        meta -> String.valueOf(meta.getFileId()),
+                        (meta, state, first, tk) -> fileService.resumeDecrypt(meta, state, first, filePassword,
+                                userId)),
+                listener, token);
+        // Each file derives its key from its own salt (unless the daemon's key cache holds it)
+        return batch.expectItemOverheadMs(CryptoUtil.getKdfMillisEstimate());
+    }
+
+    static CompressionService.Mode parseCompress(String value) {
+        try {
+            return CompressionService.Mode.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("compress must be auto, yes or no");
+        }
+    }
+}
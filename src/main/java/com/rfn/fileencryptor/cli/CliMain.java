@@ -0,0 +1,673 @@
+package com.rfn.fileencryptor.cli;
+
+import java.io.Console;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.dao.FileMetadataDAO;
+import com.rfn.fileencryptor.dao.RowCursor;
+import com.rfn.fileencryptor.exception.AuthenticationException;
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.model.User;
+import com.rfn.fileencryptor.service.AuditArchive;
+import com.rfn.fileencryptor.service.AuditExporter;
+import com.rfn.fileencryptor.service.AuditWriter;
+import com.rfn.fileencryptor.service.AuthenticationService;
+import com.rfn.fileencryptor.service.CompressionService;
+import com.rfn.fileencryptor.service.FileService;
+import com.rfn.fileencryptor.service.JobJournal;
+import com.rfn.fileencryptor.service.JobScheduler;
+import com.rfn.fileencryptor.service.ShredService;
+import com.rfn.fileencryptor.util.CancellationToken;
+import com.rfn.fileencryptor.util.DatabaseUtil;
+
+/**
+ * Headless entry point for scripted bulk jobs. Uses the same services, scheduler and
+ * journal as the GUI but never touches JavaFX:
+ *
+ *   java -cp FileEncryptor.jar com.rfn.fileencryptor.cli.CliMain --encrypt /data/in --jobs 4
+ *
+ * Passwords come from the FE_PASSWORD / FE_FILE_PASSWORD environment variables or are
+ * read from the console, never from the command line. Progress is written to stdout as
+ * one JSON object per line; the exit code reports the outcome (see EXIT_*).
+ */
+public final class CliMain {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILURES = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_SETUP = 3;
+    public static final int EXIT_CANCELLED = 130;
+
+    private static final String USAGE = String.join("\n",
+            "Usage: CliMain <command> [options]",
+            "Commands:",
+            "  --encrypt <path>...       encrypt files and folders (folders recursively)",
+            "  --decrypt <id>...|all     decrypt stored files by id",
+            "  --list                    list stored files",
+            "  --resume                  resume interrupted batches",
+            "  --daemon                  serve jobs on a loopback HTTP API until stopped",
+            "  --archive-audit           move your audit entries past audit.retention.days to the local archive",
+            "  --export-audit <file>     write audit entries to a CSV or JSON file (.gz to compress)",
+            "Options:",
+            "  --user <name>             account name (default: $FE_USER)",
+            "  --jobs <n>                worker threads for this run (1-8)",
+            "  --compress auto|yes|no    compress before encrypting (default: auto)",
+            "  --out <dir>               decrypt output folder (default: configured decrypt folder)",
+            "  --progress-ms <ms>        progress report interval (default: 1000)",
+            "  --from / --to <yyyy-MM-dd> export date range, inclusive (default: everything)",
+            "  --type <operation>        export only this operation type (e.g. ENCRYPT)",
+            "  --format csv|json         export format (default: from the file extension)",
+            "Environment: FE_PASSWORD (login), FE_FILE_PASSWORD (file encryption password)");
+
+    private final PrintStream out;
+    private final FileService fileService = new FileService();
+    private final FileMetadataDAO fileMetadataDAO = new FileMetadataDAO();
+    private final BatchLauncher launcher = new BatchLauncher(fileService);
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private String command;
+    private final List<String> targets = new ArrayList<>();
+    private String username = System.getenv("FE_USER");
+    private CompressionService.Mode compress = CompressionService.Mode.AUTO;
+    private String outDir;
+    private long progressMs = 1000;
+    private LocalDate exportFrom;
+    private LocalDate exportTo;
+    private String exportType;
+    private AuditExporter.Format exportFormat;
+
+    private volatile CancellationToken currentToken;
+    private volatile DaemonServer daemonServer;
+    private volatile boolean interrupted;
+    private User user;
+
+    private CliMain(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Run one CLI invocation and return its exit code.
+     */
+    public static int run(String[] args) {
+        // stdout carries only the JSON lines; everything else printed or logged to the
+        // console (logback's console appender writes through System.out) goes to stderr
+        PrintStream json = System.out;
+        System.setOut(System.err);
+        CliMain cli = new CliMain(json);
+        try {
+            cli.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (cli.command == null) {
+            json.println(USAGE);
+            return EXIT_OK;
+        }
+
+        Thread hook = new Thread(cli::onShutdown, "cli-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        try {
+            return cli.execute();
+        } finally {
+            cli.finished.countDown();
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--encrypt":
+                case "--decrypt":
+                    setCommand(arg.substring(2));
+                    while (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        targets.add(args[++i]);
+                    }
+                    if (targets.isEmpty()) throw new IllegalArgumentException(arg + " needs at least one argument");
+                    break;
+                case "--list":
+                case "--resume":
+                case "--daemon":
+                case "--archive-audit":
+                    setCommand(arg.substring(2));
+                    break;
+                case "--export-audit":
+                    setCommand(arg.substring(2));
+                    targets.add(value(args, ++i, arg));
+                    break;
+                case "--from":
+                    exportFrom = date(value(args, ++i, arg), arg);
+                    break;
+                case "--to":
+                    exportTo = date(value(args, ++i, arg), arg);
+                    break;
+                case "--type":
+                    exportType = value(args, ++i, arg).toUpperCase(Locale.ROOT);
+                    break;
+                case "--format":
+                    try {
+                        exportFormat = AuditExporter.Format.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("--format must be csv or json");
+                    }
+                    break;
+                case "--user":
+                    username = value(args, ++i, arg);
+                    break;
+                case "--jobs":
+                    try {
+                        ConfigManager.setParallelJobsForSession(Integer.parseInt(value(args, ++i, arg)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("--jobs must be a number");
+                    }
+                    break;
+                case "--compress":
+                    compress = BatchLauncher.parseCompress(value(args, ++i, arg));
+                    break;
+                case "--out":
+                    outDir = new File(value(args, ++i, arg)).getAbsolutePath();
+                    break;
+                case "--progress-ms":
+                    try {
+                        progressMs = Math.max(0, Long.parseLong(value(args, ++i, arg)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("--progress-ms must be a number");
+                    }
+                    break;
+                case "--help":
+                case "-h":
+                    command = null;
+                    return;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+    }
+
+    private void setCommand(String c) {
+        if (command != null) throw new IllegalArgumentException("Only one command may be given");
+        command = c;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    private static LocalDate date(String s, String option) {
+        try {
+            return LocalDate.parse(s);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(option + " must be a date (yyyy-MM-dd)");
+        }
+    }
+
+    private int execute() {
+        if (username == null || username.isEmpty()) {
+            return setupError("No user given (--user or FE_USER)");
+        }
+        // Connect while the password is read
+        DatabaseUtil.warmUp();
+        // Resume secure deletions left over from a previous run
+        ShredService.getInstance();
+
+        try {
+            String loginPassword = secret("FE_PASSWORD", "Password for " + username + ": ");
+            if (loginPassword == null) return setupError("Login password is required");
+            try {
+                DatabaseUtil.awaitReady();
+            } catch (SQLException e) {
+                return setupError(e.getMessage());
+            }
+            user = new AuthenticationService().login(username, loginPassword);
+        } catch (AuthenticationException e) {
+            return setupError(e.getMessage());
+        }
+
+        int code;
+        try {
+            switch (command) {
+                case "list":
+                    code = list();
+                    break;
+                case "encrypt":
+                    code = encrypt();
+                    break;
+                case "decrypt":
+                    code = decrypt();
+                    break;
+                case "daemon":
+                    code = daemon();
+                    break;
+                case "archive-audit":
+                    code = archiveAudit();
+                    break;
+                case "export-audit":
+                    code = exportAudit();
+                    break;
+                default:
+                    code = resume();
+                    break;
+            }
+        } catch (Exception e) {
+            emit(json("event", "error", "message", e.getMessage()));
+            code = EXIT_FAILURES;
+        }
+
+        drainShredQueue();
+        AuditWriter.getInstance().shutdown();
+        DatabaseUtil.closePool();
+        return interrupted ? EXIT_CANCELLED : code;
+    }
+
+    private int list() throws Exception {
+        // Emit rows as they are fetched rather than holding the whole vault in memory
+        try (RowCursor<FileMetadata> files = fileMetadataDAO.openByOwner(user.getUserId())) {
+            while (files.next()) {
+                FileMetadata m = files.get();
+                emit(json("event", "file", "id", m.getFileId(), "name", m.getOriginalFilename(),
+                        "relativePath", m.getRelativePath(), "size", m.getFileSize(),
+                        "compressed", m.isCompressed(), "algorithm", m.getEncryptionAlgorithm(),
+                        "created", m.getCreatedAt() == null ? null : m.getCreatedAt().toInstant().toString()));
+            }
+        }
+        return EXIT_OK;
+    }
+
+    private int archiveAudit() throws Exception {
+        // Entries still queued from this run belong in the table before months are moved
+        if (ConfigManager.getAuditRetentionDays() == 0) {
+            return setupError("Audit retention is off; set audit.retention.days to archive entries");
+        }
+        AuditWriter.getInstance().flush(5000);
+        long moved = AuditArchive.getInstance().runRetention(user.getUserId());
+        emit(json("event", "archived", "entries", moved, "userId", user.getUserId(),
+                "retentionDays", ConfigManager.getAuditRetentionDays()));
+        return EXIT_OK;
+    }
+
+    private int exportAudit() throws Exception {
+        File target = new File(targets.get(0)).getAbsoluteFile();
+        boolean gzip = target.getName().toLowerCase(Locale.ROOT).endsWith(".gz");
+        AuditExporter.Format format = exportFormat != null ? exportFormat : AuditExporter.Format.of(target);
+        Timestamp start = exportFrom == null ? null : Timestamp.valueOf(exportFrom.atStartOfDay());
+        // Inclusive end day; the exporter's end bound is inclusive too
+        Timestamp end = exportTo == null ? null
+                : new Timestamp(Timestamp.valueOf(exportTo.plusDays(1).atStartOfDay()).getTime() - 1);
+
+        CancellationToken token = new CancellationToken();
+        currentToken = token;
+        emit(json("event", "start", "op", "export-audit", "file", target.getPath(),
+                "format", format.name().toLowerCase(Locale.ROOT), "gzip", gzip));
+        AtomicLong lastEmit = new AtomicLong();
+        long started = System.currentTimeMillis();
+        long written;
+        try {
+            written = new AuditExporter().export(user.getUserId(), start, end, exportType, format, gzip, target,
+                    (done, expected) -> {
+                        long now = System.nanoTime();
+                        if (now - lastEmit.get() < TimeUnit.MILLISECONDS.toNanos(progressMs)) return;
+                        lastEmit.set(now);
+                        emit(json("event", "progress", "op", "export-audit", "entries", done,
+                                "expected", expected));
+                    }, token);
+        } catch (CancellationException e) {
+            emit(json("event", "cancelled", "op", "export-audit"));
+            return EXIT_CANCELLED;
+        }
+        emit(json("event", "exported", "entries", written, "file", target.getPath(), "bytes", target.length(),
+                "elapsedMs", System.currentTimeMillis() - started));
+        return EXIT_OK;
+    }
+
+    private int encrypt() throws Exception {
+        FileService.KeySession session = openSession();
+        if (session == null) return EXIT_SETUP;
+
+        List<File> files = new ArrayList<>();
+        List<File> folders = new ArrayList<>();
+        int failures = 0;
+        for (String target : targets) {
+            File f = new File(target).getAbsoluteFile();
+            if (f.isDirectory()) {
+                folders.add(f);
+            } else if (f.isFile()) {
+                files.add(f);
+            } else {
+                emit(json("event", "item", "op", "encrypt", "item", f.getPath(), "status", "failed",
+                        "error", "No such file or directory"));
+                failures++;
+            }
+        }
+
+        List<JobScheduler.BatchResult<File>> results = new ArrayList<>();
+        if (!files.isEmpty()) {
+            JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_ENCRYPT, user.getUserId(),
+                    compress, null,
+                    files.stream().map(File::getAbsolutePath).collect(Collectors.toList()),
+                    files.stream().map(File::length).collect(Collectors.toList()));
+            results.add(runEncrypt(files, null, session, compress, journal));
+        }
+        for (File folder : folders) {
+            if (interrupted) break;
+            JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_ENCRYPT, user.getUserId(),
+                    compress, folder.getAbsolutePath(), List.of(), List.of());
+            results.add(runEncrypt(null, folder.toPath(), session, compress, journal));
+        }
+        return summarize("encrypt", results, failures);
+    }
+
+    private int decrypt() throws Exception {
+        String filePassword = secret("FE_FILE_PASSWORD", "File encryption password: ");
+        if (filePassword == null) return setupError("File encryption password is required");
+
+        List<FileMetadata> metas = new ArrayList<>();
+        int failures = 0;
+        if (targets.size() == 1 && "all".equalsIgnoreCase(targets.get(0))) {
+            metas.addAll(fileMetadataDAO.findByOwnerId(user.getUserId()));
+        } else {
+            for (String target : targets) {
+                FileMetadata m = null;
+                try {
+                    Long id = Long.valueOf(target);
+                    if (fileMetadataDAO.verifyOwnership(id, user.getUserId())) m = fileMetadataDAO.findById(id);
+                } catch (NumberFormatException ignore) {
+                }
+                if (m == null) {
+                    emit(json("event", "item", "op", "decrypt", "item", target, "status", "failed",
+                            "error", "No such file"));
+                    failures++;
+                } else {
+                    metas.add(m);
+                }
+            }
+        }
+
+        List<JobScheduler.BatchResult<FileMetadata>> results = new ArrayList<>();
+        if (!metas.isEmpty()) {
+            String dir = outDir != null ? outDir : ConfigManager.getDecryptDir();
+            JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_DECRYPT, user.getUserId(),
+                    CompressionService.Mode.NO, dir,
+                    metas.stream().map(m -> String.valueOf(m.getFileId())).collect(Collectors.toList()),
+                    metas.stream().map(FileMetadata::getFileSize).collect(Collectors.toList()));
+            results.add(runDecrypt(metas, filePassword, dir, journal));
+        }
+        return summarize("decrypt", results, failures);
+    }
+
+    /**
+     * Pick up every unfinished batch of this user, the same way the GUI offers on login.
+     */
+    private int resume() throws Exception {
+        List<JobJournal.Job> jobs = JobJournal.getInstance().findUnfinished(user.getUserId());
+        if (jobs.isEmpty()) {
+            emit(json("event", "summary", "op", "resume", "total", 0, "succeeded", 0, "failed", 0));
+            return EXIT_OK;
+        }
+
+        String filePassword = secret("FE_FILE_PASSWORD", "File encryption password: ");
+        if (filePassword == null) return setupError("File encryption password is required");
+        FileService.KeySession session = null;
+
+        List<JobScheduler.BatchResult<?>> results = new ArrayList<>();
+        for (JobJournal.Job job : jobs) {
+            if (interrupted) break;
+            if (JobJournal.OP_ENCRYPT.equals(job.getOp())) {
+                if (session == null) session = fileService.openSession(filePassword, user.getUserId());
+                List<File> files = new ArrayList<>();
+                for (String key : job.getPendingKeys()) {
+                    File f = new File(key);
+                    if (fileService.reconcileInterruptedEncrypt(f, job.getState(key))) {
+                        job.markDone(key);
+                    } else if (!f.exists()) {
+                        job.markFailed(key, "Source file no longer exists");
+                    } else {
+                        files.add(f);
+                    }
+                }
+                CompressionService.Mode mode = job.getCompressMode();
+                if (job.getDirectory() != null) {
+                    // Folder batch: walk again; files already encrypted are gone from the tree
+                    results.add(runEncrypt(null, new File(job.getDirectory()).toPath(), session, mode, job));
+                } else if (!files.isEmpty()) {
+                    results.add(runEncrypt(files, null, session, mode, job));
+                } else {
+                    job.close();
+                }
+            } else {
+                List<FileMetadata> metas = new ArrayList<>();
+                for (String key : job.getPendingKeys()) {
+                    FileMetadata m = fileMetadataDAO.findById(Long.valueOf(key));
+                    if (m == null) {
+                        // Metadata is removed only after a successful decrypt
+                        job.markDone(key);
+                    } else {
+                        metas.add(m);
+                    }
+                }
+                if (metas.isEmpty()) {
+                    job.close();
+                } else {
+                    results.add(runDecrypt(metas, filePassword, job.getDirectory(), job));
+                }
+            }
+        }
+        return summarize("resume", results, 0);
+    }
+
+    /**
+     * Serve jobs until POST /shutdown or a signal. The file password is verified once and
+     * the derived keys stay cached for the life of the process.
+     */
+    private int daemon() throws Exception {
+        String filePassword = secret("FE_FILE_PASSWORD", "File encryption password: ");
+        if (filePassword == null) return setupError("File encryption password is required");
+        FileService.KeySession session;
+        try {
+            session = fileService.openSession(filePassword, user.getUserId());
+        } catch (Exception e) {
+            return setupError(e.getMessage());
+        }
+        fileService.enableKeyCache(64);
+
+        DaemonServer server = new DaemonServer(user, filePassword, session, fileService);
+        daemonServer = server;
+        int port = server.start();
+        emit(json("event", "listening", "host", "127.0.0.1", "port", port,
+                "tokenFile", new File(ConfigManager.getStateDir(), "daemon.token").getPath()));
+        server.awaitShutdown();
+        emit(json("event", "stopped"));
+        return EXIT_OK;
+    }
+
+    private JobScheduler.BatchResult<File> runEncrypt(List<File> files, Path root, FileService.KeySession session,
+                                                      CompressionService.Mode mode, JobJournal.Job journal)
+            throws Exception {
+        CancellationToken token = new CancellationToken();
+        currentToken = token;
+        JobScheduler.Batch<File, FileMetadata> batch = launcher.encrypt(files, root, session, mode, journal,
+                new Reporter<>("encrypt", File::getPath), token);
+        if (root != null) {
+            emit(json("event", "start", "op", "encrypt", "folder", root.toString(),
+                    "jobs", JobScheduler.getInstance().getParallelism()));
+        } else {
+            emit(json("event", "start", "op", "encrypt", "items", files.size(),
+                    "jobs", JobScheduler.getInstance().getParallelism(),
+                    "estimatedMs", batch.getEstimatedMakespanMs()));
+        }
+        JobScheduler.BatchResult<File> result = batch.completion().get();
+        // An interrupted run stays unfinished in the journal for --resume
+        if (!interrupted) journal.close();
+        return result;
+    }
+
+    private JobScheduler.BatchResult<FileMetadata> runDecrypt(List<FileMetadata> metas, String filePassword,
+                                                              String dir, JobJournal.Job journal) throws Exception {
+        CancellationToken token = new CancellationToken();
+        currentToken = token;
+        JobScheduler.Batch<FileMetadata, Void> batch = launcher.decrypt(metas, filePassword, user.getUserId(),
+                dir, journal, new Reporter<>("decrypt", m -> m.getFileId() + ":" + m.getOriginalFilename()), token);
+        emit(json("event", "start", "op", "decrypt", "items", metas.size(),
+                "jobs", JobScheduler.getInstance().getParallelism(),
+                "estimatedMs", batch.getEstimatedMakespanMs()));
+        JobScheduler.BatchResult<FileMetadata> result = batch.completion().get();
+        // An interrupted run stays unfinished in the journal for --resume
+        if (!interrupted) journal.close();
+        return result;
+    }
+
+    private FileService.KeySession openSession() {
+        String filePassword = secret("FE_FILE_PASSWORD", "File encryption password: ");
+        if (filePassword == null) {
+            setupError("File encryption password is required");
+            return null;
+        }
+        try {
+            return fileService.openSession(filePassword, user.getUserId());
+        } catch (Exception e) {
+            setupError(e.getMessage());
+            return null;
+        }
+    }
+
+    private int summarize(String op, List<? extends JobScheduler.BatchResult<?>> results, int failures) {
+        int total = failures;
+        int succeeded = 0;
+        int cancelled = 0;
+        long bytes = 0;
+        long elapsed = 0;
+        for (JobScheduler.BatchResult<?> r : results) {
+            total += r.getTotal();
+            succeeded += r.getSuccessCount();
+            failures += r.getFailureCount();
+            cancelled += r.getCancelledCount();
+            bytes += r.getBytesProcessed();
+            elapsed += r.getElapsedMs();
+        }
+        emit(json("event", "summary", "op", op, "total", total, "succeeded", succeeded,
+                "failed", failures, "cancelled", cancelled, "bytes", bytes, "elapsedMs", elapsed,
+                "bytesPerSec", elapsed <= 0 ? 0L : Math.round(bytes * 1000.0 / elapsed)));
+        if (cancelled > 0) return EXIT_CANCELLED;
+        return failures > 0 ? EXIT_FAILURES : EXIT_OK;
+    }
+
+    // Originals are shredded in the background; finish before the JVM exits
+    private void drainShredQueue() {
+        ShredService shred = ShredService.getInstance();
+        if (shred.getPendingCount() > 0) {
+            emit(json("event", "shred", "pending", shred.getPendingCount()));
+            try {
+                shred.awaitIdle(TimeUnit.HOURS.toMillis(24));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        shred.shutdown();
+    }
+
+    // Ctrl-C / SIGTERM: cancel the running batch and let it record its state
+    private void onShutdown() {
+        if (finished.getCount() == 0) return;
+        interrupted = true;
+        DaemonServer server = daemonServer;
+        if (server != null) server.stop();
+        CancellationToken token = currentToken;
+        if (token != null) token.cancel();
+        try {
+            finished.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private String secret(String envVar, String prompt) {
+        String value = System.getenv(envVar);
+        if (value != null && !value.isEmpty()) return value;
+        Console console = System.console();
+        if (console == null) return null;
+        char[] chars = console.readPassword("%s", prompt);
+        return (chars == null || chars.length == 0) ? null : new String(chars);
+    }
+
+    private int setupError(String message) {
+        emit(json("event", "error", "message", message));
+        return EXIT_SETUP;
+    }
+
+    /**
+     * Emits one JSON line per finished item and rate-limited batch progress lines.
+     */
+    private final class Reporter<T> implements JobScheduler.BatchListener<T> {
+        private final String op;
+        private final Function<T, String> nameOf;
+        private final AtomicLong lastEmit = new AtomicLong();
+        private volatile int completed;
+        private volatile int total;
+
+        Reporter(String op, Function<T, String> nameOf) {
+            this.op = op;
+            this.nameOf = nameOf;
+        }
+
+        @Override
+        public void onItemDone(T item, Exception error, int completed, int total) {
+            this.completed = completed;
+            this.total = total;
+            if (error == null) {
+                emit(json("event", "item", "op", op, "item", nameOf.apply(item), "status", "ok"));
+            } else {
+                emit(json("event", "item", "op", op, "item", nameOf.apply(item), "status", "failed",
+                        "error", error.getMessage()));
+            }
+        }
+
+        @Override
+        public void onBatchProgress(double fraction, long processedBytes, long totalBytes, double bytesPerSec,
+                                    long etaSeconds) {
+            long now = System.nanoTime();
+            long last = lastEmit.get();
+            boolean done = processedBytes >= totalBytes && totalBytes > 0;
+            if (!done && now - last < TimeUnit.MILLISECONDS.toNanos(progressMs)) return;
+            if (!lastEmit.compareAndSet(last, now)) return;
+
+            emit(json("event", "progress", "op", op, "completed", completed, "total", total,
+                    "bytes", processedBytes, "totalBytes", totalBytes,
+                    "fraction", Math.round(fraction * 1000) / 1000.0, "bytesPerSec", Math.round(bytesPerSec),
+                    "etaSec", etaSeconds > 0 || done ? etaSeconds : -1L));
+        }
+    }
+
+    private static Map<String, Object> json(Object... kv) {
+        return Json.obj(kv);
+    }
+
+    private void emit(Map<String, Object> fields) {
+        String line = Json.write(fields);
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package com.rfn.fileencryptor.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.dao.FileMetadataDAO;
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.model.User;
+import com.rfn.fileencryptor.service.CompressionService;
+import com.rfn.fileencryptor.service.FileService;
+import com.rfn.fileencryptor.service.JobJournal;
+import com.rfn.fileencryptor.service.JobScheduler;
+import com.rfn.fileencryptor.service.ShredService;
+import com.rfn.fileencryptor.util.CancellationToken;
+import com.rfn.fileencryptor.util.CryptoUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running daemon that keeps the connection pool, batch workers, warmed-up ciphers
+ * and the session key alive and accepts jobs over a loopback HTTP API:
+ *
+ *   GET    /status              uptime, workers, running jobs, pending shreds
+ *   GET    /jobs                all known jobs
+ *   GET    /jobs/{id}           one job's progress and outcome
+ *   DELETE /jobs/{id}           cancel a job
+ *   POST   /encrypt?compress=   body: one file or folder path per line
+ *   POST   /decrypt?out=        body: one file id per line, or "all"
+ *   POST   /shutdown
+ *
+ * Submitting only queues the work on the shared JobScheduler and returns the job id.
+ * Every request must carry "Authorization: Bearer &lt;token&gt;"; the port and token are
+ * written to ~/.fileencryptor/daemon.token (owner-readable only) while the daemon runs.
+ */
+final class DaemonServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DaemonServer.class);
+    private static final String TOKEN_FILENAME = "daemon.token";
+    // Finished jobs kept for status queries
+    private static final int MAX_FINISHED_JOBS = 200;
+
+    private final User user;
+    private final String filePassword;
+    private final FileService.KeySession session;
+    private final BatchLauncher launcher;
+    private final FileMetadataDAO fileMetadataDAO = new FileMetadataDAO();
+    private final Map<Long, DaemonJob> jobs = new LinkedHashMap<>();
+    private final AtomicLong jobSeq = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final long startedAt = System.currentTimeMillis();
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private File tokenFile;
+    private byte[] token;
+    private volatile boolean stopping;
+
+    DaemonServer(User user, String filePassword, FileService.KeySession session, FileService fileService) {
+        this.user = user;
+        this.filePassword = filePassword;
+        this.session = session;
+        this.launcher = new BatchLauncher(fileService);
+    }
+
+    /**
+     * Warm up, bind to 127.0.0.1 and publish the access token. Returns the bound port.
+     */
+    int start() throws IOException {
+        warmUp();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                ConfigManager.getDaemonPort()), 0);
+        // Handlers only parse and enqueue; the batch pool does the work
+        AtomicInteger seq = new AtomicInteger();
+        handlers = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "daemon-http-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+
+        byte[] raw = new byte[32];
+        new SecureRandom().nextBytes(raw);
+        String tokenHex = CryptoUtil.bytesToHex(raw);
+        token = tokenHex.getBytes(StandardCharsets.US_ASCII);
+        int port = server.getAddress().getPort();
+        writeTokenFile(port + "\n" + tokenHex + "\n");
+
+        server.start();
+        logger.info("Daemon listening on 127.0.0.1:{}", port);
+        return port;
+    }
+
+    void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stop accepting requests and cancel running jobs. Their journals stay unfinished
+     * so the next run (or --resume) picks them up.
+     */
+    void stop() {
+        if (stopping) return;
+        stopping = true;
+        if (server != null) server.stop(0);
+        if (handlers != null) handlers.shutdownNow();
+        List<CompletableFuture<?>> running = new ArrayList<>();
+        synchronized (jobs) {
+            for (DaemonJob job : jobs.values()) {
+                if (!job.isDone()) {
+                    job.token.cancel();
+                    running.add(job.completion);
+                }
+            }
+        }
+        try {
+            CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0]))
+                    .get(5, java.util.concurrent.TimeUnit.SECONDS);
+        } catch (Exception ignore) {
+        }
+        if (tokenFile != null) tokenFile.delete();
+        stopped.countDown();
+    }
+
+    private void writeTokenFile(String content) throws IOException {
+        tokenFile = new File(ConfigManager.getStateDir(), TOKEN_FILENAME);
+        Files.deleteIfExists(tokenFile.toPath());
+        try {
+            Files.createFile(tokenFile.toPath(),
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Non-POSIX filesystem: fall back to owner-only flags
+            Files.createFile(tokenFile.toPath());
+            tokenFile.setReadable(false, false);
+            tokenFile.setReadable(true, true);
+            tokenFile.setWritable(false, false);
+            tokenFile.setWritable(true, true);
+        }
+        Files.write(tokenFile.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Run the AES-GCM path a few times so the JIT has compiled it before the first job
+    private static void warmUp() {
+        try {
+            javax.crypto.SecretKey key = CryptoUtil.generateKey();
+            byte[] data = new byte[1024 * 1024];
+            for (int i = 0; i < 16; i++) {
+                Cipher c = Cipher.getInstance(CryptoUtil.TRANSFORMATION);
+                c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(CryptoUtil.TAG_SIZE, CryptoUtil.generateIV()));
+                c.doFinal(data);
+            }
+        } catch (Exception e) {
+            logger.warn("Cipher warm-up failed: {}", e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            if (!authorized(ex)) {
+                respond(ex, 401, Json.obj("error", "Missing or invalid token"));
+                return;
+            }
+            String method = ex.getRequestMethod();
+            String path = ex.getRequestURI().getPath();
+            Map<String, String> query = query(ex.getRequestURI().getRawQuery());
+
+            if ("GET".equals(method) && "/status".equals(path)) {
+                respond(ex, 200, status());
+            } else if ("GET".equals(method) && "/jobs".equals(path)) {
+                List<Object> all = new ArrayList<>();
+                synchronized (jobs) {
+                    for (DaemonJob job : jobs.values()) all.add(job.describe());
+                }
+                respond(ex, 200, Json.obj("jobs", all));
+            } else if (path.startsWith("/jobs/")) {
+                DaemonJob job = findJob(path.substring("/jobs/".length()));
+                if (job == null) {
+                    respond(ex, 404, Json.obj("error", "No such job"));
+                } else if ("DELETE".equals(method)) {
+                    job.token.cancel();
+                    respond(ex, 202, job.describe());
+                } else {
+                    respond(ex, 200, job.describe());
+                }
+            } else if ("POST".equals(method) && "/encrypt".equals(path)) {
+                CompressionService.Mode mode = BatchLauncher.parseCompress(query.getOrDefault("compress", "auto"));
+                respond(ex, 202, submitEncrypt(lines(ex.getRequestBody()), mode).describe());
+            } else if ("POST".equals(method) && "/decrypt".equals(path)) {
+                String out = query.get("out");
+                String dir = out != null ? new File(out).getAbsolutePath() : ConfigManager.getDecryptDir();
+                respond(ex, 202, submitDecrypt(lines(ex.getRequestBody()), dir).describe());
+            } else if ("POST".equals(method) && "/shutdown".equals(path)) {
+                respond(ex, 202, Json.obj("status", "stopping"));
+                new Thread(this::stop, "daemon-stop").start();
+            } else {
+                respond(ex, 404, Json.obj("error", "Unknown endpoint " + method + " " + path));
+            }
+        } catch (IllegalArgumentException e) {
+            respond(ex, 400, Json.obj("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            respond(ex, 503, Json.obj("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Daemon request failed: {}", e.getMessage(), e);
+            respond(ex, 500, Json.obj("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    private DaemonJob submitEncrypt(List<String> paths, CompressionService.Mode mode) {
+        List<File> files = new ArrayList<>();
+        List<File> folders = new ArrayList<>();
+        for (String p : paths) {
+            File f = new File(p).getAbsoluteFile();
+            if (f.isDirectory()) {
+                folders.add(f);
+            } else if (f.isFile()) {
+                files.add(f);
+            } else {
+                throw new IllegalArgumentException("No such file or directory: " + p);
+            }
+        }
+        if (files.isEmpty() && folders.isEmpty()) throw new IllegalArgumentException("No paths given");
+
+        DaemonJob job = newJob("encrypt");
+        if (!files.isEmpty()) {
+            JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_ENCRYPT, user.getUserId(),
+                    mode, null,
+                    files.stream().map(File::getAbsolutePath).collect(Collectors.toList()),
+                    files.stream().map(File::length).collect(Collectors.toList()));
+            Tracker<File> tracker = job.tracker(journal);
+            tracker.attach(launcher.encrypt(files, null, session, mode, journal, tracker, job.token));
+        }
+        for (File folder : folders) {
+            JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_ENCRYPT, user.getUserId(),
+                    mode, folder.getAbsolutePath(), List.of(), List.of());
+            Tracker<File> tracker = job.tracker(journal);
+            tracker.attach(launcher.encrypt(null, folder.toPath(), session, mode, journal, tracker, job.token));
+        }
+        return job.seal();
+    }
+
+    private DaemonJob submitDecrypt(List<String> ids, String dir) throws Exception {
+        List<FileMetadata> metas = new ArrayList<>();
+        if (ids.size() == 1 && "all".equalsIgnoreCase(ids.get(0))) {
+            metas.addAll(fileMetadataDAO.findByOwnerId(user.getUserId()));
+        } else {
+            for (String id : ids) {
+                FileMetadata m = null;
+                try {
+                    Long fileId = Long.valueOf(id);
+                    if (fileMetadataDAO.verifyOwnership(fileId, user.getUserId())) m = fileMetadataDAO.findById(fileId);
+                } catch (NumberFormatException ignore) {
+                }
+                if (m == null) throw new IllegalArgumentException("No such file: " + id);
+                metas.add(m);
+            }
+        }
+        if (metas.isEmpty()) throw new IllegalArgumentException("No files to decrypt");
+
+        DaemonJob job = newJob("decrypt");
+        JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_DECRYPT, user.getUserId(),
+                CompressionService.Mode.NO, dir,
+                metas.stream().map(m -> String.valueOf(m.getFileId())).collect(Collectors.toList()),
+                metas.stream().map(FileMetadata::getFileSize).collect(Collectors.toList()));
+        Tracker<FileMetadata> tracker = job.tracker(journal);
+        tracker.attach(launcher.decrypt(metas, filePassword, user.getUserId(), dir, journal, tracker, job.token));
+        return job.seal();
+    }
+
+    private DaemonJob newJob(String op) {
+        if (stopping) throw new IllegalStateException("Daemon is stopping");
+        return new DaemonJob(jobSeq.incrementAndGet(), op);
+    }
+
+    // Called once all of a job's batches are attached, so readers never see a partial job
+    private void register(DaemonJob job) {
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            // Forget the oldest finished jobs
+            var it = jobs.values().iterator();
+            while (jobs.size() > MAX_FINISHED_JOBS && it.hasNext()) {
+                if (it.next().isDone()) it.remove();
+            }
+        }
+    }
+
+    private DaemonJob findJob(String id) {
+        try {
+            synchronized (jobs) {
+                return jobs.get(Long.valueOf(id));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Map<String, Object> status() {
+        int running = 0;
+        synchronized (jobs) {
+            for (DaemonJob job : jobs.values()) {
+                if (!job.isDone()) running++;
+            }
+        }
+        return Json.obj("user", user.getUsername(),
+                "uptimeMs", System.currentTimeMillis() - startedAt,
+                "workers", JobScheduler.getInstance().getParallelism(),
+                "runningJobs", running,
+                "pendingShreds", ShredService.getInstance().getPendingCount());
+    }
+
+    private boolean authorized(HttpExchange ex) {
+        String header = ex.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return false;
+        byte[] presented = header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(presented, token);
+    }
+
+    private static List<String> lines(InputStream body) throws IOException {
+        String text = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        return Arrays.stream(text.split("\\R"))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> m = new LinkedHashMap<>();
+        if (raw == null) return m;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            m.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return m;
+    }
+
+    private static void respond(HttpExchange ex, int code, Map<String, Object> body) throws IOException {
+        byte[] bytes = (Json.write(body) + "\n").getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * One submitted request; may span several batches (a file list plus folders).
+     */
+    private final class DaemonJob {
+        final long id;
+        final String op;
+        final CancellationToken token = new CancellationToken();
+        final long createdAt = System.currentTimeMillis();
+        final List<Tracker<?>> trackers = new ArrayList<>();
+        CompletableFuture<Void> completion;
+
+        DaemonJob(long id, String op) {
+            this.id = id;
+            this.op = op;
+        }
+
+        <T> Tracker<T> tracker(JobJournal.Job journal) {
+            Tracker<T> t = new Tracker<>(journal);
+            trackers.add(t);
+            return t;
+        }
+
+        DaemonJob seal() {
+            completion = CompletableFuture.allOf(
+                    trackers.stream().map(t -> t.done).toArray(CompletableFuture<?>[]::new));
+            register(this);
+            return this;
+        }
+
+        boolean isDone() {
+            return completion != null && completion.isDone();
+        }
+
+        Map<String, Object> describe() {
+            int total = 0;
+            int completed = 0;
+            int failed = 0;
+            long bytes = 0;
+            long totalBytes = 0;
+            double rate = 0;
+            long eta = 0;
+            List<String> errors = new ArrayList<>();
+            for (Tracker<?> t : trackers) {
+                total += t.total;
+                completed += t.completed;
+                failed += t.failed.get();
+                bytes += t.processedBytes;
+                totalBytes += t.totalBytes;
+                if (!t.done.isDone()) {
+                    // Batches of one job run side by side; their rates add, the slowest sets the ETA
+                    rate += t.bytesPerSec;
+                    eta = Math.max(eta, t.etaSeconds);
+                }
+                synchronized (t.errors) {
+                    errors.addAll(t.errors);
+                }
+            }
+            long elapsed = System.currentTimeMillis() - createdAt;
+            String state = !isDone() ? (token.isCancelled() ? "cancelling" : "running")
+                    : token.isCancelled() ? "cancelled" : failed > 0 ? "failed" : "done";
+            return Json.obj("id", id, "op", op, "state", state,
+                    "total", total, "completed", completed, "failed", failed,
+                    "bytes", bytes, "totalBytes", totalBytes, "elapsedMs", elapsed,
+                    "bytesPerSec", isDone() ? (elapsed <= 0 ? 0L : Math.round(bytes * 1000.0 / elapsed))
+                            : Math.round(rate),
+                    "etaSec", eta,
+                    "errors", errors);
+        }
+    }
+
+    /**
+     * Progress of one batch of a job; closes the batch journal when it finishes.
+     */
+    private final class Tracker<T> implements JobScheduler.BatchListener<T> {
+        private final JobJournal.Job journal;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final AtomicInteger failed = new AtomicInteger();
+        final List<String> errors = new ArrayList<>();
+        volatile int completed;
+        volatile int total;
+        volatile long processedBytes;
+        volatile long totalBytes;
+        volatile double bytesPerSec;
+        volatile long etaSeconds;
+
+        Tracker(JobJournal.Job journal) {
+            this.journal = journal;
+        }
+
+        void attach(JobScheduler.Batch<T, ?> batch) {
+            batch.completion().whenComplete((result, err) -> {
+                // A daemon stopped mid-batch leaves the journal open for resume
+                if (!stopping) journal.close();
+                done.complete(null);
+            });
+        }
+
+        @Override
+        public void onItemDone(T item, Exception error, int completed, int total) {
+            this.completed = completed;
+            this.total = total;
+            if (error != null) {
+                failed.incrementAndGet();
+                synchronized (errors) {
+                    if (errors.size() < 20) errors.add(describe(item) + ": " + error.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void onBatchProgress(double fraction, long processedBytes, long totalBytes, double bytesPerSec,
+                                    long etaSeconds) {
+            this.processedBytes = processedBytes;
+            this.totalBytes = totalBytes;
+            this.bytesPerSec = bytesPerSec;
+            this.etaSeconds = etaSeconds;
+        }
+
+        private String describe(T item) {
+            if (item instanceof FileMetadata) {
+                FileMetadata m = (FileMetadata) item;
+                return m.getFileId() + ":" + m.getOriginalFilename();
+            }
+            return String.valueOf(item);
+        }
+    }
+}
@@ -18,6 +18,8 @@ public class ConfigManager {
     private static final String DB_URL = "jdbc:oracle:thin:@localhost:1521:XE";
     private static final String DB_USER = "system";
     private static final String DB_PASSWORD = "admin";
+    private static final String DB_BACKEND_DEFAULT = "oracle";
+    private static final String DB_EMBEDDED_NAME = "metadata"; // H2 adds .mv.db
 
     // Master Key for encrypting file passwords
     private static final String MASTER_KEY = "key1"; // পরিবর্তন করুন
@@ -33,16 +35,57 @@ public class ConfigManager {
     private static final int STREAM_BUFFER_MB_DEFAULT = 4; // 4 MB default buffer
     private static final String DELETE_MODE_DEFAULT = "fast"; // fast delete (no overwrite)
     private static final int DELETE_PASSES_DEFAULT = 1; // if secure mode, can be 1-3
-    private static final int PARALLEL_JOBS_DEFAULT = 2; // future use for batch parallelism
+    private static final int PARALLEL_JOBS_DEFAULT = 2; // worker threads for batch encrypt/decrypt
+    private static final int SHRED_THREADS_DEFAULT = 1; // background secure-delete workers
+    private static final int SEGMENT_MB_DEFAULT = 16; // plaintext bytes per independently encrypted segment
+    private static final int SEGMENT_SPLIT_MB_DEFAULT = 256; // files at least this large are split across workers
+    private static final int WATCH_DEBOUNCE_MS_DEFAULT = 2000; // inbox file must be unchanged this long
+    private static final int WATCH_BATCH_MAX_DEFAULT = 256; // max inbox files handed to one batch
+    private static final int DAEMON_PORT_DEFAULT = 47813; // loopback port of the background daemon
+    private static final int DEVICE_STREAMS_HDD_DEFAULT = 1; // concurrent batch streams per spinning disk
+    private static final int DEVICE_STREAMS_SSD_DEFAULT = 4;
+    private static final int DEVICE_STREAMS_NVME_DEFAULT = 8;
+    private static final int DEVICE_STREAMS_NETWORK_DEFAULT = 2;
+    private static final int DB_FETCH_SIZE_DEFAULT = 500; // rows per JDBC round trip (Oracle's own default is 10)
+    private static final int AUDIT_RETENTION_DAYS_DEFAULT = 0; // off; --archive-audit moves entries older than this
+    private static final int DB_SLOW_QUERY_MS_DEFAULT = 500; // statements slower than this are logged
 
     private static Integer runtimeStreamBufferMb = null;
     private static String runtimeDeleteMode = null;
     private static Integer runtimeDeletePasses = null;
     private static Integer runtimeParallelJobs = null;
+    // Process-only override (CLI --jobs); never written to the config file
+    private static Integer sessionParallelJobs = null;
     private static Boolean runtimeAutoBackup = null;
+    private static Integer runtimeShredThreads = null;
+    // I/O governor limits by operation class ("crypto", "shred", ...); absent = unlimited
+    private static final java.util.Map<String, Integer> runtimeIoMbps = new java.util.concurrent.ConcurrentHashMap<>();
+    private static final java.util.Map<String, Integer> runtimeIoOps = new java.util.concurrent.ConcurrentHashMap<>();
+    private static Integer runtimeSegmentMb = null;
+    private static Integer runtimeSegmentSplitMb = null;
+    private static String runtimeWatchDir = null;
+    private static Integer runtimeWatchDebounceMs = null;
+    private static Integer runtimeWatchBatchMax = null;
+    private static Integer runtimeDaemonPort = null;
+    private static Integer runtimeDbFetchSize = null;
+    private static Boolean runtimeDashboardSnapshot = null;
+    private static Integer runtimeAuditRetentionDays = null;
+    private static Integer runtimeDbQueryTimeoutSeconds = null;
+    private static Integer runtimeDbSlowQueryMs = null;
+    private static String runtimeDbBackend = null;
+    private static String runtimeDbEmbeddedPath = null;
+    // Oracle connection overrides; only read from the config file
+    private static String runtimeDbUrl = null;
+    private static String runtimeDbUser = null;
+    private static String runtimeDbPassword = null;
+    // Per-device-class stream limits ("hdd", "ssd", ...) and class overrides by file store name
+    private static final java.util.Map<String, Integer> runtimeDeviceStreams = new java.util.concurrent.ConcurrentHashMap<>();
+    private static final java.util.Map<String, String> runtimeDeviceClass = new java.util.concurrent.ConcurrentHashMap<>();
 
     // User config file in home directory
     private static final String USER_CONFIG_FILENAME = ".fileencryptor.properties";
+    // Local state (journals, queues) lives in a folder next to the user config
+    private static final String STATE_DIRNAME = ".fileencryptor";
 
     static {
         // Load user overrides if present
@@ -59,22 +102,45 @@ public class ConfigManager {
      * Gets database URL
      */
     public static String getDatabaseUrl() {
-        logger.debug("Loading database URL: {}", DB_URL);
-        return DB_URL;
+        String url = (runtimeDbUrl != null) ? runtimeDbUrl : DB_URL;
+        logger.debug("Loading database URL: {}", url);
+        return url;
     }
 
     /**
      * Gets database username
      */
     public static String getDatabaseUser() {
-        return DB_USER;
+        return (runtimeDbUser != null) ? runtimeDbUser : DB_USER;
     }
 
     /**
      * Gets database password
      */
     public static String getDatabasePassword() {
-        return DB_PASSWORD;
+        return (runtimeDbPassword != null) ? runtimeDbPassword : DB_PASSWORD;
+    }
+
+    /**
+     * Which database holds metadata and audit logs: "oracle" (server) or "embedded"
+     * (a local single-file database, no server needed).
+     */
+    public static DatabaseBackend getDatabaseBackend() {
+        String b = (runtimeDbBackend != null) ? runtimeDbBackend : DB_BACKEND_DEFAULT;
+        return DatabaseBackend.fromName(b);
+    }
+
+    public static void setDatabaseBackend(DatabaseBackend backend) throws IOException {
+        runtimeDbBackend = backend.name().toLowerCase(java.util.Locale.ROOT);
+        saveUserConfig();
+    }
+
+    /**
+     * Path of the embedded database file, without extension.
+     */
+    public static String getEmbeddedDatabasePath() {
+        if (runtimeDbEmbeddedPath != null && !runtimeDbEmbeddedPath.isEmpty()) return runtimeDbEmbeddedPath;
+        return new File(getStateDir(), DB_EMBEDDED_NAME).getAbsolutePath();
     }
 
     /**
@@ -94,17 +160,19 @@ public class ConfigManager {
      */
     public static boolean validateConfiguration() {
         try {
-            if (DB_URL == null || DB_URL.isEmpty()) {
+            // The embedded database needs no server settings
+            boolean oracle = getDatabaseBackend() == DatabaseBackend.ORACLE;
+            if (oracle && getDatabaseUrl().isEmpty()) {
                 logger.error("Database URL is not configured");
                 return false;
             }
 
-            if (DB_USER == null || DB_USER.isEmpty()) {
+            if (oracle && getDatabaseUser().isEmpty()) {
                 logger.error("Database user is not configured");
                 return false;
             }
 
-            if (DB_PASSWORD == null || DB_PASSWORD.isEmpty()) {
+            if (oracle && getDatabasePassword().isEmpty()) {
                 logger.error("Database password is not configured");
                 return false;
             }
@@ -182,6 +250,65 @@ public class ConfigManager {
 
         String ab = p.getProperty("auto.backup");
         if (ab != null && !ab.isEmpty()) runtimeAutoBackup = Boolean.parseBoolean(ab);
+
+        String st = p.getProperty("shred.threads");
+        if (st != null) try { runtimeShredThreads = Integer.parseInt(st); } catch (NumberFormatException ignore) {}
+        for (String name : p.stringPropertyNames()) {
+            if (!name.startsWith("io.")) continue;
+            try {
+                if (name.endsWith(".mbps")) {
+                    runtimeIoMbps.put(name.substring(3, name.length() - 5), Integer.parseInt(p.getProperty(name)));
+                } else if (name.endsWith(".iops")) {
+                    runtimeIoOps.put(name.substring(3, name.length() - 5), Integer.parseInt(p.getProperty(name)));
+                }
+            } catch (NumberFormatException ignore) {}
+        }
+        // Older configs had a shred-only throttle
+        String sm = p.getProperty("shred.throttle.mb");
+        if (sm != null && !runtimeIoMbps.containsKey("shred")) {
+            try { runtimeIoMbps.put("shred", Integer.parseInt(sm)); } catch (NumberFormatException ignore) {}
+        }
+        String sg = p.getProperty("segment.mb");
+        if (sg != null) try { runtimeSegmentMb = Integer.parseInt(sg); } catch (NumberFormatException ignore) {}
+        String ss = p.getProperty("segment.split.mb");
+        if (ss != null) try { runtimeSegmentSplitMb = Integer.parseInt(ss); } catch (NumberFormatException ignore) {}
+        String wd = p.getProperty("watch.dir");
+        if (wd != null && !wd.isEmpty()) runtimeWatchDir = wd;
+        String wm = p.getProperty("watch.debounce.ms");
+        if (wm != null) try { runtimeWatchDebounceMs = Integer.parseInt(wm); } catch (NumberFormatException ignore) {}
+        String wb = p.getProperty("watch.batch.max");
+        if (wb != null) try { runtimeWatchBatchMax = Integer.parseInt(wb); } catch (NumberFormatException ignore) {}
+        String dport = p.getProperty("daemon.port");
+        if (dport != null) try { runtimeDaemonPort = Integer.parseInt(dport); } catch (NumberFormatException ignore) {}
+        String fs = p.getProperty("db.fetch.size");
+        if (fs != null) try { runtimeDbFetchSize = Integer.parseInt(fs); } catch (NumberFormatException ignore) {}
+        String ds = p.getProperty("dashboard.snapshot");
+        if (ds != null && !ds.isEmpty()) runtimeDashboardSnapshot = Boolean.parseBoolean(ds);
+        String ar = p.getProperty("audit.retention.days");
+        if (ar != null) try { runtimeAuditRetentionDays = Integer.parseInt(ar); } catch (NumberFormatException ignore) {}
+        String qt = p.getProperty("db.query.timeout.seconds");
+        if (qt != null) try { runtimeDbQueryTimeoutSeconds = Integer.parseInt(qt); } catch (NumberFormatException ignore) {}
+        String sq = p.getProperty("db.slow.query.ms");
+        if (sq != null) try { runtimeDbSlowQueryMs = Integer.parseInt(sq); } catch (NumberFormatException ignore) {}
+        String be = p.getProperty("db.backend");
+        if (be != null && !be.isEmpty()) runtimeDbBackend = be;
+        String ep = p.getProperty("db.embedded.path");
+        if (ep != null && !ep.isEmpty()) runtimeDbEmbeddedPath = ep;
+        String du = p.getProperty("db.url");
+        if (du != null && !du.isEmpty()) runtimeDbUrl = du;
+        String dn = p.getProperty("db.username");
+        if (dn != null && !dn.isEmpty()) runtimeDbUser = dn;
+        String dw = p.getProperty("db.password");
+        if (dw != null) runtimeDbPassword = dw;
+        for (String name : p.stringPropertyNames()) {
+            if (name.startsWith("device.streams.")) {
+                try {
+                    runtimeDeviceStreams.put(name.substring(15), Integer.parseInt(p.getProperty(name)));
+                } catch (NumberFormatException ignore) {}
+            } else if (name.startsWith("device.class.") && !p.getProperty(name).isEmpty()) {
+                runtimeDeviceClass.put(name.substring(13), p.getProperty(name));
+            }
+        }
     }
 
     private static void saveUserConfig() throws IOException {
@@ -194,6 +321,27 @@ public class ConfigManager {
         if (runtimeDeletePasses != null) p.setProperty("delete.passes", String.valueOf(runtimeDeletePasses));
         if (runtimeParallelJobs != null) p.setProperty("parallel.jobs", String.valueOf(runtimeParallelJobs));
         if (runtimeAutoBackup != null) p.setProperty("auto.backup", String.valueOf(runtimeAutoBackup));
+        if (runtimeShredThreads != null) p.setProperty("shred.threads", String.valueOf(runtimeShredThreads));
+        runtimeIoMbps.forEach((cls, mb) -> p.setProperty("io." + cls + ".mbps", String.valueOf(mb)));
+        runtimeIoOps.forEach((cls, ops) -> p.setProperty("io." + cls + ".iops", String.valueOf(ops)));
+        if (runtimeSegmentMb != null) p.setProperty("segment.mb", String.valueOf(runtimeSegmentMb));
+        if (runtimeSegmentSplitMb != null) p.setProperty("segment.split.mb", String.valueOf(runtimeSegmentSplitMb));
+        if (runtimeWatchDir != null) p.setProperty("watch.dir", runtimeWatchDir);
+        if (runtimeWatchDebounceMs != null) p.setProperty("watch.debounce.ms", String.valueOf(runtimeWatchDebounceMs));
+        if (runtimeWatchBatchMax != null) p.setProperty("watch.batch.max", String.valueOf(runtimeWatchBatchMax));
+        if (runtimeDaemonPort != null) p.setProperty("daemon.port", String.valueOf(runtimeDaemonPort));
+        if (runtimeDbFetchSize != null) p.setProperty("db.fetch.size", String.valueOf(runtimeDbFetchSize));
+        if (runtimeDashboardSnapshot != null) p.setProperty("dashboard.snapshot", String.valueOf(runtimeDashboardSnapshot));
+        if (runtimeAuditRetentionDays != null) p.setProperty("audit.retention.days", String.valueOf(runtimeAuditRetentionDays));
+        if (runtimeDbQueryTimeoutSeconds != null) p.setProperty("db.query.timeout.seconds", String.valueOf(runtimeDbQueryTimeoutSeconds));
+        if (runtimeDbSlowQueryMs != null) p.setProperty("db.slow.query.ms", String.valueOf(runtimeDbSlowQueryMs));
+        if (runtimeDbBackend != null) p.setProperty("db.backend", runtimeDbBackend);
+        if (runtimeDbEmbeddedPath != null) p.setProperty("db.embedded.path", runtimeDbEmbeddedPath);
+        if (runtimeDbUrl != null) p.setProperty("db.url", runtimeDbUrl);
+        if (runtimeDbUser != null) p.setProperty("db.username", runtimeDbUser);
+        if (runtimeDbPassword != null) p.setProperty("db.password", runtimeDbPassword);
+        runtimeDeviceStreams.forEach((cls, n) -> p.setProperty("device.streams." + cls, String.valueOf(n)));
+        runtimeDeviceClass.forEach((store, cls) -> p.setProperty("device.class." + store, cls));
         try (FileOutputStream fos = new FileOutputStream(cfg)) {
             p.store(fos, "FileEncryptor user configuration");
         }
@@ -236,7 +384,8 @@ public class ConfigManager {
     }
 
     public static int getParallelJobs() {
-        int p = (runtimeParallelJobs != null) ? runtimeParallelJobs : PARALLEL_JOBS_DEFAULT;
+        Integer configured = (sessionParallelJobs != null) ? sessionParallelJobs : runtimeParallelJobs;
+        int p = (configured != null) ? configured : PARALLEL_JOBS_DEFAULT;
         if (p < 1) p = 1;
         if (p > 8) p = 8;
         return p;
@@ -248,6 +397,14 @@ public class ConfigManager {
         saveUserConfig();
     }
 
+    /**
+     * Override parallel.jobs for this process only (not persisted).
+     */
+    public static void setParallelJobsForSession(int jobs) {
+        if (jobs < 1 || jobs > 8) throw new IllegalArgumentException("Parallel jobs must be between 1 and 8");
+        sessionParallelJobs = jobs;
+    }
+
     // Auto-backup option
     public static boolean isAutoBackup() {
         return runtimeAutoBackup != null ? runtimeAutoBackup : false;
@@ -257,4 +414,244 @@ public class ConfigManager {
         runtimeAutoBackup = auto;
         saveUserConfig();
     }
+
+    /**
+     * Directory for local application state (journals, queues). Created on first use.
+     */
+    public static File getStateDir() {
+        File dir = new File(System.getProperty("user.home"), STATE_DIRNAME);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    // Background shredding
+    public static int getShredThreads() {
+        int t = (runtimeShredThreads != null) ? runtimeShredThreads : SHRED_THREADS_DEFAULT;
+        if (t < 1) t = 1;
+        if (t > 4) t = 4;
+        return t;
+    }
+
+    public static void setShredThreads(int threads) throws IOException {
+        if (threads < 1 || threads > 4) throw new IllegalArgumentException("Shred threads must be between 1 and 4");
+        runtimeShredThreads = threads;
+        saveUserConfig();
+    }
+
+    // I/O governor (see IoGovernor.IoClass for the class names)
+    /**
+     * Byte budget for an I/O class in bytes per second (0 = unlimited).
+     */
+    public static long getIoBytesPerSec(String ioClass) {
+        Integer mb = runtimeIoMbps.get(ioClass);
+        if (mb == null || mb <= 0) return 0L;
+        return Math.min(mb, 4096) * 1024L * 1024L;
+    }
+
+    public static int getIoMBps(String ioClass) {
+        Integer mb = runtimeIoMbps.get(ioClass);
+        return (mb == null || mb < 0) ? 0 : Math.min(mb, 4096);
+    }
+
+    public static void setIoMBps(String ioClass, int mb) throws IOException {
+        if (mb < 0 || mb > 4096) throw new IllegalArgumentException("I/O limit MB/s must be between 0 and 4096");
+        runtimeIoMbps.put(ioClass, mb);
+        saveUserConfig();
+    }
+
+    /**
+     * Operation budget for an I/O class in read/write calls per second (0 = unlimited).
+     */
+    public static int getIoOpsPerSec(String ioClass) {
+        Integer ops = runtimeIoOps.get(ioClass);
+        return (ops == null || ops < 0) ? 0 : Math.min(ops, 100000);
+    }
+
+    public static void setIoOpsPerSec(String ioClass, int ops) throws IOException {
+        if (ops < 0 || ops > 100000) throw new IllegalArgumentException("I/O ops/s must be between 0 and 100000");
+        runtimeIoOps.put(ioClass, ops);
+        saveUserConfig();
+    }
+
+    // Device-aware batch concurrency (see DeviceLimiter.DeviceClass for the class names)
+    /**
+     * Concurrent batch streams allowed on one device of the given class.
+     */
+    public static int getDeviceStreams(String deviceClass) {
+        Integer n = runtimeDeviceStreams.get(deviceClass);
+        if (n == null) {
+            switch (deviceClass) {
+                case "hdd": n = DEVICE_STREAMS_HDD_DEFAULT; break;
+                case "nvme": n = DEVICE_STREAMS_NVME_DEFAULT; break;
+                case "network": n = DEVICE_STREAMS_NETWORK_DEFAULT; break;
+                default: n = DEVICE_STREAMS_SSD_DEFAULT;
+            }
+        }
+        if (n < 1) n = 1;
+        if (n > 64) n = 64;
+        return n;
+    }
+
+    public static void setDeviceStreams(String deviceClass, int streams) throws IOException {
+        if (streams < 1 || streams > 64) throw new IllegalArgumentException("Device streams must be between 1 and 64");
+        runtimeDeviceStreams.put(deviceClass, streams);
+        saveUserConfig();
+    }
+
+    /**
+     * Device class configured for a file store (e.g. "/dev/sdb1"), or null to auto-detect.
+     */
+    public static String getDeviceClassOverride(String storeName) {
+        return storeName == null ? null : runtimeDeviceClass.get(storeName);
+    }
+
+    public static void setDeviceClassOverride(String storeName, String deviceClass) throws IOException {
+        if (storeName == null || storeName.isEmpty()) throw new IllegalArgumentException("Store name cannot be empty");
+        if (deviceClass == null || deviceClass.isEmpty()) {
+            runtimeDeviceClass.remove(storeName);
+        } else {
+            runtimeDeviceClass.put(storeName, deviceClass);
+        }
+        saveUserConfig();
+    }
+
+    // Segmented encryption / batch splitting
+    public static int getSegmentSizeBytes() {
+        int mb = (runtimeSegmentMb != null) ? runtimeSegmentMb : SEGMENT_MB_DEFAULT;
+        if (mb < 1) mb = 1;
+        if (mb > 64) mb = 64;
+        return mb * 1024 * 1024;
+    }
+
+    public static void setSegmentMB(int mb) throws IOException {
+        if (mb < 1 || mb > 64) throw new IllegalArgumentException("Segment size MB must be between 1 and 64");
+        runtimeSegmentMb = mb;
+        saveUserConfig();
+    }
+
+    /**
+     * Files at or above this size are split into segments that any idle batch worker can pick up.
+     */
+    public static long getSegmentSplitThresholdBytes() {
+        int mb = (runtimeSegmentSplitMb != null) ? runtimeSegmentSplitMb : SEGMENT_SPLIT_MB_DEFAULT;
+        if (mb < 16) mb = 16;
+        return mb * 1024L * 1024L;
+    }
+
+    public static void setSegmentSplitMB(int mb) throws IOException {
+        if (mb < 16) throw new IllegalArgumentException("Split threshold MB must be at least 16");
+        runtimeSegmentSplitMb = mb;
+        saveUserConfig();
+    }
+
+    // Watch-folder (inbox) auto-encryption
+    public static String getWatchDir() {
+        return runtimeWatchDir;
+    }
+
+    public static void setWatchDir(String path) throws IOException {
+        if (path == null || path.isEmpty()) {
+            runtimeWatchDir = null;
+        } else {
+            File dir = new File(path);
+            if (!dir.exists()) dir.mkdirs();
+            runtimeWatchDir = dir.getAbsolutePath();
+        }
+        saveUserConfig();
+    }
+
+    public static int getWatchDebounceMs() {
+        int ms = (runtimeWatchDebounceMs != null) ? runtimeWatchDebounceMs : WATCH_DEBOUNCE_MS_DEFAULT;
+        if (ms < 200) ms = 200;
+        if (ms > 60000) ms = 60000;
+        return ms;
+    }
+
+    public static void setWatchDebounceMs(int ms) throws IOException {
+        if (ms < 200 || ms > 60000) throw new IllegalArgumentException("Debounce must be between 200 and 60000 ms");
+        runtimeWatchDebounceMs = ms;
+        saveUserConfig();
+    }
+
+    public static int getWatchBatchMax() {
+        int n = (runtimeWatchBatchMax != null) ? runtimeWatchBatchMax : WATCH_BATCH_MAX_DEFAULT;
+        if (n < 1) n = 1;
+        if (n > 10000) n = 10000;
+        return n;
+    }
+
+    public static void setWatchBatchMax(int n) throws IOException {
+        if (n < 1 || n > 10000) throw new IllegalArgumentException("Watch batch size must be between 1 and 10000");
+        runtimeWatchBatchMax = n;
+        saveUserConfig();
+    }
+
+    // Background daemon (loopback API)
+    public static int getDaemonPort() {
+        int port = (runtimeDaemonPort != null) ? runtimeDaemonPort : DAEMON_PORT_DEFAULT;
+        if (port < 1024 || port > 65535) port = DAEMON_PORT_DEFAULT;
+        return port;
+    }
+
+    public static void setDaemonPort(int port) throws IOException {
+        if (port < 1024 || port > 65535) throw new IllegalArgumentException("Daemon port must be between 1024 and 65535");
+        runtimeDaemonPort = port;
+        saveUserConfig();
+    }
+
+    // Rows the JDBC driver fetches per round trip for listing queries
+    public static int getDbFetchSize() {
+        int n = (runtimeDbFetchSize != null) ? runtimeDbFetchSize : DB_FETCH_SIZE_DEFAULT;
+        if (n < 10) n = 10;
+        if (n > 10000) n = 10000;
+        return n;
+    }
+
+    public static void setDbFetchSize(int n) throws IOException {
+        if (n < 10 || n > 10000) throw new IllegalArgumentException("Fetch size must be between 10 and 10000");
+        runtimeDbFetchSize = n;
+        saveUserConfig();
+    }
+
+    // Encrypted local copy of the file list, shown at login before the database answers
+    public static boolean isDashboardSnapshot() {
+        return runtimeDashboardSnapshot != null ? runtimeDashboardSnapshot : true;
+    }
+
+    public static void setDashboardSnapshot(boolean enabled) throws IOException {
+        runtimeDashboardSnapshot = enabled;
+        saveUserConfig();
+    }
+
+    // Days audit entries stay in the database before being archived; 0 = never archive
+    public static int getAuditRetentionDays() {
+        int d = (runtimeAuditRetentionDays != null) ? runtimeAuditRetentionDays : AUDIT_RETENTION_DAYS_DEFAULT;
+        if (d <= 0) return 0;
+        if (d < 30) d = 30;
+        if (d > 36500) d = 36500;
+        return d;
+    }
+
+    public static void setAuditRetentionDays(int days) throws IOException {
+        if (days != 0 && (days < 30 || days > 36500)) {
+            throw new IllegalArgumentException("Audit retention must be 0 (keep all) or between 30 and 36500 days");
+        }
+        runtimeAuditRetentionDays = days;
+        saveUserConfig();
+    }
+
+    // Seconds a statement may run before the driver cancels it; 0 = no limit
+    public static int getDbQueryTimeoutSeconds() {
+        int t = (runtimeDbQueryTimeoutSeconds != null) ? runtimeDbQueryTimeoutSeconds
+                : DatabaseConfig.QUERY_TIMEOUT_SECONDS;
+        if (t <= 0) return 0;
+        if (t > 3600) t = 3600;
+        return t;
+    }
+
+    // Statements running at least this long are logged with their name; 0 = log none
+    public static int getDbSlowQueryMs() {
+        int ms = (runtimeDbSlowQueryMs != null) ? runtimeDbSlowQueryMs : DB_SLOW_QUERY_MS_DEFAULT;
+        return Math.max(ms, 0);
+    }
 }
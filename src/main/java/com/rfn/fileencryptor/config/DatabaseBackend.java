@@ -0,0 +1,26 @@
+package com.rfn.fileencryptor.config;
+
+import java.util.Locale;
+
+/**
+ * Where the metadata and audit tables live. Every DAO speaks the same SQL to either one:
+ * the embedded database runs in Oracle compatibility mode.
+ */
+public enum DatabaseBackend {
+
+    /** Oracle server reached over JDBC (db.url, db.username, db.password). */
+    ORACLE,
+
+    /** Single-file H2 database in the local state folder; in-process, no server needed. */
+    EMBEDDED;
+
+    /**
+     * Backend for a config value ("oracle" or "embedded"); unknown values mean Oracle.
+     */
+    public static DatabaseBackend fromName(String name) {
+        if (name != null && "embedded".equals(name.trim().toLowerCase(Locale.ROOT))) {
+            return EMBEDDED;
+        }
+        return ORACLE;
+    }
+}
@@ -2,9 +2,9 @@ package com.rfn.fileencryptor.config;
 
 public class DatabaseConfig {
 
-    // Connection Pool Settings
-    public static final int MIN_POOL_SIZE = 5;
-    public static final int MAX_POOL_SIZE = 20;
+    // Connection Pool Settings (one desktop user: one idle connection, more on demand)
+    public static final int MIN_POOL_SIZE = 1;
+    public static final int MAX_POOL_SIZE = 10;
     public static final long CONNECTION_TIMEOUT = 30000; // 30 seconds
     public static final long IDLE_TIMEOUT = 600000; // 10 minutes
     public static final long MAX_LIFETIME = 1800000; // 30 minutes
@@ -1,17 +1,25 @@
 package com.rfn.fileencryptor.controller;
 
+import java.io.File;
 import java.sql.Timestamp;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.rfn.fileencryptor.model.AuditLog;
+import com.rfn.fileencryptor.model.OperationStats;
 import com.rfn.fileencryptor.model.User;
+import com.rfn.fileencryptor.service.AuditExporter;
 import com.rfn.fileencryptor.service.AuditService;
 import com.rfn.fileencryptor.service.NotificationService;
+import com.rfn.fileencryptor.util.CancellationToken;
 
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -19,10 +27,15 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 public class HistoryController {
@@ -35,15 +48,34 @@ public class HistoryController {
     @FXML private Button filterButton;
     @FXML private Button resetButton;
     @FXML private Button closeButton;
+    @FXML private Button exportButton;
+    @FXML private ProgressBar exportProgress;
+    @FXML private Label exportStatusLabel;
     @FXML private TableView<AuditLog> historyTable;
     @FXML private TableColumn<AuditLog, Timestamp> timestampColumn;
     @FXML private TableColumn<AuditLog, String> operationColumn;
     @FXML private TableColumn<AuditLog, String> statusColumn;
     @FXML private TableColumn<AuditLog, Long> fileSizeColumn;
     @FXML private TableColumn<AuditLog, Long> durationColumn;
+    @FXML private TableColumn<AuditLog, Double> throughputColumn;
+    @FXML private TabPane historyTabs;
+    @FXML private Tab statsTab;
+    @FXML private ComboBox<OperationStats.Period> statsPeriodCombo;
+    @FXML private TableView<OperationStats> statsTable;
+    @FXML private TableColumn<OperationStats, LocalDate> statsPeriodColumn;
+    @FXML private TableColumn<OperationStats, String> statsOperationColumn;
+    @FXML private TableColumn<OperationStats, Long> statsCountColumn;
+    @FXML private TableColumn<OperationStats, OperationStats> statsFailuresColumn;
+    @FXML private TableColumn<OperationStats, Long> statsBytesColumn;
+    @FXML private TableColumn<OperationStats, Long> statsAvgDurationColumn;
+    @FXML private TableColumn<OperationStats, Long> statsP95DurationColumn;
+    @FXML private TableColumn<OperationStats, Double> statsThroughputColumn;
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
 
     private User currentUser;
     private final AuditService auditService;
+    private volatile CancellationToken exportToken;
 
     public HistoryController() {
         this.auditService = new AuditService();
@@ -56,6 +88,7 @@ public class HistoryController {
         statusColumn.setCellValueFactory(new PropertyValueFactory<>("operationStatus"));
         fileSizeColumn.setCellValueFactory(new PropertyValueFactory<>("fileSize"));
         durationColumn.setCellValueFactory(new PropertyValueFactory<>("durationMs"));
+        throughputColumn.setCellValueFactory(new PropertyValueFactory<>("throughputMbps"));
 
         durationColumn.setCellFactory(col -> new TableCell<AuditLog, Long>() {
             @Override
@@ -69,6 +102,18 @@ public class HistoryController {
             }
         });
 
+        throughputColumn.setCellFactory(col -> new TableCell<AuditLog, Double>() {
+            @Override
+            protected void updateItem(Double mbps, boolean empty) {
+                super.updateItem(mbps, empty);
+                if (empty || mbps == null) {
+                    setText(null);
+                } else {
+                    setText(String.format("%.1f MB/s", mbps));
+                }
+            }
+        });
+
         operationTypeCombo.setItems(FXCollections.observableArrayList(
                 "ENCRYPT", "DECRYPT"
         ));
@@ -89,6 +134,101 @@ public class HistoryController {
                 }
             }
         });
+
+        initializeStats();
+    }
+
+    // Statistics tab: totals from the daily rollups, loaded only while the tab is shown
+    private void initializeStats() {
+        statsPeriodColumn.setCellValueFactory(new PropertyValueFactory<>("periodStart"));
+        statsOperationColumn.setCellValueFactory(new PropertyValueFactory<>("operationType"));
+        statsCountColumn.setCellValueFactory(new PropertyValueFactory<>("count"));
+        statsFailuresColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue()));
+        statsBytesColumn.setCellValueFactory(new PropertyValueFactory<>("totalBytes"));
+        statsAvgDurationColumn.setCellValueFactory(new PropertyValueFactory<>("avgDurationMs"));
+        statsP95DurationColumn.setCellValueFactory(new PropertyValueFactory<>("p95DurationMs"));
+        statsThroughputColumn.setCellValueFactory(new PropertyValueFactory<>("throughputMbps"));
+
+        statsPeriodColumn.setCellFactory(col -> new TableCell<OperationStats, LocalDate>() {
+            @Override
+            protected void updateItem(LocalDate start, boolean empty) {
+                super.updateItem(start, empty);
+                if (empty || start == null) {
+                    setText(null);
+                } else {
+                    setText(formatPeriod(start));
+                }
+            }
+        });
+
+        statsFailuresColumn.setCellFactory(col -> new TableCell<OperationStats, OperationStats>() {
+            @Override
+            protected void updateItem(OperationStats stats, boolean empty) {
+                super.updateItem(stats, empty);
+                if (empty || stats == null || stats.getFailureRate() == null) {
+                    setText(null);
+                } else {
+                    setText(String.format("%d (%.1f%%)", stats.getFailures(), stats.getFailureRate() * 100));
+                }
+            }
+        });
+
+        statsBytesColumn.setCellFactory(col -> new TableCell<OperationStats, Long>() {
+            @Override
+            protected void updateItem(Long bytes, boolean empty) {
+                super.updateItem(bytes, empty);
+                if (empty || bytes == null) {
+                    setText(null);
+                } else {
+                    setText(formatFileSize(bytes));
+                }
+            }
+        });
+
+        statsAvgDurationColumn.setCellFactory(col -> durationCell());
+        statsP95DurationColumn.setCellFactory(col -> durationCell());
+
+        statsThroughputColumn.setCellFactory(col -> new TableCell<OperationStats, Double>() {
+            @Override
+            protected void updateItem(Double mbps, boolean empty) {
+                super.updateItem(mbps, empty);
+                if (empty || mbps == null) {
+                    setText(null);
+                } else {
+                    setText(String.format("%.1f MB/s", mbps));
+                }
+            }
+        });
+
+        statsPeriodCombo.setItems(FXCollections.observableArrayList(OperationStats.Period.values()));
+        statsPeriodCombo.setValue(OperationStats.Period.TOTAL);
+        statsPeriodCombo.valueProperty().addListener((obs, oldVal, newVal) -> loadHistory());
+        historyTabs.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> loadHistory());
+    }
+
+    private TableCell<OperationStats, Long> durationCell() {
+        return new TableCell<OperationStats, Long>() {
+            @Override
+            protected void updateItem(Long duration, boolean empty) {
+                super.updateItem(duration, empty);
+                if (empty || duration == null) {
+                    setText(null);
+                } else {
+                    setText(formatDuration(duration));
+                }
+            }
+        };
+    }
+
+    private String formatPeriod(LocalDate start) {
+        OperationStats.Period period = statsPeriodCombo.getValue();
+        if (period == OperationStats.Period.MONTH) {
+            return MONTH_FORMAT.format(start);
+        }
+        if (period == OperationStats.Period.TOTAL && endDatePicker.getValue() != null) {
+            return start + " – " + endDatePicker.getValue();
+        }
+        return start.toString();
     }
 
     public void setUser(User user) {
@@ -116,10 +256,98 @@ public class HistoryController {
 
     @FXML
     private void handleClose(ActionEvent event) {
+        if (exportToken != null) exportToken.cancel();
         Stage stage = (Stage) closeButton.getScene().getWindow();
         stage.close();
     }
 
+    // Export the filtered range to a file in the background; while it runs the button cancels it
+    @FXML
+    private void handleExport(ActionEvent event) {
+        CancellationToken running = exportToken;
+        if (running != null) {
+            running.cancel();
+            exportButton.setDisable(true);
+            exportStatusLabel.setText("Cancelling...");
+            return;
+        }
+        if (currentUser == null) {
+            NotificationService.showWarning("Warning", "No user is logged in");
+            return;
+        }
+        LocalDate startDate = startDatePicker.getValue();
+        LocalDate endDate = endDatePicker.getValue();
+        if (startDate == null || endDate == null) {
+            NotificationService.showWarning("Warning", "Please select date range");
+            return;
+        }
+        String operationType = operationTypeCombo.getValue();
+        String filterType = operationType == null || operationType.isBlank() ? null : operationType;
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Audit History");
+        fileChooser.setInitialFileName("audit-" + startDate + "-" + endDate + ".csv");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV (*.csv)", "*.csv"),
+                new FileChooser.ExtensionFilter("Compressed CSV (*.csv.gz)", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("JSON (*.json)", "*.json"),
+                new FileChooser.ExtensionFilter("Compressed JSON (*.json.gz)", "*.json.gz"));
+        File chosen = fileChooser.showSaveDialog(exportButton.getScene().getWindow());
+        if (chosen == null) return;
+
+        // The chooser does not always append the selected filter's extension
+        FileChooser.ExtensionFilter selected = fileChooser.getSelectedExtensionFilter();
+        String extension = selected == null ? ".csv" : selected.getExtensions().get(0).substring(1);
+        File target = chosen.getName().contains(".") ? chosen
+                : new File(chosen.getParentFile(), chosen.getName() + extension);
+        boolean gzip = target.getName().toLowerCase().endsWith(".gz");
+        AuditExporter.Format format = AuditExporter.Format.of(target);
+
+        Long userId = currentUser.getUserId();
+        Timestamp startTimestamp = Timestamp.valueOf(startDate.atStartOfDay());
+        Timestamp endTimestamp = Timestamp.valueOf(endDate.plusDays(1).atStartOfDay());
+
+        CancellationToken token = new CancellationToken();
+        exportToken = token;
+        exportButton.setText("Cancel");
+        exportProgress.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        exportProgress.setVisible(true);
+        exportStatusLabel.setText("Exporting...");
+
+        Thread t = new Thread(() -> {
+            try {
+                long written = new AuditExporter().export(userId, startTimestamp, endTimestamp, filterType,
+                        format, gzip, target, (done, expected) -> Platform.runLater(() -> {
+                            if (expected > 0) exportProgress.setProgress((double) done / expected);
+                            exportStatusLabel.setText(String.format("%,d entries", done));
+                        }), token);
+                Platform.runLater(() -> {
+                    finishExport(String.format("%,d entries exported", written));
+                    NotificationService.showSuccess("Export complete",
+                            String.format("%,d entries written to %s", written, target.getName()));
+                });
+            } catch (CancellationException e) {
+                Platform.runLater(() -> finishExport("Export cancelled"));
+            } catch (Exception e) {
+                logger.error("Failed to export audit history", e);
+                Platform.runLater(() -> {
+                    finishExport("Export failed");
+                    NotificationService.showError("Error", "Failed to export history: " + e.getMessage());
+                });
+            }
+        }, "audit-export");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void finishExport(String status) {
+        exportToken = null;
+        exportButton.setText("Export...");
+        exportButton.setDisable(false);
+        exportProgress.setVisible(false);
+        exportStatusLabel.setText(status);
+    }
+
     private void loadHistory() {
         try {
             if (currentUser == null) {
@@ -136,21 +364,19 @@ public class HistoryController {
                 return;
             }
 
-            Timestamp startTimestamp = Timestamp.valueOf(startDate.atStartOfDay());
-            Timestamp endTimestamp = Timestamp.valueOf(endDate.plusDays(1).atStartOfDay());
+            String filterType = operationType == null || operationType.isBlank() ? null : operationType;
 
-            List<AuditLog> logs;
+            if (historyTabs.getSelectionModel().getSelectedItem() == statsTab) {
+                loadStats(startDate, endDate, filterType);
+                return;
+            }
 
-            logs = auditService.getAuditHistory(currentUser.getUserId(),
-                    startTimestamp, endTimestamp);
+            Timestamp startTimestamp = Timestamp.valueOf(startDate.atStartOfDay());
+            Timestamp endTimestamp = Timestamp.valueOf(endDate.plusDays(1).atStartOfDay());
 
-            if (operationType != null && !operationType.isBlank()) {
-                final String filterType = operationType;
-                logs.removeIf(log -> {
-                    String op = log.getOperationType();
-                    return op == null || !filterType.equalsIgnoreCase(op);
-                });
-            }
+            // Filtered by type in the query, not after loading every entry of the range
+            List<AuditLog> logs = auditService.getAuditHistory(currentUser.getUserId(),
+                    startTimestamp, endTimestamp, filterType);
 
             ObservableList<AuditLog> logList = FXCollections.observableArrayList(logs);
             historyTable.setItems(logList);
@@ -163,6 +389,14 @@ public class HistoryController {
         }
     }
 
+    private void loadStats(LocalDate startDate, LocalDate endDate, String operationType) {
+        long started = System.nanoTime();
+        List<OperationStats> stats = auditService.getOperationStats(currentUser.getUserId(),
+                startDate, endDate, operationType, statsPeriodCombo.getValue());
+        statsTable.setItems(FXCollections.observableArrayList(stats));
+        logger.info("Loaded {} statistics rows in {} ms", stats.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
     private String formatFileSize(long bytes) {
         double megabytes = bytes / (1024.0 * 1024.0);
         return String.format("%.2f MB", megabytes);
@@ -7,8 +7,10 @@ import com.rfn.fileencryptor.exception.AuthenticationException;
 import com.rfn.fileencryptor.model.User;
 import com.rfn.fileencryptor.service.AuthenticationService;
 import com.rfn.fileencryptor.service.NotificationService;
+import com.rfn.fileencryptor.util.DatabaseUtil;
 import com.rfn.fileencryptor.util.ValidationUtil;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -64,6 +66,23 @@ public class LoginController {
         // Disable button during login
         loginButton.setDisable(true);
 
+        if (!DatabaseUtil.isReady()) {
+            // Still connecting: log in once the pool is up, without blocking the UI
+            String label = loginButton.getText();
+            loginButton.setText("Connecting...");
+            DatabaseUtil.warmUp().whenComplete((v, e) -> Platform.runLater(() -> {
+                loginButton.setText(label);
+                if (e != null) {
+                    System.err.println("Database connection failed: " + e.getMessage());
+                    showError("Cannot connect to the database. Please try again.");
+                    loginButton.setDisable(false);
+                } else {
+                    handleLogin(event);
+                }
+            }));
+            return;
+        }
+
         try {
             // Authenticate user
             User user = authService.login(username, password);
@@ -78,7 +97,7 @@ public class LoginController {
                 openSetFilePasswordScreen(user);
             } else {
                 // Open main application
-                openMainScreen(user);
+                openMainScreen(user, password);
             }
 
         } catch (AuthenticationException e) {
@@ -142,7 +161,7 @@ public class LoginController {
         }
     }
 
-    private void openMainScreen(User user) {
+    private void openMainScreen(User user, String password) {
         try {
             System.out.println("Loading main screen...");
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/main.fxml"));
@@ -154,7 +173,7 @@ public class LoginController {
             MainController controller = loader.getController();
             System.out.println("MainController obtained");
             
-            controller.setUser(user);
+            controller.setUser(user, password);
             System.out.println("User set in controller");
 
             Stage stage = (Stage) loginButton.getScene().getWindow();
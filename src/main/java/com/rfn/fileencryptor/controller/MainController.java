@@ -10,20 +10,34 @@ import java.util.stream.Collectors;
 import com.google.api.services.drive.Drive;
 import com.rfn.fileencryptor.dao.FileMetadataDAO;
 import com.rfn.fileencryptor.dao.FilePasswordDAO;
+import com.rfn.fileencryptor.dao.FileQuery;
 import com.rfn.fileencryptor.model.FileMetadata;
 import com.rfn.fileencryptor.model.User;
+import com.rfn.fileencryptor.service.CompressionService;
+import com.rfn.fileencryptor.service.FileEvents;
 import com.rfn.fileencryptor.service.FileService;
+import com.rfn.fileencryptor.service.FilenameIndex;
+import com.rfn.fileencryptor.service.FolderWalker;
 import com.rfn.fileencryptor.service.GoogleDriveAuth;
 import com.rfn.fileencryptor.service.GoogleDriveBackupService;
+import com.rfn.fileencryptor.service.JobJournal;
+import com.rfn.fileencryptor.service.JobScheduler;
+import com.rfn.fileencryptor.service.MetadataSnapshot;
 import com.rfn.fileencryptor.service.NotificationService;
+import com.rfn.fileencryptor.service.WatchFolderService;
+import com.rfn.fileencryptor.ui.FileListModel;
+import com.rfn.fileencryptor.ui.FileSelection;
+import com.rfn.fileencryptor.ui.PagedFileList;
+import com.rfn.fileencryptor.ui.ProgressAggregator;
 import com.rfn.fileencryptor.ui.ProgressStyler;
 import com.rfn.fileencryptor.ui.ProgressWindow;
+import com.rfn.fileencryptor.ui.SearchResultList;
+import com.rfn.fileencryptor.ui.SnapshotFileList;
 import com.rfn.fileencryptor.util.ProgressTracker;
 
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -41,7 +55,6 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.Tooltip;
-import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
@@ -54,12 +67,15 @@ public class MainController {
     @FXML private Label welcomeLabel;
     @FXML private Button encryptButton;
     @FXML private Button decryptButton;
+    @FXML private Button encryptFolderButton;
+    @FXML private Button decryptFolderButton;
     @FXML private Button backupDriveButton;
     @FXML private Button restoreDriveButton;
     @FXML private Label driveAccountLabel;
     @FXML private Button viewHistoryButton;
     @FXML private Button logoutButton;
     @FXML private CheckBox compressCheckBox;
+    @FXML private CheckBox watchInboxCheckBox;
     @FXML private TextField searchField;
     @FXML private TableView<FileMetadata> filesTable;
     @FXML private TableColumn<FileMetadata, String> filenameColumn;
@@ -96,12 +112,62 @@ public class MainController {
     private final FilePasswordDAO filePasswordDAO;
     private final SimpleDateFormat dateFormat;
     private final ProgressWindow progressWindow = ProgressWindow.getInstance();
+    // Dashboard rows are paged in on demand; checkbox state lives in the id set, not on rows
+    private final PagedFileList fileList;
+    // Filtered views come from the in-memory filename index once it is built
+    private final SearchResultList searchList;
+    // Local copy of the listing shown at login until the database first answers
+    private final SnapshotFileList snapshotList = new SnapshotFileList();
+    private MetadataSnapshot snapshot;
+    private boolean filesLoaded;
+    private FileListModel activeList;
+    private FilenameIndex filenameIndex;
+    private FilenameIndex buildingIndex;
+    private final javafx.animation.PauseTransition searchDebounce =
+            new javafx.animation.PauseTransition(javafx.util.Duration.millis(150));
+    private final java.util.concurrent.ExecutorService searchExecutor =
+            java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "filename-search");
+                t.setDaemon(true);
+                return t;
+            });
+    // Bumped per search or reload so a slower, older result is never shown
+    private int searchSeq;
+    private final FileSelection selection = new FileSelection();
+    // Row changes from workers, applied to the table once per FX pulse
+    private final java.util.concurrent.ConcurrentLinkedQueue<Runnable> pendingFileEvents =
+            new java.util.concurrent.ConcurrentLinkedQueue<>();
+    private final java.util.concurrent.atomic.AtomicBoolean fileEventsScheduled =
+            new java.util.concurrent.atomic.AtomicBoolean();
+    private final FileEvents.Listener fileEventsListener = new FileEvents.Listener() {
+        @Override
+        public void onFileAdded(FileMetadata metadata) {
+            queueFileEvent(() -> {
+                int before = activeList.size();
+                activeList.rowAdded(metadata);
+                if (activeList.size() != before) selection.added(metadata.getFileId());
+            });
+        }
+
+        @Override
+        public void onFileRemoved(FileMetadata metadata) {
+            queueFileEvent(() -> {
+                int before = activeList.size();
+                activeList.rowRemoved(metadata);
+                if (activeList.size() != before) selection.removed(metadata.getFileId());
+            });
+        }
+    };
 
     public MainController() {
         this.fileService = new FileService();
         this.fileMetadataDAO = new FileMetadataDAO();
         this.filePasswordDAO = new FilePasswordDAO();
         this.dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        this.fileList = new PagedFileList(fileMetadataDAO, e ->
+                NotificationService.showError("Error", "Failed to load files"));
+        this.searchList = new SearchResultList(fileMetadataDAO);
+        this.activeList = fileList;
     }
 
     // Current operation cancellation token (set when a background op is running)
@@ -143,7 +209,9 @@ public class MainController {
         }
 
         if (searchField != null) {
-            searchField.textProperty().addListener((obs, oldVal, newVal) -> filterFiles(newVal));
+            // Wait for a pause in typing, then search the index off the FX thread
+            searchDebounce.setOnFinished(e -> runSearch());
+            searchField.textProperty().addListener((obs, oldVal, newVal) -> searchDebounce.playFromStart());
         }
 
         if (driveAccountLabel != null) {
@@ -176,14 +244,17 @@ public class MainController {
             // Set action handler
             selectAllCheckBox.setOnAction(e -> {
                 boolean sel = selectAllCheckBox.isSelected();
-                if (filesTable != null && filesTable.getItems() != null) {
-                    // Update all items' selection state
-                    filesTable.getItems().forEach(f -> f.setSelected(sel));
-                    
-                    // Visual feedback
-                    String msg = sel ? "Selected all files" : "Deselected all files";
-                    NotificationService.showInfo("Selection", msg);
+                if (sel) {
+                    selection.selectAll();
+                } else {
+                    selection.clear();
                 }
+                // Only the visible cells need redrawing; unloaded rows read the id set when shown
+                if (filesTable != null) filesTable.refresh();
+
+                // Visual feedback
+                String msg = sel ? "Selected all files" : "Deselected all files";
+                NotificationService.showInfo("Selection", msg);
             });
         }
 
@@ -205,18 +276,100 @@ public class MainController {
         }
     }
 
-    public void setUser(User user) {
+    /**
+     * @param loginPassword the password just used to log in; only the snapshot key is kept
+     */
+    public void setUser(User user, String loginPassword) {
         this.currentUser = user;
 
         if (welcomeLabel != null) {
             welcomeLabel.setText("Welcome, " + user.getUsername() + "!");
         }
 
-        loadFilePassword();
+        // Nothing here waits on the database: the snapshot fills the table meanwhile
+        snapshot = new MetadataSnapshot(user, loginPassword);
+        Thread checkPassword = new Thread(this::loadFilePassword, "file-password-check");
+        checkPassword.setDaemon(true);
+        checkPassword.start();
+        FileEvents.getInstance().addListener(fileEventsListener);
         loadUserFiles();
+        buildFilenameIndex(true);
+
+        Platform.runLater(this::offerResumeInterruptedBatch);
+    }
+
+    /**
+     * If a batch was interrupted (crash, power loss), offer to pick it up where it stopped.
+     */
+    private void offerResumeInterruptedBatch() {
+        List<JobJournal.Job> jobs = JobJournal.getInstance().findUnfinished(currentUser.getUserId());
+        if (jobs.isEmpty()) return;
+        JobJournal.Job job = jobs.get(0);
+        // One batch per login; the rest stay available to the next login or another process
+        for (JobJournal.Job other : jobs.subList(1, jobs.size())) other.release();
+        boolean encrypt = JobJournal.OP_ENCRYPT.equals(job.getOp());
+        List<String> keys = job.getPendingKeys();
+
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Resume Interrupted Operation");
+        confirm.setHeaderText(String.format("An interrupted %s of %d file(s) was found",
+                encrypt ? "encryption" : "decryption", keys.size()));
+        confirm.setContentText("Resume it now? Choosing Cancel discards the partial output.");
+        if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            job.discard();
+            return;
+        }
+
+        String password = askForFilePassword();
+        if (password == null) {
+            NotificationService.showWarning("Resume", "Password is required; the operation will be offered again next time");
+            job.release();
+            return;
+        }
+
+        try {
+            if (encrypt) {
+                List<File> files = new java.util.ArrayList<>();
+                for (String key : keys) {
+                    File f = new File(key);
+                    if (fileService.reconcileInterruptedEncrypt(f, job.getState(key))) {
+                        job.markDone(key);
+                    } else if (!f.exists()) {
+                        job.markFailed(key, "Source file no longer exists");
+                    } else {
+                        files.add(f);
+                    }
+                }
+                if (job.getDirectory() != null) {
+                    // Folder batch: walk again; files already encrypted are gone from the tree
+                    startEncryptBatch(null, java.nio.file.Paths.get(job.getDirectory()), password,
+                            job.getCompressMode(), job);
+                } else if (!files.isEmpty()) {
+                    startEncryptBatch(files, null, password, job.getCompressMode(), job);
+                }
+            } else {
+                List<FileMetadata> metas = new java.util.ArrayList<>();
+                for (String key : keys) {
+                    FileMetadata m = fileMetadataDAO.findById(Long.valueOf(key));
+                    if (m == null) {
+                        // Metadata is removed only after a successful decrypt
+                        job.markDone(key);
+                    } else {
+                        metas.add(m);
+                    }
+                }
+                if (!metas.isEmpty()) startDecryptBatch(metas, password, job.getDirectory(), job);
+            }
+        } catch (Exception e) {
+            NotificationService.showError("Resume failed", e.getMessage());
+        }
     }
 
     private void setupTableColumns() {
+        filesTable.setItems(fileList);
+        // Rows come sorted from the query (sort combo); the paged list cannot be sorted in place
+        filesTable.getColumns().forEach(c -> c.setSortable(false));
+
         // selection checkbox column
         if (selectColumn != null) {
             // Configure the select column
@@ -224,46 +377,38 @@ public class MainController {
                 if (cellData == null || cellData.getValue() == null) {
                     return null;
                 }
-                return cellData.getValue().selectedProperty();
+                return new ReadOnlyBooleanWrapper(selection.isSelected(cellData.getValue().getFileId()));
             });
-            selectColumn.setCellFactory(column -> {
-                CheckBoxTableCell<FileMetadata, Boolean> cell = new CheckBoxTableCell<>();
-                cell.setAlignment(javafx.geometry.Pos.CENTER);
-                cell.setOnMouseClicked(event -> {
-                    if (!cell.isEmpty()) {
-                        FileMetadata item = (FileMetadata) cell.getTableRow().getItem();
+            selectColumn.setCellFactory(column -> new TableCell<FileMetadata, Boolean>() {
+                private final CheckBox checkBox = new CheckBox();
+
+                {
+                    setAlignment(javafx.geometry.Pos.CENTER);
+                    checkBox.setOnAction(event -> {
+                        FileMetadata item = getTableRow() == null ? null : getTableRow().getItem();
                         if (item != null) {
-                            item.setSelected(!item.isSelected());
-                            updateSelectAllState();
+                            selection.setSelected(item.getFileId(), checkBox.isSelected());
                         }
+                    });
+                }
+
+                @Override
+                protected void updateItem(Boolean selected, boolean empty) {
+                    super.updateItem(selected, empty);
+                    if (empty || selected == null) {
+                        setGraphic(null);
+                    } else {
+                        checkBox.setSelected(selected);
+                        setGraphic(checkBox);
                     }
-                });
-                return cell;
+                }
             });
             selectColumn.setStyle("-fx-alignment: CENTER;");
-            
-            // Configure the select all checkbox
+
+            // Keep the header checkbox in step with the selected count
             if (selectAllCheckBox != null) {
                 selectAllCheckBox.setTooltip(new Tooltip("Select/Deselect All Files"));
-                
-                // Listen to selectAll changes
-                selectAllCheckBox.selectedProperty().addListener((obs, oldVal, newVal) -> {
-                    if (filesTable.getItems() != null) {
-                        filesTable.getItems().forEach(item -> item.setSelected(newVal));
-                    }
-                });
-
-                // Listen to individual selection changes
-                filesTable.getItems().addListener((javafx.collections.ListChangeListener.Change<? extends FileMetadata> change) -> {
-                    while (change.next()) {
-                        if (change.wasAdded()) {
-                            change.getAddedSubList().forEach(item -> {
-                                item.selectedProperty().addListener((obs, oldV, newV) -> updateSelectAllState());
-                            });
-                        }
-                    }
-                    updateSelectAllState();
-                });
+                selection.countProperty().addListener((obs, oldVal, newVal) -> updateSelectAllState());
             }
         }
         // Type column (file extension)
@@ -345,37 +490,38 @@ public class MainController {
     }
 
     private void applySort() {
-        if (filesTable == null) return;
-        String key = (sortCombo == null) ? "Type" : sortCombo.getValue();
-        boolean desc = sortDirectionToggle != null && sortDirectionToggle.isSelected();
+        if (filesTable == null || currentUser == null) return;
+        runSearch();
+    }
 
-        filesTable.getSortOrder().clear();
+    /**
+     * Dashboard query for the current search text and sort controls.
+     */
+    private FileQuery currentQuery() {
+        String key = (sortCombo == null || sortCombo.getValue() == null) ? "Type" : sortCombo.getValue();
+        boolean desc = sortDirectionToggle != null && sortDirectionToggle.isSelected();
+        String filter = searchField == null ? null : searchField.getText();
 
+        FileQuery.Sort sort;
         switch (key) {
             case "Filename":
-                filenameColumn.setSortType(desc ? javafx.scene.control.TableColumn.SortType.DESCENDING : javafx.scene.control.TableColumn.SortType.ASCENDING);
-                filesTable.getSortOrder().add(filenameColumn);
+                sort = FileQuery.Sort.FILENAME;
                 break;
             case "Size":
-                sizeColumn.setSortType(desc ? javafx.scene.control.TableColumn.SortType.DESCENDING : javafx.scene.control.TableColumn.SortType.ASCENDING);
-                filesTable.getSortOrder().add(sizeColumn);
+                sort = FileQuery.Sort.SIZE;
                 break;
             case "Created At":
-                dateColumn.setSortType(desc ? javafx.scene.control.TableColumn.SortType.DESCENDING : javafx.scene.control.TableColumn.SortType.ASCENDING);
-                filesTable.getSortOrder().add(dateColumn);
+                sort = FileQuery.Sort.CREATED_AT;
                 break;
             case "Compressed":
-                compressedColumn.setSortType(desc ? javafx.scene.control.TableColumn.SortType.DESCENDING : javafx.scene.control.TableColumn.SortType.ASCENDING);
-                filesTable.getSortOrder().add(compressedColumn);
+                sort = FileQuery.Sort.COMPRESSED;
                 break;
             case "Type":
             default:
-                typeColumn.setSortType(desc ? javafx.scene.control.TableColumn.SortType.DESCENDING : javafx.scene.control.TableColumn.SortType.ASCENDING);
-                filesTable.getSortOrder().add(typeColumn);
+                sort = FileQuery.Sort.TYPE;
                 break;
         }
-
-        filesTable.sort();
+        return new FileQuery(currentUser.getUserId(), filter, sort, desc);
     }
 
     private void loadFilePassword() {
@@ -404,70 +550,172 @@ public class MainController {
         return null;
     }
 
-    private void loadUserFiles() {
-        try {
-            List<FileMetadata> files = fileMetadataDAO.findByOwnerId(currentUser.getUserId());
-            ObservableList<FileMetadata> fileList = FXCollections.observableArrayList(files);
-            filesTable.setItems(fileList);
-
-            // reset select-all state
-            if (selectAllCheckBox != null) selectAllCheckBox.setSelected(false);
-
-            // attach listeners to update select-all when items change
-            if (fileList != null) {
-                fileList.forEach(f -> f.selectedProperty().addListener((obs, oldV, newV) -> {
-                    if (!newV && selectAllCheckBox != null && selectAllCheckBox.isSelected()) {
-                        selectAllCheckBox.setSelected(false);
-                    } else if (newV) {
-                        boolean all = fileList.stream().allMatch(FileMetadata::isSelected);
-                        if (all && selectAllCheckBox != null && !selectAllCheckBox.isSelected()) {
-                            selectAllCheckBox.setSelected(true);
-                        }
-                    }
-                }));
-            }
+    private void queueFileEvent(Runnable change) {
+        pendingFileEvents.add(change);
+        if (fileEventsScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                fileEventsScheduled.set(false);
+                Runnable next;
+                while ((next = pendingFileEvents.poll()) != null) {
+                    next.run();
+                }
+            });
+        }
+    }
 
-            // Default sort by file type (extension) so similar types are grouped
-            if (typeColumn != null) {
-                filesTable.getSortOrder().clear();
-                filesTable.getSortOrder().add(typeColumn);
-                filesTable.sort();
-            }
+    @FXML
+    private void handleRefresh(ActionEvent event) {
+        if (currentUser == null) return;
+        // Pick up changes made outside this window (CLI, daemon)
+        com.rfn.fileencryptor.dao.FileMetadataCache.getInstance().invalidateOwner(currentUser.getUserId());
+        runSearch();
+        buildFilenameIndex(false);
+    }
 
-            System.out.println("Loaded " + files.size() + " files for user: " + currentUser.getUsername());
+    /**
+     * Load the owner's filenames into a new index in the background. Until it is ready,
+     * searches fall back to the database; the index it replaces keeps serving meanwhile.
+     * The rows come from the local snapshot brought up to date with the database, which
+     * is saved again for the next login.
+     *
+     * @param showSnapshot first show the snapshot as it was on disk (at login)
+     */
+    private void buildFilenameIndex(boolean showSnapshot) {
+        FilenameIndex index = new FilenameIndex(currentUser.getUserId());
+        // Listen before scanning so no insert or delete between the two is missed
+        FileEvents.getInstance().addListener(index);
+        if (buildingIndex != null) FileEvents.getInstance().removeListener(buildingIndex);
+        buildingIndex = index;
+        Thread t = new Thread(() -> {
+            try {
+                if (showSnapshot) {
+                    List<FileMetadata> saved = snapshot.load();
+                    if (saved != null) Platform.runLater(() -> showSnapshot(saved));
+                }
+                index.build(snapshot.reconcile(fileMetadataDAO));
+                Platform.runLater(() -> {
+                    if (buildingIndex != index) return;
+                    buildingIndex = null;
+                    if (filenameIndex != null) FileEvents.getInstance().removeListener(filenameIndex);
+                    filenameIndex = index;
+                    // A search typed while building went to the database; answer it from the index now
+                    if (activeList != searchList && currentQuery().getFilter() != null) runSearch();
+                });
+            } catch (SQLException e) {
+                System.err.println("Failed to build filename index: " + e.getMessage());
+                Platform.runLater(() -> {
+                    FileEvents.getInstance().removeListener(index);
+                    if (buildingIndex == index) buildingIndex = null;
+                });
+            }
+        }, "filename-index");
+        t.setDaemon(true);
+        t.start();
+    }
 
-        } catch (SQLException e) {
-            System.err.println("Failed to load files: " + e.getMessage());
-            NotificationService.showError("Error", "Failed to load files");
+    /**
+     * Show the files matching the search text: from the filename index when it is ready,
+     * otherwise (or with no search text) from paged database queries.
+     */
+    private void runSearch() {
+        if (currentUser == null) return;
+        FileQuery query = currentQuery();
+        FilenameIndex index = filenameIndex;
+        if (query.getFilter() == null || index == null || !index.isReady()) {
+            loadUserFiles();
+            return;
         }
+        int seq = ++searchSeq;
+        searchExecutor.execute(() -> {
+            long[] ids = index.search(query.getFilter(), query.getSort(), query.isDescending());
+            Platform.runLater(() -> {
+                if (seq != searchSeq) return;
+                searchList.show(query, index, ids);
+                showList(searchList);
+                selection.clear();
+                selection.setTotal(ids.length);
+                filesTable.refresh();
+            });
+        });
     }
 
-    
+    private void showSnapshot(List<FileMetadata> rows) {
+        if (filesLoaded) return;
+        snapshotList.show(currentQuery(), rows, () -> {
+            if (filesLoaded || activeList != fileList) return;
+            showList(snapshotList);
+            selection.clear();
+            selection.setTotal(snapshotList.size());
+            filesTable.refresh();
+            System.out.println("Showing " + snapshotList.size() + " files from snapshot for user: " + currentUser.getUsername());
+        });
+    }
 
-    private void filterFiles(String searchText) {
-        if (searchText == null || searchText.isEmpty()) {
-            loadUserFiles();
-            return;
+    private void showList(FileListModel list) {
+        if (activeList == list) return;
+        activeList = list;
+        filesTable.setItems(list);
+    }
+
+    private void loadUserFiles() {
+        if (currentUser == null) return;
+        int seq = ++searchSeq;
+        FileQuery query = currentQuery();
+        if (snapshotList.hasRows()) {
+            // Database has not answered yet: keep the snapshot up, arranged for this query
+            snapshotList.show(query, () -> {
+                if (seq != searchSeq) return;
+                showList(snapshotList);
+                selection.clear();
+                selection.setTotal(snapshotList.size());
+                filesTable.refresh();
+            });
+        } else {
+            showList(fileList);
         }
+        // Count and first page load in the background; further pages as the table scrolls
+        fileList.reload(query, () -> {
+            filesLoaded = true;
+            snapshotList.clear();
+            if (seq != searchSeq) return;
+            showList(fileList);
+            selection.clear();
+            selection.setTotal(fileList.size());
+            filesTable.refresh();
+            System.out.println("Loaded " + fileList.size() + " files for user: " + currentUser.getUsername());
+        });
+    }
 
-        try {
-            List<FileMetadata> allFiles = fileMetadataDAO.findByOwnerId(currentUser.getUserId());
-            List<FileMetadata> filtered = allFiles.stream()
-                    .filter(f -> f.getOriginalFilename().toLowerCase().contains(searchText.toLowerCase()))
-                    .toList();
-
-            ObservableList<FileMetadata> fileList = FXCollections.observableArrayList(filtered);
-            filesTable.setItems(fileList);
-
-            // Keep sorted by type when filtering
-            if (typeColumn != null) {
-                filesTable.getSortOrder().clear();
-                filesTable.getSortOrder().add(typeColumn);
-                filesTable.sort();
-            }
+    /**
+     * Files ticked in the table, read from the database so rows never scrolled into view
+     * are included. Safe off the FX thread given a snapshot taken on it; query must be the
+     * one the selection was made on.
+     *
+     * After select-all the selection is resolved by querying again, so it must still come
+     * to the number of files the user saw selected. Files another process added or removed
+     * since would otherwise be acted on unseen; the action is refused instead.
+     */
+    private List<FileMetadata> loadSelectedFiles(FileQuery query, FileSelection.Snapshot sel) throws SQLException {
+        if (sel.isEmpty()) return List.of();
+        if (!sel.isInverted()) {
+            return fileMetadataDAO.findByIds(query.getOwnerId(), sel.getMarked());
+        }
+        List<FileMetadata> all = fileMetadataDAO.findAll(query);
+        if (!sel.getMarked().isEmpty()) {
+            all.removeIf(m -> sel.getMarked().contains(m.getFileId()));
+        }
+        if (all.size() != sel.getCount()) {
+            throw new StaleSelectionException(String.format(
+                    "%d file(s) were selected but %d now match; the file list changed. Refresh and select again.",
+                    sel.getCount(), all.size()));
+        }
+        return all;
+    }
 
-        } catch (SQLException e) {
-            System.err.println("Failed to filter files: " + e.getMessage());
+    // The files behind a select-all changed between selecting and acting
+    private static final class StaleSelectionException extends SQLException {
+        StaleSelectionException(String message) {
+            super(message);
         }
     }
 
@@ -530,9 +778,130 @@ public class MainController {
             return;
         }
 
+        final CompressionService.Mode compress = compressCheckBox != null && compressCheckBox.isSelected()
+                ? CompressionService.Mode.YES : CompressionService.Mode.NO;
+        JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_ENCRYPT, currentUser.getUserId(),
+                compress, null,
+                selectedFiles.stream().map(File::getAbsolutePath).collect(Collectors.toList()),
+                selectedFiles.stream().map(File::length).collect(Collectors.toList()));
+        startEncryptBatch(selectedFiles, null, password, compress, journal);
+    }
+
+    @FXML
+    private void handleEncryptFolder(ActionEvent event) {
+        if (currentUser == null) {
+            NotificationService.showError("Error", "No user is logged in. Please log in first.");
+            return;
+        }
+
+        try {
+            if (!filePasswordDAO.hasFilePassword(currentUser.getUserId())) {
+                NotificationService.showError("Error", "No encryption password is set. Please contact administrator.");
+                return;
+            }
+        } catch (SQLException e) {
+            NotificationService.showError("Error", "Failed to verify encryption password status");
+            return;
+        }
+
+        javafx.stage.DirectoryChooser chooser = new javafx.stage.DirectoryChooser();
+        chooser.setTitle("Select Folder to Encrypt");
+        File folder = chooser.showDialog(getPrimaryWindow());
+        if (folder == null) return;
+
+        Alert warning = new Alert(Alert.AlertType.CONFIRMATION);
+        warning.setTitle("Confirm Folder Encryption");
+        warning.setHeaderText("This will PERMANENTLY encrypt every file in the folder");
+        warning.setContentText(
+            "Folder: " + folder.getAbsolutePath() + "\n\n" +
+                "⚠️ WARNING:\n" +
+                "• All files in the folder and its subfolders will be DELETED\n" +
+                "• Only encrypted versions will remain\n" +
+                "• The folder structure is restored on decrypt\n\n" +
+                "Do you want to continue?"
+        );
+        if (warning.showAndWait().get() != ButtonType.OK) {
+            return;
+        }
+
+        String password = askForFilePassword();
+        if (password == null) {
+            NotificationService.showError("Error", "Password is required for encryption");
+            return;
+        }
+
+        final CompressionService.Mode compress = compressCheckBox != null && compressCheckBox.isSelected()
+                ? CompressionService.Mode.YES : CompressionService.Mode.NO;
+        JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_ENCRYPT, currentUser.getUserId(),
+                compress, folder.getAbsolutePath(), List.of(), List.of());
+        startEncryptBatch(null, folder.toPath(), password, compress, journal);
+    }
+
+    /**
+     * Start or stop automatic encryption of files dropped into the inbox folder.
+     */
+    @FXML
+    private void handleWatchInbox(ActionEvent event) {
+        WatchFolderService watcher = WatchFolderService.getInstance();
+        if (!watchInboxCheckBox.isSelected()) {
+            watcher.stop();
+            NotificationService.showInfo("Inbox", "Stopped watching the inbox folder");
+            return;
+        }
+        if (currentUser == null) {
+            watchInboxCheckBox.setSelected(false);
+            NotificationService.showError("Error", "No user is logged in. Please log in first.");
+            return;
+        }
+
+        String dir = com.rfn.fileencryptor.config.ConfigManager.getWatchDir();
+        if (dir == null) {
+            javafx.stage.DirectoryChooser chooser = new javafx.stage.DirectoryChooser();
+            chooser.setTitle("Select Inbox Folder");
+            File folder = chooser.showDialog(getPrimaryWindow());
+            if (folder == null) {
+                watchInboxCheckBox.setSelected(false);
+                return;
+            }
+            try {
+                com.rfn.fileencryptor.config.ConfigManager.setWatchDir(folder.getAbsolutePath());
+            } catch (Exception e) {
+                System.err.println("Failed to save inbox folder: " + e.getMessage());
+            }
+            dir = folder.getAbsolutePath();
+        }
+
+        String password = askForFilePassword();
+        if (password == null) {
+            watchInboxCheckBox.setSelected(false);
+            NotificationService.showError("Error", "Password is required for encryption");
+            return;
+        }
+
+        try {
+            // Verify and derive the key once; every inbox file reuses it
+            FileService.KeySession session = fileService.openSession(password, currentUser.getUserId());
+            boolean compress = compressCheckBox != null && compressCheckBox.isSelected();
+            // New files reach the table through FileEvents
+            watcher.start(new File(dir), session, compress, null);
+            NotificationService.showSuccess("Inbox",
+                    "Files dropped into " + dir + " will be encrypted automatically");
+        } catch (Exception e) {
+            watchInboxCheckBox.setSelected(false);
+            NotificationService.showError("Inbox", "Could not start watching: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run an encrypt batch over either a fixed file list or a folder walked as it goes.
+     */
+    private void startEncryptBatch(List<File> selectedFiles, java.nio.file.Path root, String password,
+                                   CompressionService.Mode compress, JobJournal.Job journal) {
+        int knownTotal = selectedFiles != null ? selectedFiles.size() : 0;
         // Disable buttons
         encryptButton.setDisable(true);
         decryptButton.setDisable(true);
+        setFolderButtonsDisabled(true);
         if (progressBox != null) {
             progressBox.setVisible(true);
         }
@@ -540,13 +909,13 @@ public class MainController {
         if (progressLabel != null) {
             progressLabel.setText("Current File: 0% - starting...");
         }
-        updateOverallProgress(0, selectedFiles.size(), ACCENT_ENCRYPT);
+        updateOverallProgress(0, knownTotal, ACCENT_ENCRYPT);
 
         final com.rfn.fileencryptor.util.CancellationToken token = new com.rfn.fileencryptor.util.CancellationToken();
         currentCancelToken = token;
         progressWindow.show(getPrimaryWindow(), "Encrypting Files", ACCENT_ENCRYPT, this::requestOperationCancel);
-        progressWindow.setStatusMessage("Preparing encryption...");
-        progressWindow.updateOverallProgress(0, selectedFiles.size());
+        progressWindow.setStatusMessage(root != null ? "Scanning " + root + "..." : "Preparing encryption...");
+        progressWindow.updateOverallProgress(0, knownTotal);
 
         Platform.runLater(() -> {
             if (cancelButton != null) {
@@ -555,74 +924,62 @@ public class MainController {
             }
         });
 
-        // Encrypt files in background (supports multiple files)
-        new Thread(() -> {
-            int total = selectedFiles.size();
-            int completed = 0;
-            int successes = 0;
-            int failures = 0;
-
-            for (File fileToEncrypt : selectedFiles) {
-                final File f = fileToEncrypt;
-                try {
-                    // per-file progress callback
-                    final String perFileAccent = ACCENT_ENCRYPT;
-                    ProgressTracker.ProgressCallback callback = (percentage, processed, ttotal, eta) -> {
-                        Platform.runLater(() -> {
-                            animateProgressBar(progressBar, percentage / 100.0, perFileAccent);
-                            if (progressLabel != null) {
-                                String etaText = (eta > 0) ? String.format(" (ETA: %ds)", eta) : "";
-                                String baseText = String.format("Current File: %.1f%% - %s", percentage, f.getName());
-                                progressLabel.setText(baseText + etaText);
-                            }
-                            String etaText = (eta > 0) ? String.format(" • ETA: %ds", eta) : "";
-                            String detail = String.format("Encrypting %s%s", f.getName(), etaText);
-                            progressWindow.updateCurrentTask(detail, percentage / 100.0);
-                            progressWindow.setStatusMessage(String.format("%,d / %,d bytes processed", processed, ttotal));
-                        });
-                    };
-
-                    FileMetadata metadata = fileService.encryptFile(
-                        f, password, currentUser.getUserId(),
-                        compressCheckBox != null && compressCheckBox.isSelected(), callback, token
-                    );
-
-                    completed++;
-                    successes++;
-                    final int comp = completed;
-                    Platform.runLater(() -> {
-                        updateOverallProgress(comp, total, ACCENT_ENCRYPT);
-                        progressWindow.updateOverallProgress(comp, total);
-                        // per-file notification suppressed
-                        loadUserFiles();
-                    });
-
-                } catch (Exception e) {
-                    System.err.println("Encryption failed for " + f.getName() + ": " + e.getMessage());
-                    e.printStackTrace();
-                    final String msg = e.getMessage();
-                    failures++;
+        // Workers only bump counters; the UI samples them at a fixed rate
+        ProgressAggregator<File> progress = new ProgressAggregator<File>(File::getName,
+                s -> renderBatchProgress(s, "Encrypting", ACCENT_ENCRYPT)) {
+            @Override
+            public void onItemDone(File f, Exception error, int completed, int total) {
+                super.onItemDone(f, error, completed, total);
+                if (error != null) {
                     // per-file error notification suppressed; report in summary
+                    System.err.println("Encryption failed for " + f.getName() + ": " + error.getMessage());
                 }
             }
+        };
+        progress.start();
+
+        // Encrypt files on the shared batch pool (parallel.jobs workers)
+        // One key derivation for the whole batch
+        final java.util.concurrent.Callable<FileService.KeySession> session =
+                fileService.lazySession(password, currentUser.getUserId());
+        java.util.function.Function<File, String> relativeOf =
+                f -> root == null ? null : FolderWalker.relativePath(root, f);
+        JobScheduler.Batch<File, FileMetadata> batch = JobScheduler.getInstance().newBatch(
+                journal.wrap(JobScheduler.splittable(
+                        (f, callback, tk) -> fileService.encryptFile(f, relativeOf.apply(f), session.call(),
+                                compress.appliesTo(f), callback, tk),
+                        (f, tk) -> compress.appliesTo(f) ? null
+                                : fileService.splitEncrypt(f, relativeOf.apply(f), session.call())),
+                        File::getAbsolutePath,
+                        (f, state, first, tk) -> fileService.resumeEncrypt(f, relativeOf.apply(f), state, first,
+                                session.call())),
+                progress, token);
+        batch.limitByDevice(FileService::encryptPaths);
+
+        if (root != null) {
+            // Files are submitted as the walk finds them; the walker seals the batch
+            FolderWalker.feed(root, batch, journal);
+        } else {
+            batch.submitAll(selectedFiles, File::length);
+            batch.seal();
+            showMakespanEstimate(batch, "Encrypting");
+        }
 
+        batch.completion().thenAccept(result -> {
+            journal.close();
             // clear token and hide cancel when done
             currentCancelToken = null;
-            // Snapshot mutable counters for lambda use
-            final int totalEncrypted = successes;
-            final int totalFiles = total;
-            final int totalFailures = failures;
+            String summary = result.summary("Encrypted");
             Platform.runLater(() -> {
+                progress.stop();
                 if (cancelButton != null) cancelButton.setVisible(false);
                 progressWindow.disableCancel();
-                progressWindow.setStatusMessage(String.format("Completed %d of %d file(s). Failures: %d", totalEncrypted, totalFiles, totalFailures));
+                progressWindow.setStatusMessage(result.summary("Completed"));
                 resetProgress();
                 // single summary notification
-                NotificationService.showSuccess("Encryption complete",
-                        String.format("Encrypted %d of %d file(s). Failures: %d", totalEncrypted, totalFiles, totalFailures));
-                
+                NotificationService.showSuccess("Encryption complete", summary);
             });
-        }).start();
+        });
     }
 
     @FXML
@@ -655,9 +1012,17 @@ public class MainController {
         // file's metadata and report failures individually.
 
         // Gather selected files (checkboxes). If none selected, fall back to single selection.
-        List<FileMetadata> selected = filesTable.getItems() == null ? List.of() : filesTable.getItems().stream()
-                .filter(FileMetadata::isSelected)
-                .collect(Collectors.toList());
+        List<FileMetadata> selected;
+        try {
+            selected = loadSelectedFiles(activeList.getQuery(), selection.snapshot());
+        } catch (StaleSelectionException e) {
+            NotificationService.showWarning("Selection changed", e.getMessage());
+            return;
+        } catch (SQLException e) {
+            System.err.println("Failed to load selected files: " + e.getMessage());
+            NotificationService.showError("Error", "Failed to load selected files");
+            return;
+        }
 
         if (selected.isEmpty()) {
             FileMetadata single = filesTable.getSelectionModel().getSelectedItem();
@@ -665,6 +1030,20 @@ public class MainController {
                 NotificationService.showWarning("Warning", "Please select a file (or multiple files) to decrypt");
                 return;
             }
+            if (single.getIv() == null) {
+                // Snapshot rows carry only the listed columns
+                try {
+                    single = fileMetadataDAO.findById(single.getFileId());
+                } catch (SQLException e) {
+                    System.err.println("Failed to load selected file: " + e.getMessage());
+                    NotificationService.showError("Error", "Failed to load selected files");
+                    return;
+                }
+                if (single == null) {
+                    NotificationService.showWarning("Warning", "The selected file no longer exists");
+                    return;
+                }
+            }
             selected = List.of(single);
         }
 
@@ -702,9 +1081,20 @@ public class MainController {
             return;
         }
 
+        final String outDir = com.rfn.fileencryptor.config.ConfigManager.getDecryptDir();
+        JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_DECRYPT, currentUser.getUserId(),
+                CompressionService.Mode.NO, outDir,
+                toDecryptList.stream().map(m -> String.valueOf(m.getFileId())).collect(Collectors.toList()),
+                toDecryptList.stream().map(FileMetadata::getFileSize).collect(Collectors.toList()));
+        startDecryptBatch(toDecryptList, password, outDir, journal);
+    }
+
+    private void startDecryptBatch(List<FileMetadata> toDecryptList, String password, String outDir,
+                                   JobJournal.Job journal) {
         // Disable buttons and show progress
         encryptButton.setDisable(true);
         decryptButton.setDisable(true);
+        setFolderButtonsDisabled(true);
         if (progressBox != null) {
             progressBox.setVisible(true);
         }
@@ -727,79 +1117,165 @@ public class MainController {
             }
         });
 
-        // Decrypt files in background sequentially
-        new Thread(() -> {
-            int total = toDecryptList.size();
-            int completed = 0;
-
-            int failures = 0;
-            int successes = 0;
-            for (FileMetadata m : toDecryptList) {
-                final FileMetadata meta = m;
-                try {
-                    // Verify the file exists before attempting decryption
-                    File encryptedFile = new File(meta.getFilePath());
-                    if (!encryptedFile.exists()) {
-                        Platform.runLater(() -> {
-                            NotificationService.showError("Error", 
-                                "Encrypted file not found: " + meta.getOriginalFilename());
-                        });
-                        failures++;
-                        continue;
-                    }
-
-                    final String perFileAccent = ACCENT_DECRYPT;
-                    ProgressTracker.ProgressCallback callback = (percentage, processed, ttotal, eta) -> {
-                        Platform.runLater(() -> {
-                            animateProgressBar(progressBar, percentage / 100.0, perFileAccent);
-                            if (progressLabel != null) {
-                                String etaText = (eta > 0) ? String.format(" (ETA: %ds)", eta) : "";
-                                String baseText = String.format("Current File: %.1f%% - %s", percentage, meta.getOriginalFilename());
-                                progressLabel.setText(baseText + etaText);
-                            }
-                            String etaText = (eta > 0) ? String.format(" • ETA: %ds", eta) : "";
-                            String detail = String.format("Decrypting %s%s", meta.getOriginalFilename(), etaText);
-                            progressWindow.updateCurrentTask(detail, percentage / 100.0);
-                            progressWindow.setStatusMessage(String.format("%,d / %,d bytes processed", processed, ttotal));
-                        });
-                    };
-
-                    String outDir = com.rfn.fileencryptor.config.ConfigManager.getDecryptDir();
-                    fileService.decryptFile(meta, password, currentUser.getUserId(), outDir, callback, token);
-
-                    completed++;
-                    successes++;
-                    final int comp = completed;
-                    Platform.runLater(() -> {
-                        updateOverallProgress(comp, total, ACCENT_DECRYPT);
-                        progressWindow.updateOverallProgress(comp, total);
-                        // per-file success notification suppressed
-                        loadUserFiles();
-                    });
-
-                } catch (Exception e) {
-                    failures++;
-                    System.err.println("Decryption failed for " + meta.getOriginalFilename() + ": " + e.getMessage());
-                    e.printStackTrace();
-                    final String em = e.getMessage();
+        ProgressAggregator<FileMetadata> progress = new ProgressAggregator<FileMetadata>(
+                FileMetadata::getOriginalFilename, s -> renderBatchProgress(s, "Decrypting", ACCENT_DECRYPT)) {
+            @Override
+            public void onItemDone(FileMetadata meta, Exception error, int completed, int total) {
+                super.onItemDone(meta, error, completed, total);
+                if (error != null) {
                     // per-file error notification suppressed; report in summary
+                    System.err.println("Decryption failed for " + meta.getOriginalFilename() + ": " + error.getMessage());
                 }
             }
-
-            final int totalFailures = failures;
-            final int totalSuccesses = successes;
+        };
+        progress.start();
+
+        // Decrypt files on the shared batch pool (parallel.jobs workers)
+        final Long userId = currentUser.getUserId();
+        JobScheduler.Batch<FileMetadata, Void> batch = JobScheduler.getInstance().submitAll(
+                toDecryptList, m -> m.getFileSize() == null ? 0L : m.getFileSize(),
+                m -> FileService.decryptPaths(m, outDir),
+                journal.wrap(JobScheduler.splittable(
+                        (meta, callback, tk) -> {
+                            requireEncryptedFile(meta);
+                            fileService.decryptFile(meta, password, userId, outDir, callback, tk);
+                            return null;
+                        },
+                        (meta, tk) -> {
+                            requireEncryptedFile(meta);
+                            return fileService.splitDecrypt(meta, password, userId, outDir);
+                        }),
+                        meta -> String.valueOf(meta.getFileId()),
+                        (meta, state, first, tk) -> fileService.resumeDecrypt(meta, state, first, password, userId)),
+                progress, token);
+
+        // Each file derives its key from its own salt
+        batch.expectItemOverheadMs(com.rfn.fileencryptor.util.CryptoUtil.getKdfMillisEstimate());
+        showMakespanEstimate(batch, "Decrypting");
+
+        batch.completion().thenAccept(result -> {
+            journal.close();
             // clear token and hide cancel
             currentCancelToken = null;
+            String summary = result.summary("Decrypted");
             Platform.runLater(() -> {
+                progress.stop();
                 if (cancelButton != null) cancelButton.setVisible(false);
                 progressWindow.disableCancel();
-                progressWindow.setStatusMessage(String.format("Completed %d of %d file(s). Failures: %d", totalSuccesses, total, totalFailures));
+                progressWindow.setStatusMessage(result.summary("Completed"));
                 resetProgress();
                 // Always show a single summary notification
-                NotificationService.showSuccess("Decryption complete",
-                        String.format("Decrypted %d of %d file(s). Failures: %d", totalSuccesses, total, totalFailures));
+                NotificationService.showSuccess("Decryption complete", summary);
             });
-        }).start();
+        });
+    }
+
+    @FXML
+    private void handleDecryptFolder(ActionEvent event) {
+        if (currentUser == null) {
+            NotificationService.showError("Error", "No user is logged in. Please log in first.");
+            return;
+        }
+
+        // Selected folder members, or every file that came from a folder encryption
+        List<FileMetadata> selected;
+        List<FileMetadata> items;
+        try {
+            FileQuery folderQuery = activeList.getQuery().folderMembersOnly();
+            // Resolved against the query it was made on, then narrowed to folder members
+            selected = loadSelectedFiles(activeList.getQuery(), selection.snapshot()).stream()
+                    .filter(m -> m.getRelativePath() != null)
+                    .collect(Collectors.toList());
+            items = selected.isEmpty() ? fileMetadataDAO.findAll(folderQuery) : selected;
+        } catch (StaleSelectionException e) {
+            NotificationService.showWarning("Selection changed", e.getMessage());
+            return;
+        } catch (SQLException e) {
+            System.err.println("Failed to load folder files: " + e.getMessage());
+            NotificationService.showError("Error", "Failed to load folder files");
+            return;
+        }
+        final List<FileMetadata> toDecryptList = items;
+        if (toDecryptList.isEmpty()) {
+            NotificationService.showWarning("Warning", "There are no files from an encrypted folder to decrypt");
+            return;
+        }
+
+        javafx.stage.DirectoryChooser chooser = new javafx.stage.DirectoryChooser();
+        chooser.setTitle("Select Destination for Decrypted Folder(s)");
+        File destination = chooser.showDialog(getPrimaryWindow());
+        if (destination == null) return;
+
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Confirm Folder Decryption");
+        confirm.setHeaderText("Decrypt " + toDecryptList.size() + " file(s) into " + destination.getAbsolutePath());
+        confirm.setContentText("The original folder structure will be recreated there.\n\nContinue?");
+        if (confirm.showAndWait().get() != ButtonType.OK) {
+            return;
+        }
+
+        String password = askForFilePassword();
+        if (password == null) {
+            NotificationService.showError("Error", "Password is required for decryption");
+            return;
+        }
+
+        JobJournal.Job journal = JobJournal.getInstance().begin(JobJournal.OP_DECRYPT, currentUser.getUserId(),
+                CompressionService.Mode.NO, destination.getAbsolutePath(),
+                toDecryptList.stream().map(m -> String.valueOf(m.getFileId())).collect(Collectors.toList()),
+                toDecryptList.stream().map(FileMetadata::getFileSize).collect(Collectors.toList()));
+        startDecryptBatch(toDecryptList, password, destination.getAbsolutePath(), journal);
+    }
+
+    private void setFolderButtonsDisabled(boolean disabled) {
+        if (encryptFolderButton != null) encryptFolderButton.setDisable(disabled);
+        if (decryptFolderButton != null) decryptFolderButton.setDisable(disabled);
+    }
+
+    // Verify the file exists before attempting decryption
+    private void requireEncryptedFile(FileMetadata meta) throws Exception {
+        File encryptedFile = new File(meta.getFilePath());
+        if (!encryptedFile.exists()) {
+            Platform.runLater(() -> NotificationService.showError("Error",
+                    "Encrypted file not found: " + meta.getOriginalFilename()));
+            throw new Exception("Encrypted file not found: " + meta.getFilePath());
+        }
+    }
+
+    /**
+     * Apply one sampled batch snapshot to the inline progress area and the progress window.
+     */
+    private void renderBatchProgress(ProgressAggregator.Snapshot s, String verb, String accent) {
+        List<ProgressAggregator.ActiveItem> active = s.getActive();
+        if (!active.isEmpty()) {
+            String names = active.size() == 1 ? active.get(0).getName()
+                    : String.format("%s (+%d more)", active.get(0).getName(), active.size() - 1);
+            double current = s.getActiveFraction();
+            long eta = s.getMaxEta();
+            animateProgressBar(progressBar, current, accent);
+            if (progressLabel != null) {
+                String etaText = (eta > 0) ? String.format(" (ETA: %ds)", eta) : "";
+                progressLabel.setText(String.format("Current File: %.1f%% - %s", current * 100.0, names) + etaText);
+            }
+            String etaText = (eta > 0) ? String.format(" • ETA: %ds", eta) : "";
+            progressWindow.updateCurrentTask(String.format("%s %s%s", verb, names, etaText), current);
+        }
+        updateOverallProgress(s.getCompleted(), s.getTotal(), accent);
+        progressWindow.updateOverallProgressFraction(s.getFraction(), s.getCompleted(), s.getTotal());
+        if (s.getTotalBytes() > 0) {
+            StringBuilder status = new StringBuilder(String.format("%,d / %,d bytes processed",
+                    s.getProcessedBytes(), s.getTotalBytes()));
+            if (s.getBytesPerSec() > 0) status.append(" • ").append(ProgressTracker.formatRate(s.getBytesPerSec()));
+            if (s.getEtaSeconds() > 0) status.append(String.format(" • ETA: %ds", s.getEtaSeconds()));
+            progressWindow.setStatusMessage(status.toString());
+        }
+    }
+
+    private void showMakespanEstimate(JobScheduler.Batch<?, ?> batch, String verb) {
+        long estimateMs = batch.getEstimatedMakespanMs();
+        if (estimateMs < 1000) return;
+        progressWindow.setStatusMessage(String.format("%s on %d worker(s), estimated %ds",
+                verb, JobScheduler.getInstance().getParallelism(), Math.round(estimateMs / 1000.0)));
     }
 
     @FXML
@@ -909,6 +1385,11 @@ public class MainController {
 
     @FXML
     private void handleLogout(ActionEvent event) {
+        // The inbox session key belongs to this user
+        WatchFolderService.getInstance().stop();
+        FileEvents.getInstance().removeListener(fileEventsListener);
+        if (filenameIndex != null) FileEvents.getInstance().removeListener(filenameIndex);
+        if (buildingIndex != null) FileEvents.getInstance().removeListener(buildingIndex);
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login.fxml"));
             Parent root = loader.load();
@@ -928,6 +1409,7 @@ public class MainController {
     private void resetProgress() {
         encryptButton.setDisable(false);
         decryptButton.setDisable(false);
+        setFolderButtonsDisabled(false);
         if (backupDriveButton != null) {
             backupDriveButton.setDisable(false);
         }
@@ -993,11 +1475,14 @@ public class MainController {
 
     @FXML
     private void handleBackupToGoogleDrive(ActionEvent event) {
+        final FileQuery query = activeList.getQuery();
+        final FileSelection.Snapshot checked = selection.snapshot();
         new Thread(() -> {
             try {
                 Platform.runLater(() -> {
                     encryptButton.setDisable(true);
                     decryptButton.setDisable(true);
+                    setFolderButtonsDisabled(true);
                     if (backupDriveButton != null) {
                         backupDriveButton.setDisable(true);
                     }
@@ -1026,8 +1511,8 @@ public class MainController {
                         com.rfn.fileencryptor.config.ConfigManager.getStorageDir()
                 );
                 // Determine files to back up: selected vs all
-                java.util.List<com.rfn.fileencryptor.model.FileMetadata> selected = (filesTable.getItems() == null) ? java.util.List.of() :
-                        filesTable.getItems().stream().filter(com.rfn.fileencryptor.model.FileMetadata::isSelected).toList();
+                java.util.List<com.rfn.fileencryptor.model.FileMetadata> selected = (query == null) ? java.util.List.of() :
+                        loadSelectedFiles(query, checked);
                 boolean autoAll = (autoBackupCheckBox != null && autoBackupCheckBox.isSelected()) || selected.isEmpty();
 
                 GoogleDriveBackupService.Progress progress = new GoogleDriveBackupService.Progress() {
@@ -1143,9 +1628,9 @@ public class MainController {
                     }
                 };
 
-        // Build the list strictly from the TableView items (do NOT scan the filesystem)
+        // Build the list strictly from the dashboard query (do NOT scan the filesystem)
         java.util.List<com.rfn.fileencryptor.model.FileMetadata> toBackupMetas = autoAll
-            ? (filesTable.getItems() == null ? java.util.List.of() : new java.util.ArrayList<>(filesTable.getItems()))
+            ? (query == null ? java.util.List.of() : fileMetadataDAO.findAll(query))
             : selected;
 
         java.util.List<java.nio.file.Path> paths = toBackupMetas.stream()
@@ -1289,11 +1774,14 @@ public class MainController {
 
     @FXML
     private void handleRestoreFromGoogleDrive(ActionEvent event) {
+        final FileQuery query = activeList.getQuery();
+        final FileSelection.Snapshot checked = selection.snapshot();
         new Thread(() -> {
             try {
                 Platform.runLater(() -> {
                     encryptButton.setDisable(true);
                     decryptButton.setDisable(true);
+                    setFolderButtonsDisabled(true);
                     if (backupDriveButton != null) {
                         backupDriveButton.setDisable(true);
                     }
@@ -1322,8 +1810,8 @@ public class MainController {
                         com.rfn.fileencryptor.config.ConfigManager.getStorageDir()
                 );
 
-                java.util.List<com.rfn.fileencryptor.model.FileMetadata> selected = (filesTable.getItems() == null) ? java.util.List.of() :
-                        filesTable.getItems().stream().filter(com.rfn.fileencryptor.model.FileMetadata::isSelected).toList();
+                java.util.List<com.rfn.fileencryptor.model.FileMetadata> selected = (query == null) ? java.util.List.of() :
+                        loadSelectedFiles(query, checked);
                 boolean autoAll = (autoBackupCheckBox != null && autoBackupCheckBox.isSelected()) || selected.isEmpty();
 
                 GoogleDriveBackupService.Progress progress = new GoogleDriveBackupService.Progress() {
@@ -1538,6 +2026,7 @@ public class MainController {
 
                         // Insert into DB (ignore if already present)
                         fileMetadataDAO.insert(m);
+                        FileEvents.getInstance().fireAdded(m);
                         counts[0]++;
                     } catch (Exception ex) {
                         counts[2]++;
@@ -1557,7 +2046,6 @@ public class MainController {
                     NotificationService.showSuccess("Restore complete",
                             String.format("Restored %d file(s), added %d to dashboard%s",
                                     names.size(), inserted, extra));
-                    loadUserFiles();
                     progressWindow.disableCancel();
                     progressWindow.setStatusMessage(String.format("Restore complete: %d file(s) processed.", names.size()));
                     progressWindow.hide();
@@ -1626,12 +2114,7 @@ public class MainController {
     }
 
     private void updateSelectAllState() {
-        if (filesTable.getItems() == null || filesTable.getItems().isEmpty()) {
-            selectAllCheckBox.setSelected(false);
-            return;
-        }
-        boolean allSelected = filesTable.getItems().stream()
-                .allMatch(FileMetadata::isSelected);
-        selectAllCheckBox.setSelected(allSelected);
+        if (selectAllCheckBox == null) return;
+        selectAllCheckBox.setSelected(selection.isAllSelected());
     }
 }
@@ -2,6 +2,7 @@ package com.rfn.fileencryptor.controller;
 
 import java.util.Optional;
 
+import com.rfn.fileencryptor.config.ConfigManager;
 import com.rfn.fileencryptor.dao.FilePasswordDAO;
 import com.rfn.fileencryptor.model.FilePassword;
 import com.rfn.fileencryptor.model.User;
@@ -9,15 +10,29 @@ import com.rfn.fileencryptor.service.AuthenticationService;
 import com.rfn.fileencryptor.service.FileService;
 import com.rfn.fileencryptor.service.NotificationService;
 import com.rfn.fileencryptor.util.CryptoUtil;
+import com.rfn.fileencryptor.util.DbMetrics;
+import com.rfn.fileencryptor.util.IoGovernor;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.Separator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 public class SettingsController {
 
@@ -227,6 +242,136 @@ public class SettingsController {
         }
     }
 
+    @FXML
+    private void handleIoLimits() {
+        Dialog<ButtonType> dlg = new Dialog<>();
+        dlg.setTitle("I/O Limits");
+        dlg.setHeaderText("Limit disk and network usage per operation (0 = unlimited)");
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new javafx.geometry.Insets(20));
+        grid.add(new Label("MB/s"), 1, 0);
+        grid.add(new Label("Ops/s"), 2, 0);
+
+        IoGovernor.IoClass[] classes = IoGovernor.IoClass.values();
+        String[] names = {"Encrypt / decrypt", "Secure delete", "Drive backup", "Password re-encryption"};
+        TextField[] mbFields = new TextField[classes.length];
+        TextField[] opsFields = new TextField[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            mbFields[i] = new TextField(String.valueOf(ConfigManager.getIoMBps(classes[i].key())));
+            opsFields[i] = new TextField(String.valueOf(ConfigManager.getIoOpsPerSec(classes[i].key())));
+            mbFields[i].setPrefColumnCount(6);
+            opsFields[i].setPrefColumnCount(6);
+            grid.add(new Label(names[i] + ":"), 0, i + 1);
+            grid.add(mbFields[i], 1, i + 1);
+            grid.add(opsFields[i], 2, i + 1);
+        }
+
+        dlg.getDialogPane().setContent(grid);
+        dlg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        Optional<ButtonType> res = dlg.showAndWait();
+        if (res.isEmpty() || res.get() != ButtonType.OK) return;
+
+        try {
+            for (int i = 0; i < classes.length; i++) {
+                ConfigManager.setIoMBps(classes[i].key(), Integer.parseInt(mbFields[i].getText().trim()));
+                ConfigManager.setIoOpsPerSec(classes[i].key(), Integer.parseInt(opsFields[i].getText().trim()));
+            }
+            // Running operations pick up the new limits on their next read/write
+            NotificationService.showSuccess("Success", "I/O limits updated");
+        } catch (NumberFormatException e) {
+            NotificationService.showError("Error", "Limits must be whole numbers");
+        } catch (IllegalArgumentException e) {
+            NotificationService.showError("Error", e.getMessage());
+        } catch (Exception e) {
+            NotificationService.showError("Error", "Failed to save I/O limits: " + e.getMessage());
+        }
+    }
+
+    // Live pool gauges and per-statement timings; the same figures are on JMX
+    @FXML
+    private void handleDbDiagnostics() {
+        DbMetrics metrics = DbMetrics.getInstance();
+        Dialog<ButtonType> dlg = new Dialog<>();
+        dlg.setTitle("Database Diagnostics");
+        dlg.setHeaderText("Connection pool and query timings since startup");
+
+        GridPane pool = new GridPane();
+        pool.setHgap(20);
+        pool.setVgap(6);
+        String[] names = {"Connections (active / idle / max):", "Threads waiting for a connection:",
+                "Connection wait (mean / p95 / max):", "Connection timeouts:",
+                "Query timeouts (limit):", "Slow queries (threshold):"};
+        Label[] values = new Label[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = new Label();
+            pool.add(new Label(names[i]), 0, i);
+            pool.add(values[i], 1, i);
+        }
+
+        TableView<DbMetrics.StatementStats> table = new TableView<>();
+        table.setPrefSize(760, 300);
+        table.getColumns().add(column("Statement", "name", 230));
+        table.getColumns().add(column("Calls", "count", 70));
+        table.getColumns().add(column("Errors", "errors", 60));
+        table.getColumns().add(column("Mean µs", "meanMicros", 75));
+        table.getColumns().add(column("p50 µs", "p50Micros", 75));
+        table.getColumns().add(column("p95 µs", "p95Micros", 75));
+        table.getColumns().add(column("p99 µs", "p99Micros", 75));
+        table.getColumns().add(column("Max µs", "maxMicros", 80));
+        table.getColumns().add(column("Total ms", "totalMillis", 80));
+        table.setPlaceholder(new Label("No statements run yet"));
+
+        ListView<String> slow = new ListView<>();
+        slow.setPrefHeight(110);
+        slow.setPlaceholder(new Label("No slow queries"));
+
+        Runnable refresh = () -> {
+            values[0].setText(metrics.getPoolActiveConnections() + " / " + metrics.getPoolIdleConnections()
+                    + " / " + metrics.getPoolMaxConnections());
+            values[1].setText(String.valueOf(metrics.getPoolPendingThreads()));
+            values[2].setText(String.format("%d / %d / %d µs (%d acquired)", metrics.getPoolWaitMeanMicros(),
+                    metrics.getPoolWaitP95Micros(), metrics.getPoolWaitMaxMicros(), metrics.getPoolWaitCount()));
+            values[3].setText(String.valueOf(metrics.getConnectionTimeouts()));
+            values[4].setText(metrics.getQueryTimeouts() + (metrics.getQueryTimeoutSeconds() > 0
+                    ? " (" + metrics.getQueryTimeoutSeconds() + " s)" : " (none)"));
+            values[5].setText(metrics.getSlowQueries() + (metrics.getSlowQueryMs() > 0
+                    ? " (" + metrics.getSlowQueryMs() + " ms)" : " (off)"));
+            table.setItems(FXCollections.observableArrayList(metrics.getStatements()));
+            slow.setItems(FXCollections.observableArrayList(metrics.getRecentSlowQueries()));
+        };
+        refresh.run();
+        Timeline timer = new Timeline(new KeyFrame(Duration.seconds(1), e -> refresh.run()));
+        timer.setCycleCount(Timeline.INDEFINITE);
+        timer.play();
+
+        VBox content = new VBox(10, pool, new Separator(), table, new Label("Recent slow queries:"), slow);
+        content.setPadding(new javafx.geometry.Insets(10));
+        dlg.getDialogPane().setContent(content);
+
+        ButtonType reset = new ButtonType("Reset", ButtonBar.ButtonData.LEFT);
+        dlg.getDialogPane().getButtonTypes().addAll(reset, ButtonType.CLOSE);
+        // Reset clears the figures without closing the dialog
+        dlg.getDialogPane().lookupButton(reset).addEventFilter(ActionEvent.ACTION, e -> {
+            metrics.resetStatistics();
+            refresh.run();
+            e.consume();
+        });
+
+        dlg.showAndWait();
+        timer.stop();
+    }
+
+    private static TableColumn<DbMetrics.StatementStats, Object> column(String title, String property, double width) {
+        TableColumn<DbMetrics.StatementStats, Object> col = new TableColumn<>(title);
+        col.setCellValueFactory(new PropertyValueFactory<>(property));
+        col.setPrefWidth(width);
+        return col;
+    }
+
     @FXML
     private void handleClose() {
         // Find the settings window and close it
@@ -4,14 +4,21 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.config.DatabaseBackend;
 import com.rfn.fileencryptor.model.AuditLog;
 import com.rfn.fileencryptor.util.DatabaseUtil;
 
@@ -19,61 +26,219 @@ public class AuditLogDAO {
 
     private static final Logger logger = LoggerFactory.getLogger(AuditLogDAO.class);
 
-    public Long insert(AuditLog log) throws SQLException {
-    String sql = "INSERT INTO AUDIT_LOGS " +
-        "(user_id, file_id, operation_type, operation_status, file_size, duration_ms, error_message, timestamp_created) " +
-        "VALUES (?, ?, ?, ?, ?, ?, ?, SYSTIMESTAMP)";
+    // Everything mapResultSetToAuditLog reads
+    private static final String COLUMNS = "log_id, user_id, file_id, operation_type, operation_status, " +
+            "file_size, duration_ms, throughput_mbps, error_message, timestamp_created";
 
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, new String[]{"log_id"})) {
+    private static final DateTimeFormatter PARTITION_KEY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-            pstmt.setLong(1, log.getUserId());
+    private static final String INSERT_SQL = "INSERT INTO AUDIT_LOGS " +
+            "(user_id, file_id, operation_type, operation_status, file_size, duration_ms, throughput_mbps, error_message, timestamp_created) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-            if (log.getFileId() != null) {
-                pstmt.setLong(2, log.getFileId());
-            } else {
-                pstmt.setNull(2, Types.NUMERIC);
-            }
+    private final AuditStatsDAO auditStatsDAO = new AuditStatsDAO();
 
-            pstmt.setString(3, log.getOperationType());
-            pstmt.setString(4, log.getOperationStatus());
+    /**
+     * Insert one entry and add it to the daily rollups, in one transaction.
+     */
+    public Long insert(AuditLog log) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL, new String[]{"log_id"})) {
+                bindInsert(pstmt, log);
+                int affected = pstmt.executeUpdate();
+
+                if (affected > 0) {
+                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            long logId = rs.getLong(1);
+                            auditStatsDAO.add(conn, List.of(log));
+                            conn.commit();
+                            return logId;
+                        }
+                    }
+                }
 
-            if (log.getFileSize() != null) {
-                pstmt.setLong(5, log.getFileSize());
-            } else {
-                pstmt.setNull(5, Types.NUMERIC);
+                throw new SQLException("Failed to create audit log");
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
+        }
+    }
 
-            if (log.getDurationMs() != null) {
-                pstmt.setLong(6, log.getDurationMs());
-            } else {
-                pstmt.setNull(6, Types.NUMERIC);
+    /**
+     * Insert several entries as one JDBC batch and add them to the daily rollups, in a
+     * single transaction. Nothing is kept if any row fails.
+     */
+    public void insertBatch(List<AuditLog> logs) throws SQLException {
+        if (logs.isEmpty()) return;
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                for (AuditLog log : logs) {
+                    bindInsert(pstmt, log);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                auditStatsDAO.add(conn, logs);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
+        }
+    }
 
-            pstmt.setString(7, log.getErrorMessage());
+    // The entry's own timestamp is stored, since it may be written some time after the event
+    private static void bindInsert(PreparedStatement pstmt, AuditLog log) throws SQLException {
+        // Set here so the rollups count the entry on the same day as the table
+        if (log.getTimestamp() == null) log.setTimestamp(new Timestamp(System.currentTimeMillis()));
+        pstmt.setLong(1, log.getUserId());
 
-            int affected = pstmt.executeUpdate();
+        if (log.getFileId() != null) {
+            pstmt.setLong(2, log.getFileId());
+        } else {
+            pstmt.setNull(2, Types.NUMERIC);
+        }
 
-            if (affected > 0) {
-                try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        return rs.getLong(1);
-                    }
-                }
-            }
+        pstmt.setString(3, log.getOperationType());
+        pstmt.setString(4, log.getOperationStatus());
 
-            throw new SQLException("Failed to create audit log");
+        if (log.getFileSize() != null) {
+            pstmt.setLong(5, log.getFileSize());
+        } else {
+            pstmt.setNull(5, Types.NUMERIC);
         }
+
+        if (log.getDurationMs() != null) {
+            pstmt.setLong(6, log.getDurationMs());
+        } else {
+            pstmt.setNull(6, Types.NUMERIC);
+        }
+
+        if (log.getThroughputMbps() != null) {
+            pstmt.setDouble(7, log.getThroughputMbps());
+        } else {
+            pstmt.setNull(7, Types.NUMERIC);
+        }
+
+        pstmt.setString(8, log.getErrorMessage());
+        pstmt.setTimestamp(9, log.getTimestamp());
     }
 
+    /**
+     * Every log entry of a user, newest first. Materializes every row; prefer
+     * {@link #openByUserId} or {@link #findPageByUserId} for long histories.
+     */
     public List<AuditLog> findByUserId(Long userId) throws SQLException {
         List<AuditLog> logs = new ArrayList<>();
-    String sql = "SELECT * FROM AUDIT_LOGS WHERE user_id = ? ORDER BY timestamp_created DESC";
 
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (RowCursor<AuditLog> cursor = openByUserId(userId, null, null, null)) {
+            while (cursor.next()) {
+                logs.add(cursor.get());
+            }
+        }
 
-            pstmt.setLong(1, userId);
+        return logs;
+    }
+
+    public List<AuditLog> findByUserIdAndDateRange(Long userId, Timestamp startDate, Timestamp endDate)
+            throws SQLException {
+        return findByUserIdAndDateRange(userId, startDate, endDate, null);
+    }
+
+    /**
+     * A user's entries in a date range, newest first, of one operation type (or all when
+     * operationType is null).
+     */
+    public List<AuditLog> findByUserIdAndDateRange(Long userId, Timestamp startDate, Timestamp endDate,
+                                                   String operationType) throws SQLException {
+        List<AuditLog> logs = new ArrayList<>();
+
+        try (RowCursor<AuditLog> cursor = openByUserId(userId, startDate, endDate, operationType)) {
+            while (cursor.next()) {
+                logs.add(cursor.get());
+            }
+        }
+
+        return logs;
+    }
+
+    /**
+     * A user's log entries, newest first, optionally limited to a date range (either
+     * bound may be null) and an operation type (null for all), read as the driver fetches
+     * them.
+     */
+    public RowCursor<AuditLog> openByUserId(Long userId, Timestamp startDate, Timestamp endDate,
+                                            String operationType) throws SQLException {
+        return openByUserId(userId, startDate, endDate, operationType, ConfigManager.getDbFetchSize());
+    }
+
+    /**
+     * As {@link #openByUserId(Long, Timestamp, Timestamp, String)}, fetching fetchSize rows
+     * per round trip (exports read far more rows than a screen shows).
+     */
+    public RowCursor<AuditLog> openByUserId(Long userId, Timestamp startDate, Timestamp endDate,
+                                            String operationType, int fetchSize) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM AUDIT_LOGS WHERE user_id = ?");
+        if (startDate != null) sql.append(" AND timestamp_created >= ?");
+        if (endDate != null) sql.append(" AND timestamp_created <= ?");
+        if (operationType != null) sql.append(" AND operation_type = ?");
+        sql.append(" ORDER BY timestamp_created DESC, log_id DESC");
+
+        Connection conn = DatabaseUtil.getConnection();
+        PreparedStatement pstmt;
+        try {
+            pstmt = conn.prepareStatement(sql.toString());
+            int idx = 1;
+            pstmt.setLong(idx++, userId);
+            if (startDate != null) pstmt.setTimestamp(idx++, startDate);
+            if (endDate != null) pstmt.setTimestamp(idx++, endDate);
+            if (operationType != null) pstmt.setString(idx, operationType);
+            pstmt.setFetchSize(fetchSize);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return RowCursor.open(conn, pstmt, this::mapResultSetToAuditLog);
+    }
+
+    /**
+     * Keyset page of a user's log entries, newest first: up to limit entries older than
+     * (afterTimestamp, afterLogId), or the newest entries when afterLogId is null.
+     * Continue from the last entry's timestamp and log id.
+     */
+    public List<AuditLog> findPageByUserId(Long userId, Timestamp afterTimestamp, Long afterLogId, int limit)
+            throws SQLException {
+        List<AuditLog> logs = new ArrayList<>(limit);
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM AUDIT_LOGS WHERE user_id = ?");
+        if (afterLogId != null) {
+            sql.append(" AND (timestamp_created < ? OR (timestamp_created = ? AND log_id < ?))");
+        }
+        sql.append(" ORDER BY timestamp_created DESC, log_id DESC FETCH FIRST ? ROWS ONLY");
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            int idx = 1;
+            pstmt.setLong(idx++, userId);
+            if (afterLogId != null) {
+                pstmt.setTimestamp(idx++, afterTimestamp);
+                pstmt.setTimestamp(idx++, afterTimestamp);
+                pstmt.setLong(idx++, afterLogId);
+            }
+            pstmt.setInt(idx, limit);
+            pstmt.setFetchSize(limit);
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
@@ -85,19 +250,23 @@ public class AuditLogDAO {
         return logs;
     }
 
-    public List<AuditLog> findByUserIdAndDateRange(Long userId, Timestamp startDate, Timestamp endDate)
+    public List<AuditLog> findRecentByUserId(Long userId, int limit) throws SQLException {
+        return findPageByUserId(userId, null, null, limit);
+    }
+
+    public List<AuditLog> findByOperationType(Long userId, String operationType)
             throws SQLException {
         List<AuditLog> logs = new ArrayList<>();
-    String sql = "SELECT * FROM AUDIT_LOGS " +
-        "WHERE user_id = ? AND timestamp_created BETWEEN ? AND ? " +
-        "ORDER BY timestamp_created DESC";
+        String sql = "SELECT " + COLUMNS + " FROM AUDIT_LOGS " +
+                "WHERE user_id = ? AND operation_type = ? " +
+                "ORDER BY timestamp_created DESC, log_id DESC";
 
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, userId);
-            pstmt.setTimestamp(2, startDate);
-            pstmt.setTimestamp(3, endDate);
+            pstmt.setString(2, operationType);
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
@@ -105,53 +274,134 @@ public class AuditLogDAO {
                 }
             }
         }
+
         return logs;
     }
 
-    public List<AuditLog> findRecentByUserId(Long userId, int limit) throws SQLException {
-        List<AuditLog> logs = new ArrayList<>();
-    String sql = "SELECT * FROM AUDIT_LOGS " +
-        "WHERE user_id = ? " +
-        "ORDER BY timestamp_created DESC " +
-        "FETCH FIRST ? ROWS ONLY";
+    /**
+     * Log ids of a user's entries with from <= timestamp < to.
+     */
+    public Set<Long> findLogIds(Long userId, Timestamp from, Timestamp to) throws SQLException {
+        Set<Long> ids = new HashSet<>();
+        String sql = "SELECT log_id FROM AUDIT_LOGS WHERE user_id = ? AND timestamp_created >= ? AND timestamp_created < ?";
 
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, userId);
-            pstmt.setInt(2, limit);
+            pstmt.setTimestamp(2, from);
+            pstmt.setTimestamp(3, to);
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    logs.add(mapResultSetToAuditLog(rs));
+                    ids.add(rs.getLong(1));
                 }
             }
         }
 
-        return logs;
+        return ids;
     }
 
-    public List<AuditLog> findByOperationType(Long userId, String operationType)
+    /**
+     * Timestamp of the user's oldest entry in the table, or null when there is none.
+     */
+    public Timestamp findOldestTimestamp(Long userId) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT MIN(timestamp_created) FROM AUDIT_LOGS WHERE user_id = ?")) {
+            pstmt.setLong(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getTimestamp(1) : null;
+            }
+        }
+    }
+
+    /**
+     * A user's entries with from <= timestamp < to, oldest first. Used to archive a month;
+     * read as the driver fetches them.
+     */
+    public RowCursor<AuditLog> openRange(Long userId, Timestamp from, Timestamp to) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM AUDIT_LOGS " +
+                "WHERE user_id = ? AND timestamp_created >= ? AND timestamp_created < ? " +
+                "ORDER BY timestamp_created, log_id";
+
+        Connection conn = DatabaseUtil.getConnection();
+        PreparedStatement pstmt;
+        try {
+            pstmt = conn.prepareStatement(sql);
+            pstmt.setLong(1, userId);
+            pstmt.setTimestamp(2, from);
+            pstmt.setTimestamp(3, to);
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return RowCursor.open(conn, pstmt, this::mapResultSetToAuditLog);
+    }
+
+    /**
+     * Delete a user's entries with from <= timestamp < to and log id up to maxLogId (the
+     * newest one archived), committing every chunk rows so undo stays small.
+     *
+     * @return number of entries deleted
+     */
+    public long deleteRange(Long userId, Timestamp from, Timestamp to, long maxLogId, int chunk)
             throws SQLException {
-        List<AuditLog> logs = new ArrayList<>();
-    String sql = "SELECT * FROM AUDIT_LOGS " +
-        "WHERE user_id = ? AND operation_type = ? " +
-        "ORDER BY timestamp_created DESC";
+        String sql = "DELETE FROM AUDIT_LOGS WHERE user_id = ? AND timestamp_created >= ? " +
+                "AND timestamp_created < ? AND log_id <= ? AND ROWNUM <= ?";
+        long total = 0;
 
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, userId);
-            pstmt.setString(2, operationType);
+            pstmt.setTimestamp(2, from);
+            pstmt.setTimestamp(3, to);
+            pstmt.setLong(4, maxLogId);
+            pstmt.setInt(5, chunk);
+            int n;
+            do {
+                n = pstmt.executeUpdate();
+                total += n;
+            } while (n == chunk);
+        }
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    logs.add(mapResultSetToAuditLog(rs));
-                }
+        return total;
+    }
+
+    /**
+     * On a partitioned AUDIT_LOGS (Oracle), drop the partition holding the given moment if
+     * no entries are left in it. Does nothing on an unpartitioned table; the initial
+     * range partition of an interval-partitioned table cannot be dropped and is kept.
+     *
+     * @return whether a partition was dropped
+     */
+    public boolean dropPartitionIfEmpty(LocalDateTime at) throws SQLException {
+        if (DatabaseUtil.getBackend() != DatabaseBackend.ORACLE) return false;
+        // DDL cannot take bind variables; the literal is built from a LocalDateTime only
+        String partition = "PARTITION FOR (TIMESTAMP '" + PARTITION_KEY_FORMAT.format(at) + "')";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT COUNT(*) FROM USER_PART_TABLES WHERE TABLE_NAME = 'AUDIT_LOGS'")) {
+                if (!rs.next() || rs.getInt(1) == 0) return false;
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM AUDIT_LOGS " + partition + " WHERE ROWNUM = 1")) {
+                if (rs.next()) return false;
+            }
+            try {
+                stmt.execute("ALTER TABLE AUDIT_LOGS DROP " + partition + " UPDATE GLOBAL INDEXES");
+                return true;
+            } catch (SQLException e) {
+                // ORA-14758: the last range partition of an interval table stays
+                logger.debug("Kept audit partition for {}: {}", at, e.getMessage());
+                return false;
             }
         }
-
-        return logs;
     }
 
     private AuditLog mapResultSetToAuditLog(ResultSet rs) throws SQLException {
@@ -177,6 +427,11 @@ public class AuditLogDAO {
             log.setDurationMs(duration);
         }
 
+        double throughput = rs.getDouble("throughput_mbps");
+        if (!rs.wasNull()) {
+            log.setThroughputMbps(throughput);
+        }
+
     log.setErrorMessage(rs.getString("error_message"));
     log.setTimestamp(rs.getTimestamp("timestamp_created"));
 
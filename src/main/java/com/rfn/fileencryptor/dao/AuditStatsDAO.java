@@ -0,0 +1,232 @@
+package com.rfn.fileencryptor.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.model.AuditLog;
+import com.rfn.fileencryptor.model.OperationStats;
+import com.rfn.fileencryptor.util.DatabaseUtil;
+
+/**
+ * Daily rollups of AUDIT_LOGS in AUDIT_DAILY_STATS: per user, day and operation type, the
+ * number of entries, failures, bytes, total duration and a duration histogram.
+ *
+ * Rows are added to in the transaction that inserts the entries ({@link AuditLogDAO}), so
+ * they always agree with the table, and are kept when the retention job archives the
+ * entries. Statistics over a year read a few hundred rows instead of every entry.
+ */
+public class AuditStatsDAO {
+
+    private static final String COLUMNS = "op_count, failure_count, total_bytes, total_duration_ms, duration_hist";
+
+    private static final String KEY = "user_id = ? AND stat_day = ? AND operation_type = ?";
+
+    /**
+     * Add entries to the rollups on the caller's connection, as part of its transaction.
+     */
+    public void add(Connection conn, Collection<AuditLog> logs) throws SQLException {
+        Map<Key, OperationStats> deltas = new LinkedHashMap<>();
+        for (AuditLog log : logs) {
+            accumulate(deltas, log.getUserId(), log.getOperationType(), log.getOperationStatus(),
+                    log.getFileSize(), log.getDurationMs(), log.getTimestamp());
+        }
+        apply(conn, deltas);
+    }
+
+    /**
+     * Fill the rollups from the entries in AUDIT_LOGS. Run once, when the rollup table is
+     * created on a database that already holds entries.
+     *
+     * @return number of entries counted
+     */
+    public long rebuild(Connection conn) throws SQLException {
+        String sql = "SELECT user_id, operation_type, operation_status, file_size, duration_ms, timestamp_created " +
+                "FROM AUDIT_LOGS";
+        Map<Key, OperationStats> deltas = new LinkedHashMap<>();
+        long entries = 0;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long size = rs.getLong("file_size");
+                    Long fileSize = rs.wasNull() ? null : size;
+                    long duration = rs.getLong("duration_ms");
+                    Long durationMs = rs.wasNull() ? null : duration;
+                    accumulate(deltas, rs.getLong("user_id"), rs.getString("operation_type"),
+                            rs.getString("operation_status"), fileSize, durationMs,
+                            rs.getTimestamp("timestamp_created"));
+                    entries++;
+                }
+            }
+        }
+        apply(conn, deltas);
+        return entries;
+    }
+
+    /**
+     * A user's statistics for from <= day <= to, one row per period and operation type,
+     * oldest period first. operationType may be null for all types.
+     */
+    public List<OperationStats> findByUser(Long userId, LocalDate from, LocalDate to, String operationType,
+                                           OperationStats.Period period) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT stat_day, operation_type, ").append(COLUMNS)
+                .append(" FROM AUDIT_DAILY_STATS WHERE user_id = ? AND stat_day >= ? AND stat_day <= ?");
+        if (operationType != null) sql.append(" AND operation_type = ?");
+
+        Map<Key, OperationStats> merged = new LinkedHashMap<>();
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            int idx = 1;
+            pstmt.setLong(idx++, userId);
+            pstmt.setObject(idx++, from);
+            pstmt.setObject(idx++, to);
+            if (operationType != null) pstmt.setString(idx, operationType);
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate start = period.startOf(rs.getObject("stat_day", LocalDate.class), from);
+                    String op = rs.getString("operation_type");
+                    OperationStats stats = merged.computeIfAbsent(new Key(userId, start, op),
+                            k -> new OperationStats(start, op));
+                    addRow(stats, rs);
+                }
+            }
+        }
+
+        List<OperationStats> result = new ArrayList<>(merged.values());
+        result.sort(Comparator.comparing(OperationStats::getPeriodStart)
+                .thenComparing(OperationStats::getOperationType));
+        return result;
+    }
+
+    private static void addRow(OperationStats stats, ResultSet rs) throws SQLException {
+        stats.add(rs.getLong("op_count"), rs.getLong("failure_count"), rs.getLong("total_bytes"),
+                rs.getLong("total_duration_ms"), rs.getString("duration_hist"));
+    }
+
+    private static void accumulate(Map<Key, OperationStats> deltas, Long userId, String operationType, String status,
+                                   Long fileSize, Long durationMs, Timestamp timestamp) {
+        if (userId == null || operationType == null) return;
+        LocalDate day = (timestamp != null ? timestamp.toLocalDateTime() : LocalDateTime.now()).toLocalDate();
+        deltas.computeIfAbsent(new Key(userId, day, operationType), k -> new OperationStats(day, operationType))
+                .addEntry(status, fileSize, durationMs);
+    }
+
+    // Merge each delta into its row, locked while it is read back, or insert the row
+    private static void apply(Connection conn, Map<Key, OperationStats> deltas) throws SQLException {
+        if (deltas.isEmpty()) return;
+        List<Map.Entry<Key, OperationStats>> missing = update(conn, deltas.entrySet());
+        if (missing.isEmpty()) return;
+
+        // New rows are rare (first entry of a user, day and type) and are inserted one by one,
+        // so a row another transaction inserted since the SELECT fails alone and is merged instead
+        List<Map.Entry<Key, OperationStats>> raced = new ArrayList<>();
+        try (PreparedStatement insert = conn.prepareStatement("INSERT INTO AUDIT_DAILY_STATS " +
+                "(user_id, stat_day, operation_type, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (Map.Entry<Key, OperationStats> e : missing) {
+                bindKey(insert, 1, e.getKey());
+                bindTotals(insert, 4, e.getValue());
+                try {
+                    insert.executeUpdate();
+                } catch (SQLException ex) {
+                    if (!isDuplicateKey(ex)) throw ex;
+                    raced.add(e);
+                }
+            }
+        }
+        if (raced.isEmpty()) return;
+        // The competing insert has committed (the unique check waited for it), so the row is there now
+        if (!update(conn, raced).isEmpty()) {
+            throw new SQLException("Daily statistics row disappeared while it was being merged");
+        }
+    }
+
+    // Add each delta to its existing row; returns the deltas that have no row yet
+    private static List<Map.Entry<Key, OperationStats>> update(Connection conn,
+            Collection<Map.Entry<Key, OperationStats>> deltas) throws SQLException {
+        List<Map.Entry<Key, OperationStats>> missing = new ArrayList<>();
+        try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT " + COLUMNS + " FROM AUDIT_DAILY_STATS WHERE " + KEY + " FOR UPDATE");
+             PreparedStatement update = conn.prepareStatement("UPDATE AUDIT_DAILY_STATS SET op_count = ?, " +
+                     "failure_count = ?, total_bytes = ?, total_duration_ms = ?, duration_hist = ? WHERE " + KEY)) {
+
+            for (Map.Entry<Key, OperationStats> e : deltas) {
+                Key k = e.getKey();
+                bindKey(select, 1, k);
+                OperationStats row = new OperationStats(k.day, k.operationType);
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next()) {
+                        missing.add(e);
+                        continue;
+                    }
+                    addRow(row, rs);
+                }
+                row.add(e.getValue());
+                bindTotals(update, 1, row);
+                bindKey(update, 6, k);
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+        return missing;
+    }
+
+    // Primary key already taken: ORA-00001 on Oracle, SQLSTATE 23505 on H2
+    private static boolean isDuplicateKey(SQLException e) {
+        return e.getErrorCode() == 1 || "23505".equals(e.getSQLState());
+    }
+
+    private static void bindKey(PreparedStatement pstmt, int idx, Key k) throws SQLException {
+        pstmt.setLong(idx, k.userId);
+        pstmt.setObject(idx + 1, k.day);
+        pstmt.setString(idx + 2, k.operationType);
+    }
+
+    private static void bindTotals(PreparedStatement pstmt, int idx, OperationStats s) throws SQLException {
+        pstmt.setLong(idx, s.getCount());
+        pstmt.setLong(idx + 1, s.getFailures());
+        pstmt.setLong(idx + 2, s.getTotalBytes());
+        pstmt.setLong(idx + 3, s.getTotalDurationMs());
+        pstmt.setString(idx + 4, s.getDurationHistogram());
+    }
+
+    private static final class Key {
+        final long userId;
+        final LocalDate day;
+        final String operationType;
+
+        Key(long userId, LocalDate day, String operationType) {
+            this.userId = userId;
+            this.day = day;
+            this.operationType = operationType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return userId == k.userId && day.equals(k.day) && operationType.equals(k.operationType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, day, operationType);
+        }
+    }
+}
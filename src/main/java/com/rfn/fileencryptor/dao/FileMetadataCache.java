@@ -0,0 +1,247 @@
+package com.rfn.fileencryptor.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.rfn.fileencryptor.model.FileMetadata;
+
+/**
+ * Process-wide cache behind {@link FileMetadataDAO}.
+ *
+ * Rows are kept by file id, and dashboard query results (counts and pages) by query and
+ * position. Writes through the DAO update cached rows in place and bump a per-owner change
+ * counter; a cached result is only used while its owner's counter is unchanged. Everything
+ * is size-bounded and evicted least-recently-used. Callers always get copies, so editing a
+ * returned row never changes the cache.
+ *
+ * Every write also bumps the owner's counter in USERS.files_version, in the same
+ * transaction. Before answering from the cache the DAO reads that counter (one primary-key
+ * lookup, see {@link #sync}); if another process (the CLI, the daemon, a second app over
+ * AUTO_SERVER) wrote since, everything cached for the owner is dropped. Stored filenames are
+ * only cached as existing, never as absent.
+ */
+public final class FileMetadataCache {
+
+    private static final int MAX_ROWS = 20_000;
+    private static final int MAX_RESULTS = 256;
+    private static final int MAX_STORED_NAMES = 50_000;
+
+    private static volatile FileMetadataCache instance;
+
+    private final Map<Long, FileMetadata> rows = lru(MAX_ROWS);
+    private final Map<ResultKey, Result> results = lru(MAX_RESULTS);
+    // Stored filenames known to exist; stored names are unique
+    private final Map<String, Boolean> storedNames = lru(MAX_STORED_NAMES);
+    private final Map<Long, Long> versions = new HashMap<>();
+    // USERS.files_version of each owner as last seen; the cache reflects that state
+    private final Map<Long, Long> dbVersions = new HashMap<>();
+    // Bumped when a change cannot be tied to one owner; part of every owner's version
+    private long globalVersion;
+
+    public static FileMetadataCache getInstance() {
+        if (instance == null) {
+            synchronized (FileMetadataCache.class) {
+                if (instance == null) {
+                    instance = new FileMetadataCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private FileMetadataCache() {
+    }
+
+    /**
+     * Forget everything cached for an owner, e.g. after another process may have changed
+     * their files.
+     */
+    public synchronized void invalidateOwner(Long ownerId) {
+        bump(ownerId);
+        rows.values().removeIf(m -> Objects.equals(ownerId, m.getOwnerId()));
+        storedNames.clear();
+    }
+
+    /**
+     * Owner's change counter as just read from the database; drops the owner's cached
+     * rows and results if it moved since last seen.
+     */
+    synchronized void sync(Long ownerId, long dbVersion) {
+        Long seen = dbVersions.put(ownerId, dbVersion);
+        if (seen == null || seen != dbVersion) invalidateOwner(ownerId);
+    }
+
+    /**
+     * This process committed a write that took the owner's counter to dbVersion. Unless
+     * someone else wrote in between, the cache stays valid (the caller updates it next).
+     */
+    synchronized void wrote(Long ownerId, long dbVersion) {
+        if (ownerId == null) return;
+        Long seen = dbVersions.put(ownerId, dbVersion);
+        if (seen == null || seen != dbVersion - 1) invalidateOwner(ownerId);
+    }
+
+    synchronized FileMetadata getRow(Long fileId) {
+        FileMetadata m = rows.get(fileId);
+        return m == null ? null : copy(m);
+    }
+
+    synchronized void putRow(FileMetadata m) {
+        if (m.getFileId() == null) return;
+        FileMetadata c = copy(m);
+        rows.put(c.getFileId(), c);
+        if (c.getStoredFilename() != null) storedNames.put(c.getStoredFilename(), Boolean.TRUE);
+    }
+
+    synchronized void putRows(List<FileMetadata> list) {
+        for (FileMetadata m : list) {
+            putRow(m);
+        }
+    }
+
+    /** True if known to exist; false means the database must be asked. */
+    synchronized boolean storedNameExists(String storedFilename) {
+        return storedNames.get(storedFilename) != null;
+    }
+
+    synchronized void putStoredName(String storedFilename) {
+        storedNames.put(storedFilename, Boolean.TRUE);
+    }
+
+    /**
+     * Owner's current version, to be read before running a query whose result is cached.
+     */
+    synchronized long version(Long ownerId) {
+        return globalVersion + versions.getOrDefault(ownerId, 0L);
+    }
+
+    /**
+     * A cached query result, or null if absent or the owner changed since it was read.
+     */
+    synchronized Object getResult(FileQuery query, String kind, Object... position) {
+        ResultKey key = new ResultKey(query, kind, position);
+        Result r = results.get(key);
+        if (r == null) return null;
+        if (r.version != version(query.getOwnerId())) {
+            results.remove(key);
+            return null;
+        }
+        return r.value;
+    }
+
+    /**
+     * Cache a query result read at the given version; dropped if the owner has changed
+     * since.
+     */
+    synchronized void putResult(long version, Object value, FileQuery query, String kind, Object... position) {
+        if (version != version(query.getOwnerId())) return;
+        results.put(new ResultKey(query, kind, position), new Result(version, value));
+    }
+
+    synchronized void inserted(FileMetadata m) {
+        bump(m.getOwnerId());
+        putRow(m);
+    }
+
+    synchronized void updated(FileMetadata m) {
+        bump(m.getOwnerId());
+        FileMetadata cached = rows.get(m.getFileId());
+        if (cached != null) {
+            cached.setIv(m.getIv());
+            cached.setSalt(m.getSalt());
+            cached.setEncryptionAlgorithm(m.getEncryptionAlgorithm());
+        }
+    }
+
+    synchronized void deleted(Long fileId) {
+        FileMetadata cached = rows.remove(fileId);
+        if (cached == null) {
+            // Owner and stored name unknown: every owner's results may hold the row
+            globalVersion++;
+            storedNames.clear();
+            return;
+        }
+        bump(cached.getOwnerId());
+        if (cached.getStoredFilename() != null) storedNames.remove(cached.getStoredFilename());
+    }
+
+    private void bump(Long ownerId) {
+        if (ownerId == null) {
+            globalVersion++;
+        } else {
+            versions.merge(ownerId, 1L, Long::sum);
+        }
+    }
+
+    static FileMetadata copy(FileMetadata m) {
+        FileMetadata c = new FileMetadata();
+        c.setFileId(m.getFileId());
+        c.setOwnerId(m.getOwnerId());
+        c.setOriginalFilename(m.getOriginalFilename());
+        c.setStoredFilename(m.getStoredFilename());
+        c.setFileSize(m.getFileSize());
+        c.setIv(m.getIv());
+        c.setSalt(m.getSalt());
+        c.setEncryptionAlgorithm(m.getEncryptionAlgorithm());
+        c.setCompressed(m.isCompressed());
+        c.setFilePath(m.getFilePath());
+        c.setRelativePath(m.getRelativePath());
+        c.setCreatedAt(m.getCreatedAt());
+        return c;
+    }
+
+    static List<FileMetadata> copy(List<FileMetadata> list) {
+        List<FileMetadata> out = new ArrayList<>(list.size());
+        for (FileMetadata m : list) {
+            out.add(copy(m));
+        }
+        return out;
+    }
+
+    private static <K, V> Map<K, V> lru(int max) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    private static final class Result {
+        final long version;
+        final Object value;
+
+        Result(long version, Object value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    private static final class ResultKey {
+        final FileQuery query;
+        final String kind;
+        final List<Object> position;
+
+        ResultKey(FileQuery query, String kind, Object[] position) {
+            this.query = query;
+            this.kind = kind;
+            this.position = java.util.Arrays.asList(position);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ResultKey)) return false;
+            ResultKey k = (ResultKey) o;
+            return query.equals(k.query) && kind.equals(k.kind) && position.equals(k.position);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, kind, position);
+        }
+    }
+}
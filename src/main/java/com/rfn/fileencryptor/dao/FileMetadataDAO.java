@@ -4,12 +4,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.rfn.fileencryptor.config.ConfigManager;
 import com.rfn.fileencryptor.model.FileMetadata;
 import com.rfn.fileencryptor.util.DatabaseUtil;
 
@@ -17,18 +24,62 @@ public class FileMetadataDAO {
 
     private static final Logger logger = LoggerFactory.getLogger(FileMetadataDAO.class);
 
+    private static final int MAX_IN_LIST = 1000;
+    // Per-owner change counter, bumped in the same transaction as every write below so any
+    // process can tell whether its cached results for the owner are still current
+    private static final String BUMP_VERSION = "UPDATE USERS SET files_version = files_version + 1 WHERE user_id = ?";
+    private static final String READ_VERSION = "SELECT files_version FROM USERS WHERE user_id = ?";
+
+    private final FileMetadataCache cache = FileMetadataCache.getInstance();
+    // Everything mapResultSetToFileMetadata reads, so added columns are not fetched blindly
+    private static final String COLUMNS = "file_id, owner_id, original_filename, stored_filename, file_size, " +
+            "iv, salt, encryption_algorithm, compression_flag, created_at, file_path, relative_path";
+
+    /**
+     * Rows of one keyset page and the position of its last row.
+     */
+    public static final class Page {
+        private final List<FileMetadata> rows;
+        private final List<Object> sortValues;
+
+        Page(List<FileMetadata> rows, List<Object> sortValues) {
+            this.rows = rows;
+            this.sortValues = sortValues;
+        }
+
+        public List<FileMetadata> getRows() {
+            return rows;
+        }
+
+        /** Sort value of each row, as {@link FileQuery.Sort#keyOf} computes it. */
+        public List<Object> getSortValues() {
+            return sortValues;
+        }
+
+        /** Sort value of the last row; pass to {@link #findPage} to continue. */
+        public Object getLastSortValue() {
+            return sortValues.isEmpty() ? null : sortValues.get(sortValues.size() - 1);
+        }
+
+        /** file_id of the last row, or null for an empty page. */
+        public Long getLastFileId() {
+            return rows.isEmpty() ? null : rows.get(rows.size() - 1).getFileId();
+        }
+    }
+
     /**
      * Inserts file metadata
      */
     public Long insert(FileMetadata metadata) throws SQLException {
         String sql = "INSERT INTO FILE_METADATA " +
                 "(owner_id, original_filename, stored_filename, file_size, " +
-                "iv, salt, encryption_algorithm, compression_flag, file_path) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                "iv, salt, encryption_algorithm, compression_flag, file_path, relative_path) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, new String[]{"file_id"})) {
+             PreparedStatement pstmt = conn.prepareStatement(sql, new String[]{"file_id", "created_at"})) {
 
+            conn.setAutoCommit(false);
             pstmt.setLong(1, metadata.getOwnerId());
             pstmt.setString(2, metadata.getOriginalFilename());
             pstmt.setString(3, metadata.getStoredFilename());
@@ -38,39 +89,55 @@ public class FileMetadataDAO {
             pstmt.setString(7, metadata.getEncryptionAlgorithm());
             pstmt.setString(8, metadata.isCompressed() ? "Y" : "N");
             pstmt.setString(9, metadata.getFilePath());
-
-            int affected = pstmt.executeUpdate();
-
-            if (affected > 0) {
-                try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        Long fileId = rs.getLong(1);
-                        metadata.setFileId(fileId);
-                        logger.info("File metadata created with ID: {}", fileId);
-                        return fileId;
+            pstmt.setString(10, metadata.getRelativePath());
+
+            try {
+                int affected = pstmt.executeUpdate();
+
+                if (affected > 0) {
+                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            Long fileId = rs.getLong(1);
+                            // Server default; views place the new row by it without re-reading
+                            java.sql.Timestamp createdAt = rs.getTimestamp(2);
+                            long version = bumpVersion(conn, metadata.getOwnerId());
+                            conn.commit();
+                            metadata.setFileId(fileId);
+                            metadata.setCreatedAt(createdAt);
+                            cache.wrote(metadata.getOwnerId(), version);
+                            cache.inserted(metadata);
+                            logger.info("File metadata created with ID: {}", fileId);
+                            return fileId;
+                        }
                     }
                 }
+                throw new SQLException("Failed to create file metadata");
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
-
-            throw new SQLException("Failed to create file metadata");
         }
     }
 
     /**
-     * Checks if a row exists for the given stored filename.
+     * Checks if a row exists for the given stored filename. Only a row known to exist is
+     * answered from the cache; another process may have added one since.
      */
     public boolean existsByStoredFilename(String storedFilename) throws SQLException {
+        if (cache.storedNameExists(storedFilename)) return true;
+
         String sql = "SELECT COUNT(*) FROM FILE_METADATA WHERE stored_filename = ?";
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, storedFilename);
             try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
-                }
+                boolean exists = rs.next() && rs.getInt(1) > 0;
+                if (exists) cache.putStoredName(storedFilename);
+                return exists;
             }
         }
-        return false;
     }
 
     /**
@@ -82,45 +149,89 @@ public class FileMetadataDAO {
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
+            conn.setAutoCommit(false);
             pstmt.setString(1, metadata.getIv());
             pstmt.setString(2, metadata.getSalt());
             pstmt.setString(3, metadata.getEncryptionAlgorithm());
             pstmt.setLong(4, metadata.getFileId());
 
-            int affected = pstmt.executeUpdate();
-            if (affected == 0) {
-                throw new SQLException("No rows updated for file_id=" + metadata.getFileId());
+            try {
+                int affected = pstmt.executeUpdate();
+                if (affected == 0) {
+                    throw new SQLException("No rows updated for file_id=" + metadata.getFileId());
+                }
+                Long ownerId = ownerOf(conn, metadata.getFileId());
+                long version = bumpVersion(conn, ownerId);
+                conn.commit();
+                cache.wrote(ownerId, version);
+                cache.updated(metadata);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         }
     }
 
     /**
-     * Finds all files owned by a user
+     * Finds all files owned by a user, newest first. Materializes every row; prefer
+     * {@link #openByOwner} or {@link #findPageByOwner} for large vaults.
      */
     public List<FileMetadata> findByOwnerId(Long ownerId) throws SQLException {
         List<FileMetadata> files = new ArrayList<>();
-        String sql = "SELECT * FROM FILE_METADATA WHERE owner_id = ? ORDER BY created_at DESC";
 
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setLong(1, ownerId);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    files.add(mapResultSetToFileMetadata(rs));
-                }
+        try (RowCursor<FileMetadata> cursor = openByOwner(ownerId)) {
+            while (cursor.next()) {
+                files.add(cursor.get());
             }
         }
 
         return files;
     }
 
+    /**
+     * All files owned by a user, newest first, read as the driver fetches them.
+     */
+    public RowCursor<FileMetadata> openByOwner(Long ownerId) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM FILE_METADATA WHERE owner_id = ? " +
+                "ORDER BY created_at DESC, file_id DESC";
+
+        Connection conn = DatabaseUtil.getConnection();
+        PreparedStatement pstmt;
+        try {
+            pstmt = conn.prepareStatement(sql);
+            pstmt.setLong(1, ownerId);
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return RowCursor.open(conn, pstmt, this::mapResultSetToFileMetadata);
+    }
+
+    /**
+     * Keyset page of a user's files, newest first: up to limit rows older than
+     * (afterCreatedAt, afterFileId), or the newest rows when afterFileId is null.
+     */
+    public Page findPageByOwner(Long ownerId, java.sql.Timestamp afterCreatedAt, Long afterFileId, int limit)
+            throws SQLException {
+        return findPage(new FileQuery(ownerId, null, FileQuery.Sort.CREATED_AT, true),
+                afterCreatedAt, afterFileId, limit);
+    }
+
     /**
      * Finds file by ID
      */
     public FileMetadata findById(Long fileId) throws SQLException {
-        String sql = "SELECT * FROM FILE_METADATA WHERE file_id = ?";
+        FileMetadata cached = cache.getRow(fileId);
+        if (cached != null) {
+            syncOwner(cached.getOwnerId());
+            cached = cache.getRow(fileId);
+            if (cached != null) return cached;
+        }
+
+        String sql = "SELECT " + COLUMNS + " FROM FILE_METADATA WHERE file_id = ?";
 
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -129,7 +240,9 @@ public class FileMetadataDAO {
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToFileMetadata(rs);
+                    FileMetadata metadata = mapResultSetToFileMetadata(rs);
+                    cache.putRow(metadata);
+                    return metadata;
                 }
             }
         }
@@ -141,6 +254,14 @@ public class FileMetadataDAO {
      * Verifies if file belongs to user
      */
     public boolean verifyOwnership(Long fileId, Long userId) throws SQLException {
+        FileMetadata cached = cache.getRow(fileId);
+        if (cached != null) {
+            // The row may have been deleted by another process since it was cached
+            syncOwner(cached.getOwnerId());
+            cached = cache.getRow(fileId);
+            if (cached != null) return userId.equals(cached.getOwnerId());
+        }
+
         String sql = "SELECT COUNT(*) FROM FILE_METADATA WHERE file_id = ? AND owner_id = ?";
 
         try (Connection conn = DatabaseUtil.getConnection();
@@ -168,11 +289,24 @@ public class FileMetadataDAO {
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setLong(1, fileId);
-            int affected = pstmt.executeUpdate();
-
-            if (affected > 0) {
-                logger.info("File metadata deleted: {}", fileId);
+            conn.setAutoCommit(false);
+            try {
+                Long ownerId = ownerOf(conn, fileId);
+                pstmt.setLong(1, fileId);
+                int affected = pstmt.executeUpdate();
+                long version = affected > 0 ? bumpVersion(conn, ownerId) : 0L;
+                conn.commit();
+
+                if (affected > 0) {
+                    cache.wrote(ownerId, version);
+                    cache.deleted(fileId);
+                    logger.info("File metadata deleted: {}", fileId);
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         }
     }
@@ -183,15 +317,140 @@ public class FileMetadataDAO {
     public List<FileMetadata> searchByFilename(Long ownerId, String searchTerm)
             throws SQLException {
         List<FileMetadata> files = new ArrayList<>();
-        String sql = "SELECT * FROM FILE_METADATA " +
+        String sql = "SELECT " + COLUMNS + " FROM FILE_METADATA " +
                 "WHERE owner_id = ? AND original_filename LIKE ? " +
-                "ORDER BY created_at DESC";
+                "ORDER BY created_at DESC, file_id DESC";
 
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, ownerId);
             pstmt.setString(2, "%" + searchTerm + "%");
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    files.add(mapResultSetToFileMetadata(rs));
+                }
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Number of rows matching a query.
+     */
+    public long count(FileQuery query) throws SQLException {
+        syncOwner(query.getOwnerId());
+        Object cached = cache.getResult(query, "count");
+        if (cached != null) return (Long) cached;
+        long version = cache.version(query.getOwnerId());
+
+        String sql = "SELECT COUNT(*) FROM FILE_METADATA f" + where(query);
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            bindWhere(pstmt, query, 1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                long count = rs.next() ? rs.getLong(1) : 0L;
+                cache.putResult(version, count, query, "count");
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Keyset page: up to limit rows that sort after (afterSortValue, afterFileId),
+     * or from the start when afterFileId is null. Uses the owner/order index instead
+     * of counting past skipped rows, so the cost does not grow with the page number.
+     */
+    public Page findPage(FileQuery query, Object afterSortValue, Long afterFileId, int limit)
+            throws SQLException {
+        syncOwner(query.getOwnerId());
+        Object cached = cache.getResult(query, "page", afterSortValue, afterFileId, limit);
+        if (cached != null) return copy((Page) cached);
+        long version = cache.version(query.getOwnerId());
+
+        String expr = query.getSort().expression();
+        String dir = query.isDescending() ? "DESC" : "ASC";
+        String cmp = query.isDescending() ? "<" : ">";
+        StringBuilder sql = new StringBuilder(select(query)).append(where(query));
+        if (afterFileId != null) {
+            sql.append(" AND (").append(expr).append(' ').append(cmp).append(" ? OR (")
+                    .append(expr).append(" = ? AND file_id ").append(cmp).append(" ?))");
+        }
+        sql.append(" ORDER BY ").append(expr).append(' ').append(dir).append(", file_id ").append(dir)
+                .append(" FETCH FIRST ? ROWS ONLY");
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            int idx = bindWhere(pstmt, query, 1);
+            if (afterFileId != null) {
+                pstmt.setObject(idx++, afterSortValue);
+                pstmt.setObject(idx++, afterSortValue);
+                pstmt.setLong(idx++, afterFileId);
+            }
+            pstmt.setInt(idx, limit);
+            pstmt.setFetchSize(limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Page page = readPage(rs, query.getSort());
+                cache.putResult(version, copy(page), query, "page", afterSortValue, afterFileId, limit);
+                return page;
+            }
+        }
+    }
+
+    /**
+     * Page starting at a row offset. Only for jumping far ahead of any known keyset
+     * position (dragging the scrollbar); sequential reads should use {@link #findPage}.
+     */
+    public Page findPageAt(FileQuery query, long offset, int limit) throws SQLException {
+        syncOwner(query.getOwnerId());
+        Object cached = cache.getResult(query, "pageAt", offset, limit);
+        if (cached != null) return copy((Page) cached);
+        long version = cache.version(query.getOwnerId());
+
+        String expr = query.getSort().expression();
+        String dir = query.isDescending() ? "DESC" : "ASC";
+        String sql = select(query) + where(query) +
+                " ORDER BY " + expr + " " + dir + ", file_id " + dir +
+                " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int idx = bindWhere(pstmt, query, 1);
+            pstmt.setLong(idx++, offset);
+            pstmt.setInt(idx, limit);
+            pstmt.setFetchSize(limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Page page = readPage(rs, query.getSort());
+                cache.putResult(version, copy(page), query, "pageAt", offset, limit);
+                return page;
+            }
+        }
+    }
+
+    /**
+     * Every row matching a query, in query order.
+     */
+    public List<FileMetadata> findAll(FileQuery query) throws SQLException {
+        List<FileMetadata> files = new ArrayList<>();
+        String dir = query.isDescending() ? "DESC" : "ASC";
+        String sql = select(query) + where(query) +
+                " ORDER BY " + query.getSort().expression() + " " + dir + ", file_id " + dir;
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            bindWhere(pstmt, query, 1);
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
@@ -203,6 +462,215 @@ public class FileMetadataDAO {
         return files;
     }
 
+    /**
+     * Rows of the owner with the given ids. Oracle caps IN lists at 1000 entries, so
+     * large id sets are fetched in chunks.
+     */
+    public List<FileMetadata> findByIds(Long ownerId, Collection<Long> fileIds) throws SQLException {
+        List<FileMetadata> files = new ArrayList<>(fileIds.size());
+        List<Long> ids = new ArrayList<>(fileIds.size());
+        syncOwner(ownerId);
+        for (Long id : fileIds) {
+            FileMetadata cached = cache.getRow(id);
+            if (cached == null) {
+                ids.add(id);
+            } else if (ownerId.equals(cached.getOwnerId())) {
+                files.add(cached);
+            }
+        }
+        if (ids.isEmpty()) return files;
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IN_LIST));
+                String sql = "SELECT " + COLUMNS + " FROM FILE_METADATA WHERE owner_id = ? AND file_id IN (" +
+                        String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setLong(1, ownerId);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setLong(i + 2, chunk.get(i));
+                    }
+                    pstmt.setFetchSize(chunk.size());
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            FileMetadata metadata = mapResultSetToFileMetadata(rs);
+                            cache.putRow(metadata);
+                            files.add(metadata);
+                        }
+                    }
+                }
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Stream the columns the dashboard lists and sorts by for every file of the owner,
+     * without materializing the rows. Used to build in-memory indexes.
+     */
+    public void streamListing(Long ownerId, Consumer<FileMetadata> consumer) throws SQLException {
+        streamListing(ownerId, null, null, consumer);
+    }
+
+    /**
+     * Like {@link #streamListing(Long, Consumer)}, limited to files after the position
+     * (afterCreated, afterFileId) in (created_at, file_id) order, i.e. those stored since
+     * a listing whose newest row was at that position. Files with no created_at are not
+     * included. Reads only that range of IDX_FILE_OWNER_CREATED.
+     */
+    public void streamListingAfter(Long ownerId, Timestamp afterCreated, long afterFileId,
+                                   Consumer<FileMetadata> consumer) throws SQLException {
+        streamListing(ownerId, afterCreated, afterFileId, consumer);
+    }
+
+    private void streamListing(Long ownerId, Timestamp afterCreated, Long afterFileId,
+                               Consumer<FileMetadata> consumer) throws SQLException {
+        String sql = "SELECT file_id, original_filename, file_size, created_at, compression_flag " +
+                "FROM FILE_METADATA WHERE owner_id = ?";
+        if (afterFileId != null) {
+            // The leading >= bounds the index range; the OR alone is not used as one
+            sql += " AND created_at >= ? AND (created_at > ? OR file_id > ?)";
+        }
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, ownerId);
+            if (afterFileId != null) {
+                pstmt.setTimestamp(2, afterCreated);
+                pstmt.setTimestamp(3, afterCreated);
+                pstmt.setLong(4, afterFileId);
+            }
+            pstmt.setFetchSize(ConfigManager.getDbFetchSize());
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    FileMetadata m = new FileMetadata();
+                    m.setFileId(rs.getLong("file_id"));
+                    m.setOwnerId(ownerId);
+                    m.setOriginalFilename(rs.getString("original_filename"));
+                    m.setFileSize(rs.getLong("file_size"));
+                    m.setCreatedAt(rs.getTimestamp("created_at"));
+                    m.setCompressed("Y".equals(rs.getString("compression_flag")));
+                    consumer.accept(m);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream the id of every file of the owner. Answered from IDX_FILE_OWNER_CREATED
+     * alone, so far cheaper than a listing.
+     */
+    public void streamIds(Long ownerId, LongConsumer consumer) throws SQLException {
+        String sql = "SELECT file_id FROM FILE_METADATA WHERE owner_id = ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, ownerId);
+            pstmt.setFetchSize(Math.max(ConfigManager.getDbFetchSize(), 5000));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getLong(1));
+                }
+            }
+        }
+    }
+
+    private static String select(FileQuery query) {
+        return "SELECT " + COLUMNS + ", " + query.getSort().expression() + " AS sort_key FROM FILE_METADATA f";
+    }
+
+    private static String where(FileQuery query) {
+        StringBuilder where = new StringBuilder(" WHERE owner_id = ?");
+        if (query.getFilter() != null) {
+            where.append(" AND LOWER(original_filename) LIKE ? ESCAPE '\\'");
+        }
+        if (query.isFolderMembersOnly()) {
+            where.append(" AND relative_path IS NOT NULL");
+        }
+        return where.toString();
+    }
+
+    private static int bindWhere(PreparedStatement pstmt, FileQuery query, int idx) throws SQLException {
+        pstmt.setLong(idx++, query.getOwnerId());
+        if (query.getFilter() != null) {
+            String term = query.getFilter().toLowerCase(Locale.ROOT)
+                    .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+            pstmt.setString(idx++, "%" + term + "%");
+        }
+        return idx;
+    }
+
+    /**
+     * Drop what the cache holds for the owner if any process has changed their files since
+     * it was read. One primary-key lookup.
+     */
+    private void syncOwner(Long ownerId) throws SQLException {
+        if (ownerId == null) return;
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(READ_VERSION)) {
+            pstmt.setLong(1, ownerId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                cache.sync(ownerId, rs.next() ? rs.getLong(1) : 0L);
+            }
+        }
+    }
+
+    // Bump the owner's change counter inside the caller's transaction; returns the new value
+    private static long bumpVersion(Connection conn, Long ownerId) throws SQLException {
+        if (ownerId == null) return 0L;
+        try (PreparedStatement pstmt = conn.prepareStatement(BUMP_VERSION)) {
+            pstmt.setLong(1, ownerId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(READ_VERSION)) {
+            pstmt.setLong(1, ownerId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        }
+    }
+
+    private static Long ownerOf(Connection conn, Long fileId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT owner_id FROM FILE_METADATA WHERE file_id = ?")) {
+            pstmt.setLong(1, fileId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private static Page copy(Page page) {
+        return new Page(FileMetadataCache.copy(page.getRows()), page.getSortValues());
+    }
+
+    private Page readPage(ResultSet rs, FileQuery.Sort sort) throws SQLException {
+        List<FileMetadata> rows = new ArrayList<>();
+        List<Object> sortValues = new ArrayList<>();
+        while (rs.next()) {
+            rows.add(mapResultSetToFileMetadata(rs));
+            sortValues.add(readSortValue(rs, sort));
+        }
+        cache.putRows(rows);
+        return new Page(rows, sortValues);
+    }
+
+    // Typed read so the value binds back exactly (getObject may return driver types)
+    private static Object readSortValue(ResultSet rs, FileQuery.Sort sort) throws SQLException {
+        switch (sort) {
+            case SIZE:
+                return rs.getLong("sort_key");
+            case CREATED_AT:
+                return rs.getTimestamp("sort_key");
+            default:
+                return rs.getString("sort_key");
+        }
+    }
+
     /**
      * Maps ResultSet to FileMetadata
      */
@@ -219,6 +687,7 @@ public class FileMetadataDAO {
         metadata.setCompressed("Y".equals(rs.getString("compression_flag")));
         metadata.setCreatedAt(rs.getTimestamp("created_at"));
         metadata.setFilePath(rs.getString("file_path"));
+        metadata.setRelativePath(rs.getString("relative_path"));
         return metadata;
     }
 }
@@ -0,0 +1,147 @@
+package com.rfn.fileencryptor.dao;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import com.rfn.fileencryptor.model.FileMetadata;
+
+/**
+ * Which of an owner's files to list and in what order.
+ *
+ * Every order ends with file_id as a tie-breaker, so (sort value, file_id) is unique
+ * and can be used as a keyset position by {@link FileMetadataDAO#findPage}.
+ */
+public final class FileQuery {
+
+    /**
+     * Dashboard sort orders and the SQL expression each one sorts on.
+     */
+    public enum Sort {
+        // Extension after the last dot, lower-cased; ' ' when there is none so keyset comparisons never meet NULL
+        TYPE("NVL(LOWER(SUBSTR(original_filename, NULLIF(INSTR(original_filename, '.', -1), 0) + 1)), ' ')"),
+        FILENAME("original_filename"),
+        SIZE("file_size"),
+        CREATED_AT("created_at"),
+        COMPRESSED("compression_flag");
+
+        private final String expression;
+
+        Sort(String expression) {
+            this.expression = expression;
+        }
+
+        String expression() {
+            return expression;
+        }
+
+        /**
+         * The value this order sorts a row by, computed like the SQL expression so rows
+         * added after a page was read can be placed among its rows.
+         */
+        public Object keyOf(FileMetadata m) {
+            switch (this) {
+                case TYPE:
+                    String name = m.getOriginalFilename();
+                    int dot = name == null ? -1 : name.lastIndexOf('.');
+                    String ext = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+                    return ext.isEmpty() ? " " : ext;
+                case FILENAME:
+                    return m.getOriginalFilename();
+                case SIZE:
+                    return m.getFileSize();
+                case CREATED_AT:
+                    return m.getCreatedAt();
+                case COMPRESSED:
+                default:
+                    return m.isCompressed() ? "Y" : "N";
+            }
+        }
+    }
+
+    private final Long ownerId;
+    private final String filter;
+    private final Sort sort;
+    private final boolean descending;
+    private final boolean folderMembersOnly;
+
+    public FileQuery(Long ownerId, String filter, Sort sort, boolean descending) {
+        this(ownerId, filter, sort, descending, false);
+    }
+
+    private FileQuery(Long ownerId, String filter, Sort sort, boolean descending, boolean folderMembersOnly) {
+        this.ownerId = ownerId;
+        this.filter = (filter == null || filter.isEmpty()) ? null : filter;
+        this.sort = sort == null ? Sort.CREATED_AT : sort;
+        this.descending = descending;
+        this.folderMembersOnly = folderMembersOnly;
+    }
+
+    /**
+     * Same query restricted to files that came from an encrypted folder.
+     */
+    public FileQuery folderMembersOnly() {
+        return new FileQuery(ownerId, filter, sort, descending, true);
+    }
+
+    public Long getOwnerId() {
+        return ownerId;
+    }
+
+    /** Case-insensitive filename substring, or null for no filter. */
+    public String getFilter() {
+        return filter;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public boolean isFolderMembersOnly() {
+        return folderMembersOnly;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileQuery)) return false;
+        FileQuery q = (FileQuery) o;
+        return descending == q.descending && folderMembersOnly == q.folderMembersOnly && sort == q.sort
+                && Objects.equals(ownerId, q.ownerId) && Objects.equals(filter, q.filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ownerId, filter, sort, descending, folderMembersOnly);
+    }
+
+    /**
+     * Whether a row satisfies the query's conditions (owner, filter, folder members).
+     */
+    public boolean matches(FileMetadata m) {
+        if (m == null || ownerId == null || !ownerId.equals(m.getOwnerId())) return false;
+        if (folderMembersOnly && m.getRelativePath() == null) return false;
+        if (filter == null) return true;
+        String name = m.getOriginalFilename();
+        return name != null && name.toLowerCase(Locale.ROOT).contains(filter.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Order of two rows under this query, given their sort values. Nulls sort last
+     * ascending and first descending, as in Oracle.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public int compare(Object keyA, Long idA, Object keyB, Long idB) {
+        int c;
+        if (keyA == null || keyB == null) {
+            c = keyA == keyB ? 0 : (keyA == null ? 1 : -1);
+        } else {
+            c = ((Comparable) keyA).compareTo(keyB);
+        }
+        if (c == 0) c = Long.compare(idA, idB);
+        return descending ? -c : c;
+    }
+}
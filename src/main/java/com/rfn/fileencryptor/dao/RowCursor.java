@@ -0,0 +1,114 @@
+package com.rfn.fileencryptor.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Forward-only rows of an open query, mapped one at a time as the driver fetches them.
+ *
+ * Holds a pooled connection until closed, so always use try-with-resources and do not
+ * keep it open across user interaction:
+ *
+ * <pre>
+ * try (RowCursor&lt;FileMetadata&gt; files = dao.openByOwner(ownerId)) {
+ *     while (files.next()) {
+ *         handle(files.get());
+ *     }
+ * }
+ * </pre>
+ */
+public final class RowCursor<T> implements AutoCloseable {
+
+    /**
+     * Maps the current row of a result set.
+     */
+    interface Mapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private final Connection conn;
+    private final PreparedStatement pstmt;
+    private final ResultSet rs;
+    private final Mapper<T> mapper;
+    private T current;
+    private long rowCount;
+
+    private RowCursor(Connection conn, PreparedStatement pstmt, ResultSet rs, Mapper<T> mapper) {
+        this.conn = conn;
+        this.pstmt = pstmt;
+        this.rs = rs;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Execute a prepared, bound statement and wrap its rows. The cursor takes over the
+     * connection and statement; they are closed here if the query fails.
+     */
+    static <T> RowCursor<T> open(Connection conn, PreparedStatement pstmt, Mapper<T> mapper)
+            throws SQLException {
+        try {
+            return new RowCursor<>(conn, pstmt, pstmt.executeQuery(), mapper);
+        } catch (SQLException e) {
+            closeAll(e, null, pstmt, conn);
+            throw e;
+        }
+    }
+
+    /**
+     * Advance to the next row.
+     *
+     * @return false when there are no more rows
+     */
+    public boolean next() throws SQLException {
+        if (!rs.next()) {
+            current = null;
+            return false;
+        }
+        current = mapper.map(rs);
+        rowCount++;
+        return true;
+    }
+
+    /** The row the cursor is on. */
+    public T get() {
+        if (current == null) throw new IllegalStateException("No current row");
+        return current;
+    }
+
+    /** Rows read so far. */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        current = null;
+        SQLException failure = closeAll(null, rs, pstmt, conn);
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Close result set, statement and connection (any may be null) in that order, each
+     * even if an earlier one failed. Failures are added to primary when given, else the
+     * first one is returned with the rest suppressed.
+     */
+    private static SQLException closeAll(SQLException primary, ResultSet r, PreparedStatement p, Connection c) {
+        SQLException failure = primary;
+        for (AutoCloseable resource : new AutoCloseable[] {r, p, c}) {
+            if (resource == null) continue;
+            try {
+                resource.close();
+            } catch (Exception e) {
+                SQLException sql = e instanceof SQLException ? (SQLException) e : new SQLException(e);
+                if (failure == null) {
+                    failure = sql;
+                } else {
+                    failure.addSuppressed(sql);
+                }
+            }
+        }
+        return failure == primary ? null : failure;
+    }
+}
@@ -11,6 +11,7 @@ public class AuditLog {
     private String operationStatus;
     private Long fileSize;
     private Long durationMs;
+    private Double throughputMbps;
     private String errorMessage;
     private Timestamp timestamp;
 
@@ -81,6 +82,14 @@ public class AuditLog {
         this.durationMs = durationMs;
     }
 
+    public Double getThroughputMbps() {
+        return throughputMbps;
+    }
+
+    public void setThroughputMbps(Double throughputMbps) {
+        this.throughputMbps = throughputMbps;
+    }
+
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -2,9 +2,6 @@ package com.rfn.fileencryptor.model;
 
 import java.sql.Timestamp;
 
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.SimpleBooleanProperty;
-
 public class FileMetadata {
 
     private Long fileId;
@@ -17,9 +14,8 @@ public class FileMetadata {
     private String encryptionAlgorithm;
     private boolean compressed;
     private String filePath;
+    private String relativePath;  // position inside an encrypted folder tree, null for single files
     private Timestamp createdAt;
-    // transient property used by UI for selection
-    private transient BooleanProperty selected = new SimpleBooleanProperty(false);
 
     // Constructors
     public FileMetadata() {}
@@ -106,25 +102,19 @@ public class FileMetadata {
         this.filePath = filePath;
     }
 
-    public Timestamp getCreatedAt() {
-        return createdAt;
+    public String getRelativePath() {
+        return relativePath;
     }
 
-    public void setCreatedAt(Timestamp createdAt) {
-        this.createdAt = createdAt;
+    public void setRelativePath(String relativePath) {
+        this.relativePath = relativePath;
     }
 
-    // Selection property helpers for UI
-    public BooleanProperty selectedProperty() {
-        if (selected == null) selected = new SimpleBooleanProperty(false);
-        return selected;
-    }
-
-    public boolean isSelected() {
-        return selectedProperty().get();
+    public Timestamp getCreatedAt() {
+        return createdAt;
     }
 
-    public void setSelected(boolean sel) {
-        selectedProperty().set(sel);
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
     }
 }
@@ -0,0 +1,201 @@
+package com.rfn.fileencryptor.model;
+
+import java.time.LocalDate;
+
+/**
+ * Totals of one operation type over a period (a day, a month or a whole range): a row of
+ * AUDIT_DAILY_STATS, or several of them merged.
+ *
+ * Durations are kept as a histogram of log-scale buckets, so rollups of any number of
+ * days add up to one and percentiles can still be read off it. A bucket is a quarter of
+ * a power of two wide; a percentile is reported as the upper bound of its bucket, at most
+ * about 25% above the exact value.
+ */
+public class OperationStats {
+
+    /**
+     * How daily rollups are grouped.
+     */
+    public enum Period {
+        DAY, MONTH, TOTAL;
+
+        /**
+         * First day of the period holding day; for TOTAL, the start of the range.
+         */
+        public LocalDate startOf(LocalDate day, LocalDate rangeStart) {
+            switch (this) {
+                case DAY: return day;
+                case MONTH: return day.withDayOfMonth(1);
+                default: return rangeStart;
+            }
+        }
+    }
+
+    private static final String SUCCESS = "SUCCESS";
+    // bucketOf(Long.MAX_VALUE) is 247
+    private static final int BUCKETS = 248;
+
+    private LocalDate periodStart;
+    private String operationType;
+    private long count;
+    private long failures;
+    private long totalBytes;
+    private long totalDurationMs;
+    private long timedCount;
+    private final long[] durationBuckets = new long[BUCKETS];
+
+    public OperationStats() {
+    }
+
+    public OperationStats(LocalDate periodStart, String operationType) {
+        this.periodStart = periodStart;
+        this.operationType = operationType;
+    }
+
+    /**
+     * Histogram bucket of a duration: exact below 4 ms, then four buckets per power of two.
+     */
+    public static int bucketOf(long durationMs) {
+        if (durationMs < 4) return (int) Math.max(durationMs, 0);
+        int octave = 63 - Long.numberOfLeadingZeros(durationMs);
+        int quarter = (int) ((durationMs >>> (octave - 2)) & 3);
+        return (octave - 1) * 4 + quarter;
+    }
+
+    /**
+     * Largest duration that falls into the bucket.
+     */
+    public static long bucketUpperMs(int bucket) {
+        if (bucket < 4) return bucket;
+        int octave = bucket / 4 + 1;
+        int quarter = bucket % 4;
+        return ((5L + quarter) << (octave - 2)) - 1;
+    }
+
+    /**
+     * Count one audit entry. Entries without a duration (logins, failures before timing
+     * started) count everywhere except the duration figures.
+     */
+    public void addEntry(String status, Long fileSize, Long durationMs) {
+        count++;
+        if (!SUCCESS.equals(status)) failures++;
+        if (fileSize != null && fileSize > 0) totalBytes += fileSize;
+        if (durationMs != null && durationMs >= 0) {
+            totalDurationMs += durationMs;
+            timedCount++;
+            durationBuckets[bucketOf(durationMs)]++;
+        }
+    }
+
+    /**
+     * Add totals read back from a rollup row; histogram is its
+     * {@link #getDurationHistogram() encoded form}.
+     */
+    public void add(long count, long failures, long bytes, long durationMs, String histogram) {
+        this.count += count;
+        this.failures += failures;
+        this.totalBytes += bytes;
+        this.totalDurationMs += durationMs;
+        if (histogram == null || histogram.isEmpty()) return;
+        for (String pair : histogram.split(",")) {
+            int colon = pair.indexOf(':');
+            int bucket = Integer.parseInt(pair.substring(0, colon), Character.MAX_RADIX);
+            long n = Long.parseLong(pair.substring(colon + 1), Character.MAX_RADIX);
+            if (bucket >= 0 && bucket < BUCKETS) {
+                durationBuckets[bucket] += n;
+                timedCount += n;
+            }
+        }
+    }
+
+    public void add(OperationStats other) {
+        count += other.count;
+        failures += other.failures;
+        totalBytes += other.totalBytes;
+        totalDurationMs += other.totalDurationMs;
+        timedCount += other.timedCount;
+        for (int b = 0; b < BUCKETS; b++) {
+            durationBuckets[b] += other.durationBuckets[b];
+        }
+    }
+
+    /**
+     * The duration histogram as stored: "bucket:count" pairs of the non-empty buckets,
+     * comma separated, in base 36 (at most about 2.5 KB).
+     */
+    public String getDurationHistogram() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < BUCKETS; b++) {
+            if (durationBuckets[b] == 0) continue;
+            if (sb.length() > 0) sb.append(',');
+            sb.append(Integer.toString(b, Character.MAX_RADIX)).append(':')
+                    .append(Long.toString(durationBuckets[b], Character.MAX_RADIX));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Duration below which the given share (0..1) of timed entries finished, or null when
+     * none were timed.
+     */
+    public Long durationPercentileMs(double share) {
+        if (timedCount == 0) return null;
+        long rank = Math.max(1, (long) Math.ceil(share * timedCount));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += durationBuckets[b];
+            if (seen >= rank) return bucketUpperMs(b);
+        }
+        return bucketUpperMs(BUCKETS - 1);
+    }
+
+    public Long getP95DurationMs() {
+        return durationPercentileMs(0.95);
+    }
+
+    public Long getAvgDurationMs() {
+        return timedCount == 0 ? null : totalDurationMs / timedCount;
+    }
+
+    public Double getFailureRate() {
+        return count == 0 ? null : (double) failures / count;
+    }
+
+    // MB/s over all timed work, weighted by size like the per-entry figure
+    public Double getThroughputMbps() {
+        if (totalBytes <= 0 || totalDurationMs <= 0) return null;
+        return totalBytes / (1024.0 * 1024.0) / (totalDurationMs / 1000.0);
+    }
+
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(LocalDate periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public String getOperationType() {
+        return operationType;
+    }
+
+    public void setOperationType(String operationType) {
+        this.operationType = operationType;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getTotalDurationMs() {
+        return totalDurationMs;
+    }
+}
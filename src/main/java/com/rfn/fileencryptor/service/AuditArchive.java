@@ -0,0 +1,452 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.dao.AuditLogDAO;
+import com.rfn.fileencryptor.dao.RowCursor;
+import com.rfn.fileencryptor.model.AuditLog;
+import com.rfn.fileencryptor.util.CryptoUtil;
+
+/**
+ * Local archive of audit entries moved out of AUDIT_LOGS, so the table only holds the
+ * retention period (audit.retention.days) and its range queries stay small.
+ *
+ * Retention is off by default and never runs on its own; a user runs it explicitly
+ * (fileencryptor --archive-audit). {@link #runRetention} takes each whole calendar month
+ * of that user's entries older than the retention period, writes them to a segment file
+ * under ~/.fileencryptor/audit-archive, then deletes them from the table. Only the user's
+ * own rows move, because only their clients read this archive; other users' history stays
+ * in the shared table. On a partitioned Oracle table a monthly partition left empty is
+ * dropped. A segment holds one block per user: the user's entries of that month,
+ * deflated and AES-GCM encrypted with the archive key, bound to month and user. An index
+ * at the end of the file lists each block's user, time range and offset, so reading one
+ * user's history only decrypts that user's blocks of the months asked for.
+ *
+ * Segments are written to a temporary file and moved into place before any row is
+ * deleted. If the delete is interrupted, the next run archives the remaining rows into
+ * another segment of the same month; readers drop entries seen twice by log id.
+ *
+ * The key is kept in archive.key next to the segments, readable by the owner only.
+ * Without it the archive cannot be read, so back the two up together.
+ */
+public final class AuditArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditArchive.class);
+
+    private static final String ARCHIVE_DIRNAME = "audit-archive";
+    private static final String KEY_FILENAME = "archive.key";
+    private static final String LOCK_FILENAME = "retention.lock";
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAGIC = 0x46454153; // "FEAS"
+    private static final byte VERSION = 1;
+    private static final int KEY_BYTES = 32;
+    // Rows deleted (and committed) per statement once a month is archived
+    private static final int DELETE_CHUNK = 5000;
+
+    private static final int HAS_FILE_ID = 1;
+    private static final int HAS_FILE_SIZE = 2;
+    private static final int HAS_DURATION = 4;
+    private static final int HAS_THROUGHPUT = 8;
+    private static final int HAS_ERROR = 16;
+    private static final int HAS_TIMESTAMP = 32;
+
+    /** Newest first, as the history shows entries. */
+    public static final Comparator<AuditLog> NEWEST_FIRST = Comparator
+            .comparing(AuditLog::getTimestamp, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(AuditLog::getLogId, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static volatile AuditArchive instance;
+
+    private final File dir;
+    private final AuditLogDAO auditLogDAO = new AuditLogDAO();
+    private byte[] key;
+
+    public static AuditArchive getInstance() {
+        if (instance == null) {
+            synchronized (AuditArchive.class) {
+                if (instance == null) {
+                    instance = new AuditArchive();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private AuditArchive() {
+        this.dir = new File(ConfigManager.getStateDir(), ARCHIVE_DIRNAME);
+    }
+
+    /**
+     * Archive every whole month of the user's entries older than the retention period.
+     * Does nothing when retention is off or another process is already running it. Blocking.
+     *
+     * @return number of entries moved to the archive
+     */
+    public long runRetention(Long userId) throws SQLException, IOException {
+        int days = ConfigManager.getAuditRetentionDays();
+        if (days == 0) return 0;
+        LocalDateTime cutoff = LocalDate.now().minusDays(days).withDayOfMonth(1).atStartOfDay();
+
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("cannot create " + dir.getAbsolutePath());
+        try (FileChannel ch = FileChannel.open(new File(dir, LOCK_FILENAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = ch.tryLock()) {
+            if (lock == null) {
+                logger.info("Audit retention already running in another process");
+                return 0;
+            }
+            long total = 0;
+            Timestamp oldest;
+            while ((oldest = auditLogDAO.findOldestTimestamp(userId)) != null
+                    && oldest.toLocalDateTime().isBefore(cutoff)) {
+                long moved = archiveMonth(userId, YearMonth.from(oldest.toLocalDateTime()));
+                if (moved == 0) break;
+                total += moved;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Archived entries of a user with start <= timestamp <= end (either bound may be
+     * null), newest first. Empty when nothing of that range was archived.
+     */
+    public List<AuditLog> find(Long userId, Timestamp start, Timestamp end) {
+        List<AuditLog> logs = new ArrayList<>();
+        File[] segments = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null || segments.length == 0) return logs;
+
+        Set<Long> seen = new HashSet<>();
+        for (File segment : segments) {
+            YearMonth month = monthOf(segment);
+            if (month == null) continue;
+            Timestamp monthStart = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+            Timestamp monthEnd = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+            if ((end != null && monthStart.after(end)) || (start != null && !monthEnd.after(start))) continue;
+            try {
+                readSegment(segment, month, userId, start, end, seen, logs);
+            } catch (IOException | GeneralSecurityException e) {
+                logger.error("Failed to read audit archive {}: {}", segment.getName(), e.getMessage());
+            }
+        }
+        logs.sort(NEWEST_FIRST);
+        return logs;
+    }
+
+    /**
+     * Months that have at least one segment, newest first.
+     */
+    public List<YearMonth> months() {
+        Set<YearMonth> months = new java.util.TreeSet<>(Comparator.reverseOrder());
+        File[] segments = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (segments != null) {
+            for (File segment : segments) {
+                YearMonth month = monthOf(segment);
+                if (month != null) months.add(month);
+            }
+        }
+        return new ArrayList<>(months);
+    }
+
+    private long archiveMonth(Long userId, YearMonth month) throws SQLException, IOException {
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        File tmp = new File(dir, SEGMENT_PREFIX + month + SEGMENT_SUFFIX + ".tmp");
+        long started = System.currentTimeMillis();
+
+        long count = 0;
+        long maxLogId = -1;
+        boolean written = false;
+        // One deflater for every block; DeflaterOutputStream leaves a supplied one to the caller to end
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (RowCursor<AuditLog> cursor = auditLogDAO.openRange(userId, from, to);
+             FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            long offset = 5;
+            List<Block> blocks = new ArrayList<>();
+            Block block = null;
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            DataOutputStream entries = null;
+
+            while (cursor.next()) {
+                AuditLog log = cursor.get();
+                if (block == null || block.userId != log.getUserId()) {
+                    if (block != null) offset += writeBlock(out, month, block, buf, entries, offset);
+                    block = new Block(log.getUserId());
+                    blocks.add(block);
+                    buf.reset();
+                    deflater.reset();
+                    entries = new DataOutputStream(new DeflaterOutputStream(buf, deflater));
+                }
+                writeEntry(entries, log);
+                block.add(log);
+                count++;
+                maxLogId = Math.max(maxLogId, log.getLogId());
+            }
+            if (block == null) return 0;
+            offset += writeBlock(out, month, block, buf, entries, offset);
+
+            out.writeInt(blocks.size());
+            for (Block b : blocks) {
+                out.writeLong(b.userId);
+                out.writeInt(b.count);
+                out.writeLong(b.minMillis);
+                out.writeLong(b.maxMillis);
+                out.writeLong(b.offset);
+                out.writeInt(b.length);
+                out.write(b.iv);
+            }
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+            out.flush();
+            fos.getFD().sync();
+            written = true;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Audit archive encryption failed", e);
+        } finally {
+            deflater.end();
+            // Nothing to archive, or a failure: the streams are closed by now
+            if (!written) Files.deleteIfExists(tmp.toPath());
+        }
+
+        // Durable in the archive before anything leaves the table
+        File segment = nextSegmentFile(month);
+        try {
+            Files.move(tmp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), segment.toPath());
+        }
+        long deleted = auditLogDAO.deleteRange(userId, from, to, maxLogId, DELETE_CHUNK);
+        boolean dropped = auditLogDAO.dropPartitionIfEmpty(month.atDay(1).atStartOfDay());
+        logger.info("Archived {} audit entr(ies) of {} to {} in {} ms; {} deleted{}", count, month,
+                segment.getName(), System.currentTimeMillis() - started, deleted,
+                dropped ? ", partition dropped" : "");
+        return deleted;
+    }
+
+    private int writeBlock(DataOutputStream out, YearMonth month, Block block, ByteArrayOutputStream buf,
+                           DataOutputStream entries, long offset) throws IOException, GeneralSecurityException {
+        entries.close();
+        block.iv = CryptoUtil.generateIV();
+        Cipher cipher = cipher(Cipher.ENCRYPT_MODE, block.iv, month, block.userId, true);
+        byte[] sealed = cipher.doFinal(buf.toByteArray());
+        out.write(sealed);
+        block.offset = offset;
+        block.length = sealed.length;
+        return sealed.length;
+    }
+
+    private void readSegment(File segment, YearMonth month, Long userId, Timestamp start, Timestamp end,
+                             Set<Long> seen, List<AuditLog> logs) throws IOException, GeneralSecurityException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+            long length = raf.length();
+            raf.seek(0);
+            if (length < 17 || raf.readInt() != MAGIC || raf.readByte() != VERSION) {
+                throw new IOException("not an audit archive segment");
+            }
+            raf.seek(length - 12);
+            long indexOffset = raf.readLong();
+            if (raf.readInt() != MAGIC) throw new IOException("truncated segment");
+
+            raf.seek(indexOffset);
+            int blocks = raf.readInt();
+            long startMillis = start == null ? Long.MIN_VALUE : start.getTime();
+            long endMillis = end == null ? Long.MAX_VALUE : end.getTime();
+            for (int i = 0; i < blocks; i++) {
+                long blockUser = raf.readLong();
+                raf.readInt();
+                long minMillis = raf.readLong();
+                long maxMillis = raf.readLong();
+                long offset = raf.readLong();
+                int blockLength = raf.readInt();
+                byte[] iv = new byte[CryptoUtil.IV_SIZE];
+                raf.readFully(iv);
+                if (blockUser != userId || maxMillis < startMillis || minMillis > endMillis) continue;
+
+                long next = raf.getFilePointer();
+                byte[] sealed = new byte[blockLength];
+                raf.seek(offset);
+                raf.readFully(sealed);
+                raf.seek(next);
+
+                byte[] plain = cipher(Cipher.DECRYPT_MODE, iv, month, blockUser, false).doFinal(sealed);
+                try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(plain)))) {
+                    AuditLog log;
+                    while ((log = readEntry(in, blockUser)) != null) {
+                        Timestamp ts = log.getTimestamp();
+                        if (ts != null && ((start != null && ts.before(start)) || (end != null && ts.after(end)))) continue;
+                        if (seen.add(log.getLogId())) logs.add(log);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, AuditLog log) throws IOException {
+        int flags = (log.getFileId() != null ? HAS_FILE_ID : 0)
+                | (log.getFileSize() != null ? HAS_FILE_SIZE : 0)
+                | (log.getDurationMs() != null ? HAS_DURATION : 0)
+                | (log.getThroughputMbps() != null ? HAS_THROUGHPUT : 0)
+                | (log.getErrorMessage() != null ? HAS_ERROR : 0)
+                | (log.getTimestamp() != null ? HAS_TIMESTAMP : 0);
+        out.writeByte(flags);
+        out.writeLong(log.getLogId());
+        out.writeUTF(log.getOperationType() == null ? "" : log.getOperationType());
+        out.writeUTF(log.getOperationStatus() == null ? "" : log.getOperationStatus());
+        if (log.getFileId() != null) out.writeLong(log.getFileId());
+        if (log.getFileSize() != null) out.writeLong(log.getFileSize());
+        if (log.getDurationMs() != null) out.writeLong(log.getDurationMs());
+        if (log.getThroughputMbps() != null) out.writeDouble(log.getThroughputMbps());
+        if (log.getErrorMessage() != null) out.writeUTF(log.getErrorMessage());
+        if (log.getTimestamp() != null) {
+            out.writeLong(log.getTimestamp().getTime());
+            out.writeInt(log.getTimestamp().getNanos());
+        }
+    }
+
+    // Null at the end of the block
+    private static AuditLog readEntry(DataInputStream in, long userId) throws IOException {
+        int flags = in.read();
+        if (flags < 0) return null;
+        AuditLog log = new AuditLog();
+        log.setUserId(userId);
+        log.setLogId(in.readLong());
+        log.setOperationType(in.readUTF());
+        log.setOperationStatus(in.readUTF());
+        if ((flags & HAS_FILE_ID) != 0) log.setFileId(in.readLong());
+        if ((flags & HAS_FILE_SIZE) != 0) log.setFileSize(in.readLong());
+        if ((flags & HAS_DURATION) != 0) log.setDurationMs(in.readLong());
+        if ((flags & HAS_THROUGHPUT) != 0) log.setThroughputMbps(in.readDouble());
+        if ((flags & HAS_ERROR) != 0) log.setErrorMessage(in.readUTF());
+        if ((flags & HAS_TIMESTAMP) != 0) {
+            Timestamp ts = new Timestamp(in.readLong());
+            ts.setNanos(in.readInt());
+            log.setTimestamp(ts);
+        }
+        return log;
+    }
+
+    private Cipher cipher(int mode, byte[] iv, YearMonth month, long userId, boolean create)
+            throws IOException, GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(CryptoUtil.TRANSFORMATION);
+        cipher.init(mode, new SecretKeySpec(key(create), CryptoUtil.ALGORITHM),
+                new GCMParameterSpec(CryptoUtil.TAG_SIZE, iv));
+        // A block only decrypts as the month and user it was written for
+        cipher.updateAAD((month + "/" + userId).getBytes(StandardCharsets.US_ASCII));
+        return cipher;
+    }
+
+    private synchronized byte[] key(boolean create) throws IOException {
+        if (key != null) return key;
+        Path path = new File(dir, KEY_FILENAME).toPath();
+        if (Files.exists(path)) {
+            byte[] k = Files.readAllBytes(path);
+            if (k.length != KEY_BYTES) throw new IOException("archive key is damaged");
+            key = k;
+            return key;
+        }
+        if (!create) throw new IOException("archive key " + path + " is missing");
+        byte[] k = new byte[KEY_BYTES];
+        RANDOM.nextBytes(k);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+            path.toFile().setReadable(false, false);
+            path.toFile().setReadable(true, true);
+        }
+        try (FileOutputStream fos = new FileOutputStream(path.toFile())) {
+            fos.write(k);
+            fos.getFD().sync();
+        }
+        key = k;
+        return key;
+    }
+
+    // audit-2024-01.seg, then audit-2024-01.2.seg, ... for later runs over the same month
+    private File nextSegmentFile(YearMonth month) {
+        File f = new File(dir, SEGMENT_PREFIX + month + SEGMENT_SUFFIX);
+        for (int n = 2; f.exists(); n++) {
+            f = new File(dir, SEGMENT_PREFIX + month + "." + n + SEGMENT_SUFFIX);
+        }
+        return f;
+    }
+
+    private static YearMonth monthOf(File segment) {
+        String name = segment.getName();
+        try {
+            return YearMonth.parse(name.substring(SEGMENT_PREFIX.length(), SEGMENT_PREFIX.length() + 7));
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static final class Block {
+        final long userId;
+        int count;
+        long minMillis = Long.MAX_VALUE;
+        long maxMillis = Long.MIN_VALUE;
+        long offset;
+        int length;
+        byte[] iv;
+
+        Block(long userId) {
+            this.userId = userId;
+        }
+
+        void add(AuditLog log) {
+            count++;
+            if (log.getTimestamp() != null) {
+                minMillis = Math.min(minMillis, log.getTimestamp().getTime());
+                maxMillis = Math.max(maxMillis, log.getTimestamp().getTime());
+            }
+        }
+    }
+}
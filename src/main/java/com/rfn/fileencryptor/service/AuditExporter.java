@@ -0,0 +1,324 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.dao.AuditLogDAO;
+import com.rfn.fileencryptor.dao.AuditStatsDAO;
+import com.rfn.fileencryptor.dao.RowCursor;
+import com.rfn.fileencryptor.model.AuditLog;
+import com.rfn.fileencryptor.model.OperationStats;
+import com.rfn.fileencryptor.util.CancellationToken;
+
+/**
+ * Writes a user's audit entries of a date range to a CSV or JSON file, optionally gzipped.
+ *
+ * Entries are streamed from a database cursor (filtered by operation type in the query)
+ * straight to the writer, then the archived months of the range one month at a time, so
+ * memory use does not grow with the size of the export. Entries come newest first. The
+ * file is written under a .part name and renamed once complete; a failed or cancelled
+ * export leaves nothing behind.
+ */
+public class AuditExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditExporter.class);
+
+    private static final int EXPORT_FETCH_SIZE = 2000;
+    private static final long FLUSH_TIMEOUT_MS = 2000;
+    private static final int PROGRESS_EVERY = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PART_SUFFIX = ".part";
+
+    private static final String[] CSV_HEADER = {"log_id", "timestamp", "operation", "status", "file_id",
+            "file_size", "duration_ms", "throughput_mbps", "error_message"};
+
+    public enum Format {
+        CSV, JSON;
+
+        /**
+         * Format named by a file's extension (.json or .json.gz, otherwise CSV).
+         */
+        public static Format of(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".gz")) name = name.substring(0, name.length() - 3);
+            return name.endsWith(".json") ? JSON : CSV;
+        }
+    }
+
+    /**
+     * Receives progress while an export runs, on the exporting thread.
+     */
+    public interface Listener {
+        /**
+         * @param expected entries the daily rollups count for the range; an estimate, 0
+         *                 when unknown
+         */
+        void onProgress(long written, long expected);
+    }
+
+    private final AuditLogDAO auditLogDAO = new AuditLogDAO();
+    private final AuditStatsDAO auditStatsDAO = new AuditStatsDAO();
+
+    /**
+     * Export entries with start <= timestamp <= end. Blocking; run it off the UI thread.
+     *
+     * @param operationType only this operation, or null for all
+     * @param gzip          compress the file
+     * @param listener      progress callback, or null
+     * @param token         cancels the export, or null
+     * @return number of entries written
+     * @throws CancellationException when cancelled through the token
+     */
+    public long export(Long userId, Timestamp start, Timestamp end, String operationType, Format format,
+                       boolean gzip, File target, Listener listener, CancellationToken token)
+            throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        try {
+            // Include entries of operations that just finished
+            AuditWriter.getInstance().flush(FLUSH_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Export interrupted");
+        }
+        long expected = expectedCount(userId, start, end, operationType);
+        File part = new File(target.getPath() + PART_SUFFIX);
+        long written = 0;
+        boolean complete = false;
+
+        try {
+            try (OutputStream raw = new BufferedOutputStream(new FileOutputStream(part), BUFFER_SIZE);
+                 OutputStream stream = gzip ? new GZIPOutputStream(raw, BUFFER_SIZE) : raw;
+                 Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+
+                RowWriter rows = format == Format.JSON ? new JsonRows(out) : new CsvRows(out);
+                rows.begin();
+
+                try (RowCursor<AuditLog> cursor = auditLogDAO.openByUserId(userId, start, end, operationType,
+                        EXPORT_FETCH_SIZE)) {
+                    while (cursor.next()) {
+                        rows.write(cursor.get());
+                        progress(++written, expected, listener, token);
+                    }
+                }
+
+                // Entries past the retention period, read one archived month at a time
+                AuditArchive archive = AuditArchive.getInstance();
+                Timestamp tableOldest = null;
+                boolean tableChecked = false;
+                for (YearMonth month : archive.months()) {
+                    Timestamp monthStart = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+                    Timestamp monthEnd = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+                    if ((end != null && monthStart.after(end)) || (start != null && !monthEnd.after(start))) continue;
+
+                    if (!tableChecked) {
+                        tableOldest = auditLogDAO.findOldestTimestamp(userId);
+                        tableChecked = true;
+                    }
+                    // A month whose retention run was cut short is still partly in the table
+                    Set<Long> exported = tableOldest != null && tableOldest.before(monthEnd)
+                            ? auditLogDAO.findLogIds(userId, monthStart, monthEnd) : Set.of();
+
+                    Timestamp from = start != null && start.after(monthStart) ? start : monthStart;
+                    Timestamp to = new Timestamp(monthEnd.getTime() - 1);
+                    if (end != null && end.before(to)) to = end;
+                    List<AuditLog> archived = archive.find(userId, from, to);
+                    for (AuditLog log : archived) {
+                        if (operationType != null && !operationType.equals(log.getOperationType())) continue;
+                        if (exported.contains(log.getLogId())) continue;
+                        rows.write(log);
+                        progress(++written, expected, listener, token);
+                    }
+                }
+
+                rows.end();
+            }
+            complete = true;
+        } finally {
+            if (!complete) Files.deleteIfExists(part.toPath());
+        }
+
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (listener != null) listener.onProgress(written, Math.max(expected, written));
+        logger.info("Exported {} audit entr(ies) to {} in {} ms", written, target.getName(),
+                System.currentTimeMillis() - started);
+        return written;
+    }
+
+    // Entry count of the range from the daily rollups, for progress; 0 if unavailable
+    private long expectedCount(Long userId, Timestamp start, Timestamp end, String operationType) {
+        LocalDate from = start != null ? start.toLocalDateTime().toLocalDate() : LocalDate.of(1970, 1, 1);
+        LocalDate to = end != null ? end.toLocalDateTime().toLocalDate() : LocalDate.now();
+        try {
+            long total = 0;
+            for (OperationStats s : auditStatsDAO.findByUser(userId, from, to, operationType,
+                    OperationStats.Period.TOTAL)) {
+                total += s.getCount();
+            }
+            return total;
+        } catch (SQLException e) {
+            logger.debug("No export estimate: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private static void progress(long written, long expected, Listener listener, CancellationToken token) {
+        if (written % PROGRESS_EVERY != 0) return;
+        if (token != null && token.isCancelled()) throw new CancellationException("Export cancelled");
+        if (listener != null) listener.onProgress(written, Math.max(expected, written));
+    }
+
+    private interface RowWriter {
+        void begin() throws IOException;
+
+        void write(AuditLog log) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    // RFC 4180: fields quoted when they hold a comma, quote or line break
+    private static final class CsvRows implements RowWriter {
+        private final Writer out;
+
+        CsvRows(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write(String.join(",", CSV_HEADER));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void write(AuditLog log) throws IOException {
+            out.write(text(log.getLogId()));
+            out.write(',');
+            out.write(log.getTimestamp() == null ? "" : log.getTimestamp().toInstant().toString());
+            out.write(',');
+            field(log.getOperationType());
+            out.write(',');
+            field(log.getOperationStatus());
+            out.write(',');
+            out.write(text(log.getFileId()));
+            out.write(',');
+            out.write(text(log.getFileSize()));
+            out.write(',');
+            out.write(text(log.getDurationMs()));
+            out.write(',');
+            out.write(text(log.getThroughputMbps()));
+            out.write(',');
+            field(log.getErrorMessage());
+            out.write("\r\n");
+        }
+
+        @Override
+        public void end() {
+        }
+
+        private void field(String s) throws IOException {
+            if (s == null) return;
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+                out.write(s);
+                return;
+            }
+            out.write('"');
+            out.write(s.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        private static String text(Object v) {
+            return v == null ? "" : v.toString();
+        }
+    }
+
+    // One JSON array, one entry object per line
+    private static final class JsonRows implements RowWriter {
+        private final Writer out;
+        private boolean first = true;
+
+        JsonRows(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write('[');
+        }
+
+        @Override
+        public void write(AuditLog log) throws IOException {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write("{\"logId\":");
+            out.write(String.valueOf(log.getLogId()));
+            out.write(",\"timestamp\":");
+            string(log.getTimestamp() == null ? null : log.getTimestamp().toInstant().toString());
+            out.write(",\"operation\":");
+            string(log.getOperationType());
+            out.write(",\"status\":");
+            string(log.getOperationStatus());
+            out.write(",\"fileId\":");
+            out.write(String.valueOf(log.getFileId()));
+            out.write(",\"fileSize\":");
+            out.write(String.valueOf(log.getFileSize()));
+            out.write(",\"durationMs\":");
+            out.write(String.valueOf(log.getDurationMs()));
+            out.write(",\"throughputMbps\":");
+            out.write(String.valueOf(log.getThroughputMbps()));
+            out.write(",\"errorMessage\":");
+            string(log.getErrorMessage());
+            out.write('}');
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.write("\n]\n");
+        }
+
+        private void string(String s) throws IOException {
+            if (s == null) {
+                out.write("null");
+                return;
+            }
+            out.write('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"': out.write("\\\""); break;
+                    case '\\': out.write("\\\\"); break;
+                    case '\n': out.write("\\n"); break;
+                    case '\r': out.write("\\r"); break;
+                    case '\t': out.write("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            out.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.write(c);
+                        }
+                }
+            }
+            out.write('"');
+        }
+    }
+}
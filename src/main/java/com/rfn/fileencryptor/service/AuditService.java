@@ -1,85 +1,138 @@
 package com.rfn.fileencryptor.service;
 
 import com.rfn.fileencryptor.dao.AuditLogDAO;
+import com.rfn.fileencryptor.dao.AuditStatsDAO;
 import com.rfn.fileencryptor.model.AuditLog;
+import com.rfn.fileencryptor.model.OperationStats;
 
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class AuditService {
 
+    private static final Logger logger = LoggerFactory.getLogger(AuditService.class);
+
+    private static final long HISTORY_FLUSH_TIMEOUT_MS = 2000;
+
     private final AuditLogDAO auditLogDAO;
+    private final AuditStatsDAO auditStatsDAO;
+    // Entries are written in the background; logging never waits on the database
+    private final AuditWriter auditWriter;
 
     public AuditService() {
         this.auditLogDAO = new AuditLogDAO();
+        this.auditStatsDAO = new AuditStatsDAO();
+        this.auditWriter = AuditWriter.getInstance();
     }
 
     // Standard audit logging (encrypt, decrypt, etc)
     public void logFileOperation(Long userId, Long fileId, String operationType,
                                  String operationStatus, Long fileSize, Long durationMs) {
-        try {
-            AuditLog log = new AuditLog();
-            log.setUserId(userId);
-            log.setFileId(fileId);
-            log.setOperationType(operationType);
-            log.setOperationStatus(operationStatus);
-            log.setFileSize(fileSize);
-            log.setDurationMs(durationMs);
-            log.setTimestamp(new Timestamp(System.currentTimeMillis()));
-            auditLogDAO.insert(log);
+        AuditLog log = new AuditLog();
+        log.setUserId(userId);
+        log.setFileId(fileId);
+        log.setOperationType(operationType);
+        log.setOperationStatus(operationStatus);
+        log.setFileSize(fileSize);
+        log.setDurationMs(durationMs);
+        log.setThroughputMbps(throughputMbps(fileSize, durationMs));
+        log.setTimestamp(new Timestamp(System.currentTimeMillis()));
+        auditWriter.submit(log);
+    }
 
-            System.out.println("Audit log saved: " + operationType + " - " + operationStatus);
-        } catch (SQLException e) {
-            System.err.println("Failed to save audit log: " + e.getMessage());
-        }
+    // Average MB/s over the whole operation; null when size or duration is unknown
+    static Double throughputMbps(Long fileSize, Long durationMs) {
+        if (fileSize == null || durationMs == null || fileSize <= 0 || durationMs <= 0) return null;
+        double mbps = fileSize / (1024.0 * 1024.0) / (durationMs / 1000.0);
+        return Math.round(mbps * 100.0) / 100.0;
     }
 
     // With error message
     public void logFileOperation(Long userId, Long fileId, String operationType,
                                  String operationStatus, Long fileSize, Long durationMs,
                                  String errorMessage) {
-        try {
-            AuditLog log = new AuditLog();
-            log.setUserId(userId);
-            log.setFileId(fileId);
-            log.setOperationType(operationType);
-            log.setOperationStatus(operationStatus);
-            log.setFileSize(fileSize);
-            log.setDurationMs(durationMs);
-            log.setErrorMessage(errorMessage);
-            log.setTimestamp(new Timestamp(System.currentTimeMillis()));
-            auditLogDAO.insert(log);
-
-            System.out.println("Audit log saved: " + operationType + " - " + operationStatus);
-        } catch (SQLException e) {
-            System.err.println("Failed to save audit log: " + e.getMessage());
-        }
+        AuditLog log = new AuditLog();
+        log.setUserId(userId);
+        log.setFileId(fileId);
+        log.setOperationType(operationType);
+        log.setOperationStatus(operationStatus);
+        log.setFileSize(fileSize);
+        log.setDurationMs(durationMs);
+        log.setErrorMessage(errorMessage);
+        log.setTimestamp(new Timestamp(System.currentTimeMillis()));
+        auditWriter.submit(log);
     }
 
     // Log login attempts
     public void logLoginAttempt(Long userId, String status, String message) {
-        try {
-            AuditLog log = new AuditLog();
-            log.setUserId(userId);
-            log.setOperationType("LOGIN");
-            log.setOperationStatus(status);
-            log.setErrorMessage(message);
-            log.setTimestamp(new Timestamp(System.currentTimeMillis()));
-            auditLogDAO.insert(log);
-            System.out.println("Audit login attempt: " + status + " - " + message);
-        } catch (SQLException e) {
-            System.err.println("Failed to save login audit log: " + e.getMessage());
-        }
+        AuditLog log = new AuditLog();
+        log.setUserId(userId);
+        log.setOperationType("LOGIN");
+        log.setOperationStatus(status);
+        log.setErrorMessage(message);
+        log.setTimestamp(new Timestamp(System.currentTimeMillis()));
+        auditWriter.submit(log);
+        logger.debug("Audit login attempt: {} - {}", status, message);
     }
 
     // ✅ Main fix: add history lookup for HistoryController
     public List<AuditLog> getAuditHistory(Long userId, Timestamp startDate, Timestamp endDate) {
+        return getAuditHistory(userId, startDate, endDate, null);
+    }
+
+    // Entries of one operation type, or of all when operationType is null
+    public List<AuditLog> getAuditHistory(Long userId, Timestamp startDate, Timestamp endDate,
+                                          String operationType) {
         try {
-            return auditLogDAO.findByUserIdAndDateRange(userId, startDate, endDate);
+            // Show entries of operations that just finished
+            auditWriter.flush(HISTORY_FLUSH_TIMEOUT_MS);
+            List<AuditLog> logs = auditLogDAO.findByUserIdAndDateRange(userId, startDate, endDate, operationType);
+            // Entries past the retention period come from the local archive
+            List<AuditLog> archived = AuditArchive.getInstance().find(userId, startDate, endDate);
+            if (!archived.isEmpty()) {
+                Set<Long> inTable = new HashSet<>();
+                for (AuditLog log : logs) {
+                    inTable.add(log.getLogId());
+                }
+                for (AuditLog log : archived) {
+                    if (operationType != null && !operationType.equals(log.getOperationType())) continue;
+                    // Archived but not yet deleted when a retention run was cut short
+                    if (!inTable.contains(log.getLogId())) logs.add(log);
+                }
+                logs.sort(AuditArchive.NEWEST_FIRST);
+            }
+            return logs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new java.util.ArrayList<>();
         } catch (SQLException e) {
             System.err.println("Failed to get audit history: " + e.getMessage());
             return new java.util.ArrayList<>();
         }
     }
+
+    /**
+     * Totals per period and operation type for from <= day <= to, read from the daily
+     * rollups rather than the entries. operationType may be null for all types.
+     */
+    public List<OperationStats> getOperationStats(Long userId, LocalDate from, LocalDate to,
+                                                  String operationType, OperationStats.Period period) {
+        try {
+            auditWriter.flush(HISTORY_FLUSH_TIMEOUT_MS);
+            return auditStatsDAO.findByUser(userId, from, to, operationType, period);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new java.util.ArrayList<>();
+        } catch (SQLException e) {
+            System.err.println("Failed to get operation statistics: " + e.getMessage());
+            return new java.util.ArrayList<>();
+        }
+    }
 }
@@ -0,0 +1,188 @@
+package com.rfn.fileencryptor.service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.dao.AuditLogDAO;
+import com.rfn.fileencryptor.model.AuditLog;
+
+/**
+ * Writes audit entries in the background so encrypt and decrypt never wait on the database.
+ *
+ * Entries go into a bounded queue; one writer thread takes whatever has accumulated and
+ * inserts it as a single JDBC batch and commit, so the busier the workers the larger each
+ * commit. A full queue blocks the submitting worker instead of dropping entries. If a
+ * batch fails, its entries are retried one by one; an entry whose file row is already gone
+ * (deleted before the entry was written) is stored without the file reference. Should the
+ * writer thread ever die, submitters write their entries themselves.
+ */
+public final class AuditWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditWriter.class);
+
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BATCH = 500;
+    // Foreign key parent missing: ORA-02291 on Oracle, SQLSTATE 23506 on H2
+    private static final int ORA_PARENT_KEY_NOT_FOUND = 2291;
+    private static final String H2_PARENT_MISSING = "23506";
+    private static final long IDLE_POLL_MS = 200;
+
+    private static volatile AuditWriter instance;
+
+    private final AuditLogDAO auditLogDAO = new AuditLogDAO();
+    private final BlockingQueue<AuditLog> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+    // Entries queued and entries finished (written or given up), for flush()
+    private final AtomicLong submitted = new AtomicLong();
+    private long completed;
+
+    public static AuditWriter getInstance() {
+        if (instance == null) {
+            synchronized (AuditWriter.class) {
+                if (instance == null) {
+                    instance = new AuditWriter();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private AuditWriter() {
+        writer = new Thread(this::run, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue an entry. Blocks while the queue is full; after {@link #shutdown}, or if the
+     * writer thread has died, the entry is written on the calling thread.
+     */
+    public void submit(AuditLog log) {
+        if (!closed) {
+            submitted.incrementAndGet();
+            try {
+                // Offered in steps so a dead writer cannot leave the worker blocked on a full queue
+                while (writer.isAlive()) {
+                    if (queue.offer(log, IDLE_POLL_MS, TimeUnit.MILLISECONDS)) return;
+                }
+                logger.error("Audit writer thread is not running; writing entry inline");
+            } catch (InterruptedException e) {
+                // A cancelled worker still owes its audit entry
+                Thread.currentThread().interrupt();
+            }
+            submitted.decrementAndGet();
+        }
+        List<AuditLog> single = new ArrayList<>(1);
+        single.add(log);
+        write(single);
+    }
+
+    /**
+     * Wait until everything submitted so far is committed.
+     *
+     * @return false if the timeout passed first
+     */
+    public boolean flush(long timeoutMs) throws InterruptedException {
+        long target = submitted.get();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (this) {
+            while (completed < target) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0 || !writer.isAlive()) return false;
+                wait(Math.min(left, 100));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting queued entries and write the backlog. Call before the pool closes.
+     */
+    public void shutdown() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("{} audit entr(ies) not written before shutdown", queue.size());
+        }
+    }
+
+    private void run() {
+        List<AuditLog> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            // Polled rather than interrupted on shutdown, so a write in progress is never cut off
+            AuditLog first;
+            try {
+                first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (closed) return;
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH - 1);
+            try {
+                write(batch);
+            } finally {
+                synchronized (this) {
+                    completed += batch.size();
+                    notifyAll();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    // The entry's file was deleted before the entry was written
+    private static boolean isMissingParent(SQLException e) {
+        return e.getErrorCode() == ORA_PARENT_KEY_NOT_FOUND || H2_PARENT_MISSING.equals(e.getSQLState());
+    }
+
+    private void write(List<AuditLog> batch) {
+        // RuntimeExceptions (pool shut down, driver bugs) are caught too: they would end the writer thread
+        try {
+            auditLogDAO.insertBatch(batch);
+            return;
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Audit batch of {} failed, writing entries singly: {}", batch.size(), e.getMessage());
+        }
+        for (AuditLog log : batch) {
+            try {
+                auditLogDAO.insert(log);
+            } catch (SQLException e) {
+                Exception failure = e;
+                if (isMissingParent(e) && log.getFileId() != null) {
+                    log.setFileId(null);
+                    try {
+                        auditLogDAO.insert(log);
+                        continue;
+                    } catch (SQLException | RuntimeException retry) {
+                        failure = retry;
+                    }
+                }
+                logFailure(log, failure);
+            } catch (RuntimeException e) {
+                logFailure(log, e);
+            }
+        }
+    }
+
+    private static void logFailure(AuditLog log, Exception e) {
+        logger.error("Failed to save audit log {} - {}: {}",
+                log.getOperationType(), log.getOperationStatus(), e.getMessage());
+    }
+}
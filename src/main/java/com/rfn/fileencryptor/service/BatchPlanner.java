@@ -0,0 +1,93 @@
+package com.rfn.fileencryptor.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+
+/**
+ * Sizing decisions for batch scheduling.
+ *
+ * Files at or above segment.split.mb are cut into segments so idle workers can share
+ * them; everything else runs as one unit. The makespan estimate replays the scheduler's
+ * largest-first order (LPT) over the worker count using a running per-worker
+ * throughput measured from completed units.
+ */
+public final class BatchPlanner {
+
+    // Starting guess for one worker's AES-GCM throughput until real samples arrive
+    private static final double DEFAULT_BYTES_PER_SEC = 150.0 * 1024 * 1024;
+    private static final double EWMA_ALPHA = 0.2;
+    // Units smaller than this are dominated by per-file overhead and skew the rate
+    private static final long MIN_SAMPLE_BYTES = 1024L * 1024;
+
+    private static volatile double workerBytesPerSec = DEFAULT_BYTES_PER_SEC;
+
+    private BatchPlanner() {
+    }
+
+    /**
+     * Whether an item of this size should be split into segments.
+     */
+    public static boolean shouldSplit(long sizeBytes) {
+        return sizeBytes >= ConfigManager.getSegmentSplitThresholdBytes();
+    }
+
+    /**
+     * Work units the scheduler will create for an item of this size.
+     */
+    public static List<Long> units(long sizeBytes) {
+        List<Long> units = new ArrayList<>();
+        if (!shouldSplit(sizeBytes)) {
+            units.add(Math.max(0L, sizeBytes));
+            return units;
+        }
+        long segment = ConfigManager.getSegmentSizeBytes();
+        for (long off = 0; off < sizeBytes; off += segment) {
+            units.add(Math.min(segment, sizeBytes - off));
+        }
+        return units;
+    }
+
+    /**
+     * Estimated wall time in ms to process the given item sizes on 'workers' threads,
+     * assigning units largest-first to the least loaded worker.
+     */
+    public static long estimateMakespanMs(List<Long> itemSizes, int workers) {
+        List<Long> units = new ArrayList<>();
+        for (Long size : itemSizes) {
+            units.addAll(units(size == null ? 0L : size));
+        }
+        units.sort(Comparator.reverseOrder());
+
+        PriorityQueue<Long> loads = new PriorityQueue<>();
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            loads.add(0L);
+        }
+        for (long unit : units) {
+            loads.add(loads.poll() + unit);
+        }
+        long maxLoad = 0;
+        for (long load : loads) {
+            maxLoad = Math.max(maxLoad, load);
+        }
+        return (long) (maxLoad * 1000.0 / workerBytesPerSec);
+    }
+
+    /**
+     * Feed a completed unit's timing into the throughput estimate.
+     */
+    public static void recordUnit(long bytes, long elapsedNanos) {
+        if (bytes < MIN_SAMPLE_BYTES || elapsedNanos <= 0) return;
+        double rate = bytes * 1_000_000_000.0 / elapsedNanos;
+        synchronized (BatchPlanner.class) {
+            workerBytesPerSec = EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * workerBytesPerSec;
+        }
+    }
+
+    public static double getWorkerBytesPerSec() {
+        return workerBytesPerSec;
+    }
+}
@@ -2,11 +2,44 @@ package com.rfn.fileencryptor.service;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Locale;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public class CompressionService {
 
+    /**
+     * Whether a batch compresses its files. AUTO compresses text-like files but keeps large
+     * ones on the parallel segmented path.
+     */
+    public enum Mode {
+        AUTO, YES, NO;
+
+        public boolean appliesTo(File f) {
+            if (this != AUTO) return this == YES;
+            return isLikelyCompressible(f.getName()) && !BatchPlanner.shouldSplit(f.length());
+        }
+    }
+
+    // Formats that are already compressed; GZIP only costs time on these
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "jar",
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "aac", "ogg", "flac", "m4a",
+            "mp4", "mkv", "mov", "avi", "webm",
+            "pdf", "docx", "xlsx", "pptx", "odt", "epub");
+
+    /**
+     * Whether GZIP is likely to shrink a file with this name, judged by its extension.
+     */
+    public static boolean isLikelyCompressible(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0 || dot == filename.length() - 1) return true;
+        return !COMPRESSED_EXTENSIONS.contains(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
     /**
      * Compress data using GZIP
      * @param data Uncompressed data
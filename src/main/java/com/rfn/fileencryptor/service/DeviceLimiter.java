@@ -0,0 +1,306 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+
+/**
+ * Limits how many batch streams touch one storage device at a time.
+ *
+ * Every path a task reads or writes is mapped to its FileStore. Each store gets a
+ * device class (hdd, ssd, nvme, network) and at most device.streams.&lt;class&gt; tasks
+ * may use it concurrently, so a spinning disk is read one file at a time while NVMe
+ * keeps every worker busy. The class comes from device.class.&lt;store&gt; in the config,
+ * else from /sys/block on Linux, else from a short random-read probe.
+ *
+ * Gating never blocks a worker: a task whose device is full is parked on that device
+ * and handed back to the scheduler when a stream there is released, so workers keep
+ * running tasks for other devices in a mixed batch. Only as many parked tasks as there
+ * are free streams are handed back, largest first like the scheduler's own queue.
+ */
+public final class DeviceLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceLimiter.class);
+
+    private static volatile DeviceLimiter instance;
+
+    private static final Set<String> NETWORK_TYPES = new HashSet<>(Arrays.asList(
+            "nfs", "nfs4", "cifs", "smb3", "smbfs", "sshfs", "fuse.sshfs", "9p", "afs", "ceph",
+            "glusterfs", "fuse.glusterfs", "davfs", "fuse.rclone"));
+    private static final Set<String> MEMORY_TYPES = new HashSet<>(Arrays.asList("tmpfs", "ramfs"));
+
+    // Probe: random 4 KiB reads over a file of at least PROBE_MIN_BYTES
+    private static final long PROBE_MIN_BYTES = 64L * 1024 * 1024;
+    private static final int PROBE_READS = 16;
+    private static final long PROBE_SEEK_NANOS = 3_000_000L;
+
+    /**
+     * Device classes with separately configured stream limits.
+     */
+    public enum DeviceClass {
+        HDD("hdd"),
+        SSD("ssd"),
+        NVME("nvme"),
+        NETWORK("network");
+
+        private final String key;
+
+        DeviceClass(String key) {
+            this.key = key;
+        }
+
+        /** Config key fragment, e.g. "hdd" in device.streams.hdd. */
+        public String key() {
+            return key;
+        }
+
+        static DeviceClass fromKey(String key) {
+            for (DeviceClass c : values()) {
+                if (c.key.equalsIgnoreCase(key)) return c;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One storage device and the tasks using or waiting for it.
+     */
+    static final class Device {
+        private final FileStore store;
+        private final DeviceClass detected;
+        private int active;
+        private final PriorityQueue<Parked> parked = new PriorityQueue<>(PARKED_ORDER);
+
+        Device(FileStore store, DeviceClass detected) {
+            this.store = store;
+            this.detected = detected;
+        }
+
+        DeviceClass deviceClass() {
+            DeviceClass configured = DeviceClass.fromKey(ConfigManager.getDeviceClassOverride(store.name()));
+            return configured != null ? configured : detected;
+        }
+
+        int limit() {
+            return ConfigManager.getDeviceStreams(deviceClass().key());
+        }
+
+        @Override
+        public String toString() {
+            return store.name() + " (" + deviceClass().key() + ")";
+        }
+    }
+
+    // A task waiting for a stream, with the size it is prioritised by
+    private static final class Parked {
+        final long priorityBytes;
+        final long seq;
+        final Runnable retry;
+
+        Parked(long priorityBytes, long seq, Runnable retry) {
+            this.priorityBytes = priorityBytes;
+            this.seq = seq;
+            this.retry = retry;
+        }
+    }
+
+    // Largest first, then in the order they were parked
+    private static final Comparator<Parked> PARKED_ORDER =
+            Comparator.<Parked>comparingLong(p -> -p.priorityBytes).thenComparingLong(p -> p.seq);
+
+    private final Map<FileStore, Device> devices = new ConcurrentHashMap<>();
+    // Directory -> device, so large batches resolve each folder's store once
+    private final Map<Path, Device> byDirectory = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private long parkSeq;
+
+    public static DeviceLimiter getInstance() {
+        if (instance == null) {
+            synchronized (DeviceLimiter.class) {
+                if (instance == null) {
+                    instance = new DeviceLimiter();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DeviceLimiter() {
+    }
+
+    /**
+     * Distinct devices behind paths. Paths that do not exist yet (outputs) are resolved
+     * through their nearest existing parent; unresolvable paths are left out.
+     */
+    List<Device> devicesOf(Collection<Path> paths) {
+        List<Device> result = new ArrayList<>(2);
+        for (Path p : paths) {
+            if (p == null) continue;
+            Device d = deviceOf(p.toAbsolutePath().normalize());
+            if (d != null && !result.contains(d)) result.add(d);
+        }
+        return result.isEmpty() ? Collections.emptyList() : result;
+    }
+
+    /**
+     * Take a stream on every device, or park retry on the first full one. Atomic, so a
+     * release between the check and the park cannot strand the task.
+     */
+    boolean tryAcquireOrPark(List<Device> needed, long priorityBytes, Runnable retry) {
+        if (needed.isEmpty()) return true;
+        synchronized (lock) {
+            for (Device d : needed) {
+                if (d.active >= d.limit()) {
+                    d.parked.add(new Parked(priorityBytes, parkSeq++, retry));
+                    return false;
+                }
+            }
+            for (Device d : needed) {
+                d.active++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Return streams taken by {@link #tryAcquireOrPark}. For each of those devices, as many
+     * parked tasks as it has free streams are returned for requeueing; a task that loses
+     * the stream to another one in the meantime simply parks again.
+     */
+    List<Runnable> release(List<Device> held) {
+        if (held.isEmpty()) return Collections.emptyList();
+        List<Runnable> woken = new ArrayList<>();
+        synchronized (lock) {
+            for (Device d : held) {
+                d.active--;
+                for (int free = d.limit() - d.active; free > 0 && !d.parked.isEmpty(); free--) {
+                    woken.add(d.parked.poll().retry);
+                }
+            }
+        }
+        return woken;
+    }
+
+    /**
+     * Smallest stream limit among devices (Integer.MAX_VALUE when there are none).
+     */
+    int streamLimit(List<Device> of) {
+        int limit = Integer.MAX_VALUE;
+        for (Device d : of) {
+            limit = Math.min(limit, d.limit());
+        }
+        return limit;
+    }
+
+    private Device deviceOf(Path path) {
+        Path dir = Files.isDirectory(path) ? path : path.getParent();
+        if (dir == null) return null;
+        Device cached = byDirectory.get(dir);
+        if (cached != null) return cached;
+
+        Path existing = dir;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) return null;
+        try {
+            FileStore store = Files.getFileStore(existing);
+            Device d = devices.computeIfAbsent(store, s -> {
+                DeviceClass cls = detect(s, path);
+                logger.info("Storage device {} [{}] detected as {}", s.name(), s.type(), cls.key());
+                return new Device(s, cls);
+            });
+            // Only cache directories that exist; a missing one may be created on another mount
+            if (existing.equals(dir)) byDirectory.put(dir, d);
+            return d;
+        } catch (IOException | SecurityException e) {
+            logger.debug("No file store for {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static DeviceClass detect(FileStore store, Path sample) {
+        String type = store.type().toLowerCase(Locale.ROOT);
+        if (NETWORK_TYPES.contains(type)) return DeviceClass.NETWORK;
+        if (MEMORY_TYPES.contains(type)) return DeviceClass.NVME;
+
+        DeviceClass fromSys = fromSysBlock(store.name());
+        if (fromSys != null) return fromSys;
+
+        DeviceClass probed = probe(sample);
+        return probed != null ? probed : DeviceClass.SSD;
+    }
+
+    /**
+     * Linux: /sys/class/block/&lt;dev&gt;/queue/rotational, looked up on the whole disk for a
+     * partition. Returns null when the store is not a block device or sysfs is absent.
+     */
+    static DeviceClass fromSysBlock(String storeName) {
+        if (storeName == null || !storeName.startsWith("/dev/")) return null;
+        try {
+            // /dev/mapper/x and /dev/disk/by-* are symlinks to the kernel name (dm-0, sda1)
+            Path dev = Paths.get(storeName).toRealPath();
+            Path sys = Paths.get("/sys/class/block", dev.getFileName().toString());
+            if (!Files.exists(sys)) return null;
+            sys = sys.toRealPath();
+            if (Files.exists(sys.resolve("partition"))) sys = sys.getParent();
+
+            Path rotational = sys.resolve("queue").resolve("rotational");
+            if (!Files.isReadable(rotational)) return null;
+            if ("1".equals(Files.readString(rotational).trim())) return DeviceClass.HDD;
+            return sys.getFileName().toString().startsWith("nvme") ? DeviceClass.NVME : DeviceClass.SSD;
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Time a few scattered 4 KiB reads of sample; a median above a few milliseconds
+     * means the head is seeking. Needs a large enough regular file, else null.
+     */
+    static DeviceClass probe(Path sample) {
+        try {
+            if (!Files.isRegularFile(sample)) return null;
+            long size = Files.size(sample);
+            if (size < PROBE_MIN_BYTES) return null;
+            long[] nanos = new long[PROBE_READS];
+            ByteBuffer buf = ByteBuffer.allocateDirect(4096);
+            try (FileChannel ch = FileChannel.open(sample, StandardOpenOption.READ)) {
+                for (int i = 0; i < PROBE_READS; i++) {
+                    long pos = ThreadLocalRandom.current().nextLong(size - 4096) & ~4095L;
+                    buf.clear();
+                    long started = System.nanoTime();
+                    ch.read(buf, pos);
+                    nanos[i] = System.nanoTime() - started;
+                }
+            }
+            Arrays.sort(nanos);
+            return nanos[PROBE_READS / 2] > PROBE_SEEK_NANOS ? DeviceClass.HDD : DeviceClass.SSD;
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.rfn.fileencryptor.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.model.FileMetadata;
+
+/**
+ * In-process notifications of FILE_METADATA rows added or removed, so views can apply the
+ * change instead of re-reading the owner's files.
+ *
+ * Events are published after the row is committed, on the thread that changed it (often
+ * a batch worker); listeners must be quick and hand off to their own thread.
+ */
+public final class FileEvents {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEvents.class);
+
+    private static volatile FileEvents instance;
+
+    /**
+     * Receiver of row changes.
+     */
+    public interface Listener {
+        /** A row was inserted; the metadata carries its file id and created_at. */
+        void onFileAdded(FileMetadata metadata);
+
+        /** A row was deleted. */
+        void onFileRemoved(FileMetadata metadata);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public static FileEvents getInstance() {
+        if (instance == null) {
+            synchronized (FileEvents.class) {
+                if (instance == null) {
+                    instance = new FileEvents();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private FileEvents() {
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void fireAdded(FileMetadata metadata) {
+        for (Listener l : listeners) {
+            try {
+                l.onFileAdded(metadata);
+            } catch (RuntimeException e) {
+                logger.warn("File event listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    public void fireRemoved(FileMetadata metadata) {
+        for (Listener l : listeners) {
+            try {
+                l.onFileRemoved(metadata);
+            } catch (RuntimeException e) {
+                logger.warn("File event listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -2,29 +2,49 @@ package com.rfn.fileencryptor.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
 import java.sql.SQLException;
 import java.util.UUID;
 
 import javax.crypto.SecretKey;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.rfn.fileencryptor.config.ConfigManager;
 import com.rfn.fileencryptor.dao.FileMetadataDAO;
 import com.rfn.fileencryptor.dao.FilePasswordDAO;
 import com.rfn.fileencryptor.model.FileMetadata;
 import com.rfn.fileencryptor.model.FilePassword;
 import com.rfn.fileencryptor.util.CryptoUtil;
+import com.rfn.fileencryptor.util.IoGovernor;
 import com.rfn.fileencryptor.util.ProgressTracker;
 import com.rfn.fileencryptor.util.SecureFileUtil;
+import com.rfn.fileencryptor.util.SegmentedCipher;
 
 public class FileService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileService.class);
+
+    /**
+     * Outputs are written under this suffix and renamed into place once complete,
+     * so an interrupted operation never leaves a truncated file under the real name.
+     */
+    public static final String PARTIAL_SUFFIX = ".fepart";
+
     private final EncryptionService encryptionService;
     private final FileMetadataDAO fileMetadataDAO;
     private final FilePasswordDAO filePasswordDAO;
     private final AuditService auditService;
 
+    // Derived decryption keys by password digest + salt; off unless enableKeyCache is called
+    private volatile java.util.Map<String, SecretKey> keyCache;
+
     public FileService() {
         this.encryptionService = new EncryptionService();
         this.fileMetadataDAO = new FileMetadataDAO();
@@ -37,48 +57,48 @@ public class FileService {
                                     boolean compress, ProgressTracker.ProgressCallback progressCallback,
                                     com.rfn.fileencryptor.util.CancellationToken cancelToken)
             throws Exception {
+        return encryptFile(inputFile, null, filePassword, userId, compress, progressCallback, cancelToken);
+    }
 
-        long startTime = System.currentTimeMillis();
+    /**
+     * Encrypt a file that is part of a folder; relativePath is stored so decrypt can restore the tree.
+     */
+    public FileMetadata encryptFile(File inputFile, String relativePath, String filePassword, Long userId,
+                                    boolean compress, ProgressTracker.ProgressCallback progressCallback,
+                                    com.rfn.fileencryptor.util.CancellationToken cancelToken)
+            throws Exception {
+        return encryptFile(inputFile, relativePath, openSession(filePassword, userId), compress,
+                progressCallback, cancelToken);
+    }
 
-        try {
-            System.out.println("Starting encryption: " + inputFile.getAbsolutePath());
+    /**
+     * Encrypt with an already verified session key (no key derivation per file).
+     */
+    public FileMetadata encryptFile(File inputFile, String relativePath, KeySession session,
+                                    boolean compress, ProgressTracker.ProgressCallback progressCallback,
+                                    com.rfn.fileencryptor.util.CancellationToken cancelToken)
+            throws Exception {
 
-            // Get stored file password info
-            FilePassword storedFp = filePasswordDAO.findByUserId(userId);
-            if (storedFp == null) {
-                throw new Exception("No file encryption password set for user");
-            }
+        if (!compress) {
+            // Uncompressed files use the segmented format; run every segment on this thread
+            return runSegmented(splitEncrypt(inputFile, relativePath, session), progressCallback, cancelToken);
+        }
 
-            String storedHashHex = storedFp.getEncryptedFilePassword();
-            byte[] storedHash = CryptoUtil.hexToBytes(storedHashHex);
-            byte[] salt = CryptoUtil.hexToBytes(storedFp.getFpSalt());
+        Long userId = session.getUserId();
+        long startTime = System.currentTimeMillis();
 
-            // Verify password by deriving key with same parameters
-            byte[] checkHash = CryptoUtil.deriveKey(
-                filePassword,
-                salt,
-                storedFp.getIterations()
-            );
+        try {
+            logger.debug("Starting encryption: {}", inputFile.getAbsolutePath());
 
-            // Compare hashes
-            if (!java.util.Arrays.equals(checkHash, storedHash)) {
-                throw new Exception("Invalid file encryption password");
-            }
+            byte[] salt = session.salt;
 
             // Generate IV for encryption
             byte[] iv = CryptoUtil.generateIV();
 
-            // If password is valid, derive encryption key using the stored salt
-            SecretKey key = CryptoUtil.deriveKey(filePassword, salt);            // Output file: use configured storage directory and unique filename to avoid collisions
-            String storageDir = ConfigManager.getStorageDir();
-            try {
-                SecureFileUtil.createDirectoryIfNotExists(storageDir);
-            } catch (IOException ioe) {
-                throw new Exception("Failed to create storage directory: " + storageDir, ioe);
-            }
-
-            String uniqueName = UUID.randomUUID().toString() + "__" + inputFile.getName() + ".encrypted";
-            File outputFile = new File(storageDir, uniqueName);
+            SecretKey key = session.key;
+            File outputFile = newStorageFile(inputFile);
+            File partial = partialOf(outputFile);
+            JobJournal.notePartial(partial);
 
             // Stream encrypt directly to avoid loading entire file into memory
             long totalBytes = inputFile.length();
@@ -88,55 +108,37 @@ public class FileService {
             byte[] buffer = new byte[bufSize];
 
             try (java.io.FileInputStream fis = new java.io.FileInputStream(inputFile);
-                 java.io.FileOutputStream fos = new java.io.FileOutputStream(outputFile)) {
+                 java.io.FileOutputStream fos = new java.io.FileOutputStream(partial)) {
+
+                // Compress then encrypt on-the-fly: GZIP -> AES
+                javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance(CryptoUtil.TRANSFORMATION);
+                javax.crypto.spec.GCMParameterSpec parameterSpec = new javax.crypto.spec.GCMParameterSpec(CryptoUtil.TAG_SIZE, iv);
+                cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, key, parameterSpec);
 
-                if (compress) {
-                    // Compress then encrypt on-the-fly: GZIP -> AES
-                    javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance(CryptoUtil.TRANSFORMATION);
-                    javax.crypto.spec.GCMParameterSpec parameterSpec = new javax.crypto.spec.GCMParameterSpec(CryptoUtil.TAG_SIZE, iv);
-                    cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, key, parameterSpec);
-                    
                 try (javax.crypto.CipherOutputStream cos = new javax.crypto.CipherOutputStream(fos, cipher);
-                    java.util.zip.GZIPOutputStream gzos = new java.util.zip.GZIPOutputStream(cos, bufSize, true)) {
-                        int n;
-                        while ((n = fis.read(buffer)) != -1) {
-                            gzos.write(buffer, 0, n);
-                            readBytes += n;
-                            if (progressCallback != null) {
-                                double pct = ProgressTracker.calculatePercentage(readBytes, totalBytes);
-                                progressCallback.onProgress(pct, readBytes, totalBytes, 0);
-                            }
+                     java.util.zip.GZIPOutputStream gzos = new java.util.zip.GZIPOutputStream(cos, bufSize, true)) {
+                    int n;
+                    while ((n = fis.read(buffer)) != -1) {
+                        if (cancelToken != null && cancelToken.isCancelled()) {
+                            throw new Exception("Operation cancelled");
                         }
-                        gzos.finish();
-                    }
-                } else {
-                    // Encrypt directly without compression (check for cancellation)
-                    try (java.io.BufferedInputStream bis = new java.io.BufferedInputStream(fis, bufSize)) {
-                        javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance(CryptoUtil.TRANSFORMATION);
-                        javax.crypto.spec.GCMParameterSpec parameterSpec = new javax.crypto.spec.GCMParameterSpec(CryptoUtil.TAG_SIZE, iv);
-                        cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, key, parameterSpec);
-                        try (javax.crypto.CipherOutputStream cos = new javax.crypto.CipherOutputStream(fos, cipher)) {
-                            int n;
-                            while ((n = bis.read(buffer)) != -1) {
-                                if (cancelToken != null && cancelToken.isCancelled()) {
-                                    throw new Exception("Operation cancelled");
-                                }
-                                cos.write(buffer, 0, n);
-                                readBytes += n;
-                                if (progressCallback != null) {
-                                    double pct = ProgressTracker.calculatePercentage(readBytes, totalBytes);
-                                    progressCallback.onProgress(pct, readBytes, totalBytes, 0);
-                                }
-                            }
-                            cos.flush();
+                        IoGovernor.acquire(IoGovernor.IoClass.CRYPTO, n);
+                        gzos.write(buffer, 0, n);
+                        readBytes += n;
+                        if (progressCallback != null) {
+                            double pct = ProgressTracker.calculatePercentage(readBytes, totalBytes);
+                            progressCallback.onProgress(pct, readBytes, totalBytes, 0);
                         }
                     }
-                    if (progressCallback != null) {
-                        progressCallback.onProgress(95, totalBytes, totalBytes, 0);
-                    }
+                    gzos.finish();
                 }
                 fos.flush();
+                fos.getFD().sync();
+            } catch (Exception e) {
+                partial.delete();
+                throw e;
             }
+            replaceFile(partial, outputFile);
 
             // Create metadata
             FileMetadata metadata = new FileMetadata();
@@ -149,17 +151,19 @@ public class FileService {
             metadata.setEncryptionAlgorithm("AES-GCM-256");
             metadata.setCompressed(compress);
             metadata.setFilePath(outputFile.getAbsolutePath());
+            metadata.setRelativePath(relativePath);
 
             // Save to database
             Long fileId = fileMetadataDAO.insert(metadata);
             metadata.setFileId(fileId);
+            FileEvents.getInstance().fireAdded(metadata);
 
             if (progressCallback != null) {
                 progressCallback.onProgress(98, totalBytes, totalBytes, 0);
             }
 
-            // Delete original
-            SecureFileUtil.secureDelete(inputFile);
+            // Output and metadata are committed; shred the original in the background
+            ShredService.getInstance().enqueue(inputFile);
 
             long duration = System.currentTimeMillis() - startTime;
             auditService.logFileOperation(userId, fileId, "ENCRYPT", "SUCCESS", originalSize, duration);
@@ -168,7 +172,7 @@ public class FileService {
                 progressCallback.onProgress(100, totalBytes, totalBytes, 0);
             }
 
-            System.out.println("✅ Encrypted: " + inputFile.getName() + " → " + outputFile.getName());
+            logger.debug("Encrypted: {} -> {}", inputFile.getName(), outputFile.getName());
             return metadata;
 
         } catch (Exception e) {
@@ -178,6 +182,262 @@ public class FileService {
         }
     }
 
+    /**
+     * Start a segmented encryption of inputFile. The returned work can be spread over
+     * several threads; the original is only removed once every segment is written and
+     * {@link JobScheduler.SegmentedWork#complete()} has recorded the metadata.
+     */
+    public JobScheduler.SegmentedWork<FileMetadata> splitEncrypt(File inputFile, String relativePath,
+                                                                 KeySession session) throws Exception {
+        long startTime = System.currentTimeMillis();
+        try {
+            logger.debug("Starting encryption: {}", inputFile.getAbsolutePath());
+
+            byte[] iv = CryptoUtil.generateIV();
+            File outputFile = newStorageFile(inputFile);
+            return openSegmentedEncrypt(inputFile, relativePath, outputFile, session, iv, 0, startTime);
+        } catch (Exception e) {
+            long duration = System.currentTimeMillis() - startTime;
+            auditService.logFileOperation(session.getUserId(), null, "ENCRYPT", "FAILURE", 0L, duration,
+                    e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Reopen an interrupted segmented encryption from its checkpoint state. Returns null
+     * if the checkpoint cannot be used (source changed, password changed, partial output
+     * gone); the caller then starts the file over with a fresh IV.
+     */
+    public JobScheduler.SegmentedWork<FileMetadata> resumeEncrypt(File inputFile, String relativePath, String state,
+                                                                  long firstPending, KeySession session)
+            throws Exception {
+        String[] p = state == null ? new String[0] : state.split(",", 6);
+        if (p.length != 6 || !"E".equals(p[0])) return null;
+        File outputFile = new File(p[5]);
+        if (!partialOf(outputFile).exists()
+                || inputFile.length() != Long.parseLong(p[3]) || inputFile.lastModified() != Long.parseLong(p[4])) {
+            return null;
+        }
+        if (!CryptoUtil.bytesToHex(session.salt).equalsIgnoreCase(p[2])) return null;
+
+        byte[] iv = CryptoUtil.hexToBytes(p[1]);
+        try {
+            if (!partialMatchesSource(inputFile, partialOf(outputFile), session.key, iv, firstPending)) {
+                logger.info("{} changed since it was checkpointed; encrypting it again", inputFile.getName());
+                partialOf(outputFile).delete();
+                return null;
+            }
+            return openSegmentedEncrypt(inputFile, relativePath, outputFile, session,
+                    iv, firstPending, System.currentTimeMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resuming reuses the partial's IV, so every segment already sealed in it must be the
+     * source as it is now: segments below the checkpoint must decrypt to the current bytes,
+     * and any later one that was completely written must too. Length and mtime alone do not
+     * prove that, and sealing different plaintext under the same key and IV would expose both.
+     */
+    private static boolean partialMatchesSource(File inputFile, File partial, SecretKey key, byte[] iv,
+                                                long firstPending) throws IOException {
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel sealed = FileChannel.open(partial.toPath(), StandardOpenOption.READ)) {
+            byte[] header = SegmentedCipher.readHeader(sealed);
+            int segmentSize = SegmentedCipher.segmentSize(header);
+            long plainSize = in.size();
+            long count = SegmentedCipher.segmentCount(plainSize, segmentSize);
+            for (long i = 0; i < count; i++) {
+                long end = SegmentedCipher.cipherOffset(segmentSize, i)
+                        + SegmentedCipher.plainLength(plainSize, segmentSize, i) + SegmentedCipher.TAG_BYTES;
+                if (i >= firstPending && end > sealed.size()) break;
+                try {
+                    if (!SegmentedCipher.matchesSegment(in, sealed, key, iv, header, plainSize, i)) return false;
+                } catch (javax.crypto.AEADBadTagException e) {
+                    // Not written before the interruption, unless the checkpoint claims it was
+                    if (i < firstPending) return false;
+                } catch (GeneralSecurityException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private SegmentedEncryption openSegmentedEncrypt(File inputFile, String relativePath, File outputFile,
+                                                     KeySession session, byte[] iv, long firstPending,
+                                                     long startTime) throws Exception {
+        FileChannel in = null;
+        FileChannel out = null;
+        File partial = partialOf(outputFile);
+        JobJournal.notePartial(partial);
+        try {
+            byte[] header = SegmentedCipher.header(ConfigManager.getSegmentSizeBytes());
+            in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+            if (firstPending > 0) {
+                // Resuming: the header already on disk decides the segment layout
+                out = FileChannel.open(partial.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ);
+                header = SegmentedCipher.readHeader(out);
+            } else {
+                out = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                out.write(ByteBuffer.wrap(header), 0);
+            }
+            return new SegmentedEncryption(inputFile, relativePath, outputFile, session.getUserId(), session.salt, iv,
+                    session.key, header, in.size(), firstPending, in, out, startTime);
+        } catch (Exception e) {
+            closeQuietly(in);
+            closeQuietly(out);
+            if (firstPending == 0) partial.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Start a segmented decryption, or return null if the file is not in the segmented
+     * format. Segment 0 is decrypted here to pick the right key (per-file salt first,
+     * then the current salt for legacy files).
+     */
+    public JobScheduler.SegmentedWork<Void> splitDecrypt(FileMetadata metadata, String filePassword, Long userId,
+                                                         String outputDir) throws Exception {
+        if (!SegmentedCipher.ALGORITHM_NAME.equals(metadata.getEncryptionAlgorithm())) {
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            File encryptedFile = fetchEncryptedFile(metadata, null);
+            File outputFile = resolveDecryptOutput(metadata, outputDir);
+            return openSegmentedDecrypt(metadata, encryptedFile, outputFile, filePassword, userId, 0, startTime);
+        } catch (Exception e) {
+            long duration = System.currentTimeMillis() - startTime;
+            auditService.logFileOperation(userId, metadata.getFileId(), "DECRYPT", "FAILURE",
+                    metadata.getFileSize(), duration, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Reopen an interrupted segmented decryption; null if the partial output is gone.
+     */
+    public JobScheduler.SegmentedWork<Void> resumeDecrypt(FileMetadata metadata, String state, long firstPending,
+                                                          String filePassword, Long userId) throws Exception {
+        if (state == null || !state.startsWith("D,")
+                || !SegmentedCipher.ALGORITHM_NAME.equals(metadata.getEncryptionAlgorithm())) {
+            return null;
+        }
+        File outputFile = new File(state.substring(2));
+        File encryptedFile = new File(metadata.getFilePath());
+        if (!partialOf(outputFile).exists() || !encryptedFile.exists()) return null;
+        return openSegmentedDecrypt(metadata, encryptedFile, outputFile, filePassword, userId,
+                firstPending, System.currentTimeMillis());
+    }
+
+    private SegmentedDecryption openSegmentedDecrypt(FileMetadata metadata, File encryptedFile, File outputFile,
+                                                     String filePassword, Long userId, long firstPending,
+                                                     long startTime) throws Exception {
+        FileChannel in = null;
+        FileChannel out = null;
+        File partial = partialOf(outputFile);
+        JobJournal.notePartial(partial);
+        try {
+            in = FileChannel.open(encryptedFile.toPath(), StandardOpenOption.READ);
+            byte[] header = SegmentedCipher.readHeader(in);
+            long plainSize = SegmentedCipher.plainSize(in.size(), SegmentedCipher.segmentSize(header));
+            byte[] iv = CryptoUtil.hexToBytes(metadata.getIv());
+            out = firstPending > 0
+                    ? FileChannel.open(partial.toPath(), StandardOpenOption.WRITE)
+                    : FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+            SecretKey key = decryptKey(filePassword, CryptoUtil.hexToBytes(metadata.getSalt()));
+            try {
+                SegmentedCipher.decryptSegment(in, out, key, iv, header, plainSize, 0);
+            } catch (javax.crypto.AEADBadTagException badTag) {
+                // Fallback to current salt for legacy files
+                FilePassword storedFp = filePasswordDAO.findByUserId(userId);
+                if (storedFp == null) throw badTag;
+                key = decryptKey(filePassword, CryptoUtil.hexToBytes(storedFp.getFpSalt()));
+                try {
+                    SegmentedCipher.decryptSegment(in, out, key, iv, header, plainSize, 0);
+                } catch (javax.crypto.AEADBadTagException again) {
+                    throw badTag;
+                }
+            }
+
+            return new SegmentedDecryption(metadata, encryptedFile, outputFile, userId, iv, key, header,
+                    plainSize, Math.max(1L, firstPending), in, out, startTime);
+        } catch (Exception e) {
+            closeQuietly(in);
+            closeQuietly(out);
+            if (firstPending == 0) partial.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * For an item of an interrupted encrypt batch, check whether it actually finished
+     * (metadata committed) before the journal recorded it. If so, make sure the original
+     * is queued for shredding and report true so the item is not encrypted twice.
+     */
+    public boolean reconcileInterruptedEncrypt(File inputFile, String state) throws SQLException {
+        String partial = partialPathOf(state);
+        if (partial == null || !state.startsWith("E,")) return false;
+        File outputFile = new File(partial.substring(0, partial.length() - PARTIAL_SUFFIX.length()));
+        if (!outputFile.exists() || !fileMetadataDAO.existsByStoredFilename(outputFile.getName())) {
+            return false;
+        }
+        ShredService.getInstance().enqueue(inputFile);
+        new File(partial).delete();
+        return true;
+    }
+
+    /**
+     * Partial output named in a checkpoint state from splitEncrypt/splitDecrypt, or null.
+     */
+    public static String partialPathOf(String state) {
+        if (state == null) return null;
+        if (state.startsWith("E,")) {
+            String[] p = state.split(",", 6);
+            return p.length == 6 ? p[5] + PARTIAL_SUFFIX : null;
+        }
+        if (state.startsWith("D,")) {
+            return state.substring(2) + PARTIAL_SUFFIX;
+        }
+        return null;
+    }
+
+    // Run all pending segments of a split operation on the calling thread
+    private <R> R runSegmented(JobScheduler.SegmentedWork<R> work, ProgressTracker.ProgressCallback progressCallback,
+                               com.rfn.fileencryptor.util.CancellationToken cancelToken) throws Exception {
+        long total = 0;
+        for (long i = 0; i < work.segmentCount(); i++) total += work.segmentBytes(i);
+        long done = 0;
+        for (long i = 0; i < work.firstPendingSegment(); i++) done += work.segmentBytes(i);
+        try {
+            for (long i = work.firstPendingSegment(); i < work.segmentCount(); i++) {
+                if (cancelToken != null && cancelToken.isCancelled()) {
+                    throw new Exception("Operation cancelled");
+                }
+                work.runSegment(i);
+                done += work.segmentBytes(i);
+                if (progressCallback != null) {
+                    double pct = Math.min(95, ProgressTracker.calculatePercentage(done, total));
+                    progressCallback.onProgress(pct, done, total, 0);
+                }
+            }
+            R result = work.complete();
+            if (progressCallback != null) {
+                progressCallback.onProgress(100, total, total, 0);
+            }
+            return result;
+        } catch (Exception e) {
+            work.abort(e);
+            throw e;
+        }
+    }
+
     // Decrypt file - encrypted file will be deleted after decryption
     /**
      * Backwards-compatible: call decrypt with default outputDir (null)
@@ -195,53 +455,19 @@ public class FileService {
                             String outputDir, ProgressTracker.ProgressCallback progressCallback,
                             com.rfn.fileencryptor.util.CancellationToken cancelToken) throws Exception {
 
+        if (SegmentedCipher.ALGORITHM_NAME.equals(metadata.getEncryptionAlgorithm())) {
+            if (progressCallback != null) {
+                progressCallback.onProgress(5, 0, 100, 0);
+            }
+            runSegmented(splitDecrypt(metadata, filePassword, userId, outputDir), progressCallback, cancelToken);
+            return;
+        }
+
         long startTime = System.currentTimeMillis();
 
         try {
-            String encryptedFilePath = metadata.getFilePath();
-            File encryptedFile = new File(encryptedFilePath);
-
-            if (!encryptedFile.exists()) {
-                // Attempt on-demand fetch from Google Drive by stored filename
-                try {
-                    String storageDir = ConfigManager.getStorageDir();
-                    java.nio.file.Path destDir = java.nio.file.Paths.get(storageDir);
-                    com.google.api.services.drive.Drive drive = com.rfn.fileencryptor.service.GoogleDriveAuth.getDriveService();
-                    com.rfn.fileencryptor.service.GoogleDriveBackupService svc = new com.rfn.fileencryptor.service.GoogleDriveBackupService(drive);
-                    java.util.Set<String> names = java.util.Collections.singleton(metadata.getStoredFilename());
-                    // Minimal progress updates during fetch (optional)
-                    com.rfn.fileencryptor.service.GoogleDriveBackupService.Progress dlProgress = new com.rfn.fileencryptor.service.GoogleDriveBackupService.Progress() {
-                        @Override public void onFileStart(java.nio.file.Path file, long size) {
-                            if (progressCallback != null) progressCallback.onProgress(2, 0, 100, 0);
-                        }
-                        @Override public void onProgress(java.nio.file.Path file, long bytes, long total) {
-                            if (progressCallback != null && total > 0) {
-                                double pct = 2 + Math.min(2.0, (bytes * 2.0 / total));
-                                progressCallback.onProgress(pct, bytes, total, 0);
-                            }
-                        }
-                        @Override public void onFileDone(java.nio.file.Path file, String driveFileId) {
-                            if (progressCallback != null) progressCallback.onProgress(4, 0, 100, 0);
-                        }
-                    };
-                    svc.downloadByNames(names, destDir, false, dlProgress);
-                } catch (Exception e) {
-                    // Ignore and check again; if still missing, throw
-                }
-                if (!encryptedFile.exists()) {
-                    throw new Exception("Encrypted file not found locally or in Drive: " + encryptedFilePath);
-                }
-            }
-
-            String outputPath;
-            if (outputDir != null && !outputDir.isEmpty()) {
-                File outDir = new File(outputDir);
-                if (!outDir.exists()) outDir.mkdirs();
-                outputPath = new File(outDir, metadata.getOriginalFilename()).getAbsolutePath();
-            } else {
-                outputPath = encryptedFilePath.replace(".encrypted", "");
-            }
-            File outputFile = new File(outputPath);
+            File encryptedFile = fetchEncryptedFile(metadata, progressCallback);
+            File outputFile = resolveDecryptOutput(metadata, outputDir);
 
             // IMPORTANT: use the salt that was recorded for this specific file
             // This keeps old files decryptable even if the user later changes
@@ -252,7 +478,7 @@ public class FileService {
             byte[] iv = CryptoUtil.hexToBytes(metadata.getIv());
 
             // Derive decryption key using the file's own salt and the provided password
-            SecretKey key = CryptoUtil.deriveKey(filePassword, perFileSalt);
+            SecretKey key = decryptKey(filePassword, perFileSalt);
 
             if (progressCallback != null) {
                 progressCallback.onProgress(5, 0, 100, 0);
@@ -262,6 +488,8 @@ public class FileService {
             int bufSize2 = com.rfn.fileencryptor.config.ConfigManager.getStreamBufferSizeBytes();
             byte[] buf = new byte[bufSize2];
 
+            JobJournal.notePartial(partialOf(outputFile));
+
             // Try decrypting with per-file salt first; fallback to current salt if needed
             boolean success = false;
             Exception firstError = null;
@@ -275,7 +503,7 @@ public class FileService {
                         FilePassword storedFp = filePasswordDAO.findByUserId(userId);
                         if (storedFp == null) break;
                         byte[] currentSalt = CryptoUtil.hexToBytes(storedFp.getFpSalt());
-                        attemptKey = CryptoUtil.deriveKey(filePassword, currentSalt);
+                        attemptKey = decryptKey(filePassword, currentSalt);
                     } catch (Exception e) {
                         break;
                     }
@@ -283,7 +511,7 @@ public class FileService {
 
              try (java.io.FileInputStream fis = new java.io.FileInputStream(encryptedFile);
                  java.io.BufferedInputStream bis = new java.io.BufferedInputStream(fis, bufSize2);
-                 java.io.FileOutputStream fos = new java.io.FileOutputStream(outputFile)) {
+                 java.io.FileOutputStream fos = new java.io.FileOutputStream(partialOf(outputFile))) {
 
                     if (metadata.isCompressed()) {
                         // Decrypt then decompress: CipherInputStream -> GZIP
@@ -296,6 +524,10 @@ public class FileService {
                             int n;
                             long processed = 0;
                             while ((n = gzis.read(buf)) != -1) {
+                                if (cancelToken != null && cancelToken.isCancelled()) {
+                                    throw new Exception("Operation cancelled");
+                                }
+                                IoGovernor.acquire(IoGovernor.IoClass.CRYPTO, n);
                                 fos.write(buf, 0, n);
                                 processed += n;
                                 if (progressCallback != null && totalEnc > 0) {
@@ -316,6 +548,7 @@ public class FileService {
                                 if (cancelToken != null && cancelToken.isCancelled()) {
                                     throw new Exception("Operation cancelled");
                                 }
+                                IoGovernor.acquire(IoGovernor.IoClass.CRYPTO, n);
                                 fos.write(buf, 0, n);
                                 processed += n;
                                 if (progressCallback != null && totalEnc > 0) {
@@ -336,7 +569,7 @@ public class FileService {
                     firstError = (firstError == null) ? e : firstError;
                     // Delete partial output
                     try { 
-                        if (outputFile.exists()) outputFile.delete(); 
+                        partialOf(outputFile).delete(); 
                     } catch (Exception ignore) {}
                 }
             }
@@ -344,26 +577,27 @@ public class FileService {
             if (!success) {
                 throw (firstError != null) ? firstError : new Exception("Decryption failed");
             }
+            replaceFile(partialOf(outputFile), outputFile);
 
             if (progressCallback != null) {
                 progressCallback.onProgress(95, totalEnc, totalEnc, 0);
             }
 
-            SecureFileUtil.secureDelete(encryptedFile);
+            ShredService.getInstance().enqueue(encryptedFile);
 
-            // First write a success audit record while the FK still exists,
-            // then remove the file metadata (FK has ON DELETE SET NULL for history retention)
+            // The audit entry is written asynchronously, usually after the metadata row below is gone,
+            // so it carries no file id (AUDIT_LOGS.file_id is ON DELETE SET NULL anyway)
             long duration = System.currentTimeMillis() - startTime;
-            auditService.logFileOperation(userId, metadata.getFileId(), "DECRYPT", "SUCCESS", metadata.getFileSize(), duration);
+            auditService.logFileOperation(userId, null, "DECRYPT", "SUCCESS", metadata.getFileSize(), duration);
 
-            // Delete from database after logging
             fileMetadataDAO.delete(metadata.getFileId());
+            FileEvents.getInstance().fireRemoved(metadata);
 
             if (progressCallback != null) {
                 progressCallback.onProgress(100, totalEnc, totalEnc, 0);
             }
 
-            System.out.println("✅ Decrypted: " + metadata.getOriginalFilename());
+            logger.debug("Decrypted: {}", metadata.getOriginalFilename());
 
         } catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
@@ -379,18 +613,17 @@ public class FileService {
         try {
             File file = new File(metadata.getFilePath());
             if (file.exists()) {
-                SecureFileUtil.secureDelete(file);
+                ShredService.getInstance().enqueue(file);
             }
 
-            // Log success BEFORE deleting metadata to avoid FK violations,
-            // the FK on AUDIT_LOGS(file_id) will be set to NULL on delete
+            // Written asynchronously, usually after the row is deleted, so without the file id
             long duration = System.currentTimeMillis() - startTime;
-            auditService.logFileOperation(userId, metadata.getFileId(), "DELETE", "SUCCESS", metadata.getFileSize(), duration);
+            auditService.logFileOperation(userId, null, "DELETE", "SUCCESS", metadata.getFileSize(), duration);
 
-            // Now delete metadata record
             fileMetadataDAO.delete(metadata.getFileId());
+            FileEvents.getInstance().fireRemoved(metadata);
 
-            System.out.println("✅ Deleted: " + metadata.getOriginalFilename());
+            logger.debug("Deleted: {}", metadata.getOriginalFilename());
 
         } catch (SQLException e) {
             long duration = System.currentTimeMillis() - startTime;
@@ -419,8 +652,35 @@ public class FileService {
         byte[] newIv = CryptoUtil.generateIV();
         SecretKey newKey = CryptoUtil.deriveKey(newPassword, newSalt);
 
-        // Stream re-encrypt without loading whole file: decrypt -> encrypt pipeline
         File tempOut = new File(encryptedFile.getParentFile(), encryptedFile.getName() + ".tmp.reenc");
+        boolean segmented = SegmentedCipher.ALGORITHM_NAME.equals(metadata.getEncryptionAlgorithm());
+        if (segmented) {
+            // Segments are re-keyed one at a time; the header and layout are unchanged
+            try (FileChannel in = FileChannel.open(encryptedFile.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tempOut.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                byte[] header = SegmentedCipher.readHeader(in);
+                long plainSize = SegmentedCipher.plainSize(in.size(), SegmentedCipher.segmentSize(header));
+                out.write(ByteBuffer.wrap(header), 0);
+                long count = SegmentedCipher.segmentCount(plainSize, SegmentedCipher.segmentSize(header));
+                for (long i = 0; i < count; i++) {
+                    IoGovernor.acquire(IoGovernor.IoClass.REENCRYPT,
+                            SegmentedCipher.plainLength(plainSize, SegmentedCipher.segmentSize(header), i));
+                    SegmentedCipher.transcodeSegment(in, out, oldKey, oldIv, newKey, newIv, header, plainSize, i);
+                }
+                out.force(true);
+            } catch (Exception e) {
+                try { if (tempOut.exists()) tempOut.delete(); } catch (Exception ignore) {}
+                throw e;
+            }
+            replaceFile(tempOut, encryptedFile);
+            metadata.setIv(CryptoUtil.bytesToHex(newIv));
+            metadata.setSalt(CryptoUtil.bytesToHex(newSalt));
+            fileMetadataDAO.updateSecurity(metadata);
+            return;
+        }
+
+        // Stream re-encrypt without loading whole file: decrypt -> encrypt pipeline
         int bufSize = ConfigManager.getStreamBufferSizeBytes();
         byte[] buf = new byte[Math.max(64 * 1024, bufSize)];
 
@@ -440,6 +700,7 @@ public class FileService {
 
             int n;
             while ((n = cis.read(buf)) != -1) {
+                IoGovernor.acquire(IoGovernor.IoClass.REENCRYPT, n);
                 cos.write(buf, 0, n);
             }
             cos.flush();
@@ -449,13 +710,7 @@ public class FileService {
             throw e;
         }
 
-        // Replace original file atomically if possible
-        try {
-            Files.move(tempOut.toPath(), encryptedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-        } catch (Exception atomicFail) {
-            // Fallback to non-atomic replace
-            Files.move(tempOut.toPath(), encryptedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        }
+        replaceFile(tempOut, encryptedFile);
 
         // Update metadata with new IV/salt
         metadata.setIv(CryptoUtil.bytesToHex(newIv));
@@ -479,4 +734,460 @@ public class FileService {
             }
         }
     }
+
+    /**
+     * Verify the file password once and derive the encryption key for a run of operations
+     * (a batch, the watch-folder daemon). Failures are audited like a failed encrypt.
+     */
+    public KeySession openSession(String filePassword, Long userId) throws Exception {
+        long startTime = System.currentTimeMillis();
+        try {
+            byte[] salt = verifyFilePassword(filePassword, userId);
+            return new KeySession(userId, salt, CryptoUtil.deriveKey(filePassword, salt));
+        } catch (Exception e) {
+            long duration = System.currentTimeMillis() - startTime;
+            auditService.logFileOperation(userId, null, "ENCRYPT", "FAILURE", 0L, duration, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Keep up to maxEntries derived decryption keys in memory so repeated decrypts with the
+     * same password and salt skip PBKDF2. Meant for long-lived processes (the daemon).
+     */
+    public void enableKeyCache(int maxEntries) {
+        java.util.Map<String, SecretKey> lru = new java.util.LinkedHashMap<String, SecretKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<String, SecretKey> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        keyCache = java.util.Collections.synchronizedMap(lru);
+    }
+
+    private SecretKey decryptKey(String filePassword, byte[] salt) throws Exception {
+        java.util.Map<String, SecretKey> cache = keyCache;
+        if (cache == null) return CryptoUtil.deriveKey(filePassword, salt);
+        // The password is part of the cache key, so a wrong password never hits a cached key
+        java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+        md.update(filePassword.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        md.update(salt);
+        String id = CryptoUtil.bytesToHex(md.digest());
+        SecretKey key = cache.get(id);
+        if (key == null) {
+            key = CryptoUtil.deriveKey(filePassword, salt);
+            cache.put(id, key);
+        }
+        return key;
+    }
+
+    /**
+     * A session opener that derives the key on first use and reuses it afterwards.
+     */
+    public java.util.concurrent.Callable<KeySession> lazySession(String filePassword, Long userId) {
+        java.util.concurrent.atomic.AtomicReference<KeySession> ref = new java.util.concurrent.atomic.AtomicReference<>();
+        return () -> {
+            KeySession session = ref.get();
+            if (session != null) return session;
+            synchronized (ref) {
+                if (ref.get() == null) ref.set(openSession(filePassword, userId));
+                return ref.get();
+            }
+        };
+    }
+
+    /**
+     * Check the file encryption password against the stored hash and return the user's current salt.
+     */
+    private byte[] verifyFilePassword(String filePassword, Long userId) throws Exception {
+        // Get stored file password info
+        FilePassword storedFp = filePasswordDAO.findByUserId(userId);
+        if (storedFp == null) {
+            throw new Exception("No file encryption password set for user");
+        }
+
+        String storedHashHex = storedFp.getEncryptedFilePassword();
+        byte[] storedHash = CryptoUtil.hexToBytes(storedHashHex);
+        byte[] salt = CryptoUtil.hexToBytes(storedFp.getFpSalt());
+
+        // Verify password by deriving key with same parameters
+        byte[] checkHash = CryptoUtil.deriveKey(
+            filePassword,
+            salt,
+            storedFp.getIterations()
+        );
+
+        // Compare hashes
+        if (!java.util.Arrays.equals(checkHash, storedHash)) {
+            throw new Exception("Invalid file encryption password");
+        }
+        return salt;
+    }
+
+    // Output file: use configured storage directory and unique filename to avoid collisions
+    private File newStorageFile(File inputFile) throws Exception {
+        String storageDir = ConfigManager.getStorageDir();
+        try {
+            SecureFileUtil.createDirectoryIfNotExists(storageDir);
+        } catch (IOException ioe) {
+            throw new Exception("Failed to create storage directory: " + storageDir, ioe);
+        }
+
+        String uniqueName = UUID.randomUUID().toString() + "__" + inputFile.getName() + ".encrypted";
+        return new File(storageDir, uniqueName);
+    }
+
+    /**
+     * Return the local encrypted file, fetching it from Google Drive by stored filename if missing.
+     */
+    private File fetchEncryptedFile(FileMetadata metadata, ProgressTracker.ProgressCallback progressCallback)
+            throws Exception {
+        String encryptedFilePath = metadata.getFilePath();
+        File encryptedFile = new File(encryptedFilePath);
+        if (encryptedFile.exists()) return encryptedFile;
+
+        // Attempt on-demand fetch from Google Drive by stored filename
+        try {
+            String storageDir = ConfigManager.getStorageDir();
+            java.nio.file.Path destDir = java.nio.file.Paths.get(storageDir);
+            com.google.api.services.drive.Drive drive = com.rfn.fileencryptor.service.GoogleDriveAuth.getDriveService();
+            com.rfn.fileencryptor.service.GoogleDriveBackupService svc = new com.rfn.fileencryptor.service.GoogleDriveBackupService(drive);
+            java.util.Set<String> names = java.util.Collections.singleton(metadata.getStoredFilename());
+            // Minimal progress updates during fetch (optional)
+            com.rfn.fileencryptor.service.GoogleDriveBackupService.Progress dlProgress = new com.rfn.fileencryptor.service.GoogleDriveBackupService.Progress() {
+                @Override public void onFileStart(java.nio.file.Path file, long size) {
+                    if (progressCallback != null) progressCallback.onProgress(2, 0, 100, 0);
+                }
+                @Override public void onProgress(java.nio.file.Path file, long bytes, long total) {
+                    if (progressCallback != null && total > 0) {
+                        double pct = 2 + Math.min(2.0, (bytes * 2.0 / total));
+                        progressCallback.onProgress(pct, bytes, total, 0);
+                    }
+                }
+                @Override public void onFileDone(java.nio.file.Path file, String driveFileId) {
+                    if (progressCallback != null) progressCallback.onProgress(4, 0, 100, 0);
+                }
+            };
+            svc.downloadByNames(names, destDir, false, dlProgress);
+        } catch (Exception e) {
+            // Ignore and check again; if still missing, throw
+        }
+        if (!encryptedFile.exists()) {
+            throw new Exception("Encrypted file not found locally or in Drive: " + encryptedFilePath);
+        }
+        return encryptedFile;
+    }
+
+    /**
+     * Paths an encryption of f reads and writes, for per-device batch limits.
+     */
+    public static java.util.Collection<java.nio.file.Path> encryptPaths(File f) {
+        return java.util.Arrays.asList(f.toPath(), java.nio.file.Paths.get(ConfigManager.getStorageDir()));
+    }
+
+    /**
+     * Paths a decryption of metadata reads and writes, for per-device batch limits.
+     */
+    public static java.util.Collection<java.nio.file.Path> decryptPaths(FileMetadata metadata, String outputDir) {
+        java.nio.file.Path source = metadata.getFilePath() == null ? null : java.nio.file.Paths.get(metadata.getFilePath());
+        java.nio.file.Path target = (outputDir != null && !outputDir.isEmpty())
+                ? java.nio.file.Paths.get(outputDir) : (source != null ? source.getParent() : null);
+        return java.util.Arrays.asList(source, target);
+    }
+
+    private File resolveDecryptOutput(FileMetadata metadata, String outputDir) throws IOException {
+        String relativePath = metadata.getRelativePath();
+        if (relativePath != null && !relativePath.isEmpty()) {
+            // Folder member: recreate its place in the tree under the output (or storage) directory
+            java.nio.file.Path base = java.nio.file.Paths.get(
+                    (outputDir != null && !outputDir.isEmpty()) ? outputDir : ConfigManager.getStorageDir())
+                    .toAbsolutePath().normalize();
+            java.nio.file.Path target = base.resolve(relativePath).normalize();
+            if (target.startsWith(base) && !target.equals(base)) {
+                Files.createDirectories(target.getParent());
+                return target.toFile();
+            }
+            // A path escaping the output directory is ignored; fall through to a flat name
+        }
+        if (outputDir != null && !outputDir.isEmpty()) {
+            File outDir = new File(outputDir);
+            if (!outDir.exists()) outDir.mkdirs();
+            return new File(outDir, metadata.getOriginalFilename());
+        }
+        return new File(metadata.getFilePath().replace(".encrypted", ""));
+    }
+
+    private static File partialOf(File output) {
+        return new File(output.getPath() + PARTIAL_SUFFIX);
+    }
+
+    // Replace target atomically if possible
+    private static void replaceFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception atomicFail) {
+            // Fallback to non-atomic replace
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * The user's current salt and derived key, verified against the stored password hash.
+     */
+    public static final class KeySession {
+        private final Long userId;
+        private final byte[] salt;
+        private final SecretKey key;
+
+        private KeySession(Long userId, byte[] salt, SecretKey key) {
+            this.userId = userId;
+            this.salt = salt;
+            this.key = key;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+    }
+
+    /**
+     * Segmented encryption in progress. Segments are independent and may run on any thread.
+     */
+    private final class SegmentedEncryption implements JobScheduler.SegmentedWork<FileMetadata> {
+        private final File inputFile;
+        private final String relativePath;
+        private final File outputFile;
+        private final Long userId;
+        private final byte[] salt;
+        private final byte[] iv;
+        private final SecretKey key;
+        private final byte[] header;
+        private final long plainSize;
+        private final int segmentSize;
+        private final long firstPending;
+        private final FileChannel in;
+        private final FileChannel out;
+        private final long startTime;
+        // Set once the metadata row exists; the output is then the stored file, not a leftover
+        private volatile boolean committed;
+
+        SegmentedEncryption(File inputFile, String relativePath, File outputFile, Long userId, byte[] salt, byte[] iv,
+                            SecretKey key, byte[] header, long plainSize, long firstPending, FileChannel in,
+                            FileChannel out, long startTime) {
+            this.inputFile = inputFile;
+            this.relativePath = relativePath;
+            this.outputFile = outputFile;
+            this.userId = userId;
+            this.salt = salt;
+            this.iv = iv;
+            this.key = key;
+            this.header = header;
+            this.plainSize = plainSize;
+            this.segmentSize = SegmentedCipher.segmentSize(header);
+            this.firstPending = firstPending;
+            this.in = in;
+            this.out = out;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public long segmentCount() {
+            return SegmentedCipher.segmentCount(plainSize, segmentSize);
+        }
+
+        @Override
+        public long segmentBytes(long index) {
+            return SegmentedCipher.plainLength(plainSize, segmentSize, index);
+        }
+
+        @Override
+        public long firstPendingSegment() {
+            return firstPending;
+        }
+
+        @Override
+        public void runSegment(long index) throws Exception {
+            IoGovernor.acquire(IoGovernor.IoClass.CRYPTO, segmentBytes(index));
+            SegmentedCipher.encryptSegment(in, out, key, iv, header, plainSize, index);
+        }
+
+        @Override
+        public void sync() throws IOException {
+            out.force(false);
+        }
+
+        @Override
+        public String checkpointState() {
+            return String.join(",", "E", CryptoUtil.bytesToHex(iv), CryptoUtil.bytesToHex(salt),
+                    String.valueOf(plainSize), String.valueOf(inputFile.lastModified()), outputFile.getAbsolutePath());
+        }
+
+        @Override
+        public FileMetadata complete() throws Exception {
+            out.force(true);
+            closeQuietly(in);
+            out.close();
+            File partial = partialOf(outputFile);
+            if (partial.length() != SegmentedCipher.cipherSize(plainSize, segmentSize)) {
+                throw new IOException("Encrypted output is incomplete: " + outputFile.getName());
+            }
+            replaceFile(partial, outputFile);
+
+            // Create metadata
+            FileMetadata metadata = new FileMetadata();
+            metadata.setOwnerId(userId);
+            metadata.setOriginalFilename(inputFile.getName());
+            metadata.setStoredFilename(outputFile.getName());
+            metadata.setFileSize(plainSize);
+            metadata.setIv(CryptoUtil.bytesToHex(iv));
+            metadata.setSalt(CryptoUtil.bytesToHex(salt));
+            metadata.setEncryptionAlgorithm(SegmentedCipher.ALGORITHM_NAME);
+            metadata.setCompressed(false);
+            metadata.setFilePath(outputFile.getAbsolutePath());
+            metadata.setRelativePath(relativePath);
+
+            Long fileId = fileMetadataDAO.insert(metadata);
+            committed = true;
+            metadata.setFileId(fileId);
+            FileEvents.getInstance().fireAdded(metadata);
+
+            // Output and metadata are committed; shred the original in the background
+            ShredService.getInstance().enqueue(inputFile);
+
+            long duration = System.currentTimeMillis() - startTime;
+            auditService.logFileOperation(userId, fileId, "ENCRYPT", "SUCCESS", plainSize, duration);
+
+            logger.debug("Encrypted: {} -> {}", inputFile.getName(), outputFile.getName());
+            return metadata;
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        @Override
+        public void abort(Exception cause) {
+            closeQuietly(in);
+            closeQuietly(out);
+            if (committed) {
+                // Failed after the metadata insert: the file is stored, keep it
+                logger.warn("Encrypted {} but could not finish up: {}", inputFile.getName(),
+                        cause != null ? cause.getMessage() : null);
+                return;
+            }
+            partialOf(outputFile).delete();
+            if (outputFile.exists()) outputFile.delete();
+            long duration = System.currentTimeMillis() - startTime;
+            auditService.logFileOperation(userId, null, "ENCRYPT", "FAILURE", 0L, duration,
+                    cause != null ? cause.getMessage() : null);
+        }
+    }
+
+    /**
+     * Segmented decryption in progress; segment 0 is always rewritten while choosing the key.
+     */
+    private final class SegmentedDecryption implements JobScheduler.SegmentedWork<Void> {
+        private final FileMetadata metadata;
+        private final File encryptedFile;
+        private final File outputFile;
+        private final Long userId;
+        private final byte[] iv;
+        private final SecretKey key;
+        private final byte[] header;
+        private final long plainSize;
+        private final int segmentSize;
+        private final long firstPending;
+        private final FileChannel in;
+        private final FileChannel out;
+        private final long startTime;
+
+        SegmentedDecryption(FileMetadata metadata, File encryptedFile, File outputFile, Long userId, byte[] iv,
+                            SecretKey key, byte[] header, long plainSize, long firstPending, FileChannel in,
+                            FileChannel out, long startTime) {
+            this.metadata = metadata;
+            this.encryptedFile = encryptedFile;
+            this.outputFile = outputFile;
+            this.userId = userId;
+            this.iv = iv;
+            this.key = key;
+            this.header = header;
+            this.plainSize = plainSize;
+            this.segmentSize = SegmentedCipher.segmentSize(header);
+            this.firstPending = firstPending;
+            this.in = in;
+            this.out = out;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public long segmentCount() {
+            return SegmentedCipher.segmentCount(plainSize, segmentSize);
+        }
+
+        @Override
+        public long segmentBytes(long index) {
+            return SegmentedCipher.plainLength(plainSize, segmentSize, index);
+        }
+
+        @Override
+        public long firstPendingSegment() {
+            return firstPending;
+        }
+
+        @Override
+        public void runSegment(long index) throws Exception {
+            IoGovernor.acquire(IoGovernor.IoClass.CRYPTO, segmentBytes(index));
+            SegmentedCipher.decryptSegment(in, out, key, iv, header, plainSize, index);
+        }
+
+        @Override
+        public void sync() throws IOException {
+            out.force(false);
+        }
+
+        @Override
+        public String checkpointState() {
+            return "D," + outputFile.getAbsolutePath();
+        }
+
+        @Override
+        public Void complete() throws Exception {
+            out.force(true);
+            out.close();
+            closeQuietly(in);
+            replaceFile(partialOf(outputFile), outputFile);
+
+            ShredService.getInstance().enqueue(encryptedFile);
+
+            // The audit entry is written asynchronously, usually after the metadata row below is gone,
+            // so it carries no file id (AUDIT_LOGS.file_id is ON DELETE SET NULL anyway)
+            long duration = System.currentTimeMillis() - startTime;
+            auditService.logFileOperation(userId, null, "DECRYPT", "SUCCESS", metadata.getFileSize(), duration);
+            fileMetadataDAO.delete(metadata.getFileId());
+            FileEvents.getInstance().fireRemoved(metadata);
+
+            logger.debug("Decrypted: {}", metadata.getOriginalFilename());
+            return null;
+        }
+
+        @Override
+        public void abort(Exception cause) {
+            closeQuietly(in);
+            closeQuietly(out);
+            // Delete partial output
+            partialOf(outputFile).delete();
+            long duration = System.currentTimeMillis() - startTime;
+            auditService.logFileOperation(userId, metadata.getFileId(), "DECRYPT", "FAILURE",
+                    metadata.getFileSize(), duration, cause != null ? cause.getMessage() : null);
+        }
+    }
 }
@@ -0,0 +1,601 @@
+package com.rfn.fileencryptor.service;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.dao.FileMetadataDAO;
+import com.rfn.fileencryptor.dao.FileQuery;
+import com.rfn.fileencryptor.model.FileMetadata;
+
+/**
+ * In-memory filename search over one owner's files.
+ *
+ * Each file gets a dense ordinal. Every lower-cased trigram of a filename maps to the
+ * ordinals containing it, so a substring search intersects the postings of the term's
+ * trigrams and confirms the few candidates; one- and two-character terms take the union
+ * of the trigrams that contain them. Besides the name, the columns the dashboard sorts by
+ * are kept per ordinal, and each sort order used is kept as an ordinal array with its
+ * inverse (ordinal to position), so a result of any size comes back already ordered
+ * without touching the database: small results sort their positions, large ones filter
+ * the order array.
+ *
+ * Built once from a projected scan (or the dashboard's reconciled snapshot), then kept
+ * current by {@link FileEvents}; events that arrive while building are applied when the
+ * scan finishes. Deleted ordinals are only
+ * flagged and are reclaimed by a rebuild of the arrays once they make up a quarter.
+ */
+public final class FilenameIndex implements FileEvents.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilenameIndex.class);
+
+    // Results up to 1/32 of the index sort their positions instead of filtering a full order
+    private static final int SORT_POSITIONS_DIVISOR = 32;
+    private static final long NULL_CREATED = Long.MAX_VALUE;
+
+    private final Long ownerId;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int count;
+    private int liveCount;
+    private long[] ids = new long[1024];
+    private String[] names = new String[1024];
+    private String[] exts = new String[1024];
+    private long[] sizes = new long[1024];
+    private long[] created = new long[1024];
+    private final BitSet compressed = new BitSet();
+    private final BitSet live = new BitSet();
+    private LongIntMap ordinalOf = new LongIntMap();
+    private Map<Long, IntList> postings = new HashMap<>();
+    private IntList shortNames = new IntList();
+    private final Map<String, String> extPool = new HashMap<>();
+    private final Map<FileQuery.Sort, IntList> orders = new EnumMap<>(FileQuery.Sort.class);
+    // Inverse of each order; dropped on insert and rebuilt by the next search
+    private final Map<FileQuery.Sort, int[]> positions = new EnumMap<>(FileQuery.Sort.class);
+
+    private volatile boolean ready;
+    private final List<Runnable> pending = new ArrayList<>();
+
+    public FilenameIndex(Long ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    /**
+     * Load every file of the owner. Blocking; run off the FX thread.
+     */
+    public void build(FileMetadataDAO dao) throws SQLException {
+        long started = System.currentTimeMillis();
+        dao.streamListing(ownerId, this::add);
+        finishBuild(started);
+    }
+
+    /**
+     * Load the owner's files from rows already read, such as a reconciled
+     * {@link MetadataSnapshot}. Needs only the listed columns.
+     */
+    public void build(Collection<FileMetadata> rows) {
+        long started = System.currentTimeMillis();
+        for (FileMetadata m : rows) {
+            add(m);
+        }
+        finishBuild(started);
+    }
+
+    private void finishBuild(long started) {
+        lock.writeLock().lock();
+        try {
+            synchronized (pending) {
+                for (Runnable r : pending) {
+                    r.run();
+                }
+                pending.clear();
+                ready = true;
+            }
+            positionsFor(FileQuery.Sort.TYPE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Filename index for owner {}: {} file(s) in {} ms",
+                ownerId, liveCount, System.currentTimeMillis() - started);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * File ids whose name contains term (case-insensitive), in the given order, or null
+     * while the index is still building.
+     */
+    public long[] search(String term, FileQuery.Sort sort, boolean descending) {
+        if (!ready) return null;
+        String t = lower(term);
+        if (!isSortReady(sort)) {
+            lock.writeLock().lock();
+            try {
+                positionsFor(sort);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lock.readLock().lock();
+        try {
+            BitSet hits = t.length() >= 3 ? matchTrigrams(t) : matchShort(t);
+            return ordered(hits, sort, descending);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sort value of a file as {@link FileQuery.Sort#keyOf} would compute it, or null when
+     * the file is not indexed.
+     */
+    public Object sortKey(FileQuery.Sort sort, long fileId) {
+        lock.readLock().lock();
+        try {
+            int o = ordinalOf.get(fileId);
+            if (o < 0) return null;
+            switch (sort) {
+                case TYPE:
+                    return exts[o];
+                case FILENAME:
+                    return names[o];
+                case SIZE:
+                    return sizes[o];
+                case CREATED_AT:
+                    return created[o] == NULL_CREATED ? null : toTimestamp(created[o]);
+                case COMPRESSED:
+                default:
+                    return compressed.get(o) ? "Y" : "N";
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFileAdded(FileMetadata metadata) {
+        if (!ownerId.equals(metadata.getOwnerId())) return;
+        if (deferred(() -> add(metadata))) return;
+        lock.writeLock().lock();
+        try {
+            add(metadata);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFileRemoved(FileMetadata metadata) {
+        if (!ownerId.equals(metadata.getOwnerId()) || metadata.getFileId() == null) return;
+        long fileId = metadata.getFileId();
+        if (deferred(() -> remove(fileId))) return;
+        lock.writeLock().lock();
+        try {
+            remove(fileId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean deferred(Runnable change) {
+        if (ready) return false;
+        synchronized (pending) {
+            if (ready) return false;
+            pending.add(change);
+            return true;
+        }
+    }
+
+    // Caller holds the write lock, or is the single building thread
+    private void add(FileMetadata m) {
+        if (m.getFileId() == null || ordinalOf.get(m.getFileId()) >= 0) return;
+        if (count == ids.length) grow();
+        int o = count++;
+        String name = m.getOriginalFilename() == null ? "" : m.getOriginalFilename();
+        ids[o] = m.getFileId();
+        names[o] = name;
+        String ext = (String) FileQuery.Sort.TYPE.keyOf(m);
+        exts[o] = extPool.computeIfAbsent(ext, e -> e);
+        sizes[o] = m.getFileSize() == null ? 0L : m.getFileSize();
+        created[o] = m.getCreatedAt() == null ? NULL_CREATED : toMicros(m.getCreatedAt());
+        compressed.set(o, m.isCompressed());
+        live.set(o);
+        liveCount++;
+        ordinalOf.put(m.getFileId(), o);
+
+        if (name.length() < 3) {
+            shortNames.add(o);
+        } else {
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                IntList list = postings.computeIfAbsent(trigram(name, i), k -> new IntList());
+                // A trigram repeated within one name is posted once
+                if (list.size == 0 || list.get(list.size - 1) != o) list.add(o);
+            }
+        }
+        for (Map.Entry<FileQuery.Sort, IntList> e : orders.entrySet()) {
+            IntList order = e.getValue();
+            int pos = insertionPoint(order, o, e.getKey());
+            order.insert(pos, o);
+        }
+        positions.clear();
+    }
+
+    private void remove(long fileId) {
+        int o = ordinalOf.remove(fileId);
+        if (o < 0) return;
+        live.clear(o);
+        liveCount--;
+        if (count - liveCount > Math.max(1024, count / 4)) compact();
+    }
+
+    // Reassign dense ordinals to the live files and rebuild postings and orders
+    private void compact() {
+        int oldCount = count;
+        long[] oldIds = ids;
+        String[] oldNames = names;
+        long[] oldSizes = sizes;
+        long[] oldCreated = created;
+        BitSet oldCompressed = (BitSet) compressed.clone();
+        BitSet oldLive = (BitSet) live.clone();
+        List<FileQuery.Sort> built = new ArrayList<>(orders.keySet());
+
+        int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, liveCount)) * 2);
+        count = 0;
+        liveCount = 0;
+        ids = new long[capacity];
+        names = new String[capacity];
+        exts = new String[capacity];
+        sizes = new long[capacity];
+        created = new long[capacity];
+        compressed.clear();
+        live.clear();
+        ordinalOf = new LongIntMap();
+        postings = new HashMap<>();
+        shortNames = new IntList();
+        orders.clear();
+        positions.clear();
+
+        FileMetadata m = new FileMetadata();
+        for (int o = oldLive.nextSetBit(0); o >= 0 && o < oldCount; o = oldLive.nextSetBit(o + 1)) {
+            m.setFileId(oldIds[o]);
+            m.setOriginalFilename(oldNames[o]);
+            m.setFileSize(oldSizes[o]);
+            m.setCreatedAt(oldCreated[o] == NULL_CREATED ? null : toTimestamp(oldCreated[o]));
+            m.setCompressed(oldCompressed.get(o));
+            add(m);
+        }
+        for (FileQuery.Sort s : built) {
+            positionsFor(s);
+        }
+    }
+
+    private BitSet matchTrigrams(String t) {
+        List<IntList> lists = new ArrayList<>(t.length() - 2);
+        for (int i = 0; i + 3 <= t.length(); i++) {
+            IntList list = postings.get(trigram(t, i));
+            if (list == null) return new BitSet();
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(l -> l.size));
+
+        // Intersect starting from the rarest trigram; postings are ascending
+        IntList smallest = lists.get(0);
+        int[] candidates = Arrays.copyOf(smallest.data, smallest.size);
+        int n = candidates.length;
+        for (int li = 1; li < lists.size() && n > 0; li++) {
+            IntList other = lists.get(li);
+            int kept = 0;
+            int from = 0;
+            for (int i = 0; i < n; i++) {
+                int pos = Arrays.binarySearch(other.data, from, other.size, candidates[i]);
+                if (pos >= 0) {
+                    candidates[kept++] = candidates[i];
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+            n = kept;
+        }
+
+        // A three-character term is its own trigram; longer ones need the candidates confirmed
+        boolean confirm = t.length() > 3;
+        BitSet hits = new BitSet();
+        for (int i = 0; i < n; i++) {
+            int o = candidates[i];
+            if (live.get(o) && (!confirm || containsLower(names[o], t))) hits.set(o);
+        }
+        return hits;
+    }
+
+    // One or two characters: every trigram containing t is a hit outright
+    private BitSet matchShort(String t) {
+        BitSet hits = new BitSet();
+        for (Map.Entry<Long, IntList> e : postings.entrySet()) {
+            if (!trigramContains(e.getKey(), t)) continue;
+            IntList list = e.getValue();
+            for (int i = 0; i < list.size; i++) {
+                hits.set(list.data[i]);
+            }
+        }
+        for (int i = 0; i < shortNames.size; i++) {
+            int o = shortNames.data[i];
+            if (containsLower(names[o], t)) hits.set(o);
+        }
+        hits.and(live);
+        return hits;
+    }
+
+    private long[] ordered(BitSet hits, FileQuery.Sort sort, boolean descending) {
+        int k = hits.cardinality();
+        long[] result = new long[k];
+        if (k == 0) return result;
+        IntList order = orders.get(sort);
+        if (k <= count / SORT_POSITIONS_DIVISOR) {
+            int[] pos = positions.get(sort);
+            int[] hitPositions = new int[k];
+            int i = 0;
+            for (int o = hits.nextSetBit(0); o >= 0; o = hits.nextSetBit(o + 1)) {
+                hitPositions[i++] = pos[o];
+            }
+            Arrays.sort(hitPositions);
+            for (i = 0; i < k; i++) {
+                result[i] = ids[order.data[hitPositions[descending ? k - 1 - i : i]]];
+            }
+            return result;
+        }
+        int i = 0;
+        for (int j = 0; j < order.size && i < k; j++) {
+            int o = order.data[descending ? order.size - 1 - j : j];
+            if (hits.get(o)) result[i++] = ids[o];
+        }
+        return result;
+    }
+
+    private boolean isSortReady(FileQuery.Sort sort) {
+        lock.readLock().lock();
+        try {
+            return positions.containsKey(sort);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private IntList orderFor(FileQuery.Sort sort) {
+        IntList order = orders.get(sort);
+        if (order != null) return order;
+        Integer[] ords = new Integer[count];
+        for (int o = 0; o < count; o++) {
+            ords[o] = o;
+        }
+        Arrays.sort(ords, (a, b) -> compareOrdinals(sort, a, b));
+        order = new IntList();
+        for (Integer o : ords) {
+            order.add(o);
+        }
+        orders.put(sort, order);
+        return order;
+    }
+
+    // Caller holds the write lock
+    private int[] positionsFor(FileQuery.Sort sort) {
+        int[] pos = positions.get(sort);
+        if (pos != null) return pos;
+        IntList order = orderFor(sort);
+        pos = new int[count];
+        for (int i = 0; i < order.size; i++) {
+            pos[order.data[i]] = i;
+        }
+        positions.put(sort, pos);
+        return pos;
+    }
+
+    private int insertionPoint(IntList order, int o, FileQuery.Sort sort) {
+        int lo = 0;
+        int hi = order.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareOrdinals(sort, order.data[mid], o) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Same order as FileQuery.compare on the SQL sort values, ascending
+    private int compareOrdinals(FileQuery.Sort sort, int a, int b) {
+        int c;
+        switch (sort) {
+            case TYPE:
+                c = exts[a].compareTo(exts[b]);
+                break;
+            case FILENAME:
+                c = names[a].compareTo(names[b]);
+                break;
+            case SIZE:
+                c = Long.compare(sizes[a], sizes[b]);
+                break;
+            case CREATED_AT:
+                c = Long.compare(created[a], created[b]);
+                break;
+            case COMPRESSED:
+            default:
+                c = Boolean.compare(compressed.get(a), compressed.get(b));
+                break;
+        }
+        return c != 0 ? c : Long.compare(ids[a], ids[b]);
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        names = Arrays.copyOf(names, capacity);
+        exts = Arrays.copyOf(exts, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        created = Arrays.copyOf(created, capacity);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) Character.toLowerCase(s.charAt(i)) << 32)
+                | ((long) Character.toLowerCase(s.charAt(i + 1)) << 16)
+                | Character.toLowerCase(s.charAt(i + 2));
+    }
+
+    private static boolean trigramContains(long gram, String t) {
+        char c0 = (char) (gram >>> 32);
+        char c1 = (char) (gram >>> 16);
+        char c2 = (char) gram;
+        if (t.length() == 1) {
+            char c = t.charAt(0);
+            return c0 == c || c1 == c || c2 == c;
+        }
+        char a = t.charAt(0);
+        char b = t.charAt(1);
+        return (c0 == a && c1 == b) || (c1 == a && c2 == b);
+    }
+
+    private static String lower(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    // t is already lower-cased per character
+    private static boolean containsLower(String name, String t) {
+        int max = name.length() - t.length();
+        outer:
+        for (int i = 0; i <= max; i++) {
+            for (int j = 0; j < t.length(); j++) {
+                if (Character.toLowerCase(name.charAt(i + j)) != t.charAt(j)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static long toMicros(Timestamp ts) {
+        return Math.floorDiv(ts.getTime(), 1000L) * 1_000_000L + ts.getNanos() / 1000;
+    }
+
+    private static Timestamp toTimestamp(long micros) {
+        Timestamp ts = new Timestamp(Math.floorDiv(micros, 1_000_000L) * 1000L);
+        ts.setNanos((int) Math.floorMod(micros, 1_000_000L) * 1000);
+        return ts;
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        int get(int i) {
+            return data[i];
+        }
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        void insert(int pos, int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            System.arraycopy(data, pos, data, pos + 1, size - pos);
+            data[pos] = v;
+            size++;
+        }
+    }
+
+    /**
+     * Open-addressing long to int map (-1 = absent), without boxing a million ids.
+     */
+    private static final class LongIntMap {
+        private static final long EMPTY = Long.MIN_VALUE;
+        private long[] keys = newKeys(1 << 12);
+        private int[] values = new int[1 << 12];
+        private int size;
+
+        private static long[] newKeys(int n) {
+            long[] k = new long[n];
+            Arrays.fill(k, EMPTY);
+            return k;
+        }
+
+        private int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+                if (keys[i] == EMPTY) return -1;
+            }
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == EMPTY) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) return -1;
+                i = (i + 1) & mask;
+            }
+            int value = values[i];
+            keys[i] = EMPTY;
+            size--;
+            // Shift later entries of the probe run back so lookups never stop early
+            for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                long k = keys[j];
+                int v = values[j];
+                keys[j] = EMPTY;
+                size--;
+                put(k, v);
+            }
+            return value;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(capacity);
+            values = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
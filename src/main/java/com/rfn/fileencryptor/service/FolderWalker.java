@@ -0,0 +1,103 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+
+/**
+ * Feeds the regular files under a folder into a batch as the walk discovers them.
+ *
+ * The walk runs on its own thread and never materializes the file list: each file
+ * is submitted as soon as it is visited, and the walker pauses while the batch
+ * backlog is full, so work starts immediately even on trees with millions of entries.
+ * The batch is sealed when the walk ends (or is cancelled).
+ */
+public final class FolderWalker {
+
+    private static final Logger logger = LoggerFactory.getLogger(FolderWalker.class);
+
+    // Items queued or running before the walker waits for the workers to catch up
+    private static final int MAX_BACKLOG = 2000;
+
+    private FolderWalker() {
+    }
+
+    /**
+     * Path of file relative to the parent of root, so the root folder's own name is kept
+     * (e.g. "Photos/2020/a.jpg" for root "/home/me/Photos").
+     */
+    public static String relativePath(Path root, File file) {
+        Path base = root.toAbsolutePath().getParent();
+        Path rel = (base != null ? base : root.toAbsolutePath()).relativize(file.toPath().toAbsolutePath());
+        return rel.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Start walking root on a background thread, submitting every regular file to the
+     * batch (and journal, if given) and sealing the batch at the end.
+     */
+    public static <R> Thread feed(Path root, JobScheduler.Batch<File, R> batch, JobJournal.Job journal) {
+        Thread walker = new Thread(() -> walk(root, batch, journal), "folder-walk");
+        walker.setDaemon(true);
+        walker.start();
+        return walker;
+    }
+
+    private static <R> void walk(Path root, JobScheduler.Batch<File, R> batch, JobJournal.Job journal) {
+        Path storage = Paths.get(ConfigManager.getStorageDir()).toAbsolutePath().normalize();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (batch.getToken().isCancelled()) return FileVisitResult.TERMINATE;
+                    // Never re-encrypt our own output if the storage folder sits inside the tree
+                    if (dir.toAbsolutePath().normalize().equals(storage)) return FileVisitResult.SKIP_SUBTREE;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (batch.getToken().isCancelled()) return FileVisitResult.TERMINATE;
+                    if (!attrs.isRegularFile() || isInternal(file)) return FileVisitResult.CONTINUE;
+                    try {
+                        batch.awaitBacklogBelow(MAX_BACKLOG);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+                    File f = file.toFile();
+                    if (journal != null) journal.add(f.getAbsolutePath(), attrs.size());
+                    batch.submit(f, attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // Unreadable entries are skipped rather than aborting the whole tree
+                    logger.warn("Skipping {}: {}", file, exc.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Folder walk failed for {}: {}", root, e.getMessage());
+        } finally {
+            batch.seal();
+        }
+    }
+
+    // Partial outputs and shred tombstones left by this app are not user files
+    private static boolean isInternal(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(FileService.PARTIAL_SUFFIX) || (name.startsWith(".") && name.endsWith(".shred"));
+    }
+}
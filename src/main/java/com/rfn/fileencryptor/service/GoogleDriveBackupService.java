@@ -14,10 +14,11 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.google.api.client.googleapis.media.MediaHttpUploader;
-import com.google.api.client.http.FileContent;
+import com.google.api.client.http.AbstractInputStreamContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
+import com.rfn.fileencryptor.util.IoGovernor;
 
 /**
  * Service to back up encrypted files to Google Drive.
@@ -134,7 +135,7 @@ public class GoogleDriveBackupService {
         meta.setName(path.getFileName().toString());
         meta.setParents(Collections.singletonList(parentId));
 
-        FileContent media = new FileContent("application/octet-stream", path.toFile());
+        AbstractInputStreamContent media = governedContent(path);
         Drive.Files.Create req = drive.files().create(meta, media)
                 .setFields("id, name, size, modifiedTime, parents");
 
@@ -168,7 +169,7 @@ public class GoogleDriveBackupService {
             meta.setAppProperties(appProps);
         }
 
-        FileContent media = new FileContent("application/octet-stream", path.toFile());
+        AbstractInputStreamContent media = governedContent(path);
         Drive.Files.Create req = drive.files().create(meta, media)
                 .setFields("id, name, size, modifiedTime, parents, appProperties");
 
@@ -200,7 +201,7 @@ public class GoogleDriveBackupService {
             meta.setAppProperties(appProps);
         }
 
-        FileContent media = new FileContent("application/octet-stream", path.toFile());
+        AbstractInputStreamContent media = governedContent(path);
         Drive.Files.Update req = drive.files().update(fileId, meta, media)
                 .setFields("id, name, size, modifiedTime, appProperties");
 
@@ -286,6 +287,27 @@ public class GoogleDriveBackupService {
         }
     }
 
+    // Upload body whose reads are charged to the backup I/O budget; re-opened on retries
+    private static AbstractInputStreamContent governedContent(Path path) {
+        java.io.File file = path.toFile();
+        return new AbstractInputStreamContent("application/octet-stream") {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return IoGovernor.wrap(new java.io.FileInputStream(file), IoGovernor.IoClass.BACKUP);
+            }
+
+            @Override
+            public long getLength() {
+                return file.length();
+            }
+
+            @Override
+            public boolean retrySupported() {
+                return true;
+            }
+        };
+    }
+
     private void downloadSingle(File driveFile, Path destDir, boolean overwrite, Progress progress) throws IOException {
         String name = driveFile.getName();
         long size = driveFile.getSize() == null ? -1L : driveFile.getSize();
@@ -308,6 +330,7 @@ public class GoogleDriveBackupService {
             long total = 0;
             int r;
             while ((r = is.read(buf)) != -1) {
+                IoGovernor.acquire(IoGovernor.IoClass.BACKUP, r);
                 os.write(buf, 0, r);
                 total += r;
                 if (progress != null && size > 0) {
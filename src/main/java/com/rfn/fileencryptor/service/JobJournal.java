@@ -0,0 +1,688 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.util.CancellationToken;
+import com.rfn.fileencryptor.util.ProgressTracker;
+
+/**
+ * Durable record of batch jobs so an interrupted batch can be resumed.
+ *
+ * Each batch gets its own journal file under ~/.fileencryptor/jobs. Lines are
+ * tab-separated and fsynced as they are appended:
+ *
+ *   J id op userId compress directory   job header (compress is a CompressionService.Mode)
+ *   + key size                          item queued
+ *   I key                               item started (whole-file path)
+ *   S key state                         item split; state lets FileService reopen it
+ *   C key segment                       segments below this index are durable
+ *   D key                               item done
+ *   F key message                       item failed or cancelled
+ *   P key path                          partial output about to be created for the item
+ *
+ * For folder batches items are added as the walk discovers them ("+" lines are not
+ * fsynced individually; the next synced line makes them durable).
+ *
+ * While a process runs a batch it holds an exclusive lock on the job's id.lock file,
+ * so other processes can tell a live batch from an interrupted one. Partial outputs
+ * written outside any batch are recorded in a per-process journal of their own.
+ *
+ * The journal is deleted when the batch is closed or discarded. One left on disk whose
+ * items are all D or F is removed at startup; anything else left on disk and not locked
+ * is an interrupted batch that can be offered to its user for resume.
+ */
+public class JobJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobJournal.class);
+    private static final String JOBS_DIRNAME = "jobs";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String LOCK_SUFFIX = ".lock";
+    // Contiguous segments between checkpoints (one fsync of the output per checkpoint)
+    private static final int CHECKPOINT_SEGMENTS = 4;
+
+    public static final String OP_ENCRYPT = "ENCRYPT";
+    public static final String OP_DECRYPT = "DECRYPT";
+    // Partial outputs of this process that belong to no batch; never offered for resume
+    private static final String OP_UNTRACKED = "UNTRACKED";
+
+    private static volatile JobJournal instance;
+    // Batch item the current thread is working on, set while a wrapped job runs
+    private static final ThreadLocal<String[]> CURRENT = new ThreadLocal<>();
+
+    private final File jobsDir;
+    // Jobs this process holds the lock of, by id
+    private final Map<String, Job> jobs = new java.util.HashMap<>();
+    private volatile Job untracked;
+
+    /**
+     * Reopens segmented work from a checkpoint; returns null if the checkpoint is unusable.
+     */
+    @FunctionalInterface
+    public interface Resumer<T, R> {
+        JobScheduler.SegmentedWork<R> resume(T item, String state, long firstPending, CancellationToken token)
+                throws Exception;
+    }
+
+    public static JobJournal getInstance() {
+        if (instance == null) {
+            synchronized (JobJournal.class) {
+                if (instance == null) {
+                    instance = new JobJournal();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private JobJournal() {
+        this.jobsDir = new File(ConfigManager.getStateDir(), JOBS_DIRNAME);
+        if (!jobsDir.exists() && !jobsDir.mkdirs()) {
+            logger.warn("Could not create job journal directory {}", jobsDir.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Start journaling a new batch. directory is the output directory for decrypt
+     * batches and the source root for folder encrypt batches (null otherwise).
+     */
+    public Job begin(String op, Long userId, CompressionService.Mode compress, String directory,
+                     List<String> keys, List<Long> sizes) {
+        String id = UUID.randomUUID().toString();
+        Job job = new Job(id, op, userId, compress, directory, new File(jobsDir, id + JOURNAL_SUFFIX));
+        try {
+            if (!job.lock()) throw new IOException("could not lock " + id + LOCK_SUFFIX);
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.join("\t", "J", job.id, op, String.valueOf(userId), compress.name(),
+                    directory == null ? "" : directory)).append('\n');
+            for (int i = 0; i < keys.size(); i++) {
+                long size = (sizes != null && i < sizes.size() && sizes.get(i) != null) ? sizes.get(i) : 0L;
+                sb.append("+\t").append(keys.get(i)).append('\t').append(size).append('\n');
+                job.items.put(keys.get(i), new ItemState(size));
+            }
+            job.append(sb.toString(), true);
+        } catch (IOException e) {
+            // The batch still runs; it just cannot be resumed after a crash
+            logger.warn("Job journal unavailable: {}", e.getMessage());
+            job.disabled = true;
+            job.unlock(true);
+        }
+        return job;
+    }
+
+    /**
+     * Record a partial output before it is created, so the startup reconciliation of
+     * another process never mistakes it for an orphan. Inside a journaled batch item the
+     * path is recorded against that item; otherwise against this process's own journal.
+     */
+    public static void notePartial(File partial) {
+        String line = clean(partial.getAbsolutePath());
+        String[] current = CURRENT.get();
+        if (current != null) {
+            Job job;
+            synchronized (getInstance().jobs) {
+                job = getInstance().jobs.get(current[0]);
+            }
+            if (job != null) {
+                job.record("P\t" + current[1] + "\t" + line);
+                return;
+            }
+        }
+        getInstance().untracked().record("P\t" + line + "\t" + line);
+    }
+
+    private Job untracked() {
+        if (untracked == null) {
+            synchronized (this) {
+                if (untracked == null) {
+                    untracked = begin(OP_UNTRACKED, null, CompressionService.Mode.NO, null,
+                            Collections.emptyList(), null);
+                }
+            }
+        }
+        return untracked;
+    }
+
+    /**
+     * Interrupted batches belonging to the given user, newest first. Each returned job is
+     * locked by this process until it is closed, discarded or released; batches another
+     * process is still running are left out.
+     */
+    public List<Job> findUnfinished(Long userId) {
+        List<Job> jobs = new ArrayList<>();
+        for (Job job : loadAll()) {
+            if (String.valueOf(userId).equals(String.valueOf(job.userId)) && !OP_UNTRACKED.equals(job.op)
+                    && !job.isFinished() && job.lock()) {
+                jobs.add(job);
+            }
+        }
+        jobs.sort((a, b) -> Long.compare(b.file.lastModified(), a.file.lastModified()));
+        return jobs;
+    }
+
+    /**
+     * Delete partial outputs (files ending in FileService.PARTIAL_SUFFIX) under the given
+     * directories that are provably orphaned: not recorded by a batch that is still locked
+     * by a running process, and not a checkpoint an interrupted batch can resume from.
+     * Run once at startup.
+     *
+     * Partials are listed before the journals are read. A writer records the path (under
+     * its lock) before creating the file, so anything listed is either in a journal read
+     * afterwards or was left behind by a process that is gone.
+     */
+    public void reconcileOrphans(List<String> dirs) {
+        List<Path> partials = new ArrayList<>();
+        for (String dir : dirs) {
+            if (dir == null || !new File(dir).isDirectory()) continue;
+            try (Stream<Path> walk = Files.walk(new File(dir).toPath())) {
+                walk.filter(f -> f.getFileName().toString().endsWith(FileService.PARTIAL_SUFFIX)
+                        && Files.isRegularFile(f)).forEach(partials::add);
+            } catch (IOException | UncheckedIOException e) {
+                logger.warn("Could not scan {} for partial outputs: {}", dir, e.getMessage());
+            }
+        }
+
+        Set<String> keep = new HashSet<>();
+        for (Job job : loadAll()) {
+            if (!job.lock()) {
+                // A running process owns this batch; everything it recorded is in use
+                synchronized (job.partials) {
+                    for (List<String> paths : job.partials.values()) keep.addAll(paths);
+                }
+                for (ItemState s : job.items.values()) {
+                    String partial = FileService.partialPathOf(s.state);
+                    if (partial != null) keep.add(new File(partial).getAbsolutePath());
+                }
+                continue;
+            }
+            if (job.isFinished()) {
+                job.file.delete();
+                job.unlock(true);
+                continue;
+            }
+            for (ItemState s : job.items.values()) {
+                String partial = FileService.partialPathOf(s.state);
+                if (partial != null && !s.terminal) keep.add(new File(partial).getAbsolutePath());
+            }
+            job.unlock(false);
+        }
+
+        int removed = 0;
+        for (Path f : partials) {
+            if (keep.contains(f.toAbsolutePath().toString())) continue;
+            try {
+                if (Files.deleteIfExists(f)) removed++;
+            } catch (IOException e) {
+                logger.warn("Could not delete orphaned partial output {}: {}", f, e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            logger.info("Removed {} orphaned partial output(s)", removed);
+        }
+    }
+
+    private List<Job> loadAll() {
+        List<Job> jobs = new ArrayList<>();
+        File[] files = jobsDir.listFiles((d, name) -> name.endsWith(JOURNAL_SUFFIX));
+        if (files == null) return jobs;
+        for (File f : files) {
+            try {
+                Job job = read(f);
+                if (job != null) jobs.add(job);
+            } catch (IOException e) {
+                logger.warn("Failed to read job journal {}: {}", f.getName(), e.getMessage());
+            }
+        }
+        return jobs;
+    }
+
+    private Job read(File f) throws IOException {
+        Job job = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(f, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] p = line.split("\t", -1);
+                if (job == null) {
+                    if (p.length < 6 || !"J".equals(p[0])) return null;
+                    Long userId = "null".equals(p[3]) ? null : Long.valueOf(p[3]);
+                    job = new Job(p[1], p[2], userId, parseMode(p[4]), p[5].isEmpty() ? null : p[5], f);
+                    continue;
+                }
+                if (p.length < 2) continue; // torn write from a crash
+                ItemState s = job.items.get(p[1]);
+                switch (p[0]) {
+                    case "+":
+                        job.items.put(p[1], new ItemState(p.length > 2 ? parseLong(p[2]) : 0L));
+                        break;
+                    case "S":
+                        if (s != null && p.length > 2) {
+                            s.state = p[2];
+                            s.checkpoint = 0;
+                        }
+                        break;
+                    case "P":
+                        if (p.length > 2) job.notePartial(p[1], p[2]);
+                        break;
+                    case "C":
+                        if (s != null && p.length > 2) s.checkpoint = Math.max(s.checkpoint, parseLong(p[2]));
+                        break;
+                    case "D":
+                    case "F":
+                        if (s != null) s.terminal = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return job;
+    }
+
+    // Journals written before the mode was recorded hold true/false
+    private static CompressionService.Mode parseMode(String s) {
+        if ("true".equals(s)) return CompressionService.Mode.YES;
+        try {
+            return CompressionService.Mode.valueOf(s);
+        } catch (IllegalArgumentException e) {
+            return CompressionService.Mode.NO;
+        }
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static String clean(String s) {
+        return s == null ? "" : s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static final class ItemState {
+        final long size;
+        String state;
+        long checkpoint;
+        boolean terminal;
+
+        ItemState(long size) {
+            this.size = size;
+        }
+    }
+
+    /**
+     * One journaled batch.
+     */
+    public static final class Job {
+        private final String id;
+        private final String op;
+        private final Long userId;
+        private final CompressionService.Mode compress;
+        private final String directory;
+        private final Map<String, ItemState> items = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final Map<String, List<String>> partials = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final File file;
+        private volatile boolean disabled;
+        private FileChannel lockChannel;
+        private FileLock lock;
+
+        private Job(String id, String op, Long userId, CompressionService.Mode compress, String directory,
+                    File file) {
+            this.id = id;
+            this.op = op;
+            this.userId = userId;
+            this.compress = compress;
+            this.directory = directory;
+            this.file = file;
+        }
+
+        public String getId() { return id; }
+        public String getOp() { return op; }
+        public Long getUserId() { return userId; }
+        public CompressionService.Mode getCompressMode() { return compress; }
+        public String getDirectory() { return directory; }
+
+        /**
+         * Record an item discovered after the batch started; known keys are ignored.
+         */
+        public void add(String key, long size) {
+            if (items.putIfAbsent(key, new ItemState(size)) != null || disabled) return;
+            try {
+                append("+\t" + clean(key) + "\t" + size + "\n", false);
+            } catch (IOException e) {
+                logger.warn("Failed to update job journal: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Keys of items that have not finished, in submission order.
+         */
+        public List<String> getPendingKeys() {
+            List<String> keys = new ArrayList<>();
+            synchronized (items) {
+                for (Map.Entry<String, ItemState> e : items.entrySet()) {
+                    if (!e.getValue().terminal) keys.add(e.getKey());
+                }
+            }
+            return keys;
+        }
+
+        /**
+         * Checkpoint state recorded for an item when it was split, or null.
+         */
+        public String getState(String key) {
+            ItemState s = items.get(key);
+            return s == null ? null : s.state;
+        }
+
+        public boolean isFinished() {
+            synchronized (items) {
+                for (ItemState s : items.values()) {
+                    if (!s.terminal) return false;
+                }
+            }
+            return true;
+        }
+
+        public void markDone(String key) {
+            terminal(key, "D\t" + key);
+        }
+
+        public void markFailed(String key, String message) {
+            terminal(key, "F\t" + key + "\t" + clean(message));
+        }
+
+        /**
+         * Batch is over: anything not done by now (cancelled before it started, or never
+         * submitted) is closed out as not processed and the journal is removed.
+         */
+        public void close() {
+            for (String key : getPendingKeys()) {
+                markFailed(key, "Not processed");
+            }
+            file.delete();
+            unlock(true);
+        }
+
+        /**
+         * Give the batch up without finishing it, so it is offered again later (or to
+         * another process).
+         */
+        public void release() {
+            unlock(false);
+        }
+
+        /**
+         * Drop the batch: delete any partial outputs it could have resumed from and the journal.
+         */
+        public void discard() {
+            synchronized (items) {
+                for (ItemState s : items.values()) {
+                    String partial = FileService.partialPathOf(s.state);
+                    if (partial != null && !s.terminal) new File(partial).delete();
+                }
+                synchronized (partials) {
+                    for (Map.Entry<String, List<String>> e : partials.entrySet()) {
+                        ItemState s = items.get(e.getKey());
+                        if (s != null && s.terminal) continue;
+                        for (String path : e.getValue()) new File(path).delete();
+                    }
+                }
+            }
+            file.delete();
+            unlock(true);
+        }
+
+        /**
+         * Wrap a job so every item's progress is journaled. Split items checkpoint
+         * their contiguous completed segments; items with a checkpoint are reopened
+         * through the resumer instead of starting over.
+         */
+        public <T, R> JobScheduler.SplittableJob<T, R> wrap(JobScheduler.SplittableJob<T, R> job,
+                                                             Function<T, String> keyOf, Resumer<T, R> resumer) {
+            return new JobScheduler.SplittableJob<T, R>() {
+                @Override
+                public R run(T item, ProgressTracker.ProgressCallback progress, CancellationToken token)
+                        throws Exception {
+                    String key = keyOf.apply(item);
+                    record("I\t" + key);
+                    CURRENT.set(new String[] {id, key});
+                    try {
+                        R result = job.run(item, progress, token);
+                        markDone(key);
+                        return result;
+                    } catch (Exception e) {
+                        markFailed(key, e.getMessage());
+                        throw e;
+                    } finally {
+                        CURRENT.remove();
+                    }
+                }
+
+                @Override
+                public JobScheduler.SegmentedWork<R> split(T item, CancellationToken token) throws Exception {
+                    String key = keyOf.apply(item);
+                    JobScheduler.SegmentedWork<R> work = null;
+                    CURRENT.set(new String[] {id, key});
+                    try {
+                        ItemState s = items.get(key);
+                        if (s != null && s.state != null && resumer != null) {
+                            work = resumer.resume(item, s.state, s.checkpoint, token);
+                            if (work != null) {
+                                logger.info("Resuming {} from segment {}", key, work.firstPendingSegment());
+                            }
+                        }
+                        if (work == null) {
+                            work = job.split(item, token);
+                            if (work == null) return null;
+                            String state = work.checkpointState();
+                            if (state != null) {
+                                if (s != null) {
+                                    s.state = state;
+                                    s.checkpoint = 0;
+                                }
+                                record("S\t" + key + "\t" + clean(state));
+                            }
+                        }
+                    } catch (Exception e) {
+                        markFailed(key, e.getMessage());
+                        throw e;
+                    } finally {
+                        CURRENT.remove();
+                    }
+                    return new CheckpointedWork<>(key, work);
+                }
+            };
+        }
+
+        // The journal stays until close(): a folder batch may have more items coming
+        private void terminal(String key, String line) {
+            ItemState s = items.get(key);
+            if (s != null) s.terminal = true;
+            record(line);
+        }
+
+        private void notePartial(String key, String path) {
+            partials.computeIfAbsent(key, k -> new ArrayList<>()).add(path);
+        }
+
+        /**
+         * Take the job's lock file; false if another process (or another Job object in
+         * this one) holds it.
+         */
+        private boolean lock() {
+            Map<String, Job> held = getInstance().jobs;
+            // Never open a second channel on a file this JVM has locked: closing it would
+            // drop that lock as well
+            synchronized (held) {
+                Job owner = held.get(id);
+                if (owner != null) return owner == this;
+                FileChannel channel = null;
+                try {
+                    channel = FileChannel.open(lockFile().toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE);
+                    FileLock l = channel.tryLock();
+                    if (l == null) {
+                        channel.close();
+                        return false;
+                    }
+                    lockChannel = channel;
+                    lock = l;
+                    held.put(id, this);
+                    return true;
+                } catch (IOException | OverlappingFileLockException e) {
+                    closeQuietly(channel);
+                    logger.warn("Could not lock job journal {}: {}", id, e.getMessage());
+                    return false;
+                }
+            }
+        }
+
+        private void unlock(boolean delete) {
+            Map<String, Job> held = getInstance().jobs;
+            synchronized (held) {
+                if (!held.remove(id, this) || lock == null) return;
+                // Removed while still held so no other process can lock a file about to vanish
+                if (delete) lockFile().delete();
+                try {
+                    lock.release();
+                } catch (IOException e) {
+                    logger.debug("Failed to release job lock {}: {}", id, e.getMessage());
+                }
+                closeQuietly(lockChannel);
+                lock = null;
+                lockChannel = null;
+            }
+        }
+
+        private File lockFile() {
+            return new File(file.getParentFile(), id + LOCK_SUFFIX);
+        }
+
+        private void record(String line) {
+            if (disabled) return;
+            try {
+                append(line + "\n", true);
+            } catch (IOException e) {
+                logger.warn("Failed to update job journal: {}", e.getMessage());
+            }
+        }
+
+        private void append(String text, boolean sync) throws IOException {
+            synchronized (this) {
+                try (FileOutputStream fos = new FileOutputStream(file, true)) {
+                    fos.write(text.getBytes(StandardCharsets.UTF_8));
+                    if (sync) fos.getFD().sync();
+                }
+            }
+        }
+
+        /**
+         * Tracks completed segments and journals the contiguous prefix once it is durable.
+         */
+        private final class CheckpointedWork<R> implements JobScheduler.SegmentedWork<R> {
+            private final String key;
+            private final JobScheduler.SegmentedWork<R> work;
+            private final BitSet done = new BitSet();
+            private long watermark;
+            private long journaled;
+
+            CheckpointedWork(String key, JobScheduler.SegmentedWork<R> work) {
+                this.key = key;
+                this.work = work;
+                this.watermark = work.firstPendingSegment();
+                this.journaled = watermark;
+            }
+
+            @Override public long segmentCount() { return work.segmentCount(); }
+            @Override public long segmentBytes(long index) { return work.segmentBytes(index); }
+            @Override public long firstPendingSegment() { return work.firstPendingSegment(); }
+            @Override public String checkpointState() { return work.checkpointState(); }
+            @Override public void sync() throws IOException { work.sync(); }
+            @Override public boolean isCommitted() { return work.isCommitted(); }
+
+            @Override
+            public void runSegment(long index) throws Exception {
+                work.runSegment(index);
+                long checkpoint = -1;
+                synchronized (this) {
+                    done.set((int) (index - work.firstPendingSegment()));
+                    while (done.get((int) (watermark - work.firstPendingSegment()))) {
+                        watermark++;
+                    }
+                    if (watermark - journaled >= CHECKPOINT_SEGMENTS && watermark < work.segmentCount()) {
+                        checkpoint = watermark;
+                        journaled = watermark;
+                    }
+                }
+                if (checkpoint > 0) {
+                    // Output must be on disk before the journal claims it is
+                    work.sync();
+                    record("C\t" + key + "\t" + checkpoint);
+                }
+            }
+
+            @Override
+            public R complete() throws Exception {
+                try {
+                    R result = work.complete();
+                    markDone(key);
+                    return result;
+                } catch (Exception e) {
+                    finished(e);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void abort(Exception cause) {
+                work.abort(cause);
+                finished(cause);
+            }
+
+            // An item whose output was committed before the failure is done, not failed
+            private void finished(Exception cause) {
+                if (work.isCommitted()) {
+                    markDone(key);
+                } else {
+                    markFailed(key, cause != null ? cause.getMessage() : null);
+                }
+            }
+        }
+    }
+}
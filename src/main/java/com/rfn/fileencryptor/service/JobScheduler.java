@@ -0,0 +1,777 @@
+package com.rfn.fileencryptor.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.util.CancellationToken;
+import com.rfn.fileencryptor.util.ProgressTracker;
+
+/**
+ * Runs batch file operations on a shared worker pool sized from parallel.jobs.
+ *
+ * Each submitted item gets its own future; the batch aggregates byte progress across
+ * all items, propagates one CancellationToken to every job and completes with a
+ * BatchResult once it has been sealed and every item has finished.
+ *
+ * Queued work is taken largest-first. Items of a {@link SplittableJob} that are big
+ * enough (see {@link BatchPlanner}) are cut into segments; the worker that starts the
+ * item queues helper tasks so idle workers can pull segments of the same file.
+ *
+ * A batch given the paths of its items ({@link Batch#limitByDevice}) also respects the
+ * per-device stream limits of {@link DeviceLimiter}.
+ */
+public class JobScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobScheduler.class);
+
+    private static volatile JobScheduler instance;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong taskSeq = new AtomicLong();
+
+    /**
+     * A unit of work for one item of a batch.
+     */
+    @FunctionalInterface
+    public interface FileJob<T, R> {
+        R run(T item, ProgressTracker.ProgressCallback progress, CancellationToken token) throws Exception;
+    }
+
+    /**
+     * A job whose large items can be processed as independent segments.
+     */
+    public interface SplittableJob<T, R> extends FileJob<T, R> {
+        /**
+         * Prepare segmented processing of item, or return null to run it whole.
+         */
+        SegmentedWork<R> split(T item, CancellationToken token) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Splitter<T, R> {
+        SegmentedWork<R> split(T item, CancellationToken token) throws Exception;
+    }
+
+    /**
+     * An item that has been prepared for segmented processing. runSegment may be called
+     * concurrently for different indexes; exactly one of complete/abort is called last.
+     */
+    public interface SegmentedWork<R> {
+        long segmentCount();
+
+        long segmentBytes(long index);
+
+        /**
+         * Segments before this index were already done during preparation.
+         */
+        default long firstPendingSegment() {
+            return 0;
+        }
+
+        void runSegment(long index) throws Exception;
+
+        /**
+         * Make every finished segment durable (used before recording a checkpoint).
+         */
+        default void sync() throws java.io.IOException {
+        }
+
+        /**
+         * Opaque description needed to reopen this work after a restart, or null if it cannot be resumed.
+         */
+        default String checkpointState() {
+            return null;
+        }
+
+        R complete() throws Exception;
+
+        /**
+         * Whether complete() got as far as committing its result; abort() then leaves it in place.
+         */
+        default boolean isCommitted() {
+            return false;
+        }
+
+        void abort(Exception cause);
+    }
+
+    /**
+     * Combine a whole-item job with a splitter into a SplittableJob.
+     */
+    public static <T, R> SplittableJob<T, R> splittable(FileJob<T, R> job, Splitter<T, R> splitter) {
+        return new SplittableJob<T, R>() {
+            @Override
+            public R run(T item, ProgressTracker.ProgressCallback progress, CancellationToken token) throws Exception {
+                return job.run(item, progress, token);
+            }
+
+            @Override
+            public SegmentedWork<R> split(T item, CancellationToken token) throws Exception {
+                return splitter.split(item, token);
+            }
+        };
+    }
+
+    /**
+     * Batch callbacks. Invoked on worker threads.
+     */
+    public interface BatchListener<T> {
+        default void onItemStart(T item) {}
+
+        default void onItemProgress(T item, double percentage, long processed, long total, long eta) {}
+
+        /**
+         * Item progress with its smoothed throughput; eta is in seconds, 0 when unknown.
+         * By default forwards to the variant without the rate.
+         */
+        default void onItemProgress(T item, double percentage, long processed, long total, long eta,
+                                    double bytesPerSec) {
+            onItemProgress(item, percentage, processed, total, eta);
+        }
+
+        /**
+         * @param error null on success
+         * @param completed items finished so far (success or failure)
+         * @param total items submitted so far
+         */
+        default void onItemDone(T item, Exception error, int completed, int total) {}
+
+        default void onBatchProgress(double fraction, long processedBytes, long totalBytes) {}
+
+        /**
+         * Batch progress with the smoothed batch throughput and {@link Batch#getEtaSeconds()}.
+         * By default forwards to the variant without rate and ETA.
+         */
+        default void onBatchProgress(double fraction, long processedBytes, long totalBytes, double bytesPerSec,
+                                     long etaSeconds) {
+            onBatchProgress(fraction, processedBytes, totalBytes);
+        }
+    }
+
+    public static JobScheduler getInstance() {
+        if (instance == null) {
+            synchronized (JobScheduler.class) {
+                if (instance == null) {
+                    instance = new JobScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private JobScheduler() {
+        int jobs = ConfigManager.getParallelJobs();
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(jobs, jobs, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "batch-worker-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Open a batch that accepts items until {@link Batch#seal()} is called.
+     */
+    public <T, R> Batch<T, R> newBatch(FileJob<T, R> job, BatchListener<T> listener, CancellationToken token) {
+        resizeToConfig();
+        return new Batch<>(job, listener, token);
+    }
+
+    /**
+     * Submit a fixed list of items, largest first, and seal the batch.
+     */
+    public <T, R> Batch<T, R> submitAll(List<T> items, ToLongFunction<T> sizeOf, FileJob<T, R> job,
+                                        BatchListener<T> listener, CancellationToken token) {
+        return submitAll(items, sizeOf, null, job, listener, token);
+    }
+
+    /**
+     * Submit a fixed list of items, largest first, limited per device by the paths each
+     * item touches (see {@link Batch#limitByDevice}), and seal the batch.
+     */
+    public <T, R> Batch<T, R> submitAll(List<T> items, ToLongFunction<T> sizeOf,
+                                        Function<T, Collection<Path>> pathsOf, FileJob<T, R> job,
+                                        BatchListener<T> listener, CancellationToken token) {
+        Batch<T, R> batch = newBatch(job, listener, token);
+        if (pathsOf != null) batch.limitByDevice(pathsOf);
+        batch.submitAll(items, sizeOf);
+        batch.seal();
+        return batch;
+    }
+
+    /**
+     * Current worker count.
+     */
+    public int getParallelism() {
+        return executor.getMaximumPoolSize();
+    }
+
+    private void execute(long priorityBytes, Runnable task) {
+        executor.execute(new PrioritizedTask(priorityBytes, taskSeq.incrementAndGet(), task));
+    }
+
+    /**
+     * Queue a task that holds a stream on each device while it runs. If a device is
+     * full the task is parked there and requeued when a stream frees up.
+     */
+    private void executeOn(List<DeviceLimiter.Device> devices, long priorityBytes, Runnable task) {
+        if (devices.isEmpty()) {
+            execute(priorityBytes, task);
+            return;
+        }
+        DeviceLimiter limiter = DeviceLimiter.getInstance();
+        execute(priorityBytes, new Runnable() {
+            @Override
+            public void run() {
+                if (!limiter.tryAcquireOrPark(devices, priorityBytes, () -> execute(priorityBytes, this))) return;
+                try {
+                    task.run();
+                } finally {
+                    for (Runnable parked : limiter.release(devices)) {
+                        parked.run();
+                    }
+                }
+            }
+        });
+    }
+
+    // Pick up parallel.jobs changes made in settings since the pool was created
+    private synchronized void resizeToConfig() {
+        int jobs = ConfigManager.getParallelJobs();
+        if (jobs == executor.getMaximumPoolSize()) return;
+        if (jobs > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(jobs);
+            executor.setCorePoolSize(jobs);
+        } else {
+            executor.setCorePoolSize(jobs);
+            executor.setMaximumPoolSize(jobs);
+        }
+        logger.info("Batch worker pool resized to {}", jobs);
+    }
+
+    /**
+     * A group of items processed together with shared cancellation and progress.
+     */
+    public final class Batch<T, R> {
+
+        private final FileJob<T, R> job;
+        private final BatchListener<T> listener;
+        private final CancellationToken token;
+        private final long startedAt = System.currentTimeMillis();
+
+        private final AtomicInteger submitted = new AtomicInteger();
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+        private final AtomicLong totalBytes = new AtomicLong();
+        private final AtomicLong processedBytes = new AtomicLong();
+
+        private final List<T> succeeded = Collections.synchronizedList(new ArrayList<>());
+        private final Map<T, Exception> failed = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final List<T> cancelled = Collections.synchronizedList(new ArrayList<>());
+        private final List<CompletableFuture<R>> futures = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long> itemSizes = Collections.synchronizedList(new ArrayList<>());
+
+        private final CompletableFuture<BatchResult<T>> completion = new CompletableFuture<>();
+        private final Object backlogLock = new Object();
+        private volatile boolean sealed = false;
+        private volatile Function<T, Collection<Path>> pathsOf;
+        private final ProgressTracker.ThroughputMeter meter = new ProgressTracker.ThroughputMeter();
+        // EWMAs over finished items: per-worker streaming rate, and the time an item spends
+        // outside streaming (key derivation, metadata lookups and inserts, rename)
+        private volatile double streamBytesPerSec;
+        private volatile double itemOverheadMs;
+
+        private Batch(FileJob<T, R> job, BatchListener<T> listener, CancellationToken token) {
+            this.job = job;
+            this.listener = listener;
+            this.token = (token != null) ? token : new CancellationToken();
+        }
+
+        /**
+         * Limit items to the per-device stream counts of {@link DeviceLimiter}. pathsOf
+         * returns the files an item reads and writes (outputs may not exist yet).
+         * Call before the first submit.
+         */
+        public Batch<T, R> limitByDevice(Function<T, Collection<Path>> pathsOf) {
+            this.pathsOf = pathsOf;
+            return this;
+        }
+
+        /**
+         * Seed the fixed per-item cost used by {@link #getEtaSeconds()} until finished
+         * items provide a measurement, e.g. the key derivation time for jobs that derive
+         * a key per file.
+         */
+        public Batch<T, R> expectItemOverheadMs(long ms) {
+            if (itemOverheadMs == 0 && ms > 0) itemOverheadMs = ms;
+            return this;
+        }
+
+        /**
+         * Queue an item. sizeBytes is used only for aggregate progress.
+         */
+        public CompletableFuture<R> submit(T item, long sizeBytes) {
+            if (sealed) throw new IllegalStateException("Batch is sealed");
+            submitted.incrementAndGet();
+            totalBytes.addAndGet(Math.max(0L, sizeBytes));
+
+            itemSizes.add(Math.max(0L, sizeBytes));
+
+            CompletableFuture<R> future = new CompletableFuture<>();
+            futures.add(future);
+            List<DeviceLimiter.Device> devices = devicesOf(item);
+            executeOn(devices, sizeBytes, () -> runItem(item, Math.max(0L, sizeBytes), future, devices));
+            return future;
+        }
+
+        /**
+         * Queue a list of items largest-first.
+         */
+        public void submitAll(List<T> items, ToLongFunction<T> sizeOf) {
+            List<T> ordered = new ArrayList<>(items);
+            if (sizeOf != null) {
+                // Idle threads start the first tasks directly, bypassing the priority queue
+                ordered.sort(Comparator.comparingLong(sizeOf).reversed());
+            }
+            for (T item : ordered) {
+                submit(item, sizeOf == null ? 0L : sizeOf.applyAsLong(item));
+            }
+        }
+
+        /**
+         * Block a producer while more than 'limit' items are queued or running, so a
+         * streaming source (e.g. a directory walk) stays only a bounded distance ahead.
+         */
+        public void awaitBacklogBelow(int limit) throws InterruptedException {
+            synchronized (backlogLock) {
+                while (submitted.get() - finished.get() >= limit && !token.isCancelled()) {
+                    backlogLock.wait(200);
+                }
+            }
+        }
+
+        /**
+         * No more items will be submitted; the batch completes when the queued ones finish.
+         */
+        public void seal() {
+            sealed = true;
+            checkComplete();
+        }
+
+        public void cancel() {
+            token.cancel();
+        }
+
+        public CancellationToken getToken() {
+            return token;
+        }
+
+        public List<CompletableFuture<R>> getFutures() {
+            synchronized (futures) {
+                return new ArrayList<>(futures);
+            }
+        }
+
+        public CompletableFuture<BatchResult<T>> completion() {
+            return completion;
+        }
+
+        /**
+         * Smoothed batch throughput in bytes per second (0 until measured).
+         */
+        public double getBytesPerSec() {
+            return meter.getBytesPerSec();
+        }
+
+        /**
+         * Seconds until the batch should finish: the remaining bytes at the per-worker
+         * streaming rate times the busy workers, plus the fixed per-item cost of every
+         * item not started yet spread over all workers. 0 when nothing is measured yet.
+         */
+        public long getEtaSeconds() {
+            if (meter.getBytesPerSec() <= 0 && itemOverheadMs <= 0) return 0L;
+            int workers = Math.max(1, getParallelism());
+            int busy = Math.max(1, Math.min(workers, submitted.get() - finished.get()));
+            // Until an item has finished, the batch's observed rate stands in for the streaming rate
+            double rate = streamBytesPerSec > 0 ? streamBytesPerSec * busy : meter.getBytesPerSec();
+            if (rate <= 0) rate = BatchPlanner.getWorkerBytesPerSec() * busy;
+            double seconds = Math.max(0L, totalBytes.get() - processedBytes.get()) / rate;
+            int waiting = submitted.get() - started.get();
+            if (waiting > 0) seconds += waiting * itemOverheadMs / 1000.0 / workers;
+            return (long) Math.ceil(seconds);
+        }
+
+        /**
+         * Estimated wall time for everything submitted so far, from BatchPlanner.
+         */
+        public long getEstimatedMakespanMs() {
+            synchronized (itemSizes) {
+                return BatchPlanner.estimateMakespanMs(new ArrayList<>(itemSizes), getParallelism());
+            }
+        }
+
+        private List<DeviceLimiter.Device> devicesOf(T item) {
+            Function<T, Collection<Path>> f = pathsOf;
+            if (f == null) return Collections.emptyList();
+            try {
+                return DeviceLimiter.getInstance().devicesOf(f.apply(item));
+            } catch (Exception e) {
+                logger.debug("No device limit for {}: {}", item, e.getMessage());
+                return Collections.emptyList();
+            }
+        }
+
+        private void runItem(T item, long size, CompletableFuture<R> future, List<DeviceLimiter.Device> devices) {
+            started.incrementAndGet();
+            if (token.isCancelled()) {
+                cancelled.add(item);
+                future.completeExceptionally(new CancellationException("Operation cancelled"));
+                itemFinished(item, new CancellationException("Operation cancelled"));
+                return;
+            }
+
+            if (listener != null) listener.onItemStart(item);
+
+            // Track this item's contribution to batch progress as a fraction of its size
+            AtomicLong credited = new AtomicLong();
+            ProgressTracker.ThroughputMeter itemMeter = new ProgressTracker.ThroughputMeter();
+            // Streaming window of the item: first and latest callback that moved its bytes
+            AtomicLong firstMove = new AtomicLong();
+            AtomicLong lastMove = new AtomicLong();
+            ProgressTracker.ProgressCallback callback = (percentage, processed, total, eta) -> {
+                long done = (long) (size * Math.max(0.0, Math.min(100.0, percentage)) / 100.0);
+                long prev = credited.getAndAccumulate(done, Math::max);
+                if (done > prev) {
+                    meter.update(processedBytes.addAndGet(done - prev));
+                    long now = System.nanoTime();
+                    firstMove.compareAndSet(0L, now);
+                    lastMove.set(now);
+                }
+                itemMeter.update(Math.max(done, prev));
+                if (listener != null) {
+                    listener.onItemProgress(item, percentage, processed, total,
+                            itemMeter.etaSeconds(size - Math.max(done, prev)), itemMeter.getBytesPerSec());
+                    batchProgress();
+                }
+            };
+
+            if (job instanceof SplittableJob && BatchPlanner.shouldSplit(size)) {
+                SegmentedWork<R> work;
+                try {
+                    work = ((SplittableJob<T, R>) job).split(item, token);
+                } catch (Exception e) {
+                    finishItem(item, future, null, e);
+                    return;
+                }
+                if (work != null) {
+                    new SplitItem(item, size, work, future, credited, devices).start();
+                    return;
+                }
+            }
+
+            long runStarted = System.nanoTime();
+            try {
+                R result = job.run(item, callback, token);
+                long elapsed = System.nanoTime() - runStarted;
+                BatchPlanner.recordUnit(size, elapsed);
+                recordTiming(size, elapsed, firstMove.get() == 0 ? 0L : lastMove.get() - firstMove.get());
+                long prev = credited.getAndSet(size);
+                meter.update(processedBytes.addAndGet(size - prev));
+                finishItem(item, future, result, null);
+            } catch (Exception e) {
+                finishItem(item, future, null, e);
+            } catch (Throwable t) {
+                finishItem(item, future, null, new Exception(t));
+            }
+        }
+
+        // Split a finished item's time into streaming and fixed overhead
+        private void recordTiming(long size, long elapsedNanos, long streamNanos) {
+            double overhead = Math.max(0L, elapsedNanos - streamNanos) / 1_000_000.0;
+            synchronized (meter) {
+                itemOverheadMs = itemOverheadMs == 0 ? overhead : 0.2 * overhead + 0.8 * itemOverheadMs;
+                if (size >= 1024L * 1024 && streamNanos > 0) {
+                    double rate = size * 1_000_000_000.0 / streamNanos;
+                    streamBytesPerSec = streamBytesPerSec == 0 ? rate : 0.2 * rate + 0.8 * streamBytesPerSec;
+                }
+            }
+        }
+
+        private void batchProgress() {
+            listener.onBatchProgress(fraction(), processedBytes.get(), totalBytes.get(), meter.getBytesPerSec(),
+                    getEtaSeconds());
+        }
+
+        private void finishItem(T item, CompletableFuture<R> future, R result, Exception error) {
+            if (error == null) {
+                succeeded.add(item);
+                future.complete(result);
+            } else {
+                if (token.isCancelled()) {
+                    cancelled.add(item);
+                } else {
+                    failed.put(item, error);
+                }
+                future.completeExceptionally(error);
+            }
+            itemFinished(item, error);
+        }
+
+        private void itemFinished(T item, Exception error) {
+            int done = finished.incrementAndGet();
+            synchronized (backlogLock) {
+                backlogLock.notifyAll();
+            }
+            if (listener != null) {
+                try {
+                    listener.onItemDone(item, error, done, submitted.get());
+                    batchProgress();
+                } catch (Exception e) {
+                    logger.warn("Batch listener failed: {}", e.getMessage());
+                }
+            }
+            checkComplete();
+        }
+
+        /**
+         * One item processed as segments. Any number of runners (the worker that split
+         * it plus queued helpers) claim segment indexes from a shared counter; the last
+         * runner out completes or aborts the item.
+         */
+        private final class SplitItem {
+            private final T item;
+            private final long size;
+            private final SegmentedWork<R> work;
+            private final CompletableFuture<R> future;
+            private final AtomicLong credited;
+            private final List<DeviceLimiter.Device> devices;
+            private final long count;
+            private final AtomicLong next;
+            private final AtomicInteger runners = new AtomicInteger();
+            private final AtomicLong remainingBytes = new AtomicLong();
+            private final AtomicReference<Exception> error = new AtomicReference<>();
+            private final AtomicBoolean finished = new AtomicBoolean();
+            private final ProgressTracker.ThroughputMeter itemMeter;
+
+            SplitItem(T item, long size, SegmentedWork<R> work, CompletableFuture<R> future, AtomicLong credited,
+                      List<DeviceLimiter.Device> devices) {
+                this.item = item;
+                this.size = size;
+                this.work = work;
+                this.future = future;
+                this.credited = credited;
+                this.devices = devices;
+                this.count = work.segmentCount();
+                this.next = new AtomicLong(work.firstPendingSegment());
+                long done = 0;
+                for (long i = 0; i < work.firstPendingSegment(); i++) {
+                    done += work.segmentBytes(i);
+                }
+                this.itemMeter = new ProgressTracker.ThroughputMeter(done);
+                credit(done);
+                remainingBytes.set(Math.max(0L, size - done));
+            }
+
+            void start() {
+                // Claim our own runner slot first so helpers cannot finish the item early
+                runners.incrementAndGet();
+                // No more helpers than the item's devices can take beside this runner
+                long helpers = Math.min(getParallelism() - 1, count - next.get() - 1);
+                helpers = Math.min(helpers, DeviceLimiter.getInstance().streamLimit(devices) - 1);
+                for (long i = 0; i < helpers; i++) {
+                    runners.incrementAndGet();
+                    try {
+                        executeOn(devices, remainingBytes.get(), this::runSegments);
+                    } catch (Exception e) {
+                        runners.decrementAndGet();
+                    }
+                }
+                runSegments();
+            }
+
+            // Runner slots are counted before a runner is queued or started
+            private void runSegments() {
+                try {
+                    long index;
+                    while (error.get() == null && (index = next.getAndIncrement()) < count) {
+                        if (token.isCancelled()) {
+                            error.compareAndSet(null, new CancellationException("Operation cancelled"));
+                            break;
+                        }
+                        long bytes = work.segmentBytes(index);
+                        long segmentStarted = System.nanoTime();
+                        try {
+                            work.runSegment(index);
+                        } catch (Exception e) {
+                            error.compareAndSet(null, e);
+                            break;
+                        } catch (Throwable t) {
+                            error.compareAndSet(null, new Exception(t));
+                            break;
+                        }
+                        BatchPlanner.recordUnit(bytes, System.nanoTime() - segmentStarted);
+                        remainingBytes.addAndGet(-bytes);
+                        credit(bytes);
+                    }
+                } finally {
+                    if (runners.decrementAndGet() == 0) {
+                        finish();
+                    }
+                }
+            }
+
+            private void credit(long bytes) {
+                if (bytes <= 0) return;
+                long done = credited.addAndGet(bytes);
+                meter.update(processedBytes.addAndGet(bytes));
+                itemMeter.update(done);
+                if (listener != null) {
+                    double pct = size > 0 ? Math.min(100.0, done * 100.0 / size) : 100.0;
+                    listener.onItemProgress(item, pct, done, size, itemMeter.etaSeconds(size - done),
+                            itemMeter.getBytesPerSec());
+                    batchProgress();
+                }
+            }
+
+            private void finish() {
+                if (!finished.compareAndSet(false, true)) return;
+                Exception e = error.get();
+                if (e == null) {
+                    try {
+                        R result = work.complete();
+                        long prev = credited.getAndSet(size);
+                        processedBytes.addAndGet(Math.max(0L, size - prev));
+                        finishItem(item, future, result, null);
+                        return;
+                    } catch (Exception ce) {
+                        e = ce;
+                    }
+                }
+                work.abort(e);
+                finishItem(item, future, null, e);
+            }
+        }
+
+        private double fraction() {
+            long total = totalBytes.get();
+            if (total > 0) return Math.min(1.0, processedBytes.get() / (double) total);
+            int n = submitted.get();
+            return n == 0 ? 0.0 : finished.get() / (double) n;
+        }
+
+        private void checkComplete() {
+            if (sealed && finished.get() == submitted.get() && !completion.isDone()) {
+                BatchResult<T> result;
+                synchronized (succeeded) {
+                    synchronized (failed) {
+                        synchronized (cancelled) {
+                            result = new BatchResult<>(new ArrayList<>(succeeded), new LinkedHashMap<>(failed),
+                                    new ArrayList<>(cancelled), submitted.get(), processedBytes.get(),
+                                    System.currentTimeMillis() - startedAt);
+                        }
+                    }
+                }
+                completion.complete(result);
+            }
+        }
+    }
+
+    /**
+     * Queue entry ordering work largest-first, then in submission order.
+     */
+    private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final long bytes;
+        private final long seq;
+        private final Runnable task;
+
+        PrioritizedTask(long bytes, long seq, Runnable task) {
+            this.bytes = bytes;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask o) {
+            int c = Long.compare(o.bytes, bytes);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    /**
+     * Consolidated outcome of a batch.
+     */
+    public static final class BatchResult<T> {
+        private final List<T> succeeded;
+        private final Map<T, Exception> failed;
+        private final List<T> cancelled;
+        private final int total;
+        private final long bytesProcessed;
+        private final long elapsedMs;
+
+        BatchResult(List<T> succeeded, Map<T, Exception> failed, List<T> cancelled,
+                    int total, long bytesProcessed, long elapsedMs) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.total = total;
+            this.bytesProcessed = bytesProcessed;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public List<T> getSucceeded() { return succeeded; }
+        public Map<T, Exception> getFailed() { return failed; }
+        public List<T> getCancelled() { return cancelled; }
+        public int getTotal() { return total; }
+        public int getSuccessCount() { return succeeded.size(); }
+        public int getFailureCount() { return failed.size(); }
+        public int getCancelledCount() { return cancelled.size(); }
+        public long getBytesProcessed() { return bytesProcessed; }
+        public long getElapsedMs() { return elapsedMs; }
+
+        /**
+         * Average throughput in bytes per second over the batch wall time.
+         */
+        public double getThroughputBytesPerSec() {
+            return elapsedMs <= 0 ? 0.0 : bytesProcessed * 1000.0 / elapsedMs;
+        }
+
+        /**
+         * Human-readable one-line summary, e.g. "Encrypted 9 of 10 file(s). Failures: 1".
+         */
+        public String summary(String verb) {
+            String s = String.format("%s %d of %d file(s). Failures: %d", verb, getSuccessCount(), total, getFailureCount());
+            if (!cancelled.isEmpty()) {
+                s += String.format(", cancelled: %d", cancelled.size());
+            }
+            return s;
+        }
+    }
+}
@@ -5,15 +5,20 @@ import com.rfn.fileencryptor.util.CryptoUtil;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class KeyDerivationService {
 
+    private static final Logger logger = LoggerFactory.getLogger(KeyDerivationService.class);
+
     /**
      * Derives key using PBKDF2
      */
     public byte[] deriveKeyPBKDF2(String password, byte[] salt, int iterations)
             throws NoSuchAlgorithmException, InvalidKeySpecException {
 
-        System.out.println("Deriving key using PBKDF2 with " + iterations + " iterations");
+        logger.debug("Deriving key using PBKDF2 with {} iterations", iterations);
         return CryptoUtil.deriveKey(password, salt, iterations);
     }
 
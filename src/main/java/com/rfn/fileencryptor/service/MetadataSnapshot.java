@@ -0,0 +1,388 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.dao.FileMetadataDAO;
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.model.User;
+import com.rfn.fileencryptor.util.CryptoUtil;
+
+/**
+ * Encrypted local copy of the columns the dashboard lists (id, name, size, created,
+ * compressed) for one user, so the file table can be shown at login before the database
+ * has answered.
+ *
+ * One file per user under ~/.fileencryptor/snapshots: a short plain header (magic,
+ * version, salt, IV) followed by an AES-GCM encrypted body of fixed-width records with
+ * length-prefixed UTF-8 names. The header is authenticated with the body. The key is
+ * derived with PBKDF2 from the login password and the snapshot's salt, so nothing on
+ * local disk (the snapshot, the embedded database with its password hashes) is enough to
+ * read it; a password change just makes the old snapshot unusable and it is rebuilt under
+ * a new salt. The file is mapped and decrypted in one pass.
+ *
+ * The body also records the newest (created_at, file_id) it contains. Listed columns
+ * never change after a row is stored, so {@link #reconcile} only needs the rows after
+ * that high-water mark plus an id scan to drop deleted files (and pick up any row that
+ * committed out of created_at order), then writes the merged snapshot back.
+ *
+ * Rows from a snapshot carry only the listed columns; read full rows from the DAO
+ * before acting on a file.
+ */
+public final class MetadataSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataSnapshot.class);
+
+    private static final String SNAPSHOT_DIRNAME = "snapshots";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x46454D53; // "FEMS"
+    private static final byte VERSION = 2;
+    private static final int SALT_SIZE = 16;
+    private static final int HEADER_SIZE = 4 + 1 + SALT_SIZE + CryptoUtil.IV_SIZE;
+    private static final int GCM_TAG_BYTES = CryptoUtil.TAG_SIZE / 8;
+    // file id, size, created, flags, name length; the name bytes follow
+    private static final int RECORD_FIXED_SIZE = 8 + 8 + 8 + 1 + 4;
+    private static final long NULL_CREATED = Long.MIN_VALUE;
+    private static final byte FLAG_COMPRESSED = 1;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Long ownerId;
+    private final File file;
+
+    // Login password until the key is derived from it (then wiped), and the key with its salt
+    private char[] password;
+    private byte[] salt;
+    private SecretKeySpec key;
+
+    // Rows of the last load or reconcile, and their high-water mark (fileId -1 = none)
+    private Map<Long, FileMetadata> rows;
+    private long hwmCreated = NULL_CREATED;
+    private long hwmFileId = -1;
+
+    /**
+     * @param loginPassword the password the user just logged in with; copied, and wiped once
+     *                      the snapshot key has been derived (on the first load or reconcile)
+     */
+    public MetadataSnapshot(User user, String loginPassword) {
+        this.ownerId = user.getUserId();
+        this.password = loginPassword == null ? null : loginPassword.toCharArray();
+        this.file = new File(new File(ConfigManager.getStateDir(), SNAPSHOT_DIRNAME), ownerId + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Rows from the snapshot on disk, or null if there is none or it cannot be read.
+     * Local I/O only; fast enough to call right after login.
+     */
+    public synchronized List<FileMetadata> load() {
+        if (!ConfigManager.isDashboardSnapshot()) {
+            // Do not leave filenames behind once snapshots are switched off
+            delete();
+            return null;
+        }
+        if (!file.isFile()) return null;
+        long started = System.currentTimeMillis();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (map.remaining() < HEADER_SIZE + GCM_TAG_BYTES || map.getInt() != MAGIC || map.get() != VERSION) {
+                logger.warn("Ignoring unrecognised snapshot {}", file.getName());
+                return null;
+            }
+            byte[] fileSalt = new byte[SALT_SIZE];
+            byte[] iv = new byte[CryptoUtil.IV_SIZE];
+            map.get(fileSalt).get(iv);
+
+            if (!deriveKey() || !Arrays.equals(fileSalt, salt)) return null;
+            Cipher cipher = cipher(Cipher.DECRYPT_MODE, iv);
+            cipher.updateAAD(map.duplicate().position(0).limit(HEADER_SIZE));
+            ByteBuffer body = ByteBuffer.allocate(map.remaining() - GCM_TAG_BYTES);
+            cipher.doFinal(map, body);
+            body.flip();
+
+            List<FileMetadata> list = read(body);
+            logger.info("Snapshot for owner {}: {} file(s) in {} ms",
+                    ownerId, list.size(), System.currentTimeMillis() - started);
+            return list;
+        } catch (GeneralSecurityException e) {
+            // Wrong key (password changed) or a damaged file: rebuilt by the next reconcile
+            logger.info("Snapshot for owner {} not usable, will rebuild: {}", ownerId, e.getMessage());
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read snapshot {}: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Bring the snapshot up to date with the database and save it. Reads only rows past
+     * the high-water mark and the owner's file ids when a snapshot was loaded, the full
+     * listing otherwise. Blocking; run off the FX thread.
+     *
+     * @return every file of the owner, listed columns only
+     */
+    public synchronized List<FileMetadata> reconcile(FileMetadataDAO dao) throws SQLException {
+        long started = System.currentTimeMillis();
+        Map<Long, FileMetadata> merged;
+        if (rows == null) {
+            merged = new HashMap<>();
+            dao.streamListing(ownerId, m -> merged.put(m.getFileId(), m));
+        } else {
+            merged = new HashMap<>(rows);
+            int before = merged.size();
+            if (hwmFileId >= 0) {
+                dao.streamListingAfter(ownerId, toTimestamp(hwmCreated), hwmFileId, m -> merged.put(m.getFileId(), m));
+            }
+            int afterMark = merged.size() - before;
+
+            long[][] live = {new long[Math.max(16, merged.size())]};
+            int[] n = {0};
+            dao.streamIds(ownerId, id -> {
+                if (n[0] == live[0].length) live[0] = Arrays.copyOf(live[0], n[0] * 2);
+                live[0][n[0]++] = id;
+            });
+            long[] ids = live[0];
+            Arrays.sort(ids, 0, n[0]);
+            merged.keySet().removeIf(id -> Arrays.binarySearch(ids, 0, n[0], id) < 0);
+
+            List<Long> missing = new ArrayList<>();
+            for (int i = 0; i < n[0]; i++) {
+                if (!merged.containsKey(ids[i])) missing.add(ids[i]);
+            }
+            for (FileMetadata m : dao.findByIds(ownerId, missing)) {
+                merged.put(m.getFileId(), listed(m));
+            }
+            logger.info("Reconciled snapshot for owner {}: {} new past the mark, {} out of order, {} deleted",
+                    ownerId, afterMark, missing.size(), before + afterMark + missing.size() - merged.size());
+        }
+        rows = merged;
+        updateHighWaterMark();
+        save();
+        logger.info("Snapshot for owner {} current: {} file(s) in {} ms",
+                ownerId, merged.size(), System.currentTimeMillis() - started);
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Remove the snapshot file.
+     */
+    public void delete() {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete snapshot {}", file.getAbsolutePath());
+        }
+    }
+
+    private List<FileMetadata> read(ByteBuffer body) {
+        long owner = body.getLong();
+        if (owner != ownerId) throw new IllegalStateException("snapshot belongs to another user");
+        int count = body.getInt();
+        long markCreated = body.getLong();
+        long markFileId = body.getLong();
+
+        List<FileMetadata> list = new ArrayList<>(count);
+        Map<Long, FileMetadata> byId = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            FileMetadata m = new FileMetadata();
+            m.setFileId(body.getLong());
+            m.setOwnerId(ownerId);
+            m.setFileSize(body.getLong());
+            long created = body.getLong();
+            m.setCreatedAt(created == NULL_CREATED ? null : toTimestamp(created));
+            m.setCompressed((body.get() & FLAG_COMPRESSED) != 0);
+            int len = body.getInt();
+            m.setOriginalFilename(new String(body.array(), body.position(), len, StandardCharsets.UTF_8));
+            body.position(body.position() + len);
+            list.add(m);
+            byId.put(m.getFileId(), m);
+        }
+        rows = byId;
+        hwmCreated = markCreated;
+        hwmFileId = markFileId;
+        return list;
+    }
+
+    private void save() {
+        if (!ConfigManager.isDashboardSnapshot()) return;
+        try {
+            if (!deriveKey()) return;
+
+            List<byte[]> names = new ArrayList<>(rows.size());
+            long bodySize = 8 + 4 + 8 + 8;
+            for (FileMetadata m : rows.values()) {
+                byte[] name = m.getOriginalFilename() == null
+                        ? new byte[0] : m.getOriginalFilename().getBytes(StandardCharsets.UTF_8);
+                names.add(name);
+                bodySize += RECORD_FIXED_SIZE + name.length;
+            }
+            if (bodySize > Integer.MAX_VALUE - HEADER_SIZE - GCM_TAG_BYTES) {
+                logger.warn("Too many files for a snapshot; not saved");
+                return;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate((int) bodySize);
+            body.putLong(ownerId).putInt(rows.size()).putLong(hwmCreated).putLong(hwmFileId);
+            int i = 0;
+            for (FileMetadata m : rows.values()) {
+                byte[] name = names.get(i++);
+                body.putLong(m.getFileId())
+                        .putLong(m.getFileSize() == null ? 0L : m.getFileSize())
+                        .putLong(m.getCreatedAt() == null ? NULL_CREATED : toNanos(m.getCreatedAt()))
+                        .put(m.isCompressed() ? FLAG_COMPRESSED : 0)
+                        .putInt(name.length)
+                        .put(name);
+            }
+            body.flip();
+
+            byte[] iv = CryptoUtil.generateIV();
+            ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + body.remaining() + GCM_TAG_BYTES);
+            out.putInt(MAGIC).put(VERSION).put(salt).put(iv);
+            Cipher cipher = cipher(Cipher.ENCRYPT_MODE, iv);
+            cipher.updateAAD(out.array(), 0, HEADER_SIZE);
+            cipher.doFinal(body, out);
+            out.flip();
+
+            write(out);
+        } catch (GeneralSecurityException | IOException e) {
+            logger.warn("Failed to save snapshot for owner {}: {}", ownerId, e.getMessage());
+        }
+    }
+
+    // Owner-only temp file, synced, then moved over the old snapshot
+    private void write(ByteBuffer data) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("cannot create " + dir.getAbsolutePath());
+        Path tmp = new File(dir, file.getName() + ".tmp").toPath();
+        Files.deleteIfExists(tmp);
+        try {
+            Files.createFile(tmp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(tmp);
+            tmp.toFile().setReadable(false, false);
+            tmp.toFile().setReadable(true, true);
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                ch.write(data);
+            }
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void updateHighWaterMark() {
+        hwmCreated = NULL_CREATED;
+        hwmFileId = -1;
+        for (FileMetadata m : rows.values()) {
+            if (m.getCreatedAt() == null) continue;
+            long c = toNanos(m.getCreatedAt());
+            if (c > hwmCreated || (c == hwmCreated && m.getFileId() > hwmFileId)) {
+                hwmCreated = c;
+                hwmFileId = m.getFileId();
+            }
+        }
+    }
+
+    /**
+     * Derive the key once, under the salt of the snapshot on disk (a new one if there is
+     * none), so later saves keep the same salt. False when there is no password to use.
+     */
+    private boolean deriveKey() throws GeneralSecurityException {
+        if (key != null) return true;
+        if (password == null) return false;
+        byte[] fileSalt = readSalt();
+        if (fileSalt == null) {
+            fileSalt = new byte[SALT_SIZE];
+            RANDOM.nextBytes(fileSalt);
+        }
+        PBEKeySpec spec = new PBEKeySpec(password, fileSalt, CryptoUtil.PBKDF2_ITERATIONS, CryptoUtil.KEY_SIZE);
+        try {
+            byte[] raw = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            key = new SecretKeySpec(raw, CryptoUtil.ALGORITHM);
+            Arrays.fill(raw, (byte) 0);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(password, '\0');
+            password = null;
+        }
+        salt = fileSalt;
+        return true;
+    }
+
+    // Salt from the header of the snapshot on disk, or null if there is no usable one
+    private byte[] readSalt() {
+        if (!file.isFile()) return null;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && ch.read(header) > 0) {
+                // keep reading
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.get() != VERSION) return null;
+            byte[] fileSalt = new byte[SALT_SIZE];
+            header.get(fileSalt);
+            return fileSalt;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Cipher cipher(int mode, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(CryptoUtil.TRANSFORMATION);
+        cipher.init(mode, key, new GCMParameterSpec(CryptoUtil.TAG_SIZE, iv));
+        return cipher;
+    }
+
+    // Only the columns a snapshot keeps
+    private static FileMetadata listed(FileMetadata full) {
+        FileMetadata m = new FileMetadata();
+        m.setFileId(full.getFileId());
+        m.setOwnerId(full.getOwnerId());
+        m.setOriginalFilename(full.getOriginalFilename());
+        m.setFileSize(full.getFileSize());
+        m.setCreatedAt(full.getCreatedAt());
+        m.setCompressed(full.isCompressed());
+        return m;
+    }
+
+    private static long toNanos(Timestamp ts) {
+        return Math.floorDiv(ts.getTime(), 1000L) * 1_000_000_000L + ts.getNanos();
+    }
+
+    private static Timestamp toTimestamp(long nanos) {
+        Timestamp ts = new Timestamp(Math.floorDiv(nanos, 1_000_000_000L) * 1000L);
+        ts.setNanos((int) Math.floorMod(nanos, 1_000_000_000L));
+        return ts;
+    }
+}
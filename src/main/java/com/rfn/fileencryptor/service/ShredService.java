@@ -0,0 +1,317 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.util.SecureFileUtil;
+
+/**
+ * Background secure-delete queue.
+ *
+ * Files are moved aside to a tombstone name in the same directory (so the original
+ * path is free immediately) and recorded in a journal before this call returns.
+ * Overwrite passes run on a small worker pool; anything still pending when the app
+ * exits or crashes is picked up again from the journal on next start.
+ *
+ * Journal lines: "+ tombstone original size mtime" when queued, "- tombstone" when done.
+ * Fields are tab-separated; tab, CR, LF and '%' inside a path are written as %09, %0D,
+ * %0A and %25 so any filename survives the round trip.
+ */
+public class ShredService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShredService.class);
+    private static final String JOURNAL_FILENAME = "shred-queue.journal";
+    private static final String TOMBSTONE_SUFFIX = ".shred";
+
+    private static volatile ShredService instance;
+
+    private final File journalFile;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Boolean> pending = new ConcurrentHashMap<>();
+    private final Object journalLock = new Object();
+
+    public static ShredService getInstance() {
+        if (instance == null) {
+            synchronized (ShredService.class) {
+                if (instance == null) {
+                    instance = new ShredService(ConfigManager.getStateDir());
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Package-private so recovery can be exercised on a journal in another directory
+    ShredService(File stateDir) {
+        this.journalFile = new File(stateDir, JOURNAL_FILENAME);
+
+        int threads = ConfigManager.getShredThreads();
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "shred-worker-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        recoverPending();
+    }
+
+    /**
+     * Queue a file for deletion. In "fast" delete mode the file is removed inline;
+     * otherwise this returns as soon as the request is durable in the journal.
+     */
+    public void enqueue(File file) {
+        if (file == null || !file.exists()) return;
+
+        if ("fast".equalsIgnoreCase(ConfigManager.getDeleteMode())) {
+            if (!file.delete()) {
+                logger.warn("Failed to delete {}", file.getAbsolutePath());
+            }
+            return;
+        }
+
+        File original = file.getAbsoluteFile();
+        File tombstone = new File(original.getParentFile(),
+                "." + UUID.randomUUID() + TOMBSTONE_SUFFIX);
+
+        try {
+            appendJournal("+\t" + escape(tombstone.getPath()) + "\t" + escape(original.getPath())
+                    + "\t" + original.length() + "\t" + original.lastModified());
+        } catch (IOException e) {
+            // Without a journal entry we cannot promise the shred survives a crash
+            logger.warn("Shred journal unavailable, shredding inline: {}", e.getMessage());
+            SecureFileUtil.secureDelete(original);
+            return;
+        }
+
+        if (!original.renameTo(tombstone)) {
+            // Could not move aside (locked file, odd filesystem); shred in place
+            logger.warn("Could not move {} aside, shredding inline", original.getPath());
+            SecureFileUtil.secureDelete(original);
+            markDone(tombstone.getPath());
+            return;
+        }
+
+        submit(tombstone.getPath());
+    }
+
+    /**
+     * Number of files still waiting to be shredded.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Block until the queue is empty or the timeout elapses.
+     * @return true if everything was shredded
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!pending.isEmpty()) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the workers. Unfinished entries stay in the journal for the next start.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!pending.isEmpty()) {
+            logger.info("{} file(s) left in shred queue; will resume on next start", pending.size());
+        }
+    }
+
+    private void submit(String tombstonePath) {
+        if (pending.putIfAbsent(tombstonePath, Boolean.TRUE) != null) return;
+        try {
+            executor.execute(() -> shred(tombstonePath));
+        } catch (Exception e) {
+            // Executor already shut down; the journal keeps the entry
+            pending.remove(tombstonePath);
+        }
+    }
+
+    private void shred(String tombstonePath) {
+        boolean done = false;
+        try {
+            File f = new File(tombstonePath);
+            done = !f.exists()
+                    || SecureFileUtil.secureDelete(f)
+                    || !f.exists();
+            if (!done) {
+                logger.warn("Shred failed for {}; will retry on next start", tombstonePath);
+            }
+        } finally {
+            pending.remove(tombstonePath);
+            if (done) {
+                markDone(tombstonePath);
+            }
+        }
+    }
+
+    private void markDone(String tombstonePath) {
+        try {
+            appendJournal("-\t" + escape(tombstonePath));
+            if (pending.isEmpty()) {
+                compactJournal();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to update shred journal: {}", e.getMessage());
+        }
+    }
+
+    private void appendJournal(String line) throws IOException {
+        synchronized (journalLock) {
+            try (FileOutputStream fos = new FileOutputStream(journalFile, true)) {
+                fos.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                fos.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the entries that are still outstanding.
+     */
+    private void compactJournal() throws IOException {
+        synchronized (journalLock) {
+            Map<String, String[]> open = readJournal();
+            File tmp = new File(journalFile.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                for (String[] entry : open.values()) {
+                    fos.write((String.join("\t", entry) + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                fos.getFD().sync();
+            }
+            if (!tmp.renameTo(journalFile)) {
+                java.nio.file.Files.move(tmp.toPath(), journalFile.toPath(),
+                        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    // Replays the journal; returns tombstone -> "+" record (fields still escaped) for entries without a matching "-"
+    private Map<String, String[]> readJournal() throws IOException {
+        Map<String, String[]> open = new LinkedHashMap<>();
+        if (!journalFile.exists()) return open;
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length >= 5 && "+".equals(parts[0])) {
+                    open.put(parts[1], parts);
+                } else if (parts.length >= 2 && "-".equals(parts[0])) {
+                    open.remove(parts[1]);
+                }
+                // anything else is a torn write from a crash; ignore
+            }
+        }
+        return open;
+    }
+
+    private void recoverPending() {
+        Map<String, String[]> open;
+        try {
+            synchronized (journalLock) {
+                open = readJournal();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read shred journal: {}", e.getMessage());
+            return;
+        }
+        if (open.isEmpty()) return;
+
+        logger.info("Resuming {} pending shred(s) from journal", open.size());
+        for (String[] entry : open.values()) {
+            File tombstone = new File(unescape(entry[1]));
+            File original = new File(unescape(entry[2]));
+            if (!tombstone.exists() && original.exists()) {
+                // Crashed between journaling and the rename. Only touch the original if it
+                // is provably the same file we were asked to delete.
+                long size = parseLong(entry[3]);
+                long mtime = parseLong(entry[4]);
+                if (original.length() == size && original.lastModified() == mtime) {
+                    if (!original.renameTo(tombstone)) {
+                        logger.warn("Could not move {} aside during recovery", original.getPath());
+                        continue;
+                    }
+                } else {
+                    logger.warn("Skipping shred of {}: file changed since it was queued", original.getPath());
+                    markDone(tombstone.getPath());
+                    continue;
+                }
+            }
+            submit(tombstone.getPath());
+        }
+    }
+
+    static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '%': sb.append("%25"); break;
+                case '\t': sb.append("%09"); break;
+                case '\n': sb.append("%0A"); break;
+                case '\r': sb.append("%0D"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Only the four escapes above are decoded; any other '%' is kept as written
+    static String unescape(String s) {
+        if (s.indexOf('%') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < s.length()) {
+                switch (s.substring(i + 1, i + 3)) {
+                    case "25": sb.append('%'); i += 2; continue;
+                    case "09": sb.append('\t'); i += 2; continue;
+                    case "0A": sb.append('\n'); i += 2; continue;
+                    case "0D": sb.append('\r'); i += 2; continue;
+                    default: break;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
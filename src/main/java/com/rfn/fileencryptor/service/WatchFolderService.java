@@ -0,0 +1,331 @@
+package com.rfn.fileencryptor.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.util.CancellationToken;
+
+/**
+ * Encrypts files dropped into an inbox folder.
+ *
+ * A single watcher thread collects create/modify events into a pending set. A file
+ * is only picked up once its size and mtime have not changed for watch.debounce.ms,
+ * so copies still in progress are left alone. Each sweep hands every file that became
+ * stable to one batch on the shared JobScheduler pool, using the session key opened
+ * when the watch was started (no key derivation or thread per file).
+ */
+public class WatchFolderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchFolderService.class);
+
+    private static volatile WatchFolderService instance;
+
+    private final FileService fileService = new FileService();
+    private final Object lock = new Object();
+
+    private Thread watcherThread;
+    private WatchService watchService;
+    private CancellationToken token;
+    private volatile Path inbox;
+
+    // Files submitted but not yet finished; events for them are ignored
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+
+    public static WatchFolderService getInstance() {
+        if (instance == null) {
+            synchronized (WatchFolderService.class) {
+                if (instance == null) {
+                    instance = new WatchFolderService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private WatchFolderService() {
+    }
+
+    /**
+     * Start watching inboxDir. Files already in the inbox are picked up by the first sweep.
+     * onEncrypted is called (on a worker thread) after each file is stored.
+     */
+    public void start(File inboxDir, FileService.KeySession session, boolean compress,
+                      Runnable onEncrypted) throws IOException {
+        synchronized (lock) {
+            stop();
+            Path root = inboxDir.toPath().toAbsolutePath().normalize();
+            Files.createDirectories(root);
+
+            WatchService ws = FileSystems.getDefault().newWatchService();
+            CancellationToken tk = new CancellationToken();
+            Watcher watcher = new Watcher(root, ws, session, compress, onEncrypted, tk);
+            watcher.registerTree(root);
+
+            this.inbox = root;
+            this.watchService = ws;
+            this.token = tk;
+            this.watcherThread = new Thread(watcher::run, "inbox-watch");
+            this.watcherThread.setDaemon(true);
+            this.watcherThread.start();
+            logger.info("Watching inbox {}", root);
+        }
+    }
+
+    /**
+     * Stop watching. Batches already running are cancelled; their originals stay in the inbox.
+     */
+    public void stop() {
+        synchronized (lock) {
+            if (watcherThread == null) return;
+            token.cancel();
+            try {
+                watchService.close();
+            } catch (IOException ignore) {
+            }
+            watcherThread.interrupt();
+            try {
+                watcherThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Stopped watching inbox {}", inbox);
+            watcherThread = null;
+            watchService = null;
+            token = null;
+            inbox = null;
+            inFlight.clear();
+        }
+    }
+
+    public boolean isRunning() {
+        return inbox != null;
+    }
+
+    public Path getInbox() {
+        return inbox;
+    }
+
+    /**
+     * Relative path stored for an inbox file: null for files directly in the inbox,
+     * otherwise the subfolder path below it (e.g. "scans/2024/a.pdf").
+     */
+    static String relativePath(Path root, Path file) {
+        Path rel = root.relativize(file);
+        if (rel.getNameCount() <= 1) return null;
+        return rel.toString().replace(File.separatorChar, '/');
+    }
+
+    // Size and mtime last seen for a pending file, and when they last changed
+    private static final class Pending {
+        long size = -1;
+        long mtime = -1;
+        long stableSince;
+
+        Pending(long now) {
+            this.stableSince = now;
+        }
+    }
+
+    private final class Watcher {
+        private final Path root;
+        private final WatchService ws;
+        private final FileService.KeySession session;
+        private final boolean compress;
+        private final Runnable onEncrypted;
+        private final CancellationToken tk;
+        private final Path storage;
+        private final Map<WatchKey, Path> keys = new HashMap<>();
+        private final Map<Path, Pending> pending = new HashMap<>();
+
+        Watcher(Path root, WatchService ws, FileService.KeySession session, boolean compress,
+                Runnable onEncrypted, CancellationToken tk) {
+            this.root = root;
+            this.ws = ws;
+            this.session = session;
+            this.compress = compress;
+            this.onEncrypted = onEncrypted;
+            this.tk = tk;
+            this.storage = Paths.get(ConfigManager.getStorageDir()).toAbsolutePath().normalize();
+        }
+
+        void run() {
+            try {
+                while (!tk.isCancelled()) {
+                    long debounce = ConfigManager.getWatchDebounceMs();
+                    WatchKey key = ws.poll(Math.max(50, debounce / 4), TimeUnit.MILLISECONDS);
+                    // Drain everything that is already queued before sweeping
+                    while (key != null) {
+                        handle(key);
+                        key = ws.poll();
+                    }
+                    sweep(debounce);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // stop() was called
+            } catch (Exception e) {
+                logger.error("Inbox watcher failed: {}", e.getMessage(), e);
+            }
+        }
+
+        private void handle(WatchKey key) {
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were dropped; fall back to a full rescan
+                    logger.warn("Inbox watch overflow, rescanning {}", root);
+                    registerTree(root);
+                    continue;
+                }
+                if (dir == null || event.kind() == StandardWatchEventKinds.ENTRY_DELETE) continue;
+                Path child = dir.resolve((Path) event.context());
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        // A moved-in folder may already contain files
+                        registerTree(child);
+                    }
+                } else {
+                    touch(child);
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+        }
+
+        /**
+         * Register dir and every subfolder, adding the files already there as pending.
+         */
+        void registerTree(Path start) {
+            try {
+                Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (dir.toAbsolutePath().normalize().equals(storage)) return FileVisitResult.SKIP_SUBTREE;
+                        keys.put(dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) touch(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        logger.warn("Skipping {}: {}", file, exc.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.warn("Could not register {}: {}", start, e.getMessage());
+            }
+        }
+
+        private void touch(Path file) {
+            if (isIgnored(file) || inFlight.contains(file)) return;
+            Pending p = pending.get(file);
+            long now = System.currentTimeMillis();
+            if (p == null) {
+                pending.put(file, new Pending(now));
+            } else {
+                p.stableSince = now;
+            }
+        }
+
+        /**
+         * Submit every pending file whose size and mtime held still for the debounce window.
+         */
+        private void sweep(long debounce) {
+            if (pending.isEmpty()) return;
+            long now = System.currentTimeMillis();
+            int max = ConfigManager.getWatchBatchMax();
+            List<File> ready = new ArrayList<>();
+
+            Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator();
+            while (it.hasNext() && ready.size() < max) {
+                Map.Entry<Path, Pending> e = it.next();
+                Pending p = e.getValue();
+                if (now - p.stableSince < debounce) continue;
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(e.getKey(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException gone) {
+                    it.remove();
+                    continue;
+                }
+                if (!attrs.isRegularFile()) {
+                    it.remove();
+                    continue;
+                }
+                long mtime = attrs.lastModifiedTime().toMillis();
+                if (attrs.size() != p.size || mtime != p.mtime) {
+                    // Still being written (or first look); wait another window
+                    p.size = attrs.size();
+                    p.mtime = mtime;
+                    p.stableSince = now;
+                    continue;
+                }
+                it.remove();
+                inFlight.add(e.getKey());
+                ready.add(e.getKey().toFile());
+            }
+            if (!ready.isEmpty()) submit(ready);
+        }
+
+        private void submit(List<File> files) {
+            logger.info("Encrypting {} file(s) from inbox", files.size());
+            JobScheduler.getInstance().submitAll(files, File::length, FileService::encryptPaths,
+                    JobScheduler.<File, FileMetadata>splittable(
+                            (f, callback, t) -> fileService.encryptFile(f, relativePath(root, f.toPath()), session,
+                                    compress, callback, t),
+                            (f, t) -> compress ? null
+                                    : fileService.splitEncrypt(f, relativePath(root, f.toPath()), session)),
+                    new JobScheduler.BatchListener<File>() {
+                        @Override
+                        public void onItemDone(File f, Exception error, int completed, int total) {
+                            inFlight.remove(f.toPath());
+                            if (error != null) {
+                                // Left in the inbox; a later change to the file retries it
+                                logger.warn("Inbox encryption failed for {}: {}", f, error.getMessage());
+                            } else if (onEncrypted != null) {
+                                onEncrypted.run();
+                            }
+                        }
+                    }, tk);
+        }
+
+        // Hidden files, partial outputs and shred tombstones are never encrypted
+        private boolean isIgnored(Path file) {
+            String name = file.getFileName().toString();
+            return name.startsWith(".") || name.endsWith(FileService.PARTIAL_SUFFIX);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.rfn.fileencryptor.ui;
+
+import javafx.collections.ObservableListBase;
+
+import com.rfn.fileencryptor.dao.FileQuery;
+import com.rfn.fileencryptor.model.FileMetadata;
+
+/**
+ * Rows shown by the dashboard table: a read-only list of one query that takes rows added
+ * or removed later as single-row changes instead of a reload. FX thread only.
+ */
+public abstract class FileListModel extends ObservableListBase<FileMetadata> {
+
+    /** Query currently listed, or null before anything was loaded. */
+    public abstract FileQuery getQuery();
+
+    /**
+     * Apply a row stored after the list was loaded. Ignored when it does not match the
+     * query or is already listed.
+     */
+    public abstract void rowAdded(FileMetadata m);
+
+    /**
+     * Apply a row deleted after the list was loaded. Ignored when it is not listed.
+     */
+    public abstract void rowRemoved(FileMetadata m);
+}
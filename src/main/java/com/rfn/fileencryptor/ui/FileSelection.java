@@ -0,0 +1,154 @@
+package com.rfn.fileencryptor.ui;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+
+/**
+ * Checkbox selection of the dashboard, kept by file id instead of on the rows.
+ *
+ * The selection is a set of marked ids plus an inverted flag: normally the marked ids
+ * are the selected files, after select-all they are the files unticked since. Select-all,
+ * clear, toggling one file and the selected count are all O(1) whatever the vault size,
+ * and rows that were never loaded need no state at all. FX thread only.
+ */
+public final class FileSelection {
+
+    /**
+     * Immutable copy of a selection, for resolving it off the FX thread.
+     */
+    public static final class Snapshot {
+        private final boolean inverted;
+        private final Set<Long> marked;
+        private final long count;
+
+        Snapshot(boolean inverted, Set<Long> marked, long count) {
+            this.inverted = inverted;
+            this.marked = marked;
+            this.count = count;
+        }
+
+        public boolean isInverted() {
+            return inverted;
+        }
+
+        public Set<Long> getMarked() {
+            return marked;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        /** Number of files selected when the snapshot was taken. */
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private final Set<Long> marked = new HashSet<>();
+    private boolean inverted;
+    private long total;
+    private final ReadOnlyLongWrapper count = new ReadOnlyLongWrapper(this, "count", 0);
+
+    public boolean isSelected(Long fileId) {
+        return fileId != null && inverted != marked.contains(fileId);
+    }
+
+    public void setSelected(Long fileId, boolean selected) {
+        if (fileId == null) return;
+        if (selected != inverted) {
+            marked.add(fileId);
+        } else {
+            marked.remove(fileId);
+        }
+        updateCount();
+    }
+
+    public void toggle(Long fileId) {
+        setSelected(fileId, !isSelected(fileId));
+    }
+
+    /**
+     * A file joined the query after loading; it starts unselected even after select-all.
+     */
+    public void added(Long fileId) {
+        if (fileId == null) return;
+        if (inverted) {
+            marked.add(fileId);
+        } else {
+            marked.remove(fileId);
+        }
+        total++;
+        updateCount();
+    }
+
+    /**
+     * A file left the query (decrypted or deleted).
+     */
+    public void removed(Long fileId) {
+        if (fileId != null) marked.remove(fileId);
+        total = Math.max(0, total - 1);
+        updateCount();
+    }
+
+    /**
+     * Select every file of the current query, loaded or not.
+     */
+    public void selectAll() {
+        marked.clear();
+        inverted = true;
+        updateCount();
+    }
+
+    public void clear() {
+        marked.clear();
+        inverted = false;
+        updateCount();
+    }
+
+    /**
+     * Number of files in the current query; a select-all covers exactly these.
+     */
+    public void setTotal(long total) {
+        this.total = total;
+        updateCount();
+    }
+
+    public boolean isEmpty() {
+        return count.get() == 0;
+    }
+
+    public boolean isAllSelected() {
+        return total > 0 && count.get() == total;
+    }
+
+    /** True when every file is selected except {@link #getMarked()}. */
+    public boolean isInverted() {
+        return inverted;
+    }
+
+    /** Selected ids, or the excluded ids when {@link #isInverted()}. */
+    public Set<Long> getMarked() {
+        return Collections.unmodifiableSet(marked);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(inverted, Collections.unmodifiableSet(new HashSet<>(marked)), count.get());
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public ReadOnlyLongProperty countProperty() {
+        return count.getReadOnlyProperty();
+    }
+
+    private void updateCount() {
+        count.set(inverted ? Math.max(0, total - marked.size()) : marked.size());
+    }
+}
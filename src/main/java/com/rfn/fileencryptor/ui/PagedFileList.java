@@ -0,0 +1,427 @@
+package com.rfn.fileencryptor.ui;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.dao.FileMetadataDAO;
+import com.rfn.fileencryptor.dao.FileQuery;
+import com.rfn.fileencryptor.model.FileMetadata;
+
+/**
+ * Read-only list of a file query that holds only the rows the table has looked at.
+ *
+ * size() is the query's row count; get() answers from a small LRU of loaded blocks and
+ * returns null for a row that is not loaded yet, queueing a read on a background thread.
+ * When it arrives the rows are announced as replaced so the visible cells redraw. Blocks
+ * continue by keyset (after the last row of the block before) so scrolling through a
+ * million rows stays as cheap as the first screen; a far jump with no loaded block nearby
+ * falls back to one OFFSET query and continues by keyset from there.
+ *
+ * Rows added or removed after loading are applied as single-row changes: loaded rows keep
+ * their objects, only the indices behind the change move. A row that falls between loaded
+ * blocks just grows or shrinks that unloaded gap.
+ *
+ * Sorting happens in the query, not in the list: a TableView over this list must not
+ * sort its items.
+ */
+public class PagedFileList extends FileListModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(PagedFileList.class);
+
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_BLOCKS = 50;
+    // Reads wanted while scrolling fast; older requests are dropped, newest load first
+    private static final int MAX_QUEUED_LOADS = 8;
+    // Continue by keyset from a loaded block up to this many pages away before using OFFSET
+    private static final int MAX_CHAIN_PAGES = 4;
+
+    // Loaded run of consecutive rows starting at list index 'start'
+    private static final class Block {
+        int start;
+        final List<FileMetadata> rows;
+        final List<Object> keys;
+
+        Block(int start, List<FileMetadata> rows, List<Object> keys) {
+            this.start = start;
+            this.rows = rows;
+            this.keys = keys;
+        }
+
+        int end() {
+            return start + rows.size();
+        }
+    }
+
+    // A read planned on the FX thread against one layout of the list
+    private static final class Load {
+        final int layout;
+        final int page;
+        final int start;
+        final int limit;
+        final boolean keyset;
+        final Object afterKey;
+        final Long afterId;
+
+        Load(int layout, int page, int start, int limit, boolean keyset, Object afterKey, Long afterId) {
+            this.layout = layout;
+            this.page = page;
+            this.start = start;
+            this.limit = limit;
+            this.keyset = keyset;
+            this.afterKey = afterKey;
+            this.afterId = afterId;
+        }
+    }
+
+    // One loaded query; replaced on reload so late results of the old one are ignored
+    private static final class Source {
+        final FileQuery query;
+        final Deque<Load> queue = new ArrayDeque<>();
+
+        Source(FileQuery query) {
+            this.query = query;
+        }
+    }
+
+    // Where a row belongs: inside a loaded block, or somewhere in the unloaded gap at gapStart
+    private static final class Position {
+        final Block block;
+        final int offset;
+        final int gapStart;
+        final int gapEnd;
+
+        Position(Block block, int offset, int gapStart, int gapEnd) {
+            this.block = block;
+            this.offset = offset;
+            this.gapStart = gapStart;
+            this.gapEnd = gapEnd;
+        }
+    }
+
+    private final FileMetadataDAO dao;
+    private final Consumer<Exception> onError;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "file-page-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Source current;
+    private int size;
+    // Bumped whenever indices shift, so reads planned before that are discarded
+    private int layout;
+    private final TreeMap<Integer, Block> blocks = new TreeMap<>();
+    private final LinkedHashMap<Block, Boolean> recent = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> requested = new HashSet<>();
+
+    /**
+     * @param onError called on the FX thread when loading fails
+     */
+    public PagedFileList(FileMetadataDAO dao, Consumer<Exception> onError) {
+        this.dao = dao;
+        this.onError = onError;
+    }
+
+    /**
+     * Load a query in the background, replacing the current contents when the count and
+     * first page are in.
+     *
+     * @param onLoaded run on the FX thread after the new contents are visible
+     */
+    public void reload(FileQuery query, Runnable onLoaded) {
+        Source src = new Source(query);
+        current = src;
+        loader.execute(() -> {
+            try {
+                long count = dao.count(query);
+                FileMetadataDAO.Page first = dao.findPage(query, null, null, PAGE_SIZE);
+                Platform.runLater(() -> {
+                    if (current != src) return;
+                    replaceAll(count, first);
+                    if (onLoaded != null) onLoaded.run();
+                });
+            } catch (SQLException e) {
+                logger.error("Failed to load files: {}", e.getMessage());
+                Platform.runLater(() -> onError.accept(e));
+            }
+        });
+    }
+
+    @Override
+    public FileQuery getQuery() {
+        return current == null ? null : current.query;
+    }
+
+    @Override
+    public FileMetadata get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        Map.Entry<Integer, Block> e = blocks.floorEntry(index);
+        if (e != null && index < e.getValue().end()) {
+            Block b = e.getValue();
+            recent.get(b);
+            return b.rows.get(index - b.start);
+        }
+        request(index);
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void rowAdded(FileMetadata m) {
+        if (current == null || !current.query.matches(m) || find(m.getFileId()) != null) return;
+        Object key = current.query.getSort().keyOf(m);
+        Position pos = locate(key, m.getFileId());
+        int index;
+        if (pos.block != null) {
+            index = pos.block.start + pos.offset;
+            pos.block.rows.add(pos.offset, m);
+            pos.block.keys.add(pos.offset, key);
+        } else {
+            index = pos.gapStart;
+        }
+        shift(index, 1, pos.block);
+        size++;
+
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    @Override
+    public void rowRemoved(FileMetadata m) {
+        if (current == null) return;
+        Block b = find(m.getFileId());
+        int index;
+        FileMetadata removed = null;
+        if (b != null) {
+            int offset = indexOf(b, m.getFileId());
+            index = b.start + offset;
+            removed = b.rows.remove(offset);
+            b.keys.remove(offset);
+            if (b.rows.isEmpty()) {
+                blocks.remove(b.start);
+                recent.remove(b);
+            }
+        } else {
+            if (!current.query.matches(m)) return;
+            Position pos = locate(current.query.getSort().keyOf(m), m.getFileId());
+            // Between two adjacent loaded rows means it was never listed
+            if (pos.block != null || pos.gapEnd <= pos.gapStart) return;
+            index = pos.gapStart;
+        }
+        shift(index + 1, -1, b);
+        size--;
+
+        beginChange();
+        nextRemove(index, removed);
+        endChange();
+    }
+
+    private void replaceAll(long count, FileMetadataDAO.Page first) {
+        int oldSize = size;
+        blocks.clear();
+        recent.clear();
+        requested.clear();
+        layout++;
+        size = (int) Math.min(count, Integer.MAX_VALUE);
+        if (!first.getRows().isEmpty()) {
+            addBlock(new Block(0, new ArrayList<>(first.getRows()), new ArrayList<>(first.getSortValues())));
+        }
+
+        beginChange();
+        if (oldSize > 0) nextRemove(0, Collections.nCopies(oldSize, (FileMetadata) null));
+        if (size > 0) nextAdd(0, size);
+        endChange();
+    }
+
+    /**
+     * Plan a read covering index: by keyset from the loaded block before it when that is
+     * near, else by OFFSET. The read never overlaps the loaded block after it.
+     */
+    private void request(int index) {
+        int page = index / PAGE_SIZE;
+        if (!requested.add(page)) return;
+
+        Map.Entry<Integer, Block> before = blocks.floorEntry(index);
+        Map.Entry<Integer, Block> after = blocks.higherEntry(index);
+        int from = before == null ? 0 : before.getValue().end();
+        int until = after == null ? size : after.getValue().start;
+
+        Load load;
+        if (index - from < MAX_CHAIN_PAGES * PAGE_SIZE) {
+            Block b = before == null ? null : before.getValue();
+            Object afterKey = b == null ? null : b.keys.get(b.keys.size() - 1);
+            Long afterId = b == null ? null : b.rows.get(b.rows.size() - 1).getFileId();
+            load = new Load(layout, page, from, Math.min(index - from + PAGE_SIZE, until - from),
+                    true, afterKey, afterId);
+        } else {
+            int start = Math.max(from, page * PAGE_SIZE);
+            load = new Load(layout, page, start, Math.min(PAGE_SIZE, until - start), false, null, null);
+        }
+        if (load.limit <= 0) {
+            requested.remove(page);
+            return;
+        }
+
+        Source src = current;
+        synchronized (src.queue) {
+            src.queue.addLast(load);
+            if (src.queue.size() > MAX_QUEUED_LOADS) {
+                requested.remove(src.queue.pollFirst().page);
+            }
+        }
+        loader.execute(() -> loadNext(src));
+    }
+
+    // Loader thread: run the most recently planned read of src and deliver it
+    private void loadNext(Source src) {
+        Load load;
+        synchronized (src.queue) {
+            load = src.queue.pollLast();
+        }
+        if (load == null) return;
+        try {
+            FileMetadataDAO.Page page = load.keyset
+                    ? dao.findPage(src.query, load.afterKey, load.afterId, load.limit)
+                    : dao.findPageAt(src.query, load.start, load.limit);
+            Platform.runLater(() -> deliver(src, load, page));
+        } catch (SQLException e) {
+            logger.error("Failed to load rows at {}: {}", load.start, e.getMessage());
+            Platform.runLater(() -> {
+                if (current == src) requested.remove(load.page);
+            });
+        }
+    }
+
+    private void deliver(Source src, Load load, FileMetadataDAO.Page page) {
+        if (current != src) return;
+        requested.remove(load.page);
+        // Indices moved since the read was planned; the redrawn cells ask again
+        if (load.layout != layout) return;
+
+        int start = load.start;
+        int skip = 0;
+        Map.Entry<Integer, Block> prev = blocks.floorEntry(start);
+        if (prev != null && prev.getValue().end() > start) {
+            skip = prev.getValue().end() - start;
+            start = prev.getValue().end();
+        }
+        Map.Entry<Integer, Block> next = blocks.ceilingEntry(start);
+        int until = Math.min(size, next == null ? size : next.getValue().start);
+        int n = Math.min(page.getRows().size() - skip, until - start);
+        if (n <= 0) return;
+
+        addBlock(new Block(start,
+                new ArrayList<>(page.getRows().subList(skip, skip + n)),
+                new ArrayList<>(page.getSortValues().subList(skip, skip + n))));
+
+        beginChange();
+        for (int i = start; i < start + n; i++) {
+            nextSet(i, null);
+        }
+        endChange();
+    }
+
+    private void addBlock(Block b) {
+        blocks.put(b.start, b);
+        recent.put(b, Boolean.TRUE);
+        if (recent.size() > MAX_CACHED_BLOCKS) {
+            Iterator<Block> eldest = recent.keySet().iterator();
+            Block evicted = eldest.next();
+            eldest.remove();
+            blocks.remove(evicted.start);
+        }
+    }
+
+    /**
+     * Where a row with this sort position belongs. Blocks are in index order, so the
+     * first block not entirely before the row decides it.
+     */
+    private Position locate(Object key, Long fileId) {
+        FileQuery q = current.query;
+        Block prev = null;
+        for (Block b : blocks.values()) {
+            int gapStart = prev == null ? 0 : prev.end();
+            if (q.compare(key, fileId, b.keys.get(0), b.rows.get(0).getFileId()) < 0) {
+                return b.start == gapStart
+                        ? new Position(b, 0, 0, 0)
+                        : new Position(null, 0, gapStart, b.start);
+            }
+            int last = b.rows.size() - 1;
+            if (q.compare(key, fileId, b.keys.get(last), b.rows.get(last).getFileId()) < 0) {
+                int lo = 1;
+                int hi = last;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (q.compare(key, fileId, b.keys.get(mid), b.rows.get(mid).getFileId()) < 0) {
+                        hi = mid;
+                    } else {
+                        lo = mid + 1;
+                    }
+                }
+                return new Position(b, lo, 0, 0);
+            }
+            prev = b;
+        }
+        int gapStart = prev == null ? 0 : prev.end();
+        return prev != null && gapStart == size
+                ? new Position(prev, prev.rows.size(), 0, 0)
+                : new Position(null, 0, gapStart, size);
+    }
+
+    // Move every block other than except that starts at or after index by delta
+    private void shift(int index, int delta, Block except) {
+        layout++;
+        requested.clear();
+        List<Block> moved = new ArrayList<>();
+        for (Iterator<Block> it = blocks.tailMap(index, true).values().iterator(); it.hasNext(); ) {
+            Block b = it.next();
+            if (b == except) continue;
+            it.remove();
+            moved.add(b);
+        }
+        for (Block b : moved) {
+            b.start += delta;
+            blocks.put(b.start, b);
+        }
+    }
+
+    private Block find(Long fileId) {
+        if (fileId == null) return null;
+        for (Block b : blocks.values()) {
+            if (indexOf(b, fileId) >= 0) return b;
+        }
+        return null;
+    }
+
+    private static int indexOf(Block b, Long fileId) {
+        for (int i = 0; i < b.rows.size(); i++) {
+            if (fileId.equals(b.rows.get(i).getFileId())) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,262 @@
+package com.rfn.fileencryptor.ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import com.rfn.fileencryptor.service.JobScheduler;
+
+/**
+ * Batch listener that decouples worker progress from UI updates.
+ *
+ * Workers only write counters and per-item fields (no locks, no FX calls). A timeline
+ * on the FX thread samples them at a fixed rate and, if anything changed, hands one
+ * {@link Snapshot} covering every active item to the renderer. However many jobs run
+ * or however small their buffers, the FX queue sees at most SAMPLE_HZ updates a second.
+ */
+public class ProgressAggregator<T> implements JobScheduler.BatchListener<T> {
+
+    private static final int SAMPLE_HZ = 20;
+
+    /**
+     * Progress of one running item at the sample tick.
+     */
+    public static final class ActiveItem {
+        private final String name;
+        private final double percentage;
+        private final long eta;
+        private final double bytesPerSec;
+
+        ActiveItem(String name, double percentage, long eta, double bytesPerSec) {
+            this.name = name;
+            this.percentage = percentage;
+            this.eta = eta;
+            this.bytesPerSec = bytesPerSec;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getPercentage() {
+            return percentage;
+        }
+
+        /** Seconds remaining, or 0 when unknown. */
+        public long getEta() {
+            return eta;
+        }
+
+        public double getBytesPerSec() {
+            return bytesPerSec;
+        }
+    }
+
+    /**
+     * Consistent view of the batch taken at one sample tick.
+     */
+    public static final class Snapshot {
+        private final double fraction;
+        private final long processedBytes;
+        private final long totalBytes;
+        private final int completed;
+        private final int total;
+        private final double bytesPerSec;
+        private final long etaSeconds;
+        private final List<ActiveItem> active;
+
+        Snapshot(double fraction, long processedBytes, long totalBytes, int completed, int total,
+                 double bytesPerSec, long etaSeconds, List<ActiveItem> active) {
+            this.fraction = fraction;
+            this.processedBytes = processedBytes;
+            this.totalBytes = totalBytes;
+            this.completed = completed;
+            this.total = total;
+            this.bytesPerSec = bytesPerSec;
+            this.etaSeconds = etaSeconds;
+            this.active = active;
+        }
+
+        /** Byte-weighted batch progress (0.0 - 1.0). */
+        public double getFraction() {
+            return fraction;
+        }
+
+        public long getProcessedBytes() {
+            return processedBytes;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /** Smoothed batch throughput, 0 until measured. */
+        public double getBytesPerSec() {
+            return bytesPerSec;
+        }
+
+        /** Batch ETA in seconds including files not started yet, 0 when unknown. */
+        public long getEtaSeconds() {
+            return etaSeconds;
+        }
+
+        /** Running items, most advanced first. */
+        public List<ActiveItem> getActive() {
+            return active;
+        }
+
+        /** Mean percentage of the running items (0.0 - 1.0). */
+        public double getActiveFraction() {
+            if (active.isEmpty()) return 0.0;
+            double sum = 0;
+            for (ActiveItem a : active) {
+                sum += a.getPercentage();
+            }
+            return Math.min(1.0, sum / active.size() / 100.0);
+        }
+
+        /** Largest ETA among the running items in seconds, or 0 when unknown. */
+        public long getMaxEta() {
+            long eta = 0;
+            for (ActiveItem a : active) {
+                eta = Math.max(eta, a.getEta());
+            }
+            return eta;
+        }
+    }
+
+    // Written by the item's workers, read by the sampler
+    private static final class LiveItem {
+        final String name;
+        volatile double percentage;
+        volatile long eta;
+        volatile double bytesPerSec;
+
+        LiveItem(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Function<T, String> nameOf;
+    private final Consumer<Snapshot> renderer;
+    private final Map<T, LiveItem> active = new ConcurrentHashMap<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicLong processedBytes = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private volatile double fraction;
+    private volatile double bytesPerSec;
+    private volatile long etaSeconds;
+    private volatile boolean dirty;
+    private Timeline sampler;
+
+    /**
+     * @param nameOf   display name of an item
+     * @param renderer called on the FX thread with each changed snapshot
+     */
+    public ProgressAggregator(Function<T, String> nameOf, Consumer<Snapshot> renderer) {
+        this.nameOf = nameOf;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Start sampling. Safe to call from any thread.
+     */
+    public void start() {
+        runOnFx(() -> {
+            if (sampler != null) return;
+            sampler = new Timeline(new KeyFrame(Duration.millis(1000.0 / SAMPLE_HZ), e -> sample()));
+            sampler.setCycleCount(Animation.INDEFINITE);
+            sampler.play();
+        });
+    }
+
+    /**
+     * Render a final snapshot and stop sampling. Safe to call from any thread.
+     */
+    public void stop() {
+        runOnFx(() -> {
+            if (sampler != null) {
+                sampler.stop();
+                sampler = null;
+            }
+            sample();
+        });
+    }
+
+    @Override
+    public void onItemStart(T item) {
+        active.put(item, new LiveItem(nameOf.apply(item)));
+        dirty = true;
+    }
+
+    @Override
+    public void onItemProgress(T item, double percentage, long processed, long itemTotal, long eta,
+                               double itemBytesPerSec) {
+        LiveItem a = active.get(item);
+        if (a == null) return;
+        a.percentage = percentage;
+        a.eta = eta;
+        a.bytesPerSec = itemBytesPerSec;
+        dirty = true;
+    }
+
+    @Override
+    public void onItemDone(T item, Exception error, int done, int submitted) {
+        active.remove(item);
+        completed.accumulateAndGet(done, Math::max);
+        total.accumulateAndGet(submitted, Math::max);
+        dirty = true;
+    }
+
+    @Override
+    public void onBatchProgress(double batchFraction, long processed, long batchTotal, double batchBytesPerSec,
+                                long batchEta) {
+        fraction = batchFraction;
+        bytesPerSec = batchBytesPerSec;
+        etaSeconds = batchEta;
+        processedBytes.set(processed);
+        totalBytes.set(batchTotal);
+        dirty = true;
+    }
+
+    private void sample() {
+        if (!dirty) return;
+        dirty = false;
+        List<ActiveItem> running = new ArrayList<>(active.size());
+        for (LiveItem live : active.values()) {
+            running.add(new ActiveItem(live.name, live.percentage, live.eta, live.bytesPerSec));
+        }
+        running.sort(Collections.reverseOrder((a, b) -> Double.compare(a.getPercentage(), b.getPercentage())));
+        renderer.accept(new Snapshot(fraction, processedBytes.get(), totalBytes.get(), completed.get(), total.get(),
+                bytesPerSec, etaSeconds, Collections.unmodifiableList(running)));
+    }
+
+    private static void runOnFx(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+}
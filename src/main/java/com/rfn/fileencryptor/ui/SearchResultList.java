@@ -0,0 +1,207 @@
+package com.rfn.fileencryptor.ui;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.application.Platform;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.dao.FileMetadataDAO;
+import com.rfn.fileencryptor.dao.FileQuery;
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.service.FilenameIndex;
+
+/**
+ * Rows of a filename search answered by the {@link FilenameIndex}.
+ *
+ * The index supplies the matching file ids already in query order, so the layout is just
+ * that id array; full rows are fetched by id a page at a time as the table shows them and
+ * kept in a small LRU. Inserted rows are placed by the index's sort values.
+ */
+public class SearchResultList extends FileListModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchResultList.class);
+
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_ROWS = 10_000;
+    private static final int MAX_QUEUED_PAGES = 8;
+
+    private final FileMetadataDAO dao;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "search-row-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private FileQuery query;
+    private FilenameIndex index;
+    private long[] ids = new long[0];
+    private int size;
+    // Bumped by show(), so rows read for an earlier result are dropped
+    private int generation;
+    private final Map<Long, FileMetadata> rows = new LinkedHashMap<Long, FileMetadata>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, FileMetadata> eldest) {
+            return size() > MAX_CACHED_ROWS;
+        }
+    };
+    private final Set<Integer> requested = new HashSet<>();
+    private final Deque<Integer> queue = new ArrayDeque<>();
+
+    public SearchResultList(FileMetadataDAO dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Replace the contents with a search result.
+     *
+     * @param ids matching file ids in query order, as returned by {@link FilenameIndex#search}
+     */
+    public void show(FileQuery query, FilenameIndex index, long[] ids) {
+        int oldSize = size;
+        this.query = query;
+        this.index = index;
+        this.ids = ids;
+        this.size = ids.length;
+        rows.clear();
+        requested.clear();
+        synchronized (queue) {
+            queue.clear();
+        }
+        generation++;
+
+        beginChange();
+        if (oldSize > 0) nextRemove(0, Collections.nCopies(oldSize, (FileMetadata) null));
+        if (size > 0) nextAdd(0, size);
+        endChange();
+    }
+
+    @Override
+    public FileQuery getQuery() {
+        return query;
+    }
+
+    @Override
+    public FileMetadata get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        }
+        FileMetadata m = rows.get(ids[i]);
+        if (m == null) request(i / PAGE_SIZE);
+        return m;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void rowAdded(FileMetadata m) {
+        if (query == null || !query.matches(m) || indexOf(m.getFileId()) >= 0) return;
+        FileQuery.Sort sort = query.getSort();
+        Object key = sort.keyOf(m);
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (query.compare(key, m.getFileId(), index.sortKey(sort, ids[mid]), ids[mid]) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (size == ids.length) ids = Arrays.copyOf(ids, Math.max(16, size * 2));
+        System.arraycopy(ids, lo, ids, lo + 1, size - lo);
+        ids[lo] = m.getFileId();
+        size++;
+        rows.put(m.getFileId(), m);
+
+        beginChange();
+        nextAdd(lo, lo + 1);
+        endChange();
+    }
+
+    @Override
+    public void rowRemoved(FileMetadata m) {
+        int i = indexOf(m.getFileId());
+        if (i < 0) return;
+        System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+        size--;
+        FileMetadata removed = rows.remove(m.getFileId());
+
+        beginChange();
+        nextRemove(i, removed);
+        endChange();
+    }
+
+    private int indexOf(Long fileId) {
+        if (fileId == null) return -1;
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == fileId) return i;
+        }
+        return -1;
+    }
+
+    private void request(int page) {
+        if (!requested.add(page)) return;
+        synchronized (queue) {
+            queue.addLast(page);
+            if (queue.size() > MAX_QUEUED_PAGES) {
+                requested.remove(queue.pollFirst());
+            }
+        }
+        int gen = generation;
+        FileQuery q = query;
+        List<Long> slice = new ArrayList<>(PAGE_SIZE);
+        for (int i = page * PAGE_SIZE; i < Math.min(size, (page + 1) * PAGE_SIZE); i++) {
+            slice.add(ids[i]);
+        }
+        loader.execute(() -> loadNext(gen, q, page, slice));
+    }
+
+    // Loader thread. Pages are queued newest-last; a page dropped from the queue is skipped
+    private void loadNext(int gen, FileQuery q, int page, List<Long> slice) {
+        synchronized (queue) {
+            if (!queue.remove(page)) return;
+        }
+        try {
+            List<FileMetadata> loaded = dao.findByIds(q.getOwnerId(), slice);
+            Platform.runLater(() -> deliver(gen, page, loaded));
+        } catch (SQLException e) {
+            logger.error("Failed to load search rows: {}", e.getMessage());
+            Platform.runLater(() -> {
+                if (gen == generation) requested.remove(page);
+            });
+        }
+    }
+
+    private void deliver(int gen, int page, List<FileMetadata> loaded) {
+        if (gen != generation) return;
+        requested.remove(page);
+        for (FileMetadata m : loaded) {
+            rows.put(m.getFileId(), m);
+        }
+        int from = page * PAGE_SIZE;
+        int to = Math.min(size, from + PAGE_SIZE);
+        if (from >= to) return;
+        beginChange();
+        for (int i = from; i < to; i++) {
+            nextSet(i, null);
+        }
+        endChange();
+    }
+}
@@ -0,0 +1,183 @@
+package com.rfn.fileencryptor.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.application.Platform;
+
+import com.rfn.fileencryptor.dao.FileQuery;
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.service.MetadataSnapshot;
+
+/**
+ * Rows of a {@link MetadataSnapshot}, held in memory and filtered and sorted locally, so
+ * the dashboard has something to show at login while the database has not answered yet.
+ *
+ * Arranging a query runs on a background thread; row changes that arrive meanwhile are
+ * replayed onto the result. Rows carry only the listed columns.
+ */
+public class SnapshotFileList extends FileListModel {
+
+    private final ExecutorService sorter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-sort");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private FileQuery query;
+    private List<FileMetadata> all;
+    private List<FileMetadata> shown = new ArrayList<>();
+    // Bumped by show() and clear(), so an arrangement of an earlier query is dropped
+    private int generation;
+    // Changes since the pending arrangement was started, replayed onto it
+    private final List<Runnable> replay = new ArrayList<>();
+
+    /**
+     * Take the snapshot rows and show them arranged for the query; onShown runs on the FX
+     * thread once they are in place.
+     */
+    public void show(FileQuery query, List<FileMetadata> rows, Runnable onShown) {
+        this.all = new ArrayList<>(rows);
+        show(query, onShown);
+    }
+
+    /**
+     * Re-arrange the rows already held for another query.
+     */
+    public void show(FileQuery query, Runnable onShown) {
+        if (all == null) return;
+        int gen = ++generation;
+        replay.clear();
+        List<FileMetadata> rows = new ArrayList<>(all);
+        sorter.execute(() -> {
+            List<FileMetadata> arranged = arrange(query, rows);
+            Platform.runLater(() -> {
+                if (gen != generation) return;
+                replaceAll(query, arranged);
+                for (Runnable r : replay) {
+                    r.run();
+                }
+                replay.clear();
+                if (onShown != null) onShown.run();
+            });
+        });
+    }
+
+    /** Whether snapshot rows are held (until {@link #clear}). */
+    public boolean hasRows() {
+        return all != null;
+    }
+
+    /**
+     * Drop the rows, once the database has answered.
+     */
+    public void clear() {
+        generation++;
+        all = null;
+        replay.clear();
+        replaceAll(null, new ArrayList<>());
+    }
+
+    @Override
+    public FileQuery getQuery() {
+        return query;
+    }
+
+    @Override
+    public FileMetadata get(int i) {
+        return shown.get(i);
+    }
+
+    @Override
+    public int size() {
+        return shown.size();
+    }
+
+    @Override
+    public void rowAdded(FileMetadata m) {
+        if (all == null) return;
+        all.add(m);
+        replay.add(() -> insert(m));
+        insert(m);
+    }
+
+    @Override
+    public void rowRemoved(FileMetadata m) {
+        if (all == null || m.getFileId() == null) return;
+        all.removeIf(r -> m.getFileId().equals(r.getFileId()));
+        replay.add(() -> remove(m.getFileId()));
+        remove(m.getFileId());
+    }
+
+    private void insert(FileMetadata m) {
+        if (query == null || !query.matches(m)) return;
+        FileQuery.Sort sort = query.getSort();
+        Object key = sort.keyOf(m);
+        int lo = 0;
+        int hi = shown.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            FileMetadata r = shown.get(mid);
+            int c = query.compare(key, m.getFileId(), sort.keyOf(r), r.getFileId());
+            if (c == 0) return;
+            if (c > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        shown.add(lo, m);
+
+        beginChange();
+        nextAdd(lo, lo + 1);
+        endChange();
+    }
+
+    private void remove(Long fileId) {
+        for (int i = 0; i < shown.size(); i++) {
+            if (fileId.equals(shown.get(i).getFileId())) {
+                FileMetadata removed = shown.remove(i);
+                beginChange();
+                nextRemove(i, removed);
+                endChange();
+                return;
+            }
+        }
+    }
+
+    private void replaceAll(FileQuery query, List<FileMetadata> rows) {
+        List<FileMetadata> old = shown;
+        this.query = query;
+        this.shown = rows;
+
+        beginChange();
+        if (!old.isEmpty()) nextRemove(0, old);
+        if (!rows.isEmpty()) nextAdd(0, rows.size());
+        endChange();
+    }
+
+    // Background thread: filter, then sort on keys computed once per row
+    private static List<FileMetadata> arrange(FileQuery query, List<FileMetadata> rows) {
+        List<FileMetadata> matching = new ArrayList<>(rows.size());
+        for (FileMetadata m : rows) {
+            if (query.matches(m)) matching.add(m);
+        }
+        int n = matching.size();
+        Object[] keys = new Object[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = query.getSort().keyOf(matching.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> query.compare(keys[a], matching.get(a).getFileId(),
+                keys[b], matching.get(b).getFileId()));
+        List<FileMetadata> sorted = new ArrayList<>(n);
+        for (Integer i : order) {
+            sorted.add(matching.get(i));
+        }
+        return sorted;
+    }
+}
@@ -21,6 +21,9 @@ public class CryptoUtil {
     public static final int SALT_SIZE = 32;
     public static final int PBKDF2_ITERATIONS = 100000;
 
+    // EWMA of deriveKey(password, salt) wall time in ms
+    private static volatile double kdfMillis;
+
     /**
      * Generate random IV for encryption
      */
@@ -48,12 +51,29 @@ public class CryptoUtil {
     public static SecretKey deriveKey(String password, byte[] salt)
             throws NoSuchAlgorithmException, InvalidKeySpecException {
 
+        long started = System.nanoTime();
         SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
         KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, PBKDF2_ITERATIONS, KEY_SIZE);
         SecretKey tmp = factory.generateSecret(spec);
+        recordKdf(System.nanoTime() - started);
         return new SecretKeySpec(tmp.getEncoded(), ALGORITHM);
     }
 
+    /**
+     * Typical time of one default-strength key derivation in ms (0 until one has run).
+     * Used to estimate the fixed per-file cost of batches that derive a key per file.
+     */
+    public static long getKdfMillisEstimate() {
+        return Math.round(kdfMillis);
+    }
+
+    private static void recordKdf(long elapsedNanos) {
+        double ms = elapsedNanos / 1_000_000.0;
+        synchronized (CryptoUtil.class) {
+            kdfMillis = kdfMillis == 0 ? ms : 0.3 * ms + 0.7 * kdfMillis;
+        }
+    }
+
     /**
      * Derive key with custom iterations
      * @param password User password
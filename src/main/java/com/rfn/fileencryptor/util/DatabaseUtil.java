@@ -2,34 +2,96 @@ package com.rfn.fileencryptor.util;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.config.DatabaseBackend;
 import com.rfn.fileencryptor.config.DatabaseConfig;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.SQLExceptionOverride;
 
+/**
+ * The connection pool. It is created on first use or by {@link #warmUp()}, on a background
+ * thread, so opening the first connections and migrating the schema overlap application
+ * startup instead of delaying it; {@link #getConnection()} waits for it to be ready.
+ */
 public class DatabaseUtil {
 
     private static final Logger logger = LoggerFactory.getLogger(DatabaseUtil.class);
+    // Set while the pool is being set up; published to callers through readyPool
     private static HikariDataSource dataSource;
+    private static volatile HikariDataSource readyPool;
+    private static CompletableFuture<Void> ready;
+    private static volatile DatabaseBackend backend = ConfigManager.getDatabaseBackend();
 
-    static {
-        initializeConnectionPool();
+    private static final String EMBEDDED_SCHEMA = "/db/schema_embedded.sql";
+
+    /**
+     * Start creating the pool in the background, if it is not already created or being
+     * created; after a failure, try again.
+     *
+     * @return completes when the pool is ready, or exceptionally when it cannot be created
+     */
+    public static synchronized CompletableFuture<Void> warmUp() {
+        if (ready == null || ready.isCompletedExceptionally()) {
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            ready = f;
+            Thread t = new Thread(() -> {
+                try {
+                    initializeConnectionPool();
+                    f.complete(null);
+                } catch (Throwable e) {
+                    f.completeExceptionally(e);
+                }
+            }, "db-warmup");
+            t.setDaemon(true);
+            t.start();
+        }
+        return ready;
+    }
+
+    /**
+     * Whether connections can be handed out without waiting.
+     */
+    public static boolean isReady() {
+        HikariDataSource ds = readyPool;
+        return ds != null && !ds.isClosed();
+    }
+
+    /**
+     * Wait for the pool, starting it if needed.
+     *
+     * @throws SQLException when it cannot be created
+     */
+    public static void awaitReady() throws SQLException {
+        try {
+            warmUp().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+            throw new SQLException("Database initialization failed: " + cause.getMessage(), cause);
+        }
     }
 
     private static void initializeConnectionPool() {
+        long started = System.currentTimeMillis();
         try {
             HikariConfig config = new HikariConfig();
+            backend = ConfigManager.getDatabaseBackend();
 
             // Database connection settings
-            config.setJdbcUrl(ConfigManager.getDatabaseUrl());
-            config.setUsername(ConfigManager.getDatabaseUser());
-            config.setPassword(ConfigManager.getDatabasePassword());
-            // Use the modern Oracle JDBC driver class to avoid Hikari warnings
-            config.setDriverClassName("oracle.jdbc.OracleDriver");
+            if (backend == DatabaseBackend.EMBEDDED) {
+                configureEmbedded(config);
+            } else {
+                configureOracle(config);
+            }
 
             // Connection pool settings
             config.setMinimumIdle(DatabaseConfig.MIN_POOL_SIZE);
@@ -38,42 +100,242 @@ public class DatabaseUtil {
             config.setIdleTimeout(DatabaseConfig.IDLE_TIMEOUT);
             config.setMaxLifetime(DatabaseConfig.MAX_LIFETIME);
 
-            // Performance settings
-            config.addDataSourceProperty("cachePrepStmts", "true");
-            config.addDataSourceProperty("prepStmtCacheSize",
-                    String.valueOf(DatabaseConfig.PREPARED_STMT_CACHE_SIZE));
-            config.addDataSourceProperty("prepStmtCacheSqlLimit",
-                    String.valueOf(DatabaseConfig.PREPARED_STMT_CACHE_SQL_LIMIT));
-
             // Connection validation
             config.setConnectionTestQuery("SELECT 1 FROM DUAL");
 
+            // Pool wait, gauges and statement timings (DbMetrics), also over JMX
+            config.setPoolName("FileEncryptorPool");
+            config.setMetricsTrackerFactory(DbMetrics.getInstance());
+            config.setRegisterMbeans(true);
+            // A statement cancelled by its query timeout leaves a usable connection
+            config.setExceptionOverrideClassName(KeepTimedOutConnections.class.getName());
+
             dataSource = new HikariDataSource(config);
-            logger.info("Database connection pool initialized successfully");
+
+            if (backend == DatabaseBackend.EMBEDDED) {
+                createEmbeddedSchema();
+            }
+            migrateSchema();
+            readyPool = dataSource;
+            logger.info("Database connection pool initialized successfully ({}) in {} ms", backend,
+                    System.currentTimeMillis() - started);
 
         } catch (Exception e) {
+            if (dataSource != null) dataSource.close();
             logger.error("Failed to initialize database connection pool", e);
             throw new RuntimeException("Database initialization failed", e);
         }
     }
 
+    private static void configureOracle(HikariConfig config) {
+        config.setJdbcUrl(ConfigManager.getDatabaseUrl());
+        config.setUsername(ConfigManager.getDatabaseUser());
+        config.setPassword(ConfigManager.getDatabasePassword());
+        // Use the modern Oracle JDBC driver class to avoid Hikari warnings
+        config.setDriverClassName("oracle.jdbc.OracleDriver");
+
+        // Performance settings
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize",
+                String.valueOf(DatabaseConfig.PREPARED_STMT_CACHE_SIZE));
+        config.addDataSourceProperty("prepStmtCacheSqlLimit",
+                String.valueOf(DatabaseConfig.PREPARED_STMT_CACHE_SQL_LIMIT));
+        // Row prefetch for statements that do not set their own fetch size
+        config.addDataSourceProperty("defaultRowPrefetch",
+                String.valueOf(ConfigManager.getDbFetchSize()));
+    }
+
+    /**
+     * In-process H2 file in Oracle mode, so the DAOs' SQL runs unchanged. AUTO_SERVER lets
+     * a second process (the CLI while the app is open) share the file through the first.
+     */
+    private static void configureEmbedded(HikariConfig config) {
+        // H2 applies a statement's query timeout with a command of its own, so the timeout
+        // is set once per session here rather than on each statement (see DbMetrics)
+        int timeout = ConfigManager.getDbQueryTimeoutSeconds();
+        config.setJdbcUrl("jdbc:h2:file:" + ConfigManager.getEmbeddedDatabasePath() +
+                ";MODE=Oracle;DEFAULT_NULL_ORDERING=HIGH;AUTO_SERVER=TRUE" +
+                (timeout > 0 ? ";QUERY_TIMEOUT=" + timeout * 1000 : ""));
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setDriverClassName("org.h2.Driver");
+    }
+
+    /**
+     * Create the tables of a new embedded database.
+     */
+    private static void createEmbeddedSchema() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (java.sql.ResultSet rs = conn.getMetaData().getTables(null, conn.getSchema(), "USERS", null)) {
+                if (rs.next()) return;
+            }
+            try (java.sql.Statement stmt = conn.createStatement()) {
+                stmt.execute("RUNSCRIPT FROM 'classpath:" + EMBEDDED_SCHEMA + "'");
+            }
+            logger.info("Created embedded database at {}", ConfigManager.getEmbeddedDatabasePath());
+        }
+    }
+
+    /**
+     * Keeps connections whose statement hit its query timeout in the pool; HikariCP would
+     * otherwise evict them for H2's SQLState 57014. Instantiated by HikariCP by name.
+     */
+    public static final class KeepTimedOutConnections implements SQLExceptionOverride {
+        // Override here is SQLExceptionOverride's enum, not the annotation
+        @java.lang.Override
+        public SQLExceptionOverride.Override adjudicate(SQLException e) {
+            return e instanceof java.sql.SQLTimeoutException
+                    ? SQLExceptionOverride.Override.DO_NOT_EVICT : SQLExceptionOverride.Override.CONTINUE_EVICT;
+        }
+    }
+
     /**
-     * Gets a database connection from the pool
+     * Which database the pool is connected to.
+     */
+    public static DatabaseBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Bring an existing schema up to date with columns added after it was created.
+     * Each step is idempotent; a failure is logged and does not stop startup.
+     */
+    private static void migrateSchema() {
+        ensureColumn("FILE_METADATA", "RELATIVE_PATH", "VARCHAR2(2000 CHAR)");
+        ensureColumn("AUDIT_LOGS", "THROUGHPUT_MBPS", "NUMBER(10,2)");
+        ensureColumn("USERS", "FILES_VERSION", "NUMBER DEFAULT 0 NOT NULL");
+        ensureIndex("FILE_METADATA", "IDX_FILE_OWNER_CREATED", "OWNER_ID, CREATED_AT, FILE_ID");
+        ensureIndex("AUDIT_LOGS", "IDX_AUDIT_USER_CREATED", "USER_ID, TIMESTAMP_CREATED, LOG_ID");
+        ensureIndex("AUDIT_LOGS", "IDX_AUDIT_CREATED", "TIMESTAMP_CREATED");
+        if (ensureTable("AUDIT_DAILY_STATS", AUDIT_DAILY_STATS_DDL)) {
+            backfillAuditStats();
+        }
+    }
+
+    // Same as in the schema scripts
+    private static final String AUDIT_DAILY_STATS_DDL = "CREATE TABLE AUDIT_DAILY_STATS (" +
+            "USER_ID NUMBER NOT NULL, STAT_DAY DATE NOT NULL, OPERATION_TYPE VARCHAR2(50 CHAR) NOT NULL, " +
+            "OP_COUNT NUMBER DEFAULT 0 NOT NULL, FAILURE_COUNT NUMBER DEFAULT 0 NOT NULL, " +
+            "TOTAL_BYTES NUMBER DEFAULT 0 NOT NULL, TOTAL_DURATION_MS NUMBER DEFAULT 0 NOT NULL, " +
+            "DURATION_HIST VARCHAR2(4000 CHAR), " +
+            "CONSTRAINT PK_AUDIT_DAILY_STATS PRIMARY KEY (USER_ID, STAT_DAY, OPERATION_TYPE), " +
+            "CONSTRAINT FK_AUDIT_STATS_USER FOREIGN KEY (USER_ID) REFERENCES USERS(USER_ID) ON DELETE CASCADE)";
+
+    /**
+     * Create a table that is missing.
+     *
+     * @return whether it was created
+     */
+    private static boolean ensureTable(String table, String ddl) {
+        try (Connection conn = dataSource.getConnection()) {
+            try (java.sql.ResultSet rs = conn.getMetaData().getTables(null, schemaOf(conn), table, null)) {
+                if (rs.next()) return false;
+            }
+            try (java.sql.Statement stmt = conn.createStatement()) {
+                stmt.execute(ddl);
+            }
+            logger.info("Schema migrated: added table {}", table);
+            return true;
+        } catch (SQLException e) {
+            logger.error("Schema migration failed for table {}: {}", table, e.getMessage());
+            return false;
+        }
+    }
+
+    // Rollups of the entries written before the rollup table existed, in one transaction
+    private static void backfillAuditStats() {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long entries = new com.rfn.fileencryptor.dao.AuditStatsDAO().rebuild(conn);
+                conn.commit();
+                logger.info("Schema migrated: rolled up {} audit entries", entries);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Audit statistics backfill failed: {}", e.getMessage());
+        }
+    }
+
+    private static void ensureColumn(String table, String column, String definition) {
+        try (Connection conn = dataSource.getConnection()) {
+            java.sql.DatabaseMetaData meta = conn.getMetaData();
+            try (java.sql.ResultSet rs = meta.getColumns(null, schemaOf(conn), table, column)) {
+                if (rs.next()) return;
+            }
+            try (java.sql.Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE " + table + " ADD (" + column + " " + definition + ")");
+            }
+            logger.info("Schema migrated: added {}.{}", table, column);
+        } catch (SQLException e) {
+            logger.error("Schema migration failed for {}.{}: {}", table, column, e.getMessage());
+        }
+    }
+
+    private static void ensureIndex(String table, String index, String columns) {
+        try (Connection conn = dataSource.getConnection()) {
+            java.sql.DatabaseMetaData meta = conn.getMetaData();
+            try (java.sql.ResultSet rs = meta.getIndexInfo(null, schemaOf(conn), table, false, true)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return;
+                }
+            }
+            try (java.sql.Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+            }
+            logger.info("Schema migrated: added index {}", index);
+        } catch (SQLException e) {
+            logger.error("Schema migration failed for index {}: {}", index, e.getMessage());
+        }
+    }
+
+    // Oracle keeps tables in the user's schema; H2 in its current schema (PUBLIC)
+    private static String schemaOf(Connection conn) throws SQLException {
+        return backend == DatabaseBackend.EMBEDDED ? conn.getSchema() : conn.getMetaData().getUserName();
+    }
+
+    /**
+     * Gets a database connection from the pool, waiting for the pool to be ready. Its
+     * statements get the query timeout and are timed (see {@link DbMetrics}).
      */
     public static Connection getConnection() throws SQLException {
-        if (dataSource == null || dataSource.isClosed()) {
-            initializeConnectionPool();
+        HikariDataSource ds = readyPool;
+        if (ds == null || ds.isClosed()) {
+            awaitReady();
+            ds = readyPool;
         }
-        return dataSource.getConnection();
+        return DbMetrics.getInstance().wrap(ds.getConnection());
     }
 
     /**
      * Closes the connection pool (call on application shutdown)
      */
     public static void closePool() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            logger.info("Database connection pool closed");
+        CompletableFuture<Void> pending;
+        synchronized (DatabaseUtil.class) {
+            pending = ready;
+        }
+        if (pending != null) {
+            // A warm-up still running would otherwise open a pool after this returns
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignore) {
+            }
+        }
+        synchronized (DatabaseUtil.class) {
+            HikariDataSource ds = readyPool;
+            readyPool = null;
+            ready = null;
+            if (ds != null && !ds.isClosed()) {
+                ds.close();
+                logger.info("Database connection pool closed");
+            }
         }
     }
 
@@ -0,0 +1,406 @@
+package com.rfn.fileencryptor.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.config.DatabaseBackend;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Database timings: how long callers wait for a pooled connection (from HikariCP's
+ * metrics tracker), pool gauges, and a latency histogram per statement.
+ *
+ * Connections handed out by {@link DatabaseUtil#getConnection()} are wrapped so every
+ * statement gets the configured query timeout and its executions are timed under the
+ * name of the DAO method that prepared it (e.g. "AuditLogDAO.insertBatch"). Statements
+ * slower than db.slow.query.ms are logged. Shown in Settings > Database Diagnostics and
+ * over JMX ({@link DbMetricsMXBean}).
+ */
+public final class DbMetrics implements DbMetricsMXBean, MetricsTrackerFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(DbMetrics.class);
+
+    private static final String OBJECT_NAME = "com.rfn.fileencryptor:type=DbMetrics";
+    private static final int RECENT_SLOW_MAX = 50;
+    private static final int SQL_LOG_MAX = 200;
+    private static final String OWN_PACKAGE = "com.rfn.fileencryptor.";
+    private static final int CALLER_MAX_DEPTH = 24;
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private static volatile DbMetrics instance;
+
+    private final Map<String, LatencyHistogram> statements = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> statementErrors = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> statementTimeouts = new ConcurrentHashMap<>();
+    private volatile LatencyHistogram poolWait = new LatencyHistogram();
+    private final LongAdder connectionTimeouts = new LongAdder();
+    private final LongAdder queryTimeouts = new LongAdder();
+    private final LongAdder slowQueries = new LongAdder();
+    private final Deque<String> recentSlow = new ArrayDeque<>();
+    private volatile PoolStats poolStats;
+
+    public static DbMetrics getInstance() {
+        if (instance == null) {
+            synchronized (DbMetrics.class) {
+                if (instance == null) {
+                    instance = new DbMetrics();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DbMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            logger.warn("Database metrics not registered with JMX: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Timings and counts of one statement name, as of the moment it was taken.
+     */
+    public static final class StatementStats {
+        private final String name;
+        private final long count;
+        private final long errors;
+        private final long timeouts;
+        private final long meanMicros;
+        private final long p50Micros;
+        private final long p95Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+        private final long totalMillis;
+
+        StatementStats(String name, LatencyHistogram h, long errors, long timeouts) {
+            this.name = name;
+            this.count = h.getCount();
+            this.errors = errors;
+            this.timeouts = timeouts;
+            this.meanMicros = h.getMeanMicros();
+            this.p50Micros = h.percentileMicros(0.50);
+            this.p95Micros = h.percentileMicros(0.95);
+            this.p99Micros = h.percentileMicros(0.99);
+            this.maxMicros = h.getMaxMicros();
+            this.totalMillis = h.getTotalMicros() / 1000;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP95Micros() {
+            return p95Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+    }
+
+    // HikariCP calls this once per pool it creates
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats stats) {
+        this.poolStats = stats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                poolWait.record(TimeUnit.NANOSECONDS.toMicros(elapsedAcquiredNanos));
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                connectionTimeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * Wrap a pooled connection so its statements are timed and get the query timeout.
+     */
+    public Connection wrap(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(DbMetrics.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(conn));
+    }
+
+    /**
+     * Statistics of every statement name seen, slowest in total first.
+     */
+    @Override
+    public List<StatementStats> getStatements() {
+        List<StatementStats> result = new ArrayList<>();
+        statements.forEach((name, h) -> result.add(new StatementStats(name, h,
+                sum(statementErrors, name), sum(statementTimeouts, name))));
+        result.sort(Comparator.comparingLong(StatementStats::getTotalMillis).reversed()
+                .thenComparing(StatementStats::getName));
+        return result;
+    }
+
+    @Override
+    public List<String> getRecentSlowQueries() {
+        synchronized (recentSlow) {
+            return new ArrayList<>(recentSlow);
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        statements.clear();
+        statementErrors.clear();
+        statementTimeouts.clear();
+        poolWait = new LatencyHistogram();
+        connectionTimeouts.reset();
+        queryTimeouts.reset();
+        slowQueries.reset();
+        synchronized (recentSlow) {
+            recentSlow.clear();
+        }
+    }
+
+    @Override
+    public int getPoolActiveConnections() {
+        PoolStats s = poolStats;
+        return s == null ? 0 : s.getActiveConnections();
+    }
+
+    @Override
+    public int getPoolIdleConnections() {
+        PoolStats s = poolStats;
+        return s == null ? 0 : s.getIdleConnections();
+    }
+
+    @Override
+    public int getPoolTotalConnections() {
+        PoolStats s = poolStats;
+        return s == null ? 0 : s.getTotalConnections();
+    }
+
+    @Override
+    public int getPoolPendingThreads() {
+        PoolStats s = poolStats;
+        return s == null ? 0 : s.getPendingThreads();
+    }
+
+    @Override
+    public int getPoolMaxConnections() {
+        PoolStats s = poolStats;
+        return s == null ? 0 : s.getMaxConnections();
+    }
+
+    @Override
+    public long getPoolWaitCount() {
+        return poolWait.getCount();
+    }
+
+    @Override
+    public long getPoolWaitMeanMicros() {
+        return poolWait.getMeanMicros();
+    }
+
+    @Override
+    public long getPoolWaitP95Micros() {
+        return poolWait.percentileMicros(0.95);
+    }
+
+    @Override
+    public long getPoolWaitMaxMicros() {
+        return poolWait.getMaxMicros();
+    }
+
+    @Override
+    public long getConnectionTimeouts() {
+        return connectionTimeouts.sum();
+    }
+
+    @Override
+    public long getQueryTimeouts() {
+        return queryTimeouts.sum();
+    }
+
+    @Override
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    @Override
+    public int getQueryTimeoutSeconds() {
+        return ConfigManager.getDbQueryTimeoutSeconds();
+    }
+
+    @Override
+    public int getSlowQueryMs() {
+        return ConfigManager.getDbSlowQueryMs();
+    }
+
+    private static long sum(Map<String, LongAdder> counters, String name) {
+        LongAdder a = counters.get(name);
+        return a == null ? 0 : a.sum();
+    }
+
+    private void record(String name, String sql, long nanos, Throwable error) {
+        statements.computeIfAbsent(name, k -> new LatencyHistogram()).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (error instanceof SQLTimeoutException) {
+            queryTimeouts.increment();
+            statementTimeouts.computeIfAbsent(name, k -> new LongAdder()).increment();
+            logger.warn("Query {} cancelled by its timeout after {} ms", name, TimeUnit.NANOSECONDS.toMillis(nanos));
+        } else if (error != null) {
+            statementErrors.computeIfAbsent(name, k -> new LongAdder()).increment();
+        }
+
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int slowMs = ConfigManager.getDbSlowQueryMs();
+        if (slowMs <= 0 || ms < slowMs) return;
+        slowQueries.increment();
+        String text = sql == null ? "" : sql.length() > SQL_LOG_MAX ? sql.substring(0, SQL_LOG_MAX) + "..." : sql;
+        logger.warn("Slow query {} took {} ms: {}", name, ms, text);
+        synchronized (recentSlow) {
+            recentSlow.addFirst(LocalTime.now().truncatedTo(ChronoUnit.SECONDS) + "  " + name + "  " + ms + " ms");
+            while (recentSlow.size() > RECENT_SLOW_MAX) recentSlow.removeLast();
+        }
+    }
+
+    // "Class.method" of the nearest application frame outside the database plumbing
+    private static String callerName() {
+        Optional<StackWalker.StackFrame> frame = WALKER.walk(frames -> frames.limit(CALLER_MAX_DEPTH)
+                .filter(f -> f.getClassName().startsWith(OWN_PACKAGE)
+                        && !f.getClassName().startsWith(DbMetrics.class.getName())
+                        && !f.getClassName().equals(DatabaseUtil.class.getName()))
+                .findFirst());
+        if (frame.isEmpty()) return "unknown";
+        String cls = frame.get().getClassName();
+        return cls.substring(cls.lastIndexOf('.') + 1) + "." + frame.get().getMethodName();
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "prepareStatement":
+                case "prepareCall":
+                case "createStatement":
+                    Statement stmt = (Statement) DbMetrics.invoke(target, method, args);
+                    int timeout = ConfigManager.getDbQueryTimeoutSeconds();
+                    // The embedded database has it in its connection URL
+                    if (timeout > 0 && DatabaseUtil.getBackend() != DatabaseBackend.EMBEDDED) {
+                        stmt.setQueryTimeout(timeout);
+                    }
+                    String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                    return Proxy.newProxyInstance(DbMetrics.class.getClassLoader(),
+                            new Class<?>[]{method.getReturnType()},
+                            new StatementHandler(stmt, (Connection) proxy, callerName(), sql));
+                default:
+                    return DbMetrics.invoke(target, method, args);
+            }
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final Connection connection;
+        private final String name;
+        private final String sql;
+
+        StatementHandler(Statement target, Connection connection, String name, String sql) {
+            this.target = target;
+            this.connection = connection;
+            this.name = name;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String m = method.getName();
+            if (m.equals("equals")) return proxy == args[0];
+            if (m.equals("hashCode")) return System.identityHashCode(proxy);
+            if (m.equals("getConnection")) return connection;
+            if (!m.startsWith("execute")) return DbMetrics.invoke(target, method, args);
+
+            // Plain statements name their SQL at execution
+            String text = sql != null ? sql : args != null && args.length > 0 && args[0] instanceof String
+                    ? (String) args[0] : null;
+            long started = System.nanoTime();
+            Throwable error = null;
+            try {
+                return DbMetrics.invoke(target, method, args);
+            } catch (Throwable e) {
+                error = e;
+                throw e;
+            } finally {
+                record(name, text, System.nanoTime() - started, error);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.rfn.fileencryptor.util;
+
+import java.util.List;
+
+/**
+ * JMX view of {@link DbMetrics}, registered as com.rfn.fileencryptor:type=DbMetrics.
+ * HikariCP registers its own pool MBean next to it (com.zaxxer.hikari:type=Pool (...)).
+ */
+public interface DbMetricsMXBean {
+
+    int getPoolActiveConnections();
+
+    int getPoolIdleConnections();
+
+    int getPoolTotalConnections();
+
+    int getPoolPendingThreads();
+
+    int getPoolMaxConnections();
+
+    long getPoolWaitCount();
+
+    long getPoolWaitMeanMicros();
+
+    long getPoolWaitP95Micros();
+
+    long getPoolWaitMaxMicros();
+
+    long getConnectionTimeouts();
+
+    long getQueryTimeouts();
+
+    long getSlowQueries();
+
+    int getQueryTimeoutSeconds();
+
+    int getSlowQueryMs();
+
+    List<DbMetrics.StatementStats> getStatements();
+
+    List<String> getRecentSlowQueries();
+
+    void resetStatistics();
+}
@@ -0,0 +1,128 @@
+package com.rfn.fileencryptor.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+
+/**
+ * Token-bucket limits for file I/O, shared by every path that moves file data.
+ *
+ * Each operation class has a byte budget (io.&lt;class&gt;.mbps) and an operation budget
+ * (io.&lt;class&gt;.iops), both 0 = unlimited. Callers charge each read/write chunk with
+ * {@link #acquire}; when a bucket is empty the caller sleeps until it refills. Limits are
+ * read from ConfigManager on every call, so changes in settings apply immediately.
+ */
+public final class IoGovernor {
+
+    /**
+     * Kinds of I/O that are limited independently.
+     */
+    public enum IoClass {
+        /** Encrypt/decrypt batches, the watch folder, CLI and daemon jobs. */
+        CRYPTO("crypto"),
+        /** Background secure-delete overwrites. */
+        SHRED("shred"),
+        /** Google Drive uploads and downloads. */
+        BACKUP("backup"),
+        /** Re-encryption after an encryption password change. */
+        REENCRYPT("reencrypt");
+
+        private final String key;
+
+        IoClass(String key) {
+            this.key = key;
+        }
+
+        /** Config key fragment, e.g. "shred" in io.shred.mbps. */
+        public String key() {
+            return key;
+        }
+    }
+
+    private static final Bucket[] BYTE_BUCKETS = new Bucket[IoClass.values().length];
+    private static final Bucket[] OP_BUCKETS = new Bucket[IoClass.values().length];
+
+    static {
+        for (int i = 0; i < BYTE_BUCKETS.length; i++) {
+            BYTE_BUCKETS[i] = new Bucket();
+            OP_BUCKETS[i] = new Bucket();
+        }
+    }
+
+    private IoGovernor() {
+    }
+
+    /**
+     * Charge one operation of 'bytes' bytes to the class, blocking while it is over budget.
+     */
+    public static void acquire(IoClass ioClass, long bytes) throws InterruptedIOException {
+        long bytesPerSec = ConfigManager.getIoBytesPerSec(ioClass.key());
+        int opsPerSec = ConfigManager.getIoOpsPerSec(ioClass.key());
+        if (bytesPerSec <= 0 && opsPerSec <= 0) return;
+
+        long waitNanos = 0;
+        if (bytesPerSec > 0) {
+            waitNanos = BYTE_BUCKETS[ioClass.ordinal()].take(bytes, bytesPerSec);
+        }
+        if (opsPerSec > 0) {
+            waitNanos = Math.max(waitNanos, OP_BUCKETS[ioClass.ordinal()].take(1, opsPerSec));
+        }
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    /**
+     * Stream whose reads are charged to ioClass.
+     */
+    public static InputStream wrap(InputStream in, IoClass ioClass) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) acquire(ioClass, 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) acquire(ioClass, n);
+                return n;
+            }
+        };
+    }
+
+    /**
+     * A bucket holding up to one second of its rate. take() may drive it negative (debt)
+     * so chunks larger than the burst still pass; the caller then sleeps off the debt.
+     */
+    private static final class Bucket {
+        private double tokens;
+        private long lastRefill;
+        private boolean primed;
+
+        synchronized long take(long amount, long ratePerSec) {
+            long now = System.nanoTime();
+            double burst = ratePerSec;
+            if (!primed) {
+                tokens = burst;
+                primed = true;
+            } else {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * (ratePerSec / 1e9));
+            }
+            lastRefill = now;
+            tokens -= amount;
+            if (tokens >= 0) return 0L;
+            return (long) (-tokens * 1e9 / ratePerSec);
+        }
+    }
+}
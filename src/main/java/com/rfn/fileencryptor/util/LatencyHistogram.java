@@ -0,0 +1,68 @@
+package com.rfn.fileencryptor.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.rfn.fileencryptor.model.OperationStats;
+
+/**
+ * Lock-free latency histogram in microseconds, using the log-scale buckets of
+ * {@link OperationStats} (a quarter of a power of two wide), so a percentile is reported
+ * at most about 25% above the exact value.
+ */
+public final class LatencyHistogram {
+
+    // OperationStats.bucketOf(Long.MAX_VALUE) is 247
+    private static final int BUCKETS = 248;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long micros) {
+        if (micros < 0) micros = 0;
+        buckets.incrementAndGet(OperationStats.bucketOf(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalMicros() {
+        return totalMicros.sum();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public long getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalMicros.sum() / n;
+    }
+
+    /**
+     * Latency below which the given share (0..1) of samples fell; 0 when there are none.
+     */
+    public long percentileMicros(double share) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            snapshot[b] = buckets.get(b);
+            n += snapshot[b];
+        }
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(share * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += snapshot[b];
+            if (seen >= rank) return Math.min(OperationStats.bucketUpperMs(b), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+}
@@ -15,6 +15,84 @@ public class ProgressTracker {
          * @param eta Estimated time remaining in seconds
          */
         void onProgress(double percentage, long processed, long total, long eta);
+
+        /**
+         * Progress with the measured rate. Callers that meter throughput call this one;
+         * by default it drops the rate.
+         * @param bytesPerSec Smoothed throughput, 0 when not yet measured
+         */
+        default void onProgress(double percentage, long processed, long total, long eta, double bytesPerSec) {
+            onProgress(percentage, processed, total, eta);
+        }
+    }
+
+    /**
+     * Exponentially weighted throughput of one job or batch.
+     *
+     * update() may be called from the hot loop of any number of threads; it only takes a
+     * sample every SAMPLE_NANOS and otherwise returns after one volatile read.
+     */
+    public static final class ThroughputMeter {
+        private static final long SAMPLE_NANOS = 250_000_000L;
+        private static final double ALPHA = 0.3;
+
+        private volatile long lastNanos;
+        private long lastBytes;
+        private volatile double bytesPerSec;
+
+        public ThroughputMeter() {
+            this(0L);
+        }
+
+        /**
+         * @param baselineBytes bytes already done before metering starts (e.g. a resumed job)
+         */
+        public ThroughputMeter(long baselineBytes) {
+            this.lastNanos = System.nanoTime();
+            this.lastBytes = baselineBytes;
+        }
+
+        /**
+         * Record the running total of processed bytes.
+         */
+        public void update(long processedBytes) {
+            long now = System.nanoTime();
+            if (now - lastNanos < SAMPLE_NANOS) return;
+            synchronized (this) {
+                long elapsed = now - lastNanos;
+                if (elapsed < SAMPLE_NANOS) return;
+                if (processedBytes >= lastBytes) {
+                    double sample = (processedBytes - lastBytes) * 1_000_000_000.0 / elapsed;
+                    double current = bytesPerSec;
+                    bytesPerSec = current == 0 ? sample : ALPHA * sample + (1 - ALPHA) * current;
+                }
+                lastBytes = processedBytes;
+                lastNanos = now;
+            }
+        }
+
+        /**
+         * Smoothed rate, 0 until the first sample.
+         */
+        public double getBytesPerSec() {
+            return bytesPerSec;
+        }
+
+        /**
+         * Seconds to process remainingBytes at the current rate, 0 when unknown.
+         */
+        public long etaSeconds(long remainingBytes) {
+            double rate = bytesPerSec;
+            if (rate <= 0 || remainingBytes <= 0) return 0L;
+            return (long) Math.ceil(remainingBytes / rate);
+        }
+    }
+
+    /**
+     * Format a rate for display, e.g. "85.3 MB/s".
+     */
+    public static String formatRate(double bytesPerSec) {
+        return String.format("%.1f MB/s", bytesPerSec / (1024.0 * 1024.0));
     }
 
     /**
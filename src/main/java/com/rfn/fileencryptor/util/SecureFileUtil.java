@@ -69,6 +69,8 @@ public class SecureFileUtil {
                             raf.write(randomBuf, 0, len);
                         }
                         remaining -= len;
+                        // Overwrites are charged to the shred budget (io.shred.*)
+                        IoGovernor.acquire(IoGovernor.IoClass.SHRED, len);
                     }
                 }
             }
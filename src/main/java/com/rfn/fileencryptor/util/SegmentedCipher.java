@@ -0,0 +1,251 @@
+package com.rfn.fileencryptor.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Segmented AES-GCM file format.
+ *
+ * The plaintext is cut into fixed-size segments that are encrypted independently, so
+ * any segment can be encrypted or decrypted on its own (in parallel, or resumed after
+ * a crash) and decryption never has to buffer more than one segment.
+ *
+ * Layout: 16-byte header, then for each segment: ciphertext || 16-byte GCM tag.
+ * Segment i uses the file's base IV with its last 4 bytes XOR'ed with i, and
+ * authenticates header || i || last-flag so segments cannot be reordered or truncated.
+ */
+public final class SegmentedCipher {
+
+    public static final String ALGORITHM_NAME = "AES-GCM-256-SEG";
+    public static final int HEADER_SIZE = 16;
+    public static final int TAG_BYTES = CryptoUtil.TAG_SIZE / 8;
+
+    private static final byte[] MAGIC = {'F', 'E', 'S', 'G'};
+    private static final byte VERSION = 1;
+
+    // Reused per worker thread; segments are at most 64 MB
+    private static final ThreadLocal<ByteBuffer[]> BUFFERS = new ThreadLocal<>();
+    // Cipher.getInstance walks the provider list; each worker keeps one and re-inits it per segment
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<>();
+
+    private SegmentedCipher() {
+    }
+
+    /**
+     * Build the file header for the given segment size.
+     */
+    public static byte[] header(int segmentSize) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+        b.put(MAGIC).put(VERSION).put((byte) 0).put((byte) 0).put((byte) 0);
+        b.putInt(segmentSize).putInt(0);
+        return b.array();
+    }
+
+    /**
+     * Read and validate the header from the start of an encrypted file.
+     */
+    public static byte[] readHeader(FileChannel in) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(in, b, 0);
+        byte[] header = b.array();
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) throw new IOException("Not a segmented encrypted file");
+        }
+        if (header[4] != VERSION) throw new IOException("Unsupported segment format version: " + header[4]);
+        int segmentSize = segmentSize(header);
+        if (segmentSize <= 0 || segmentSize > 64 * 1024 * 1024) {
+            throw new IOException("Invalid segment size in header: " + segmentSize);
+        }
+        return header;
+    }
+
+    public static int segmentSize(byte[] header) {
+        return ByteBuffer.wrap(header, 8, 4).getInt();
+    }
+
+    /**
+     * Number of segments for a plaintext of the given size (an empty file has one empty segment).
+     */
+    public static long segmentCount(long plainSize, int segmentSize) {
+        return Math.max(1L, (plainSize + segmentSize - 1) / segmentSize);
+    }
+
+    public static long plainLength(long plainSize, int segmentSize, long index) {
+        long start = index * segmentSize;
+        return Math.max(0L, Math.min(segmentSize, plainSize - start));
+    }
+
+    public static long cipherOffset(int segmentSize, long index) {
+        return HEADER_SIZE + index * (segmentSize + (long) TAG_BYTES);
+    }
+
+    public static long cipherSize(long plainSize, int segmentSize) {
+        return HEADER_SIZE + plainSize + segmentCount(plainSize, segmentSize) * TAG_BYTES;
+    }
+
+    /**
+     * Recover the plaintext size from the encrypted file size.
+     */
+    public static long plainSize(long cipherSize, int segmentSize) throws IOException {
+        long body = cipherSize - HEADER_SIZE;
+        long full = segmentSize + (long) TAG_BYTES;
+        long count = Math.max(1L, (body + full - 1) / full);
+        long plain = body - count * TAG_BYTES;
+        if (plain < 0) throw new IOException("Truncated segmented file");
+        return plain;
+    }
+
+    public static byte[] segmentIv(byte[] baseIv, long index) {
+        byte[] iv = baseIv.clone();
+        int n = iv.length;
+        iv[n - 4] ^= (byte) (index >>> 24);
+        iv[n - 3] ^= (byte) (index >>> 16);
+        iv[n - 2] ^= (byte) (index >>> 8);
+        iv[n - 1] ^= (byte) index;
+        return iv;
+    }
+
+    /**
+     * Encrypt plaintext segment 'index' of 'in' into its slot in 'out'.
+     */
+    public static void encryptSegment(FileChannel in, FileChannel out, SecretKey key, byte[] baseIv,
+                                      byte[] header, long plainSize, long index)
+            throws IOException, GeneralSecurityException {
+        int segmentSize = segmentSize(header);
+        int len = (int) plainLength(plainSize, segmentSize, index);
+        ByteBuffer[] bufs = buffers(segmentSize);
+        ByteBuffer plain = bufs[0];
+        plain.clear().limit(len);
+        readFully(in, plain, index * segmentSize);
+        plain.flip();
+        encryptBuffer(plain, out, key, baseIv, header, plainSize, index);
+    }
+
+    /**
+     * Decrypt segment 'index' of 'in' into its plaintext position in 'out'.
+     */
+    public static void decryptSegment(FileChannel in, FileChannel out, SecretKey key, byte[] baseIv,
+                                      byte[] header, long plainSize, long index)
+            throws IOException, GeneralSecurityException {
+        int segmentSize = segmentSize(header);
+        ByteBuffer plain = decryptToBuffer(in, key, baseIv, header, plainSize, index);
+        writeFully(out, plain, index * segmentSize);
+    }
+
+    /**
+     * Whether sealed segment 'index' of 'sealedIn' decrypts to the same bytes as the
+     * plaintext segment of 'plainIn'. Throws AEADBadTagException if the segment is not
+     * authentic (never completely written, or sealed under another key or IV).
+     */
+    public static boolean matchesSegment(FileChannel plainIn, FileChannel sealedIn, SecretKey key, byte[] baseIv,
+                                         byte[] header, long plainSize, long index)
+            throws IOException, GeneralSecurityException {
+        ByteBuffer plain = decryptToBuffer(sealedIn, key, baseIv, header, plainSize, index);
+        // The sealed buffer is free again once decrypted
+        ByteBuffer current = buffers(segmentSize(header))[1];
+        current.clear().limit(plain.remaining());
+        readFully(plainIn, current, index * segmentSize(header));
+        current.flip();
+        return plain.equals(current);
+    }
+
+    /**
+     * Decrypt one segment with the old key and write it re-encrypted with the new key/IV.
+     */
+    public static void transcodeSegment(FileChannel in, FileChannel out, SecretKey oldKey, byte[] oldIv,
+                                        SecretKey newKey, byte[] newIv, byte[] header, long plainSize, long index)
+            throws IOException, GeneralSecurityException {
+        ByteBuffer plain = decryptToBuffer(in, oldKey, oldIv, header, plainSize, index);
+        encryptBuffer(plain, out, newKey, newIv, header, plainSize, index);
+    }
+
+    private static void encryptBuffer(ByteBuffer plain, FileChannel out, SecretKey key, byte[] baseIv,
+                                      byte[] header, long plainSize, long index)
+            throws IOException, GeneralSecurityException {
+        int segmentSize = segmentSize(header);
+        long count = segmentCount(plainSize, segmentSize);
+        Cipher cipher = cipher();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(CryptoUtil.TAG_SIZE, segmentIv(baseIv, index)));
+        cipher.updateAAD(aad(header, index, index == count - 1));
+
+        ByteBuffer sealed = buffers(segmentSize)[1];
+        sealed.clear();
+        cipher.doFinal(plain, sealed);
+        sealed.flip();
+        writeFully(out, sealed, cipherOffset(segmentSize, index));
+    }
+
+    private static ByteBuffer decryptToBuffer(FileChannel in, SecretKey key, byte[] baseIv, byte[] header,
+                                              long plainSize, long index)
+            throws IOException, GeneralSecurityException {
+        int segmentSize = segmentSize(header);
+        long count = segmentCount(plainSize, segmentSize);
+        if (index >= count) throw new IOException("Segment index out of range: " + index);
+        int len = (int) plainLength(plainSize, segmentSize, index) + TAG_BYTES;
+
+        ByteBuffer[] bufs = buffers(segmentSize);
+        ByteBuffer sealed = bufs[1];
+        sealed.clear().limit(len);
+        readFully(in, sealed, cipherOffset(segmentSize, index));
+        sealed.flip();
+
+        Cipher cipher = cipher();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(CryptoUtil.TAG_SIZE, segmentIv(baseIv, index)));
+        cipher.updateAAD(aad(header, index, index == count - 1));
+
+        ByteBuffer plain = bufs[0];
+        plain.clear();
+        cipher.doFinal(sealed, plain);
+        plain.flip();
+        return plain;
+    }
+
+    private static byte[] aad(byte[] header, long index, boolean last) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE + 9);
+        b.put(header).putLong(index).put((byte) (last ? 1 : 0));
+        return b.array();
+    }
+
+    private static Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = CIPHERS.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(CryptoUtil.TRANSFORMATION);
+            CIPHERS.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static ByteBuffer[] buffers(int segmentSize) {
+        ByteBuffer[] bufs = BUFFERS.get();
+        if (bufs == null || bufs[0].capacity() < segmentSize) {
+            bufs = new ByteBuffer[]{
+                    ByteBuffer.allocate(segmentSize),
+                    ByteBuffer.allocate(segmentSize + TAG_BYTES)
+            };
+            BUFFERS.set(bufs);
+        }
+        return bufs;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        long pos = position;
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos);
+            if (n < 0) throw new IOException("Unexpected end of file at offset " + pos);
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer src, long position) throws IOException {
+        long pos = position;
+        while (src.hasRemaining()) {
+            pos += ch.write(src, pos);
+        }
+    }
+}
@@ -6,6 +6,14 @@ SET SERVEROUTPUT ON SIZE 1000000
 DECLARE
   cnt NUMBER;
 BEGIN
+  SELECT COUNT(*) INTO cnt FROM user_tables WHERE table_name = 'AUDIT_DAILY_STATS';
+  IF cnt > 0 THEN
+    EXECUTE IMMEDIATE 'DROP TABLE AUDIT_DAILY_STATS CASCADE CONSTRAINTS';
+    DBMS_OUTPUT.PUT_LINE('Dropped AUDIT_DAILY_STATS');
+  ELSE
+    DBMS_OUTPUT.PUT_LINE('AUDIT_DAILY_STATS not found, skipping drop');
+  END IF;
+
   SELECT COUNT(*) INTO cnt FROM user_tables WHERE table_name = 'AUDIT_LOGS';
   IF cnt > 0 THEN
     EXECUTE IMMEDIATE 'DROP TABLE AUDIT_LOGS CASCADE CONSTRAINTS';
@@ -60,7 +68,8 @@ CREATE TABLE USERS (
   EMAIL VARCHAR2(255 CHAR),
   ACCOUNT_STATUS VARCHAR2(50 CHAR) DEFAULT 'ACTIVE',
   CREATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-  LAST_LOGIN TIMESTAMP
+  LAST_LOGIN TIMESTAMP,
+  FILES_VERSION NUMBER DEFAULT 0 NOT NULL
 );
 
 -- 2) SECURITY_QUESTIONS
@@ -99,6 +108,7 @@ CREATE TABLE FILE_METADATA (
   ENCRYPTION_ALGORITHM VARCHAR2(100 CHAR),
   COMPRESSION_FLAG CHAR(1) DEFAULT 'N',
   FILE_PATH VARCHAR2(2000 CHAR),
+  RELATIVE_PATH VARCHAR2(2000 CHAR),
   CREATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
   CONSTRAINT FK_FILE_METADATA_OWNER FOREIGN KEY (OWNER_ID) REFERENCES USERS(USER_ID) ON DELETE CASCADE
 );
@@ -112,17 +122,46 @@ CREATE TABLE AUDIT_LOGS (
   OPERATION_STATUS VARCHAR2(50 CHAR),
   FILE_SIZE NUMBER,
   DURATION_MS NUMBER,
+  THROUGHPUT_MBPS NUMBER(10,2),
   ERROR_MESSAGE VARCHAR2(2000 CHAR),
-  TIMESTAMP_CREATED TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  TIMESTAMP_CREATED TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
   CONSTRAINT FK_AUDIT_LOGS_USER FOREIGN KEY (USER_ID) REFERENCES USERS(USER_ID) ON DELETE CASCADE,
   CONSTRAINT FK_AUDIT_LOGS_FILE FOREIGN KEY (FILE_ID) REFERENCES FILE_METADATA(FILE_ID) ON DELETE SET NULL
-);
+)
+-- One partition per month, created on first insert. Range queries only touch the months
+-- asked for, and the audit retention job drops a month's partition once it is archived.
+-- An existing table can be converted in place (12.2+):
+--   ALTER TABLE AUDIT_LOGS MODIFY PARTITION BY RANGE (TIMESTAMP_CREATED)
+--     INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))
+--     (PARTITION P_AUDIT_INITIAL VALUES LESS THAN (TIMESTAMP '2024-01-01 00:00:00')) ONLINE UPDATE INDEXES;
+PARTITION BY RANGE (TIMESTAMP_CREATED) INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))
+(PARTITION P_AUDIT_INITIAL VALUES LESS THAN (TIMESTAMP '2024-01-01 00:00:00'));
 
 -- Helpful indexes
 CREATE INDEX IDX_FILE_METADATA_OWNER ON FILE_METADATA (OWNER_ID);
+CREATE INDEX IDX_FILE_OWNER_CREATED ON FILE_METADATA (OWNER_ID, CREATED_AT, FILE_ID);
 CREATE INDEX IDX_SECURITY_QUESTIONS_USER ON SECURITY_QUESTIONS (USER_ID);
 CREATE INDEX IDX_FILE_PASSWORDS_USER ON FILE_PASSWORDS (USER_ID);
-CREATE INDEX IDX_AUDIT_LOGS_USER ON AUDIT_LOGS (USER_ID);
+CREATE INDEX IDX_AUDIT_LOGS_USER ON AUDIT_LOGS (USER_ID) LOCAL;
+CREATE INDEX IDX_AUDIT_USER_CREATED ON AUDIT_LOGS (USER_ID, TIMESTAMP_CREATED, LOG_ID) LOCAL;
+CREATE INDEX IDX_AUDIT_CREATED ON AUDIT_LOGS (TIMESTAMP_CREATED) LOCAL;
+
+-- 6) AUDIT_DAILY_STATS
+-- Daily rollups of AUDIT_LOGS per user and operation, added to in the transaction that
+-- inserts the entries and kept when they are archived. DURATION_HIST holds the duration
+-- histogram the statistics view reads percentiles from (OperationStats).
+CREATE TABLE AUDIT_DAILY_STATS (
+  USER_ID NUMBER NOT NULL,
+  STAT_DAY DATE NOT NULL,
+  OPERATION_TYPE VARCHAR2(50 CHAR) NOT NULL,
+  OP_COUNT NUMBER DEFAULT 0 NOT NULL,
+  FAILURE_COUNT NUMBER DEFAULT 0 NOT NULL,
+  TOTAL_BYTES NUMBER DEFAULT 0 NOT NULL,
+  TOTAL_DURATION_MS NUMBER DEFAULT 0 NOT NULL,
+  DURATION_HIST VARCHAR2(4000 CHAR),
+  CONSTRAINT PK_AUDIT_DAILY_STATS PRIMARY KEY (USER_ID, STAT_DAY, OPERATION_TYPE),
+  CONSTRAINT FK_AUDIT_STATS_USER FOREIGN KEY (USER_ID) REFERENCES USERS(USER_ID) ON DELETE CASCADE
+);
 
 COMMIT;
 
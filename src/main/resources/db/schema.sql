@@ -1,4 +1,5 @@
 -- Drop tables if exist (for clean installation)
+DROP TABLE AUDIT_DAILY_STATS CASCADE CONSTRAINTS;
 DROP TABLE AUDIT_LOGS CASCADE CONSTRAINTS;
 DROP TABLE FILE_METADATA CASCADE CONSTRAINTS;
 DROP TABLE FILE_PASSWORDS CASCADE CONSTRAINTS;
@@ -15,6 +16,7 @@ CREATE TABLE USERS (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     last_login TIMESTAMP,
     account_status VARCHAR2(20) DEFAULT 'ACTIVE',
+    files_version NUMBER DEFAULT 0 NOT NULL,
     CONSTRAINT chk_status CHECK (account_status IN ('ACTIVE', 'LOCKED', 'DISABLED'))
 );
 
@@ -59,6 +61,7 @@ CREATE TABLE FILE_METADATA (
     compression_flag CHAR(1) DEFAULT 'N',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     file_path VARCHAR2(1000),
+    relative_path VARCHAR2(2000),
     CONSTRAINT fk_file_owner FOREIGN KEY (owner_id) REFERENCES USERS(user_id) ON DELETE CASCADE,
     CONSTRAINT chk_compression CHECK (compression_flag IN ('Y', 'N'))
 );
@@ -66,6 +69,7 @@ CREATE TABLE FILE_METADATA (
 CREATE INDEX idx_file_owner ON FILE_METADATA(owner_id);
 CREATE INDEX idx_stored_filename ON FILE_METADATA(stored_filename);
 CREATE INDEX idx_created_at ON FILE_METADATA(created_at);
+CREATE INDEX idx_file_owner_created ON FILE_METADATA(owner_id, created_at, file_id);
 
 -- Audit Logs Table
 CREATE TABLE AUDIT_LOGS (
@@ -76,17 +80,36 @@ CREATE TABLE AUDIT_LOGS (
     operation_status VARCHAR2(20) NOT NULL,
     file_size NUMBER,
     duration_ms NUMBER,
+    throughput_mbps NUMBER(10,2),
     error_message VARCHAR2(1000),
-    timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
     CONSTRAINT fk_log_user FOREIGN KEY (user_id) REFERENCES USERS(user_id) ON DELETE CASCADE,
     CONSTRAINT fk_log_file FOREIGN KEY (file_id) REFERENCES FILE_METADATA(file_id) ON DELETE SET NULL,
     CONSTRAINT chk_operation CHECK (operation_type IN ('ENCRYPT', 'DECRYPT', 'VIEW', 'DELETE', 'LOGIN', 'LOGOUT')),
     CONSTRAINT chk_log_status CHECK (operation_status IN ('SUCCESS', 'FAILURE', 'PARTIAL'))
-);
+)
+-- Monthly partitions; the audit retention job drops a month once it is archived
+PARTITION BY RANGE (timestamp) INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))
+(PARTITION p_audit_initial VALUES LESS THAN (TIMESTAMP '2024-01-01 00:00:00'));
+
+CREATE INDEX idx_log_user ON AUDIT_LOGS(user_id) LOCAL;
+CREATE INDEX idx_log_user_created ON AUDIT_LOGS(user_id, timestamp, log_id) LOCAL;
+CREATE INDEX idx_log_timestamp ON AUDIT_LOGS(timestamp) LOCAL;
+CREATE INDEX idx_log_operation ON AUDIT_LOGS(operation_type, operation_status) LOCAL;
 
-CREATE INDEX idx_log_user ON AUDIT_LOGS(user_id);
-CREATE INDEX idx_log_timestamp ON AUDIT_LOGS(timestamp);
-CREATE INDEX idx_log_operation ON AUDIT_LOGS(operation_type, operation_status);
+-- Daily Audit Statistics Table (rollups of AUDIT_LOGS, kept when entries are archived)
+CREATE TABLE AUDIT_DAILY_STATS (
+    user_id NUMBER NOT NULL,
+    stat_day DATE NOT NULL,
+    operation_type VARCHAR2(50) NOT NULL,
+    op_count NUMBER DEFAULT 0 NOT NULL,
+    failure_count NUMBER DEFAULT 0 NOT NULL,
+    total_bytes NUMBER DEFAULT 0 NOT NULL,
+    total_duration_ms NUMBER DEFAULT 0 NOT NULL,
+    duration_hist VARCHAR2(4000),
+    CONSTRAINT pk_audit_daily_stats PRIMARY KEY (user_id, stat_day, operation_type),
+    CONSTRAINT fk_audit_stats_user FOREIGN KEY (user_id) REFERENCES USERS(user_id) ON DELETE CASCADE
+);
 
 -- Grant permissions (adjust username as needed)
 GRANT SELECT, INSERT, UPDATE, DELETE ON USERS TO encryptor_user;
@@ -94,6 +117,7 @@ GRANT SELECT, INSERT, UPDATE, DELETE ON SECURITY_QUESTIONS TO encryptor_user;
 GRANT SELECT, INSERT, UPDATE, DELETE ON FILE_PASSWORDS TO encryptor_user;
 GRANT SELECT, INSERT, UPDATE, DELETE ON FILE_METADATA TO encryptor_user;
 GRANT SELECT, INSERT, UPDATE, DELETE ON AUDIT_LOGS TO encryptor_user;
+GRANT SELECT, INSERT, UPDATE, DELETE ON AUDIT_DAILY_STATS TO encryptor_user;
 
 -- Enable sequences for identity columns
 GRANT SELECT ON USER_SEQUENCES TO encryptor_user;
@@ -109,3 +133,4 @@ DESCRIBE SECURITY_QUESTIONS;
 DESCRIBE FILE_PASSWORDS;
 DESCRIBE FILE_METADATA;
 DESCRIBE AUDIT_LOGS;
+DESCRIBE AUDIT_DAILY_STATS;
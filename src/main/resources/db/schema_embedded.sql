@@ -0,0 +1,98 @@
+-- Schema of the embedded (H2, Oracle mode) database, ported from schema.sql.
+-- Run once by DatabaseUtil when the database file is new; later columns and indexes are
+-- added by DatabaseUtil.migrateSchema as for Oracle. Column names follow the DAOs
+-- (AUDIT_LOGS.timestamp_created).
+
+-- Users Table
+CREATE TABLE USERS (
+    user_id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    username VARCHAR2(150) NOT NULL UNIQUE,
+    password_hash VARCHAR2(256) NOT NULL,
+    password_salt VARCHAR2(255),
+    email VARCHAR2(255),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_login TIMESTAMP,
+    account_status VARCHAR2(20) DEFAULT 'ACTIVE',
+    files_version NUMBER DEFAULT 0 NOT NULL,
+    CONSTRAINT chk_status CHECK (account_status IN ('ACTIVE', 'LOCKED', 'DISABLED'))
+);
+
+-- Security Questions Table
+CREATE TABLE SECURITY_QUESTIONS (
+    question_id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    user_id NUMBER NOT NULL,
+    question_text VARCHAR2(1024) NOT NULL,
+    answer_hash VARCHAR2(256) NOT NULL,
+    answer_salt VARCHAR2(255),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_sq_user FOREIGN KEY (user_id) REFERENCES USERS(user_id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_sq_user ON SECURITY_QUESTIONS(user_id);
+
+-- File Passwords Table
+CREATE TABLE FILE_PASSWORDS (
+    fp_id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    user_id NUMBER NOT NULL UNIQUE,
+    encrypted_file_password VARCHAR2(2048) NOT NULL,
+    fp_salt VARCHAR2(512) NOT NULL,
+    encryption_algorithm VARCHAR2(100) DEFAULT 'AES-GCM-256',
+    iterations NUMBER DEFAULT 100000,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_fp_user FOREIGN KEY (user_id) REFERENCES USERS(user_id) ON DELETE CASCADE
+);
+
+-- File Metadata Table
+CREATE TABLE FILE_METADATA (
+    file_id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    owner_id NUMBER NOT NULL,
+    original_filename VARCHAR2(1024) NOT NULL,
+    stored_filename VARCHAR2(1024) NOT NULL UNIQUE,
+    file_size NUMBER NOT NULL,
+    iv VARCHAR2(512) NOT NULL,
+    salt VARCHAR2(512) NOT NULL,
+    encryption_algorithm VARCHAR2(100) DEFAULT 'AES-GCM-256',
+    compression_flag CHAR(1) DEFAULT 'N',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    file_path VARCHAR2(2000),
+    relative_path VARCHAR2(2000),
+    CONSTRAINT fk_file_owner FOREIGN KEY (owner_id) REFERENCES USERS(user_id) ON DELETE CASCADE,
+    CONSTRAINT chk_compression CHECK (compression_flag IN ('Y', 'N'))
+);
+
+CREATE INDEX idx_file_owner_created ON FILE_METADATA(owner_id, created_at, file_id);
+
+-- Audit Logs Table
+CREATE TABLE AUDIT_LOGS (
+    log_id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    user_id NUMBER NOT NULL,
+    file_id NUMBER,
+    operation_type VARCHAR2(50) NOT NULL,
+    operation_status VARCHAR2(50) NOT NULL,
+    file_size NUMBER,
+    duration_ms NUMBER,
+    throughput_mbps NUMBER(10,2),
+    error_message VARCHAR2(2000),
+    timestamp_created TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_log_user FOREIGN KEY (user_id) REFERENCES USERS(user_id) ON DELETE CASCADE,
+    CONSTRAINT fk_log_file FOREIGN KEY (file_id) REFERENCES FILE_METADATA(file_id) ON DELETE SET NULL
+);
+
+CREATE INDEX idx_audit_user_created ON AUDIT_LOGS(user_id, timestamp_created, log_id);
+-- H2 has no partitioning; the retention job's month ranges use this index instead
+CREATE INDEX idx_audit_created ON AUDIT_LOGS(timestamp_created);
+
+-- Daily rollups of AUDIT_LOGS (AuditStatsDAO); kept when entries are archived
+CREATE TABLE AUDIT_DAILY_STATS (
+    user_id NUMBER NOT NULL,
+    stat_day DATE NOT NULL,
+    operation_type VARCHAR2(50) NOT NULL,
+    op_count NUMBER DEFAULT 0 NOT NULL,
+    failure_count NUMBER DEFAULT 0 NOT NULL,
+    total_bytes NUMBER DEFAULT 0 NOT NULL,
+    total_duration_ms NUMBER DEFAULT 0 NOT NULL,
+    duration_hist VARCHAR2(4000),
+    CONSTRAINT pk_audit_daily_stats PRIMARY KEY (user_id, stat_day, operation_type),
+    CONSTRAINT fk_audit_stats_user FOREIGN KEY (user_id) REFERENCES USERS(user_id) ON DELETE CASCADE
+);
@@ -0,0 +1,86 @@
+package com.rfn.fileencryptor.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RowCursorTest {
+
+    private static final String URL = "jdbc:h2:mem:rowcursor;DB_CLOSE_DELAY=-1";
+
+    // Keeps the in-memory database alive while cursors close their own connections
+    private Connection keeper;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        keeper = DriverManager.getConnection(URL);
+        try (Statement st = keeper.createStatement()) {
+            st.execute("CREATE TABLE ROWS_T (id INT PRIMARY KEY, name VARCHAR(20))");
+            st.execute("INSERT INTO ROWS_T VALUES (1, 'a'), (2, 'b'), (3, 'c')");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Statement st = keeper.createStatement()) {
+            st.execute("DROP TABLE ROWS_T");
+        }
+        keeper.close();
+    }
+
+    @Test
+    void mapsRowsInOrderAndClosesEverything() throws SQLException {
+        Connection conn = DriverManager.getConnection(URL);
+        PreparedStatement pstmt = conn.prepareStatement("SELECT id, name FROM ROWS_T WHERE id >= ? ORDER BY id");
+        pstmt.setInt(1, 2);
+
+        List<String> names = new ArrayList<>();
+        try (RowCursor<String> rows = RowCursor.open(conn, pstmt, rs -> rs.getInt(1) + rs.getString(2))) {
+            assertThrows(IllegalStateException.class, rows::get);
+            while (rows.next()) {
+                names.add(rows.get());
+            }
+            assertEquals(2, rows.getRowCount());
+            assertThrows(IllegalStateException.class, rows::get);
+        }
+
+        assertEquals(List.of("2b", "3c"), names);
+        assertTrue(pstmt.isClosed());
+        assertTrue(conn.isClosed());
+    }
+
+    @Test
+    void failedQueryClosesStatementAndConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(URL);
+        PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM ROWS_T WHERE id = ?");
+        // Parameter left unbound
+
+        assertThrows(SQLException.class, () -> RowCursor.open(conn, pstmt, rs -> rs.getInt(1)));
+        assertTrue(pstmt.isClosed());
+        assertTrue(conn.isClosed());
+    }
+
+    @Test
+    void mapperFailureLeavesCursorClosable() throws SQLException {
+        Connection conn = DriverManager.getConnection(URL);
+        PreparedStatement pstmt = conn.prepareStatement("SELECT name FROM ROWS_T ORDER BY id");
+
+        RowCursor<Integer> rows = RowCursor.open(conn, pstmt, rs -> rs.getInt(1));
+        assertThrows(SQLException.class, rows::next);
+        assertEquals(0, rows.getRowCount());
+        rows.close();
+        assertTrue(conn.isClosed());
+    }
+}
@@ -0,0 +1,95 @@
+package com.rfn.fileencryptor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.config.DatabaseBackend;
+import com.rfn.fileencryptor.dao.AuditLogDAO;
+import com.rfn.fileencryptor.dao.FileMetadataDAO;
+import com.rfn.fileencryptor.model.AuditLog;
+import com.rfn.fileencryptor.model.FileMetadata;
+import com.rfn.fileencryptor.util.DatabaseUtil;
+
+class AuditWriterTest {
+
+    private static long userId;
+    private static long fileId;
+
+    @BeforeAll
+    static void setUpDatabase() throws Exception {
+        // A local database under the test home; no server needed
+        ConfigManager.setDatabaseBackend(DatabaseBackend.EMBEDDED);
+        try (Connection c = DatabaseUtil.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("INSERT INTO USERS (username, password_hash, password_salt) VALUES ('audit"
+                    + System.nanoTime() + "', 'x', 'y')");
+            try (ResultSet rs = st.executeQuery("SELECT MAX(user_id) FROM USERS")) {
+                rs.next();
+                userId = rs.getLong(1);
+            }
+        }
+        FileMetadata m = new FileMetadata();
+        m.setOwnerId(userId);
+        m.setOriginalFilename("kept.txt");
+        m.setStoredFilename("audit-test-" + System.nanoTime());
+        m.setFileSize(1L);
+        m.setIv("00");
+        m.setSalt("00");
+        m.setEncryptionAlgorithm("AES/GCM/NoPadding");
+        m.setFilePath("/tmp/kept.txt.enc");
+        fileId = new FileMetadataDAO().insert(m);
+    }
+
+    @Test
+    void storesEntryOfDeletedFileWithoutTheReference() throws Exception {
+        long missing = fileId + 1_000_000;
+        AuditWriter writer = AuditWriter.getInstance();
+        writer.submit(entry("FK_KEPT", fileId));
+        writer.submit(entry("FK_MISSING", missing));
+        writer.submit(entry("FK_NONE", null));
+        assertTrue(writer.flush(10_000));
+
+        Map<String, AuditLog> stored = new HashMap<>();
+        for (AuditLog log : new AuditLogDAO().findByUserId(userId)) {
+            stored.put(log.getOperationType(), log);
+        }
+        assertEquals(fileId, stored.get("FK_KEPT").getFileId());
+        assertNull(stored.get("FK_MISSING").getFileId());
+        assertNull(stored.get("FK_NONE").getFileId());
+    }
+
+    @Test
+    void writesLargeBacklogsInSeveralBatches() throws Exception {
+        AuditWriter writer = AuditWriter.getInstance();
+        int before = countOf("BULK");
+        for (int i = 0; i < 1_234; i++) {
+            writer.submit(entry("BULK", i % 2 == 0 ? fileId : null));
+        }
+        assertTrue(writer.flush(30_000));
+        assertEquals(before + 1_234, countOf("BULK"));
+    }
+
+    private static int countOf(String operationType) throws SQLException {
+        List<AuditLog> logs = new AuditLogDAO().findByOperationType(userId, operationType);
+        return logs.size();
+    }
+
+    private static AuditLog entry(String operationType, Long fileId) {
+        AuditLog log = new AuditLog(userId, operationType, "SUCCESS");
+        log.setFileId(fileId);
+        log.setFileSize(1L);
+        return log;
+    }
+}
@@ -0,0 +1,105 @@
+package com.rfn.fileencryptor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+
+class DeviceLimiterTest {
+
+    @TempDir
+    Path dir;
+
+    private final DeviceLimiter limiter = DeviceLimiter.getInstance();
+    private FileStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = Files.getFileStore(dir);
+    }
+
+    @Test
+    void parksTasksBeyondTheStreamLimit() {
+        // One stream per spinning disk
+        List<DeviceLimiter.Device> hdd = List.of(new DeviceLimiter.Device(store, DeviceLimiter.DeviceClass.HDD));
+        List<String> ran = new ArrayList<>();
+
+        assertTrue(limiter.tryAcquireOrPark(hdd, 10, () -> ran.add("first")));
+        assertFalse(limiter.tryAcquireOrPark(hdd, 10, () -> ran.add("second")));
+        assertFalse(limiter.tryAcquireOrPark(hdd, 10, () -> ran.add("third")));
+
+        // One free stream wakes one parked task
+        List<Runnable> woken = limiter.release(hdd);
+        assertEquals(1, woken.size());
+        woken.forEach(Runnable::run);
+        assertEquals(List.of("second"), ran);
+
+        // The woken task takes the stream again, so the next release wakes the last one
+        assertTrue(limiter.tryAcquireOrPark(hdd, 10, () -> { }));
+        limiter.release(hdd).forEach(Runnable::run);
+        assertEquals(List.of("second", "third"), ran);
+        assertTrue(limiter.release(List.of()).isEmpty());
+    }
+
+    @Test
+    void wakesLargestParkedTaskFirst() {
+        List<DeviceLimiter.Device> hdd = List.of(new DeviceLimiter.Device(store, DeviceLimiter.DeviceClass.HDD));
+        List<String> ran = new ArrayList<>();
+
+        assertTrue(limiter.tryAcquireOrPark(hdd, 1, () -> { }));
+        limiter.tryAcquireOrPark(hdd, 5, () -> ran.add("small"));
+        limiter.tryAcquireOrPark(hdd, 50, () -> ran.add("large"));
+        limiter.tryAcquireOrPark(hdd, 5, () -> ran.add("small, later"));
+
+        for (int i = 0; i < 3; i++) {
+            List<Runnable> woken = limiter.release(hdd);
+            assertEquals(1, woken.size());
+            woken.get(0).run();
+            assertTrue(limiter.tryAcquireOrPark(hdd, 1, () -> { }));
+        }
+        limiter.release(hdd);
+        assertEquals(List.of("large", "small", "small, later"), ran);
+    }
+
+    @Test
+    void acquiresEveryDeviceOrNone() {
+        DeviceLimiter.Device ssd = new DeviceLimiter.Device(store, DeviceLimiter.DeviceClass.SSD);
+        DeviceLimiter.Device hdd = new DeviceLimiter.Device(store, DeviceLimiter.DeviceClass.HDD);
+        int ssdStreams = ConfigManager.getDeviceStreams("ssd");
+
+        assertTrue(limiter.tryAcquireOrPark(List.of(hdd), 1, () -> { }));
+        List<String> ran = new ArrayList<>();
+        // The SSD has room, the HDD does not: nothing is taken on the SSD
+        assertFalse(limiter.tryAcquireOrPark(List.of(ssd, hdd), 1, () -> ran.add("both")));
+        for (int i = 0; i < ssdStreams; i++) {
+            assertTrue(limiter.tryAcquireOrPark(List.of(ssd), 1, () -> { }));
+        }
+        assertEquals(1, limiter.streamLimit(List.of(ssd, hdd)));
+
+        limiter.release(List.of(hdd)).forEach(Runnable::run);
+        assertEquals(List.of("both"), ran);
+        for (int i = 0; i < ssdStreams; i++) {
+            limiter.release(List.of(ssd));
+        }
+    }
+
+    @Test
+    void resolvesMissingOutputsThroughTheirParent() {
+        Path output = dir.resolve("not-yet").resolve("out.enc");
+        List<DeviceLimiter.Device> devices = limiter.devicesOf(List.of(dir, output));
+
+        assertEquals(1, devices.size());
+        assertEquals(Integer.MAX_VALUE, limiter.streamLimit(List.of()));
+    }
+}
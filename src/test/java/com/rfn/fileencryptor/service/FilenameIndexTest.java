@@ -0,0 +1,153 @@
+package com.rfn.fileencryptor.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.rfn.fileencryptor.dao.FileQuery;
+import com.rfn.fileencryptor.model.FileMetadata;
+
+class FilenameIndexTest {
+
+    private static final Long OWNER = 7L;
+    private static final int FILES = 3000;
+
+    private List<FileMetadata> rows;
+    private FilenameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        rows = new ArrayList<>();
+        for (long id = 1; id <= FILES; id++) {
+            String name = String.format(Locale.ROOT, id % 2 == 0 ? "file-%04d.txt" : "Photo-%04d.JPG", id);
+            rows.add(file(id, name));
+        }
+        index = new FilenameIndex(OWNER);
+        index.build(rows);
+    }
+
+    @Test
+    void findsSubstringsIgnoringCase() {
+        assertArrayEquals(new long[] {11, 13, 15, 17, 19}, index.search("pHoTo-001", FileQuery.Sort.FILENAME, false));
+        assertArrayEquals(new long[] {1234}, index.search("1234.TXT", FileQuery.Sort.FILENAME, false));
+        assertEquals(0, index.search("1234.jpg", FileQuery.Sort.FILENAME, false).length);
+
+        // One and two characters go through the trigrams containing them
+        assertEquals(FILES / 2, index.search("J", FileQuery.Sort.FILENAME, false).length);
+        assertEquals(FILES / 2, index.search("xt", FileQuery.Sort.FILENAME, false).length);
+    }
+
+    @Test
+    void findsShortNamesByShortTerms() {
+        FilenameIndex small = new FilenameIndex(OWNER);
+        small.build(List.of(file(1, "ab"), file(2, "b"), file(3, "cab.txt")));
+
+        assertArrayEquals(new long[] {1, 2, 3}, small.search("b", FileQuery.Sort.FILENAME, false));
+        assertArrayEquals(new long[] {1, 3}, small.search("AB", FileQuery.Sort.FILENAME, false));
+        assertArrayEquals(new long[] {3}, small.search("cab", FileQuery.Sort.FILENAME, false));
+    }
+
+    @Test
+    void ordersResultsLikeTheQuery() {
+        for (FileQuery.Sort sort : FileQuery.Sort.values()) {
+            for (boolean descending : new boolean[] {false, true}) {
+                // Few hits sort their positions, many filter the whole order
+                for (String term : new String[] {"-000", "-0", "o"}) {
+                    assertArrayEquals(expected(term, sort, descending), index.search(term, sort, descending),
+                            term + " by " + sort + (descending ? " desc" : ""));
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepsSortKeysPerFile() {
+        FileMetadata photo = rows.get(0);
+        assertEquals("jpg", index.sortKey(FileQuery.Sort.TYPE, 1));
+        assertEquals(photo.getOriginalFilename(), index.sortKey(FileQuery.Sort.FILENAME, 1));
+        assertEquals(photo.getFileSize(), index.sortKey(FileQuery.Sort.SIZE, 1));
+        assertEquals(photo.getCreatedAt(), index.sortKey(FileQuery.Sort.CREATED_AT, 1));
+        assertEquals("N", index.sortKey(FileQuery.Sort.COMPRESSED, 1));
+        assertEquals("Y", index.sortKey(FileQuery.Sort.COMPRESSED, 3));
+        assertNull(index.sortKey(FileQuery.Sort.FILENAME, FILES + 1));
+    }
+
+    @Test
+    void removalsCompactWithoutLosingFiles() {
+        // Enough removals to trigger a rebuild of the arrays
+        for (long id = 1; id <= 1200; id++) {
+            index.onFileRemoved(file(id, null));
+        }
+        rows.removeIf(m -> m.getFileId() <= 1200);
+
+        assertEquals(0, index.search("-0", FileQuery.Sort.FILENAME, false).length);
+        assertNull(index.sortKey(FileQuery.Sort.FILENAME, 1));
+        for (FileQuery.Sort sort : FileQuery.Sort.values()) {
+            assertArrayEquals(expected("-1", sort, true), index.search("-1", sort, true), sort.name());
+        }
+
+        FileMetadata added = file(FILES + 1, "file-1999-copy.txt");
+        index.onFileAdded(added);
+        rows.add(added);
+        assertArrayEquals(new long[] {1999, FILES + 1}, index.search("1999", FileQuery.Sort.FILENAME, false));
+        assertArrayEquals(expected("-1", FileQuery.Sort.SIZE, false), index.search("-1", FileQuery.Sort.SIZE, false));
+    }
+
+    @Test
+    void appliesEventsThatArriveWhileBuilding() {
+        FilenameIndex building = new FilenameIndex(OWNER);
+        building.onFileAdded(file(10, "early.txt"));
+        building.onFileRemoved(file(1, null));
+        FileMetadata foreign = file(11, "early-other-owner.txt");
+        foreign.setOwnerId(OWNER + 1);
+        building.onFileAdded(foreign);
+
+        assertFalse(building.isReady());
+        assertNull(building.search("early", FileQuery.Sort.FILENAME, false));
+
+        building.build(List.of(file(1, "gone.txt"), file(2, "kept.txt")));
+        assertTrue(building.isReady());
+        assertArrayEquals(new long[] {10}, building.search("early", FileQuery.Sort.FILENAME, false));
+        assertEquals(0, building.search("gone", FileQuery.Sort.FILENAME, false).length);
+        assertArrayEquals(new long[] {2}, building.search("kept", FileQuery.Sort.FILENAME, false));
+    }
+
+    // Ascending by the sort value then file id, reversed for descending, as the database orders it
+    private long[] expected(String term, FileQuery.Sort sort, boolean descending) {
+        Comparator<FileMetadata> order = Comparator.comparing(m -> comparable(sort, m));
+        order = order.thenComparing(FileMetadata::getFileId);
+        if (descending) order = order.reversed();
+        return rows.stream()
+                .filter(m -> m.getOriginalFilename().toLowerCase(Locale.ROOT).contains(term.toLowerCase(Locale.ROOT)))
+                .sorted(order)
+                .mapToLong(FileMetadata::getFileId)
+                .toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> comparable(FileQuery.Sort sort, FileMetadata m) {
+        return (Comparable<Object>) sort.keyOf(m);
+    }
+
+    private static FileMetadata file(long id, String name) {
+        FileMetadata m = new FileMetadata();
+        m.setFileId(id);
+        m.setOwnerId(OWNER);
+        m.setOriginalFilename(name);
+        m.setFileSize((id * 7919) % 1000);
+        m.setCreatedAt(new Timestamp(1_700_000_000_000L + (id * 104_729) % 86_400_000));
+        m.setCompressed(id % 3 == 0);
+        return m;
+    }
+}
@@ -0,0 +1,207 @@
+package com.rfn.fileencryptor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+import com.rfn.fileencryptor.util.CancellationToken;
+
+class JobJournalTest {
+
+    private static final AtomicLong USER_IDS = new AtomicLong(System.nanoTime());
+
+    @TempDir
+    Path dir;
+
+    private final JobJournal journal = JobJournal.getInstance();
+    // Each test its own user, since all of them share the journal directory
+    private final Long userId = USER_IDS.incrementAndGet();
+
+    @Test
+    void replaysUnfinishedItemsOfAReleasedBatch() {
+        JobJournal.Job job = journal.begin(JobJournal.OP_ENCRYPT, userId, CompressionService.Mode.AUTO,
+                "/data/in", List.of("a", "b", "c"), List.of(1L, 2L, 3L));
+        job.add("d", 4L);
+        job.add("a", 9L);
+        job.markDone("a");
+        job.markFailed("b", "disk\tfull");
+
+        // Still locked by this process, so not offered for resume
+        assertTrue(journal.findUnfinished(userId).isEmpty());
+        job.release();
+
+        List<JobJournal.Job> unfinished = journal.findUnfinished(userId);
+        assertEquals(1, unfinished.size());
+        JobJournal.Job replayed = unfinished.get(0);
+        assertEquals(job.getId(), replayed.getId());
+        assertEquals(JobJournal.OP_ENCRYPT, replayed.getOp());
+        assertEquals(CompressionService.Mode.AUTO, replayed.getCompressMode());
+        assertEquals("/data/in", replayed.getDirectory());
+        assertEquals(List.of("c", "d"), replayed.getPendingKeys());
+        assertTrue(journal.findUnfinished(userId + 1000).isEmpty());
+
+        // Closing marks the rest as not processed and removes the journal
+        replayed.close();
+        assertTrue(journal.findUnfinished(userId).isEmpty());
+    }
+
+    @Test
+    void journalStaysUntilCloseEvenWhenEveryItemIsDone() {
+        JobJournal.Job job = journal.begin(JobJournal.OP_DECRYPT, userId, CompressionService.Mode.NO,
+                null, List.of("a"), null);
+        job.markDone("a");
+        assertTrue(job.isFinished());
+
+        // A folder batch can still discover items after the known ones finished
+        job.add("b", 1L);
+        job.release();
+        List<JobJournal.Job> unfinished = journal.findUnfinished(userId);
+        assertEquals(1, unfinished.size());
+        assertEquals(List.of("b"), unfinished.get(0).getPendingKeys());
+        unfinished.get(0).discard();
+        assertTrue(journal.findUnfinished(userId).isEmpty());
+    }
+
+    @Test
+    void checkpointsContiguousSegmentsAndResumesFromThem() throws Exception {
+        JobJournal.Job job = journal.begin(JobJournal.OP_ENCRYPT, userId, CompressionService.Mode.NO,
+                null, List.of("big"), List.of(1000L));
+        FakeWork fresh = new FakeWork(12, 0, "X,state");
+        JobScheduler.SegmentedWork<String> work = job.wrap(splitting(fresh), Function.identity(), null)
+                .split("big", new CancellationToken());
+
+        // Out of order: nothing is contiguous until segment 0 is in
+        for (long i = 1; i < 10; i++) {
+            work.runSegment(i);
+        }
+        assertEquals(0, fresh.syncs);
+        work.runSegment(0);
+        assertEquals(1, fresh.syncs);
+        job.release();
+
+        JobJournal.Job replayed = journal.findUnfinished(userId).get(0);
+        assertEquals("X,state", replayed.getState("big"));
+
+        AtomicReference<String> resumedState = new AtomicReference<>();
+        AtomicLong resumedAt = new AtomicLong(-1);
+        FakeWork resumed = new FakeWork(12, 10, "X,state");
+        JobScheduler.SegmentedWork<String> again = replayed.wrap(splitting(new FakeWork(12, 0, null)),
+                Function.identity(), (item, state, firstPending, token) -> {
+                    resumedState.set(state);
+                    resumedAt.set(firstPending);
+                    return resumed;
+                }).split("big", new CancellationToken());
+        assertEquals("X,state", resumedState.get());
+        assertEquals(10, resumedAt.get());
+        assertEquals(10, again.firstPendingSegment());
+
+        again.runSegment(10);
+        again.runSegment(11);
+        assertEquals(List.of(10L, 11L), resumed.ran);
+        assertEquals("done", again.complete());
+        assertTrue(replayed.isFinished());
+        replayed.close();
+    }
+
+    @Test
+    void committedItemIsDoneEvenIfAborted() throws Exception {
+        JobJournal.Job job = journal.begin(JobJournal.OP_ENCRYPT, userId, CompressionService.Mode.NO,
+                null, List.of("x", "y"), null);
+        FakeWork committed = new FakeWork(1, 0, null);
+        committed.committed = true;
+        job.wrap(splitting(committed), Function.identity(), null).split("x", new CancellationToken())
+                .abort(new Exception("shred failed"));
+        job.wrap(splitting(new FakeWork(1, 0, null)), Function.identity(), null).split("y", new CancellationToken())
+                .abort(new Exception("write failed"));
+        assertTrue(job.isFinished());
+        job.release();
+
+        // Both items are terminal: nothing is offered, and startup removes the leftover journal
+        assertTrue(journal.findUnfinished(userId).isEmpty());
+        journal.reconcileOrphans(List.of());
+        assertFalse(new File(new File(ConfigManager.getStateDir(), "jobs"), job.getId() + ".journal").exists());
+    }
+
+    @Test
+    void reconcileDeletesOnlyOrphanedPartials() throws Exception {
+        File orphan = partial("orphan.enc");
+        File checkpoint = partial("resumable.enc");
+        File live = partial("live.enc");
+
+        // An interrupted batch whose item checkpointed into resumable.enc.fepart
+        JobJournal.Job interrupted = journal.begin(JobJournal.OP_DECRYPT, userId, CompressionService.Mode.NO,
+                dir.toString(), List.of("r"), null);
+        String output = checkpoint.getPath().substring(0, checkpoint.getPath().length() - FileService.PARTIAL_SUFFIX.length());
+        interrupted.wrap(splitting(new FakeWork(8, 0, "D," + output)), Function.identity(), null)
+                .split("r", new CancellationToken());
+        interrupted.release();
+
+        // A batch this process is still running, which recorded live.enc.fepart
+        JobJournal.Job running = journal.begin(JobJournal.OP_DECRYPT, userId, CompressionService.Mode.NO,
+                dir.toString(), List.of("l"), null);
+        running.wrap(JobScheduler.<String, String>splittable((item, progress, token) -> {
+            JobJournal.notePartial(live);
+            return "ok";
+        }, (item, token) -> null), Function.identity(), null).run("l", null, new CancellationToken());
+
+        journal.reconcileOrphans(List.of(dir.toString()));
+        assertFalse(orphan.exists());
+        assertTrue(checkpoint.exists());
+        assertTrue(live.exists());
+        running.close();
+
+        // Discarding the interrupted batch removes the checkpoint it could have resumed from
+        List<JobJournal.Job> unfinished = journal.findUnfinished(userId);
+        assertEquals(1, unfinished.size());
+        unfinished.get(0).discard();
+        assertFalse(checkpoint.exists());
+    }
+
+    private File partial(String name) throws Exception {
+        Path p = dir.resolve(name + FileService.PARTIAL_SUFFIX);
+        Files.write(p, new byte[] {1});
+        return p.toFile();
+    }
+
+    private static JobScheduler.SplittableJob<String, String> splitting(FakeWork work) {
+        return JobScheduler.splittable((item, progress, token) -> "whole", (item, token) -> work);
+    }
+
+    private static final class FakeWork implements JobScheduler.SegmentedWork<String> {
+        final long count;
+        final long firstPending;
+        final String state;
+        final List<Long> ran = new ArrayList<>();
+        int syncs;
+        boolean committed;
+
+        FakeWork(long count, long firstPending, String state) {
+            this.count = count;
+            this.firstPending = firstPending;
+            this.state = state;
+        }
+
+        @Override public long segmentCount() { return count; }
+        @Override public long segmentBytes(long index) { return 100; }
+        @Override public long firstPendingSegment() { return firstPending; }
+        @Override public String checkpointState() { return state; }
+        @Override public void sync() { syncs++; }
+        @Override public boolean isCommitted() { return committed; }
+        @Override public void runSegment(long index) { ran.add(index); }
+        @Override public String complete() { return "done"; }
+        @Override public void abort(Exception cause) { }
+    }
+}
@@ -0,0 +1,216 @@
+package com.rfn.fileencryptor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+
+class JobSchedulerTest {
+
+    private static final int SEGMENTS = 24;
+
+    private final JobScheduler scheduler = JobScheduler.getInstance();
+
+    @AfterEach
+    void tearDown() {
+        ConfigManager.setParallelJobsForSession(2);
+    }
+
+    @Test
+    void runsQueuedItemsLargestFirstThenInSubmissionOrder() throws Exception {
+        ConfigManager.setParallelJobsForSession(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        JobScheduler.Batch<String, String> batch = scheduler.newBatch((item, progress, token) -> {
+            if (item.equals("blocker")) {
+                started.countDown();
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            } else {
+                order.add(item);
+            }
+            return item;
+        }, null, null);
+        assertEquals(1, scheduler.getParallelism());
+
+        // The only worker is busy, so everything after this waits in the queue
+        batch.submit("blocker", 1);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        batch.submit("10", 10);
+        batch.submit("30a", 30);
+        batch.submit("20", 20);
+        batch.submit("30b", 30);
+        batch.submit("0", 0);
+        batch.seal();
+        release.countDown();
+
+        JobScheduler.BatchResult<String> result = batch.completion().get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("30a", "30b", "20", "10", "0"), order);
+        assertEquals(6, result.getSuccessCount());
+        assertEquals(0, result.getFailureCount());
+    }
+
+    @Test
+    void splitsLargeItemsAcrossIdleWorkers() throws Exception {
+        ConfigManager.setParallelJobsForSession(4);
+        FakeWork work = new FakeWork(-1);
+        AtomicInteger wholeRuns = new AtomicInteger();
+
+        JobScheduler.Batch<String, String> batch = scheduler.newBatch(JobScheduler.splittable(
+                (item, progress, token) -> {
+                    wholeRuns.incrementAndGet();
+                    return "whole";
+                },
+                (item, token) -> item.equals("large") ? work : null), null, null);
+        batch.submit("large", ConfigManager.getSegmentSplitThresholdBytes());
+        batch.submit("small", 1);
+        batch.seal();
+
+        JobScheduler.BatchResult<String> result = batch.completion().get(30, TimeUnit.SECONDS);
+        assertEquals(2, result.getSuccessCount());
+        assertEquals("segmented", batch.getFutures().get(0).get());
+        assertEquals(1, wholeRuns.get());
+
+        assertEquals(SEGMENTS, work.runs.size());
+        for (AtomicInteger n : work.runs.values()) {
+            assertEquals(1, n.get());
+        }
+        assertEquals(1, work.completed.get());
+        assertNull(work.aborted.get());
+        // Helpers picked up segments of the same file
+        assertTrue(work.threads.size() > 1, "segments ran on " + work.threads);
+    }
+
+    @Test
+    void abortsSplitItemWhenASegmentFails() throws Exception {
+        ConfigManager.setParallelJobsForSession(4);
+        FakeWork work = new FakeWork(5);
+
+        JobScheduler.Batch<String, String> batch = scheduler.newBatch(JobScheduler.splittable(
+                (item, progress, token) -> "whole", (item, token) -> work), null, null);
+        batch.submit("large", ConfigManager.getSegmentSplitThresholdBytes());
+        batch.seal();
+
+        JobScheduler.BatchResult<String> result = batch.completion().get(30, TimeUnit.SECONDS);
+        assertEquals(1, result.getFailureCount());
+        assertEquals(0, work.completed.get());
+        assertInstanceOf(IOException.class, work.aborted.get());
+        assertEquals(1, work.abortCount.get());
+        assertTrue(work.runs.size() < SEGMENTS, "remaining segments are not started");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> batch.getFutures().get(0).get());
+        assertSame(work.aborted.get(), e.getCause());
+    }
+
+    @Test
+    void abortsWhenCompleteFails() throws Exception {
+        ConfigManager.setParallelJobsForSession(2);
+        FakeWork work = new FakeWork(-1) {
+            @Override
+            public String complete() throws Exception {
+                super.complete();
+                throw new IOException("rename failed");
+            }
+        };
+
+        JobScheduler.Batch<String, String> batch = scheduler.newBatch(JobScheduler.splittable(
+                (item, progress, token) -> "whole", (item, token) -> work), null, null);
+        batch.submit("large", ConfigManager.getSegmentSplitThresholdBytes());
+        batch.seal();
+
+        JobScheduler.BatchResult<String> result = batch.completion().get(30, TimeUnit.SECONDS);
+        assertEquals(1, result.getFailureCount());
+        assertEquals(1, work.abortCount.get());
+        assertEquals("rename failed", work.aborted.get().getMessage());
+    }
+
+    @Test
+    void cancelledBatchSkipsQueuedItems() throws Exception {
+        ConfigManager.setParallelJobsForSession(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        JobScheduler.Batch<String, String> batch = scheduler.newBatch((item, progress, token) -> {
+            started.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return item;
+        }, null, null);
+        batch.submit("running", 2);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        batch.submit("queued", 1);
+        batch.seal();
+        batch.cancel();
+        release.countDown();
+
+        JobScheduler.BatchResult<String> result = batch.completion().get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("running"), result.getSucceeded());
+        assertEquals(List.of("queued"), result.getCancelled());
+    }
+
+    /**
+     * Segments that take a little time, optionally failing at one index.
+     */
+    private static class FakeWork implements JobScheduler.SegmentedWork<String> {
+        final long failAt;
+        final Map<Long, AtomicInteger> runs = new ConcurrentHashMap<>();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger abortCount = new AtomicInteger();
+        final AtomicReference<Exception> aborted = new AtomicReference<>();
+
+        FakeWork(long failAt) {
+            this.failAt = failAt;
+        }
+
+        @Override
+        public long segmentCount() {
+            return SEGMENTS;
+        }
+
+        @Override
+        public long segmentBytes(long index) {
+            return ConfigManager.getSegmentSplitThresholdBytes() / SEGMENTS;
+        }
+
+        @Override
+        public void runSegment(long index) throws Exception {
+            runs.computeIfAbsent(index, i -> new AtomicInteger()).incrementAndGet();
+            threads.add(Thread.currentThread().getName());
+            if (index == failAt) throw new IOException("segment " + index + " failed");
+            Thread.sleep(20);
+        }
+
+        @Override
+        public String complete() throws Exception {
+            completed.incrementAndGet();
+            return "segmented";
+        }
+
+        @Override
+        public void abort(Exception cause) {
+            abortCount.incrementAndGet();
+            aborted.set(cause);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.rfn.fileencryptor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.rfn.fileencryptor.config.ConfigManager;
+
+class ShredServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void escapesEveryJournalSeparator() {
+        String name = "/data/50%\tdone\r\n%0A.txt";
+        String escaped = ShredService.escape(name);
+
+        assertEquals("/data/50%25%09done%0D%0A%250A.txt", escaped);
+        assertEquals(name, ShredService.unescape(escaped));
+        // Other percent signs are left as written
+        assertEquals("100%", ShredService.unescape("100%"));
+        assertEquals("a%zz", ShredService.unescape("a%zz"));
+    }
+
+    @Test
+    void recoversEveryStateLeftByACrash() throws Exception {
+        // Crashed after the rename: the tombstone is shredded
+        File movedAside = write(".moved.shred", "secret 1");
+        File movedOriginal = new File(dir.toFile(), "moved.txt");
+
+        // Crashed before the rename: the unchanged original is shredded
+        File unmoved = write("odd\tname %09.txt", "secret 2");
+        File unmovedTombstone = new File(dir.toFile(), ".unmoved.shred");
+
+        // The original was replaced since it was queued: left alone
+        File replaced = write("replaced.txt", "new contents");
+        File replacedTombstone = new File(dir.toFile(), ".replaced.shred");
+
+        File stateDir = Files.createDirectory(dir.resolve("state")).toFile();
+        String journal = entry(movedAside, movedOriginal, 8, 0)
+                + entry(unmovedTombstone, unmoved, unmoved.length(), unmoved.lastModified())
+                + entry(replacedTombstone, replaced, 3, replaced.lastModified())
+                + "+\ttorn\n";
+        Files.writeString(new File(stateDir, "shred-queue.journal").toPath(), journal, StandardCharsets.UTF_8);
+
+        ShredService service = new ShredService(stateDir);
+        assertTrue(service.awaitIdle(10_000));
+        service.shutdown();
+
+        assertFalse(movedAside.exists());
+        assertFalse(unmoved.exists());
+        assertFalse(unmovedTombstone.exists());
+        assertTrue(replaced.exists());
+        assertEquals("new contents", Files.readString(replaced.toPath()));
+
+        // Everything is settled, so a later start finds nothing to resume
+        ShredService restarted = new ShredService(stateDir);
+        assertEquals(0, restarted.getPendingCount());
+        restarted.shutdown();
+    }
+
+    @Test
+    void enqueueMovesTheFileAsideAtOnce() throws Exception {
+        File stateDir = Files.createDirectory(dir.resolve("state")).toFile();
+        File file = write("plain.txt", "secret");
+
+        ShredService service = new ShredService(stateDir);
+        ConfigManager.setDeleteMode("secure");
+        try {
+            service.enqueue(file);
+            // The original path is free before the shred has run
+            assertFalse(file.exists());
+            assertTrue(service.awaitIdle(10_000));
+        } finally {
+            ConfigManager.setDeleteMode("fast");
+            service.shutdown();
+        }
+
+        try (var left = Files.list(dir)) {
+            assertEquals(1, left.count(), "only the state directory is left");
+        }
+    }
+
+    private File write(String name, String contents) throws Exception {
+        Path p = dir.resolve(name);
+        Files.writeString(p, contents, StandardCharsets.UTF_8);
+        return p.toFile();
+    }
+
+    private static String entry(File tombstone, File original, long size, long mtime) {
+        return "+\t" + ShredService.escape(tombstone.getPath()) + "\t" + ShredService.escape(original.getPath())
+                + "\t" + size + "\t" + mtime + "\n";
+    }
+}
@@ -0,0 +1,87 @@
+package com.rfn.fileencryptor.ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class FileSelectionTest {
+
+    @Test
+    void countsMarkedFiles() {
+        FileSelection sel = new FileSelection();
+        sel.setTotal(10);
+        sel.setSelected(1L, true);
+        sel.setSelected(2L, true);
+        sel.toggle(3L);
+        sel.toggle(2L);
+        sel.setSelected(null, true);
+
+        assertEquals(2, sel.getCount());
+        assertTrue(sel.isSelected(1L));
+        assertFalse(sel.isSelected(2L));
+        assertFalse(sel.isInverted());
+        assertEquals(Set.of(1L, 3L), sel.getMarked());
+        assertFalse(sel.isAllSelected());
+    }
+
+    @Test
+    void selectAllCoversUnloadedFilesAndKeepsExclusions() {
+        FileSelection sel = new FileSelection();
+        sel.setTotal(1_000_000);
+        sel.selectAll();
+        assertTrue(sel.isAllSelected());
+        assertTrue(sel.isSelected(123_456L));
+
+        sel.toggle(5L);
+        sel.setSelected(6L, false);
+        assertEquals(999_998, sel.getCount());
+        assertTrue(sel.isInverted());
+        assertEquals(Set.of(5L, 6L), sel.getMarked());
+        assertFalse(sel.isAllSelected());
+
+        sel.setSelected(5L, true);
+        assertEquals(999_999, sel.getCount());
+
+        sel.clear();
+        assertTrue(sel.isEmpty());
+        assertFalse(sel.isSelected(123_456L));
+    }
+
+    @Test
+    void filesJoiningAfterSelectAllStartUnselected() {
+        FileSelection sel = new FileSelection();
+        sel.setTotal(3);
+        sel.selectAll();
+        sel.added(4L);
+
+        assertFalse(sel.isSelected(4L));
+        assertEquals(3, sel.getCount());
+
+        sel.removed(2L);
+        sel.removed(4L);
+        assertEquals(2, sel.getCount());
+        assertTrue(sel.isAllSelected());
+    }
+
+    @Test
+    void snapshotIsDetachedFromLaterChanges() {
+        FileSelection sel = new FileSelection();
+        sel.setTotal(5);
+        sel.selectAll();
+        sel.toggle(1L);
+        FileSelection.Snapshot snap = sel.snapshot();
+
+        sel.toggle(2L);
+        sel.clear();
+
+        assertTrue(snap.isInverted());
+        assertEquals(Set.of(1L), snap.getMarked());
+        assertEquals(4, snap.getCount());
+        assertFalse(snap.isEmpty());
+        assertTrue(sel.snapshot().isEmpty());
+    }
+}
@@ -0,0 +1,216 @@
+package com.rfn.fileencryptor.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedCipherTest {
+
+    private static final int SEGMENT = 64;
+
+    @TempDir
+    Path dir;
+
+    private SecretKey key;
+    private byte[] iv;
+    private byte[] header;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        key = CryptoUtil.generateKey();
+        iv = CryptoUtil.generateIV();
+        header = SegmentedCipher.header(SEGMENT);
+    }
+
+    @Test
+    void roundTripsPlaintextOfEverySize() throws Exception {
+        for (int size : new int[] {0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 3 * SEGMENT + 5}) {
+            byte[] plain = randomBytes(size);
+            Path enc = encrypt(plain);
+            assertEquals(SegmentedCipher.cipherSize(size, SEGMENT), Files.size(enc), "size " + size);
+            assertArrayEquals(plain, decrypt(enc), "size " + size);
+        }
+    }
+
+    @Test
+    void rejectsTamperedSegment() throws Exception {
+        Path enc = encrypt(randomBytes(3 * SEGMENT));
+        byte[] data = Files.readAllBytes(enc);
+        data[(int) SegmentedCipher.cipherOffset(SEGMENT, 1) + 10] ^= 1;
+        Files.write(enc, data);
+
+        assertThrows(AEADBadTagException.class, () -> decrypt(enc));
+    }
+
+    @Test
+    void rejectsTruncatedLastSegment() throws Exception {
+        Path enc = encrypt(randomBytes(3 * SEGMENT + 20));
+        byte[] data = Files.readAllBytes(enc);
+
+        // Part of the last segment cut off
+        Files.write(enc, Arrays.copyOf(data, data.length - 5));
+        assertThrows(AEADBadTagException.class, () -> decrypt(enc));
+
+        // Whole last segment dropped: the new last segment was not sealed as the last one
+        Files.write(enc, Arrays.copyOf(data, (int) SegmentedCipher.cipherOffset(SEGMENT, 3)));
+        assertThrows(AEADBadTagException.class, () -> decrypt(enc));
+    }
+
+    @Test
+    void rejectsReorderedSegments() throws Exception {
+        Path enc = encrypt(randomBytes(3 * SEGMENT));
+        byte[] data = Files.readAllBytes(enc);
+        byte[] swapped = data.clone();
+        int len = SEGMENT + SegmentedCipher.TAG_BYTES;
+        int first = (int) SegmentedCipher.cipherOffset(SEGMENT, 0);
+        int second = (int) SegmentedCipher.cipherOffset(SEGMENT, 1);
+        System.arraycopy(data, first, swapped, second, len);
+        System.arraycopy(data, second, swapped, first, len);
+        Files.write(enc, swapped);
+
+        assertThrows(AEADBadTagException.class, () -> decrypt(enc));
+    }
+
+    @Test
+    void rejectsDuplicatedSegment() throws Exception {
+        Path enc = encrypt(randomBytes(3 * SEGMENT));
+        byte[] data = Files.readAllBytes(enc);
+        int len = SEGMENT + SegmentedCipher.TAG_BYTES;
+        System.arraycopy(data, (int) SegmentedCipher.cipherOffset(SEGMENT, 0),
+                data, (int) SegmentedCipher.cipherOffset(SEGMENT, 1), len);
+        Files.write(enc, data);
+
+        assertThrows(AEADBadTagException.class, () -> decrypt(enc));
+    }
+
+    @Test
+    void segmentIvXorsIndexIntoLastFourBytes() {
+        assertArrayEquals(iv, SegmentedCipher.segmentIv(iv, 0));
+
+        byte[] derived = SegmentedCipher.segmentIv(iv, 0x01020304L);
+        assertArrayEquals(Arrays.copyOf(iv, iv.length - 4), Arrays.copyOf(derived, derived.length - 4));
+        assertEquals((byte) (iv[8] ^ 0x01), derived[8]);
+        assertEquals((byte) (iv[9] ^ 0x02), derived[9]);
+        assertEquals((byte) (iv[10] ^ 0x03), derived[10]);
+        assertEquals((byte) (iv[11] ^ 0x04), derived[11]);
+
+        assertFalse(Arrays.equals(SegmentedCipher.segmentIv(iv, 1), SegmentedCipher.segmentIv(iv, 2)));
+    }
+
+    @Test
+    void segmentIsBoundToItsIndexAndHeader() throws Exception {
+        byte[] plain = randomBytes(2 * SEGMENT);
+        Path enc = encrypt(plain);
+
+        // Segment 1 read back as if it were segment 0: wrong IV and AAD
+        byte[] data = Files.readAllBytes(enc);
+        byte[] moved = new byte[(int) SegmentedCipher.cipherSize(SEGMENT, SEGMENT)];
+        System.arraycopy(data, 0, moved, 0, SegmentedCipher.HEADER_SIZE);
+        System.arraycopy(data, (int) SegmentedCipher.cipherOffset(SEGMENT, 1), moved, SegmentedCipher.HEADER_SIZE,
+                SEGMENT + SegmentedCipher.TAG_BYTES);
+        Path single = dir.resolve("moved.enc");
+        Files.write(single, moved);
+        assertThrows(AEADBadTagException.class, () -> decrypt(single));
+
+        // The header is part of every segment's AAD
+        data[SegmentedCipher.HEADER_SIZE - 1] ^= 1;
+        Files.write(enc, data);
+        assertThrows(AEADBadTagException.class, () -> decrypt(enc));
+    }
+
+    @Test
+    void matchesSegmentOnlyForUnchangedSource() throws Exception {
+        byte[] plain = randomBytes(2 * SEGMENT + 7);
+        Path src = Files.createTempFile(dir, "source", ".bin");
+        Files.write(src, plain);
+        Path enc = encrypt(plain);
+
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel sealed = FileChannel.open(enc, StandardOpenOption.READ)) {
+            for (long i = 0; i < 3; i++) {
+                assertTrue(SegmentedCipher.matchesSegment(in, sealed, key, iv, header, plain.length, i));
+            }
+        }
+
+        plain[SEGMENT + 3] ^= 1;
+        Files.write(src, plain);
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel sealed = FileChannel.open(enc, StandardOpenOption.READ)) {
+            assertTrue(SegmentedCipher.matchesSegment(in, sealed, key, iv, header, plain.length, 0));
+            assertFalse(SegmentedCipher.matchesSegment(in, sealed, key, iv, header, plain.length, 1));
+            // Sealed under another IV: not authentic
+            byte[] otherIv = CryptoUtil.generateIV();
+            assertThrows(AEADBadTagException.class,
+                    () -> SegmentedCipher.matchesSegment(in, sealed, key, otherIv, header, plain.length, 2));
+        }
+    }
+
+    @Test
+    void rejectsForeignHeader() throws Exception {
+        Path bogus = dir.resolve("bogus.enc");
+        Files.write(bogus, new byte[SegmentedCipher.HEADER_SIZE]);
+        try (FileChannel in = FileChannel.open(bogus, StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> SegmentedCipher.readHeader(in));
+        }
+    }
+
+    // A fresh base IV per file, as FileService does (GCM refuses a repeated key and IV)
+    private Path encrypt(byte[] plain) throws Exception {
+        iv = CryptoUtil.generateIV();
+        Path src = Files.createTempFile(dir, "plain", ".bin");
+        Path enc = Files.createTempFile(dir, "cipher", ".enc");
+        Files.write(src, plain);
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(enc, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(header), 0);
+            long count = SegmentedCipher.segmentCount(plain.length, SEGMENT);
+            // Out of order, as parallel workers would write them
+            for (long i = count - 1; i >= 0; i--) {
+                SegmentedCipher.encryptSegment(in, out, key, iv, header, plain.length, i);
+            }
+        }
+        return enc;
+    }
+
+    private byte[] decrypt(Path enc) throws Exception {
+        Path dst = Files.createTempFile(dir, "out", ".bin");
+        long plainSize;
+        try (FileChannel in = FileChannel.open(enc, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dst, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] h = SegmentedCipher.readHeader(in);
+            int segmentSize = SegmentedCipher.segmentSize(h);
+            plainSize = SegmentedCipher.plainSize(in.size(), segmentSize);
+            long count = SegmentedCipher.segmentCount(plainSize, segmentSize);
+            for (long i = 0; i < count; i++) {
+                SegmentedCipher.decryptSegment(in, out, key, iv, h, plainSize, i);
+            }
+        }
+        byte[] result = Files.readAllBytes(dst);
+        assertEquals(plainSize, result.length);
+        return result;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+}